@@ -13,14 +13,23 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
 import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.base.SuitePortPool;
 import net.bpelunit.framework.exception.ConfigurationException;
 
 /**
@@ -40,6 +49,17 @@ import net.bpelunit.framework.exception.ConfigurationException;
  * 
  * </p>
  * 
+ * <p>
+ * Several suites may be given as nested filesets instead of the testsuite
+ * attribute. They are run parallelSuites at a time (1 by default). If
+ * suitePortRange is set (for instance, &quot;7777-7799&quot;), each suite gets
+ * its own port for its simulated partners from this range while it runs. When
+ * several suites are run, the XML results of each suite are written to a file
+ * of their own, named after the file of the XML output and the suite. XML
+ * outputs without a file get a single testResults document holding the
+ * results of all suites.
+ * </p>
+ * 
  * @version $Id$
  * @author Philip Mayer
  * 
@@ -76,6 +96,21 @@ public class BPELUnit extends Task {
 	 */
 	private File fTestSuiteFile;
 
+	/**
+	 * Further test suite files
+	 */
+	private List<FileSet> fTestSuiteFileSets= new ArrayList<FileSet>();
+
+	/**
+	 * Number of test suites which are run at the same time
+	 */
+	private int fParallelSuites= 1;
+
+	/**
+	 * Range of ports for the simulated partners of the suites (may be null)
+	 */
+	private String fSuitePortRange;
+
 	@Override
 	public void execute() {
 		checkAttributes();
@@ -84,24 +119,102 @@ public class BPELUnit extends Task {
 		options.put(BPELUnitRunner.HALT_ON_ERROR, Boolean.toString(fHaltOnError));
 		options.put(BPELUnitRunner.HALT_ON_FAILURE, Boolean.toString(fHaltOnFailure));
 
-		BPELUnitAntRunner runner = new BPELUnitAntRunner(fBPELUnitDir, fLoggingList, fOutputList);
+		List<File> suites= getTestSuiteFiles();
+		BPELUnitAntRunner runner = new BPELUnitAntRunner(fBPELUnitDir, fLoggingList, fOutputList, suites.size() > 1);
 		try {
 			runner.initialize(options);
-			runner.run(fTestSuiteFile);
-		} catch (Exception e) {
+			SuitePortPool ports= fSuitePortRange != null ? SuitePortPool.parse(fSuitePortRange) : null;
+			runSuites(runner, suites, ports);
+		} catch (ConfigurationException e) {
 			throw new BuildException(e.getMessage(), e);
+		} finally {
+			runner.close();
 		}
 	}
 
+	/**
+	 * Runs the suites on a pool of parallelSuites threads. Once a suite cannot
+	 * be run, the suites which have not been started yet are skipped, and the
+	 * first problem is thrown after the running ones have finished.
+	 */
+	private void runSuites(final BPELUnitAntRunner runner, List<File> suites, final SuitePortPool ports) {
+		int threads= Math.max(1, Math.min(fParallelSuites, suites.size()));
+		if (ports != null) {
+			threads= Math.min(threads, ports.size());
+		}
+
+		final ExecutorService executor= Executors.newFixedThreadPool(threads);
+		final AtomicBoolean aborted= new AtomicBoolean();
+		final List<Future<Void>> futures= new ArrayList<Future<Void>>();
+		for (final File suite : suites) {
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					if (aborted.get()) {
+						return null;
+					}
+					final int port= ports != null ? ports.acquire() : -1;
+					try {
+						runner.run(suite, port);
+						return null;
+					} catch (Exception e) {
+						aborted.set(true);
+						throw e;
+					} finally {
+						if (ports != null) {
+							ports.release(port);
+						}
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+
+		BuildException problem= null;
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (problem == null) {
+					problem= new BuildException(e.getCause().getMessage(), e.getCause());
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new BuildException("Interrupted while running the test suites", e);
+			}
+		}
+		if (problem != null) {
+			throw problem;
+		}
+	}
+
+	private List<File> getTestSuiteFiles() {
+		List<File> suites= new ArrayList<File>();
+		if (fTestSuiteFile != null) {
+			suites.add(fTestSuiteFile);
+		}
+		for (FileSet fileSet : fTestSuiteFileSets) {
+			DirectoryScanner scanner= fileSet.getDirectoryScanner(getProject());
+			for (String file : scanner.getIncludedFiles()) {
+				suites.add(new File(scanner.getBasedir(), file));
+			}
+		}
+		return suites;
+	}
+
 	private void checkAttributes() {
-		if (fTestSuiteFile == null) {
-			throw new BuildException("The testsuite argument is required.");
+		if (fTestSuiteFile == null && fTestSuiteFileSets.isEmpty()) {
+			throw new BuildException("The testsuite argument or a nested fileset is required.");
 		}
 		
-		if (!fTestSuiteFile.exists()) {
+		if (fTestSuiteFile != null && !fTestSuiteFile.exists()) {
 			throw new BuildException("The testsuite file does not exist.");
 		}
 
+		if (fParallelSuites < 1) {
+			throw new BuildException("The number of parallel suites must be at least 1.");
+		}
+
 		if (StringUtils.isEmpty(fBPELUnitDir)) {
 			throw new BuildException("The BPELUnit directory is required - either specify an argument or set environment variable BPELUNIT_HOME.");
 		}
@@ -123,6 +236,18 @@ public class BPELUnit extends Task {
 		fTestSuiteFile = new File(testSuite);
 	}
 
+	public void addFileset(FileSet fileSet) {
+		fTestSuiteFileSets.add(fileSet);
+	}
+
+	public void setParallelSuites(int parallelSuites) {
+		fParallelSuites= parallelSuites;
+	}
+
+	public void setSuitePortRange(String suitePortRange) {
+		fSuitePortRange= suitePortRange;
+	}
+
 	public void setBPELUnitDir(String bpelUnitDir) {
 		fBPELUnitDir= bpelUnitDir;
 	}
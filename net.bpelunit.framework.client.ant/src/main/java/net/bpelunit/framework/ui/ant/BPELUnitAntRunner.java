@@ -8,10 +8,12 @@ package net.bpelunit.framework.ui.ant;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.bpelunit.framework.base.BPELUnitBaseRunner;
-import net.bpelunit.framework.control.result.XMLResultProducer;
+import net.bpelunit.framework.control.result.StreamingXMLResultWriter;
 import net.bpelunit.framework.exception.ConfigurationException;
 import net.bpelunit.framework.exception.DeploymentException;
 import net.bpelunit.framework.exception.SpecificationException;
@@ -23,6 +25,7 @@ import net.bpelunit.framework.model.test.report.ITestArtefact;
 import net.bpelunit.framework.ui.ant.BPELUnit.Logging;
 import net.bpelunit.framework.ui.ant.BPELUnit.Output;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
@@ -37,7 +40,7 @@ import org.apache.log4j.varia.NullAppender;
  * @author Philip Mayer
  * 
  */
-public class BPELUnitAntRunner extends BPELUnitBaseRunner implements ITestResultListener {
+public class BPELUnitAntRunner extends BPELUnitBaseRunner {
 
 	/**
 	 * The home directory of BPELUnit.
@@ -55,29 +58,55 @@ public class BPELUnitAntRunner extends BPELUnitBaseRunner implements ITestResult
 	private List<Output> fOutputs;
 
 	/**
-	 * Failure count.
+	 * If true, several suites are run: XML outputs to a file write each suite
+	 * to a file of its own, and the other XML outputs wrap the results of the
+	 * suites in a single root element
+	 */
+	private boolean fSeveralSuites;
+
+	/**
+	 * Failure count over all suites.
 	 */
 	private int fFailures;
 
 	/**
-	 * Error count.
+	 * Error count over all suites.
 	 */
 	private int fErrors;
 
 	/**
-	 * Run count.
+	 * Run count over all suites.
 	 */
 	private int fRuns;
 
+	/**
+	 * Number of suites run.
+	 */
+	private int fSuites;
+
 	// ********************* Initialization ********************
 
 	public BPELUnitAntRunner(String homedir, List<Logging> loggers, List<Output> outputList) {
+		this(homedir, loggers, outputList, false);
+	}
+
+	/**
+	 * @param severalSuites
+	 *            if true, XML outputs to a file write the results of each suite
+	 *            to a file of their own, named after the output file and the
+	 *            suite (see {@link #getXMLFileFor(Output, TestSuite)}), and XML
+	 *            outputs to a stream write the results of all suites in a
+	 *            single testResults document.
+	 */
+	public BPELUnitAntRunner(String homedir, List<Logging> loggers, List<Output> outputList, boolean severalSuites) {
 		fBPELUnitHomeDirectory= homedir;
 		fLoggers= loggers;
 		fOutputs= outputList;
+		fSeveralSuites= severalSuites;
 		fFailures= 0;
 		fErrors= 0;
 		fRuns= 0;
+		fSuites= 0;
 	}
 
 	@Override
@@ -85,7 +114,16 @@ public class BPELUnitAntRunner extends BPELUnitBaseRunner implements ITestResult
 		setHomeDirectory(fBPELUnitHomeDirectory);
 
 		for (Output output : fOutputs) {
-			output.initialize();
+			if (!isXMLFilePerSuite(output)) {
+				output.initialize();
+			}
+			if (isXMLForSeveralSuites(output)) {
+				try {
+					StreamingXMLResultWriter.startResults(output.getOutput());
+				} catch (IOException e) {
+					throw new ConfigurationException("Could not write to the XML output", e);
+				}
+			}
 		}
 	}
 
@@ -106,10 +144,36 @@ public class BPELUnitAntRunner extends BPELUnitBaseRunner implements ITestResult
 
 	// ************************* Running *************************
 
+	/**
+	 * Runs a single suite and closes the outputs.
+	 */
 	public void run(File testSuite) throws SpecificationException, DeploymentException, ConfigurationException {
+		try {
+			run(testSuite, -1);
+		} finally {
+			close();
+		}
+	}
 
-		TestSuite suite= loadTestSuite(testSuite);
-		suite.addResultListener(this);
+	/**
+	 * Runs a suite, leaving the outputs open for further suites. May be called
+	 * for several suites at the same time.
+	 * 
+	 * @param port
+	 *            port for the simulated partners, or -1 to use the one from the
+	 *            suite
+	 */
+	public void run(File testSuite, int port) throws SpecificationException, DeploymentException, ConfigurationException {
+
+		TestSuite suite= loadTestSuite(testSuite, port);
+		SuiteListener listener= new SuiteListener();
+		suite.addResultListener(listener);
+
+		// Lazily created test cases are only reported to the listeners
+		Map<Output, StreamingXMLResultWriter> xmlWriters= createXMLWriters(suite);
+		for (StreamingXMLResultWriter writer : xmlWriters.values()) {
+			suite.addResultListener(writer);
+		}
 
 		try {
 			suite.setUp();
@@ -120,47 +184,103 @@ public class BPELUnitAntRunner extends BPELUnitBaseRunner implements ITestResult
 			throw e;
 		}
 
-		outputPlain("START", suite);
+		// The suite must be shut down before its port is released
+		boolean reported= false;
+		try {
+			outputPlain("START", suite);
 
-		suite.run();
-		suite.removeResultListener(this);
+			suite.run();
+			suite.removeResultListener(listener);
+			for (StreamingXMLResultWriter writer : xmlWriters.values()) {
+				suite.removeResultListener(writer);
+			}
 
-		outputPlain("END", suite);
+			outputPlain("END", suite);
 
-		String result= "Test Run Completed. " + fRuns + " " + getPluralOf(fRuns, "run") + " (" + fFailures + " " + getPluralOf(fFailures, "failure")
-				+ ", " + fErrors + " " + getPluralOf(fErrors, "error") + ") \n";
-		outputPlain(result);
-		System.out.println(result);
+			String result= getResult("Test Run Completed. ", listener.fRuns, listener.fFailures, listener.fErrors);
+			outputPlain(result);
+			System.out.println(result);
 
-		outputXML(suite);
+			outputXML(suite, xmlWriters);
 
-		closeOutputs();
+			synchronized (this) {
+				fSuites++;
+				fRuns+= listener.fRuns;
+				fFailures+= listener.fFailures;
+				fErrors+= listener.fErrors;
+			}
+			reported= true;
+		} finally {
+			try {
+				suite.shutDown();
+			} catch (DeploymentException e) {
+				if (reported) {
+					throw e;
+				}
+				// Do not hide the problem which stopped the suite
+				Logger.getLogger(getClass()).warn("Could not shut down " + suite.getRawName(), e);
+			}
+		}
 
-		suite.shutDown();
+	}
 
+	/**
+	 * Writes the totals if more than one suite has been run, and closes the
+	 * outputs.
+	 */
+	public synchronized void close() {
+		if (fSuites > 1) {
+			String result= getResult("All Test Runs Completed. " + fSuites + " suites, ", fRuns, fFailures, fErrors);
+			outputPlain(result);
+			System.out.println(result);
+		}
+		synchronized (fOutputs) {
+			for (Output output : fOutputs) {
+				if (isXMLForSeveralSuites(output)) {
+					try {
+						StreamingXMLResultWriter.endResults(output.getOutput());
+					} catch (IOException e) {
+						System.out.println("I/O Error writing to output stream - canceling output.");
+					}
+				}
+			}
+		}
+		closeOutputs();
 	}
 
 	// *********************** ITestResultListener *********************
 
-	public void testCaseStarted(TestCase testCase) {
-		outputPlain("START", testCase);
-	}
+	/**
+	 * Counts the test cases of one suite.
+	 */
+	private class SuiteListener implements ITestResultListener {
 
-	public void testCaseEnded(TestCase testCase) {
-		if (testCase.getStatus().isFailure()) {
-			fFailures++;
-		}
-		if (testCase.getStatus().isError()) {
-			fErrors++;
+		private int fFailures;
+
+		private int fErrors;
+
+		private int fRuns;
+
+		public void testCaseStarted(TestCase testCase) {
+			outputPlain("START", testCase);
 		}
-		fRuns++;
 
-		outputPlain("END", testCase);
-	}
+		public synchronized void testCaseEnded(TestCase testCase) {
+			if (testCase.getStatus().isFailure()) {
+				fFailures++;
+			}
+			if (testCase.getStatus().isError()) {
+				fErrors++;
+			}
+			fRuns++;
 
-	public void progress(ITestArtefact testArtefact) {
-		if (testArtefact instanceof PartnerTrack) {
-			outputPlain("PROGRESS", testArtefact);
+			outputPlain("END", testCase);
+		}
+
+		public void progress(ITestArtefact testArtefact) {
+			if (testArtefact instanceof PartnerTrack) {
+				outputPlain("PROGRESS", testArtefact);
+			}
 		}
 	}
 
@@ -172,33 +292,92 @@ public class BPELUnitAntRunner extends BPELUnitBaseRunner implements ITestResult
 	// ************************** Helpers *************************
 
 	private void outputPlain(String info) {
-		for (Iterator<Output> i= fOutputs.iterator(); i.hasNext();) {
-			Output output= i.next();
-			try {
-				if (output.getStyle().equals(Output.STYLE_PLAIN)) {
-					output.write(info);
+		synchronized (fOutputs) {
+			for (Iterator<Output> i= fOutputs.iterator(); i.hasNext();) {
+				Output output= i.next();
+				try {
+					if (output.getStyle().equals(Output.STYLE_PLAIN)) {
+						output.write(info);
+					}
+				} catch (IOException e) {
+					System.out.println("I/O Error writing to output stream - canceling output.");
+					output.dispose();
+					i.remove();
 				}
-			} catch (IOException e) {
-				System.out.println("I/O Error writing to output stream - canceling output.");
-				output.dispose();
-				i.remove();
 			}
 		}
 	}
 
-	private void outputXML(TestSuite suite) {
-		for (Iterator<Output> i= fOutputs.iterator(); i.hasNext();) {
-			Output output= i.next();
-			try {
-				if (output.getStyle().equals(Output.STYLE_XML)) {
-					XMLResultProducer.writeXML(output.getOutput(), suite);
+	/**
+	 * Creates a result writer for each XML output, which has to be registered
+	 * as a listener of the suite.
+	 */
+	private Map<Output, StreamingXMLResultWriter> createXMLWriters(TestSuite suite) {
+		Map<Output, StreamingXMLResultWriter> writers= new LinkedHashMap<Output, StreamingXMLResultWriter>();
+		synchronized (fOutputs) {
+			for (Output output : fOutputs) {
+				if (isXMLFilePerSuite(output)) {
+					writers.put(output, new StreamingXMLResultWriter(getXMLFileFor(output, suite)));
+				} else if (output.getStyle().equals(Output.STYLE_XML)) {
+					writers.put(output, new StreamingXMLResultWriter());
 				}
-			} catch (IOException e) {
-				System.out.println("I/O Error writing to output stream - canceling output.");
-				output.dispose();
-				i.remove();
 			}
 		}
+		return writers;
+	}
+
+	private void outputXML(TestSuite suite, Map<Output, StreamingXMLResultWriter> writers) {
+		synchronized (fOutputs) {
+			for (Map.Entry<Output, StreamingXMLResultWriter> entry : writers.entrySet()) {
+				Output output= entry.getKey();
+				if (!fOutputs.contains(output)) {
+					// canceled while the suite was running
+					continue;
+				}
+				try {
+					if (isXMLFilePerSuite(output)) {
+						entry.getValue().finish(suite);
+					} else if (isXMLForSeveralSuites(output)) {
+						entry.getValue().finishElement(suite, output.getOutput());
+					} else {
+						entry.getValue().finish(suite, output.getOutput());
+					}
+				} catch (IOException e) {
+					System.out.println("I/O Error writing to output stream - canceling output.");
+					output.dispose();
+					fOutputs.remove(output);
+				}
+			}
+		}
+	}
+
+	private boolean isXMLFilePerSuite(Output output) {
+		return fSeveralSuites && Output.STYLE_XML.equals(output.getStyle()) && output.getFile() != null;
+	}
+
+	private boolean isXMLForSeveralSuites(Output output) {
+		return fSeveralSuites && Output.STYLE_XML.equals(output.getStyle()) && output.getFile() == null;
+	}
+
+	/**
+	 * Returns the file for the XML results of a suite: the file of the output,
+	 * with the name of the suite added to its base name (results.xml becomes
+	 * results-SuiteName.xml).
+	 */
+	private File getXMLFileFor(Output output, TestSuite suite) {
+		String file= output.getFile();
+		String dir= FilenameUtils.getFullPath(file);
+		if (!"".equals(dir)) {
+			new File(dir).mkdirs();
+		}
+		String extension= FilenameUtils.getExtension(file);
+		return new File(dir + FilenameUtils.getBaseName(file) + "-" + suite.getSafeName()
+				+ ("".equals(extension) ? "" : "." + extension));
+	}
+
+	private String getResult(String head, int runs, int failures, int errors) {
+		return head + runs + " " + getPluralOf(runs, "run") + " (" + failures + " " + getPluralOf(failures, "failure")
+				+ ", " + errors + " " + getPluralOf(errors, "error") + ") \n";
 	}
 
 	private String getPluralOf(int no, String name) {
@@ -6,7 +6,6 @@
 package net.bpelunit.framework.ui.command;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -14,7 +13,7 @@ import java.util.List;
 import java.util.Map;
 
 import net.bpelunit.framework.base.BPELUnitBaseRunner;
-import net.bpelunit.framework.control.result.XMLResultProducer;
+import net.bpelunit.framework.control.result.StreamingXMLResultWriter;
 import net.bpelunit.framework.control.util.BPELUnitConstants;
 import net.bpelunit.framework.control.util.BPELUnitUtil;
 import net.bpelunit.framework.exception.ConfigurationException;
@@ -244,6 +243,11 @@ public class BPELUnitCommandLineRunner extends BPELUnitBaseRunner implements ITe
 			screen.println(Messages.getString("BPELUnitCommandLineRunner.MSG_PROGRESS_RUNNING_TEST_CASES")); //$NON-NLS-1$
 
 			suite.addResultListener(this);
+			StreamingXMLResultWriter xmlWriter = null;
+			if (xmlFileName != null) {
+				xmlWriter = new StreamingXMLResultWriter(new File(xmlFileName));
+				suite.addResultListener(xmlWriter);
+			}
 			if (testCaseNames.size() > 0) {
 				try {
 					suite.setFilter(testCaseNames);
@@ -255,11 +259,14 @@ public class BPELUnitCommandLineRunner extends BPELUnitBaseRunner implements ITe
 			suite.run();
 
 			suite.removeResultListener(this);
+			if (xmlWriter != null) {
+				suite.removeResultListener(xmlWriter);
+			}
 			screen.println(Messages.getString("BPELUnitCommandLineRunner.MSG_PROGRESS_TESTCASES_FINISHED")); //$NON-NLS-1$
 
 			if (xmlFileName != null) {
 				try {
-					XMLResultProducer.writeXML(new FileOutputStream(xmlFileName), suite);
+					xmlWriter.finish(suite);
 				} catch (Exception e) {
 					abort(String
 							.format(Messages
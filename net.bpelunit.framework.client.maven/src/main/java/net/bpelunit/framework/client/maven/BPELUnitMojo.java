@@ -31,9 +31,16 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.bpelunit.framework.BPELUnitRunner;
 import net.bpelunit.framework.base.BPELUnitBaseRunner;
+import net.bpelunit.framework.base.SuitePortPool;
 import net.bpelunit.framework.exception.ConfigurationException;
 import net.bpelunit.framework.exception.DeploymentException;
 import net.bpelunit.framework.exception.SpecificationException;
@@ -130,6 +137,23 @@ public class BPELUnitMojo extends AbstractMojo {
 	 * @parameter
 	 */
 	private List<String> excludes;
+
+	/**
+	 * Number of test suites which are run at the same time.
+	 * 
+	 * @parameter default-value="1"
+	 */
+	private int parallelSuites;
+
+	/**
+	 * Range of ports, such as <code>7777-7799</code>, from which each test
+	 * suite gets the port of its simulated partners while it runs. If not set,
+	 * each suite uses the port of its own base URL, so suites which are run at
+	 * the same time need different base URLs.
+	 * 
+	 * @parameter
+	 */
+	private String suitePortRange;
 	
 	private static final String LS = System.getProperty( "line.separator" );
 
@@ -192,36 +216,161 @@ public class BPELUnitMojo extends AbstractMojo {
 		try {
 			runner.initialize(options);
 
+			SuitePortPool ports = null;
+			if (suitePortRange != null) {
+				ports = SuitePortPool.parse(suitePortRange);
+			}
+
+			List<File> suites = new ArrayList<File>();
 			for (File suite : getTestSuiteFiles()) {
 				if (suite.exists() && suite.isFile()) {
-					runner.run(suite);
+					suites.add(suite);
 				} else {
 					getLog().warn(
-							f.getName() + " does not exist or is not a file.");
+							suite.getName() + " does not exist or is not a file.");
 				}
 			}
 
+			writeSummary(runSuites(runner, suites, ports));
 		} catch (ConfigurationException e) {
 			throw new MojoExecutionException(e.getMessage(), e);
-		} catch (SpecificationException e) {
-			throw new MojoExecutionException(e.getMessage(), e);
-		} catch (DeploymentException e) {
-			throw new MojoExecutionException(e.getMessage(), e);
 		}
 	}
 
-	private class MavenBPELUnitRunner extends BPELUnitBaseRunner implements
-			ITestResultListener {
+	/**
+	 * Runs the suites on a pool of <code>parallelSuites</code> threads. Once a
+	 * suite cannot be loaded, deployed or reported, the suites which have not
+	 * been started yet are skipped and the first such problem is thrown after
+	 * the running ones have finished.
+	 */
+	private List<SuiteReport> runSuites(final MavenBPELUnitRunner runner,
+			List<File> suites, final SuitePortPool ports)
+			throws MojoExecutionException {
+		int threads = Math.max(1, Math.min(parallelSuites, suites.size()));
+		if (ports != null) {
+			threads = Math.min(threads, ports.size());
+		}
 
-		private int runs;
-		private int errors;
-		private int failures;
-		private long suiteRunTime = 0;
-		private long testStart = 0;
-		private long testStop = 0;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final List<Future<SuiteReport>> futures = new ArrayList<Future<SuiteReport>>();
+		for (final File suite : suites) {
+			futures.add(executor.submit(new Callable<SuiteReport>() {
+				public SuiteReport call() throws Exception {
+					if (aborted.get()) {
+						return null;
+					}
+					final int port = ports != null ? ports.acquire() : -1;
+					try {
+						return runner.run(suite, port);
+					} catch (Exception e) {
+						aborted.set(true);
+						throw e;
+					} finally {
+						if (ports != null) {
+							ports.release(port);
+						}
+					}
+				}
+			}));
+		}
+		executor.shutdown();
 
-		private NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
-		private Xpp3Dom xmlSuite;
+		final List<SuiteReport> reports = new ArrayList<SuiteReport>();
+		MojoExecutionException problem = null;
+		for (Future<SuiteReport> future : futures) {
+			try {
+				final SuiteReport report = future.get();
+				if (report != null) {
+					reports.add(report);
+				}
+			} catch (ExecutionException e) {
+				if (problem == null) {
+					problem = toMojoException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException(
+						"Interrupted while running the test suites", e);
+			}
+		}
+		if (problem != null) {
+			throw problem;
+		}
+		return reports;
+	}
+
+	private MojoExecutionException toMojoException(Throwable cause) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		if (cause instanceof MojoExecutionException) {
+			return (MojoExecutionException) cause;
+		}
+		return new MojoExecutionException(cause.getMessage(), (Exception) cause);
+	}
+
+	/**
+	 * Logs the totals over all suites and writes them, along with the totals
+	 * of each suite, to <code>bpelunit-summary.xml</code>.
+	 */
+	private void writeSummary(List<SuiteReport> reports)
+			throws MojoExecutionException {
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		int runs = 0;
+		int failures = 0;
+		int errors = 0;
+		long time = 0;
+
+		Xpp3Dom xmlSummary = new Xpp3Dom("testsuites");
+		for (SuiteReport report : reports) {
+			runs += report.runs;
+			failures += report.failures;
+			errors += report.errors;
+			time += report.suiteRunTime;
+
+			Xpp3Dom xmlSuite = new Xpp3Dom("testsuite");
+			xmlSuite.setAttribute("name", report.xmlSuite.getAttribute("name"));
+			xmlSuite.setAttribute("time", report.xmlSuite.getAttribute("time"));
+			xmlSuite.setAttribute("tests", String.valueOf(report.runs));
+			xmlSuite.setAttribute("errors", String.valueOf(report.errors));
+			xmlSuite.setAttribute("failures", String.valueOf(report.failures));
+			xmlSummary.addChild(xmlSuite);
+		}
+		xmlSummary.setAttribute("time", nf.format((double) time / 1000));
+		xmlSummary.setAttribute("tests", String.valueOf(runs));
+		xmlSummary.setAttribute("errors", String.valueOf(errors));
+		xmlSummary.setAttribute("failures", String.valueOf(failures));
+
+		getLog().info(
+				"Suites run: " + reports.size() + ", Tests run: " + runs
+						+ ", Failures: " + failures + ", Errors: " + errors
+						+ ", Time elapsed in suites: "
+						+ nf.format((double) time / 1000) + " sec");
+
+		writeXML(xmlSummary, new File(reportsDirectory, "bpelunit-summary.xml"));
+	}
+
+	private void writeXML(Xpp3Dom xml, File file) throws MojoExecutionException {
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" + LS);
+
+			Xpp3DomWriter.write(new PrettyPrintXMLWriter(writer), xml);
+		} catch (UnsupportedEncodingException e) {
+			throw new MojoExecutionException("Unable to use UTF-8 encoding", e);
+		} catch (FileNotFoundException e) {
+			throw new MojoExecutionException("Unable to create file: " + e.getMessage(), e);
+		} finally {
+			IOUtils.closeQuietly(writer);
+		}
+	}
+
+	private class MavenBPELUnitRunner extends BPELUnitBaseRunner {
 
 		private Log logger;
 
@@ -239,17 +388,21 @@ public class BPELUnitMojo extends AbstractMojo {
 			// why do I have to implement that?
 		}
 
-		public void run(File testSuite) throws SpecificationException,
-				DeploymentException, MojoExecutionException {
+		/**
+		 * Runs a suite and writes its report.
+		 * 
+		 * @param port
+		 *            port for the simulated partners, or -1 to use the one
+		 *            from the suite
+		 */
+		public SuiteReport run(File testSuite, int port)
+				throws SpecificationException, DeploymentException,
+				MojoExecutionException {
 
-			runs = 0;
-			errors = 0;
-			failures = 0;
-			xmlSuite = new Xpp3Dom("testsuite");
-			addProperties(xmlSuite);
-			
-			TestSuite suite = loadTestSuite(testSuite);
-			suite.addResultListener(this);
+			SuiteReport report = new SuiteReport();
+
+			TestSuite suite = loadTestSuite(testSuite, port);
+			suite.addResultListener(report);
 
 			try {
 				suite.setUp();
@@ -261,18 +414,61 @@ public class BPELUnitMojo extends AbstractMojo {
 				throw e;
 			}
 
-			logger.info("Running BPELUnit: " + testSuite.getName());
-			long started = System.currentTimeMillis();
-			suite.run();
-			long stopped = System.currentTimeMillis();
-			suiteRunTime = stopped - started;
+			// The suite must be shut down before its port is released
+			boolean reported = false;
+			try {
+				logger.info("Running BPELUnit: " + testSuite.getName());
+				long started = System.currentTimeMillis();
+				suite.run();
+				long stopped = System.currentTimeMillis();
+
+				suite.removeResultListener(report);
+				report.finish(suite, stopped - started);
+				logger.info(suite.getRawName() + ": " + report.getResult());
+
+				String filename = "TEST-" + suite.getSafeName() + ".xml";
+				writeXML(report.xmlSuite, new File(reportsDirectory, filename));
+				reported = true;
+			} finally {
+				try {
+					suite.shutDown();
+				} catch (DeploymentException e) {
+					if (reported) {
+						throw e;
+					}
+					// Do not hide the problem which stopped the suite
+					logger.warn("Could not shut down " + suite.getRawName(), e);
+				}
+			}
+			return report;
+		}
+	}
 
-			suite.removeResultListener(this);
+	/**
+	 * Collects the results of the test cases of one suite.
+	 */
+	private class SuiteReport implements ITestResultListener {
 
-			String result = "Tests run: " + runs + ", Failures: " + failures
-					+ ", Errors: " + errors + ", Time elapsed: "
-					+ nf.format((double) suiteRunTime / 1000) + " sec";
-			logger.info(result);
+		private int runs;
+		private int errors;
+		private int failures;
+		private long suiteRunTime = 0;
+		private long testStart = 0;
+		private long testStop = 0;
+
+		private NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		private Xpp3Dom xmlSuite;
+
+		private Log logger;
+
+		public SuiteReport() {
+			logger = BPELUnitMojo.this.getLog();
+			xmlSuite = new Xpp3Dom("testsuite");
+			addProperties(xmlSuite);
+		}
+
+		public synchronized void finish(TestSuite suite, long runTime) {
+			suiteRunTime = runTime;
 
 			xmlSuite.setAttribute("name", suite.getRawName());
 			xmlSuite.setAttribute("time",
@@ -280,34 +476,21 @@ public class BPELUnitMojo extends AbstractMojo {
 			xmlSuite.setAttribute("tests", String.valueOf(runs));
 			xmlSuite.setAttribute("errors", String.valueOf(errors));
 			xmlSuite.setAttribute("failures", String.valueOf(failures));
+		}
 
-			String filename = "TEST-" + suite.getSafeName() + ".xml";
-			PrintWriter writer = null;
-			try {
-				writer = new PrintWriter(new BufferedWriter(
-						new OutputStreamWriter(new FileOutputStream(new File(reportsDirectory, filename)), "UTF-8")));
-
-				writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" + LS);
-
-				Xpp3DomWriter.write(new PrettyPrintXMLWriter(writer), xmlSuite);
-			} catch (UnsupportedEncodingException e) {
-				throw new MojoExecutionException("Unable to use UTF-8 encoding", e);
-			} catch (FileNotFoundException e) {
-				throw new MojoExecutionException("Unable to create file: " + e.getMessage(), e);
-			} finally {
-				IOUtils.closeQuietly(writer);
-			}
-
-			suite.shutDown();
+		public synchronized String getResult() {
+			return "Tests run: " + runs + ", Failures: " + failures
+					+ ", Errors: " + errors + ", Time elapsed: "
+					+ nf.format((double) suiteRunTime / 1000) + " sec";
 		}
 
-		public void testCaseStarted(TestCase testCase) {
+		public synchronized void testCaseStarted(TestCase testCase) {
 			logger.debug("START: " + testCase.getName() + ": "
 					+ testCase.getStatus().toString() + "\n");
 			testStart = System.currentTimeMillis();
 		}
 
-		public void testCaseEnded(TestCase testCase) {
+		public synchronized void testCaseEnded(TestCase testCase) {
 			testStop = System.currentTimeMillis();
 
 			Xpp3Dom xmlTestCase = new Xpp3Dom("testcase");
@@ -9,23 +9,28 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import net.bpelunit.framework.control.ext.IDataSource;
 import net.bpelunit.framework.control.ext.IDataSource.DataSource;
+import net.bpelunit.framework.control.ext.IStreamingDataSource;
 import net.bpelunit.framework.exception.DataSourceException;
 
 /**
  * This data source can be used to read in CSV (comma separated value) files.
  * 
+ * The file can either be loaded completely with {@link #loadFromStream(InputStream)},
+ * or be read one line at a time with {@link #openStream(InputStream)} and
+ * {@link #nextRow()}.
+ * 
  * @author Daniel Luebke <bpelunit@daniel-luebke.de>
  */
 @DataSource(name = "CSV Data Source", shortName = "csv", contentTypes = {
 		"text/cvs", "text/plain" })
-public class CSVDataSource implements IDataSource {
+public class CSVDataSource implements IStreamingDataSource {
 
 	private static final String DEFAULT_SEPARATOR = "\t";
 
 	private List<String> headers = null;
 	private List<String> lines = null;
+	private BufferedReader streamReader = null;
 	private String[] currentRecord = null;
 	private String separator = DEFAULT_SEPARATOR;
 	private int currentLineNumber = -1;
@@ -43,6 +48,14 @@ public class CSVDataSource implements IDataSource {
 
 	@Override
 	public void setRow(int index) throws DataSourceException {
+		if (lines == null) {
+			if (index != currentLineNumber || currentRecord == null) {
+				throw new DataSourceException(String.format(
+						"Row %d cannot be selected: the data source is being streamed, and its current row is %d",
+						index, currentLineNumber));
+			}
+			return;
+		}
 		if (index < lines.size()) {
 			currentLineNumber = index;
 			String line = lines.get(currentLineNumber);
@@ -87,6 +100,55 @@ public class CSVDataSource implements IDataSource {
 		}
 	}
 
+	@Override
+	public void openStream(InputStream data) throws DataSourceException {
+		close();
+		BufferedReader in = new BufferedReader(new InputStreamReader(data));
+		try {
+			readColumnHeadersIfNecessary(in);
+		} catch (IOException e) {
+			closeQuietly(in);
+			throw new DataSourceException("Invalid data source", e);
+		} catch (DataSourceException e) {
+			closeQuietly(in);
+			throw e;
+		}
+		streamReader = in;
+		currentRecord = null;
+		currentLineNumber = -1;
+	}
+
+	@Override
+	public boolean nextRow() throws DataSourceException {
+		if (streamReader == null) {
+			return false;
+		}
+		try {
+			String line;
+			while ((line = streamReader.readLine()) != null) {
+				if (!line.trim().equals("")) {
+					currentRecord = parseLine(line);
+					currentLineNumber++;
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			throw new DataSourceException("Invalid data source", e);
+		}
+		closeQuietly(streamReader);
+		streamReader = null;
+		currentRecord = null;
+		return false;
+	}
+
+	private void closeQuietly(Reader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			// Do nothing because it is only a reader
+		}
+	}
+
 	private void readColumnHeadersIfNecessary(BufferedReader reader)
 			throws IOException, DataSourceException {
 		if (headersAreAlreadySet()) {
@@ -108,6 +170,10 @@ public class CSVDataSource implements IDataSource {
 	@Override
 	public void close() {
 		this.lines = null;
+		if (streamReader != null) {
+			closeQuietly(streamReader);
+			streamReader = null;
+		}
 	}
 
 	@ConfigurationOption(defaultValue = DEFAULT_SEPARATOR, description = "The separator used to divide two values within a row.")
@@ -118,7 +184,7 @@ public class CSVDataSource implements IDataSource {
 	}
 
 	private void checkIfMayAlterConfiguration() {
-		if (lines != null) {
+		if (lines != null || streamReader != null) {
 			throw new IllegalStateException(
 					"Data Source is already open - must not set new parse options!");
 		}
@@ -144,6 +210,10 @@ public class CSVDataSource implements IDataSource {
 
 	@Override
 	public int getNumberOfRows() {
+		if (this.lines == null) {
+			// streamed: not known until all lines have been read
+			return -1;
+		}
 		return this.lines.size();
 	}
 }
\ No newline at end of file
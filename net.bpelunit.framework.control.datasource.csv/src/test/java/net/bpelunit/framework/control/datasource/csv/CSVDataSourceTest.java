@@ -1,6 +1,7 @@
 package net.bpelunit.framework.control.datasource.csv;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
@@ -206,4 +207,34 @@ public class CSVDataSourceTest {
 		ds.loadFromStream(getStream("header_3rows_comma.csv"));
 		ds.setHeaders("A, B, C");
 	}
+
+	@Test
+	public void testStreamedCSVFileWithHeaderAndThreeRows() throws Exception {
+		ds.openStream(getStream("header_3rows_tab.csv"));
+		assertEquals(3, ds.getFieldNames().length);
+		assertEquals("A", ds.getFieldNames()[0]);
+
+		assertTrue(ds.nextRow());
+		assertEquals("A1", ds.getValueFor("A"));
+		assertTrue(ds.nextRow());
+		ds.setRow(1);
+		assertEquals("B2", ds.getValueFor("B"));
+		assertTrue(ds.nextRow());
+		assertEquals("C3", ds.getValueFor("C"));
+		assertFalse(ds.nextRow());
+	}
+
+	@Test(expected = DataSourceException.class)
+	public void testStreamedCSVFileCannotGoBack() throws Exception {
+		ds.openStream(getStream("header_3rows_tab.csv"));
+		ds.nextRow();
+		ds.nextRow();
+		ds.setRow(0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMayNotChangeSeparatorWhileStreaming() throws Exception {
+		ds.openStream(getStream("header_3rows_comma.csv"));
+		ds.setSeparator("something");
+	}
 }
\ No newline at end of file
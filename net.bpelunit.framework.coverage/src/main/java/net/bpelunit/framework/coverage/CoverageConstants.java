@@ -6,17 +6,29 @@ public final class CoverageConstants {
 
 	public static final String MARKER_SERVICE_NAMESPACE = "http://www.bpelunit.net/services/marker";
 	public static final String VARIABLE_MARK_REQUEST = "__BPELUNIT_MARK_REQUEST__";
+	public static final String VARIABLE_MARK_RESPONSE = "__BPELUNIT_MARK_RESPONSE__";
+	/** Process variable holding the name of the test case which created the process instance */
+	public static final String VARIABLE_TEST_CASE = "__BPELUNIT_TEST_CASE__";
+	/** Process variable collecting the markers between two flushes when markers are buffered */
+	public static final String VARIABLE_MARKER_BUFFER = "__BPELUNIT_MARKER_BUFFER__";
 	public static final QName COVERAGE_PARTNERLINK_TYPE = new QName(
 			MARKER_SERVICE_NAMESPACE, "CoveragePLT");
 	public static final String COVERAGE_MSG_ELEMENT = "mark";
 	public static final String COVERAGE_MSG_MARKER_ELEMENT = "Marker";
+	public static final String COVERAGE_MSG_TEST_CASE_ELEMENT = "TestCase";
+	public static final String COVERAGE_MSG_START_ELEMENT = "markStart";
+	public static final String COVERAGE_MSG_START_RESPONSE_ELEMENT = "markStartResponse";
 	public static final String COVERAGE_SERVICE_MARK_OPERATION = "mark";
+	public static final String COVERAGE_SERVICE_MARK_START_OPERATION = "markStart";
 	public static final QName COVERAGE_SERVICE_SERVICE = new QName(MARKER_SERVICE_NAMESPACE, "MarkerService");
 	public static final String COVERAGE_SERVICE_PORT = "MarkerServiceSOAP";
 
 	public static final String INSTRUMENTATION_SCOPE_NAME_PREFIX = "INSTRUMENTATION_";
+	public static final String INSTRUMENTATION_FLUSH_SCOPE_NAME_PREFIX = "INSTRUMENTATION_FLUSH_";
 	
-	public static final QName MARKER_SERVICE_MARK_REQUEST_MESSAGE_TYPE = new QName(MARKER_SERVICE_NAMESPACE, "mark");
+	public static final QName MARKER_SERVICE_MARK_REQUEST_MESSAGE_TYPE = new QName(MARKER_SERVICE_NAMESPACE, "markRequest");
+	public static final QName MARKER_SERVICE_MARK_START_REQUEST_MESSAGE_TYPE = new QName(MARKER_SERVICE_NAMESPACE, "markStartRequest");
+	public static final QName MARKER_SERVICE_MARK_START_RESPONSE_MESSAGE_TYPE = new QName(MARKER_SERVICE_NAMESPACE, "markStartResponse");
 	public static final String MARKER_SERVICE_MARK_REQUEST_PART = "parameters";
 	public static final String MARKER_SERVICE_PARTNERLINK = "__BPELUNIT_MARKERSERVICE_PL";
 	public static final String MARKER_SERVICE_PARTNERLINK_PARTNERROLE = "BPELUnit";
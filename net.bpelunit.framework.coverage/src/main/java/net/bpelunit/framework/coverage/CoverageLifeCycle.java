@@ -1,5 +1,10 @@
 package net.bpelunit.framework.coverage;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,18 +14,60 @@ import net.bpelunit.framework.coverage.instrumentation.AbstractInstrumenter;
 import net.bpelunit.framework.coverage.instrumentation.MarkerToActivityConverter;
 import net.bpelunit.framework.coverage.instrumentation.activity.ActivityCoverageInstrumenter;
 import net.bpelunit.framework.coverage.instrumentation.branch.BranchCoverageInstrumenter;
+import net.bpelunit.framework.coverage.matrix.CoverageDelta;
+import net.bpelunit.framework.coverage.matrix.CoverageMatrix;
 import net.bpelunit.framework.coverage.output.AbstractCoverageOutputter;
 import net.bpelunit.framework.coverage.output.csv.CsvCoverageOutputter;
 import net.bpelunit.framework.coverage.service.MarkerService;
+import net.bpelunit.framework.coverage.service.RunningTestCaseTracker;
 import net.bpelunit.framework.exception.DeploymentException;
 import net.bpelunit.framework.execution.IBPELUnitContext;
 import net.bpelunit.framework.execution.ITestLifeCycleElement;
+import net.bpelunit.framework.model.test.TestSuite;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
 
 public class CoverageLifeCycle implements ITestLifeCycleElement {
 
+	/** Time without marker messages after which the processes are assumed to have sent all their markers */
+	private static final long MARKER_QUIET_PERIOD = 500;
+
+	/** Maximum time to wait for the last marker messages before reporting */
+	private static final long MARKER_DRAIN_TIMEOUT = 10000;
+
 	private List<AbstractInstrumenter> coverageInstrumenters = new ArrayList<AbstractInstrumenter>();
 	private List<AbstractCoverageOutputter> coverageOutputters = new ArrayList<AbstractCoverageOutputter>();
 	private MarkerService markerService;
+	private boolean bufferMarkers = false;
+	private final CoverageMatrix coverageMatrix = new CoverageMatrix();
+	private final RunningTestCaseTracker testCaseTracker = new RunningTestCaseTracker();
+	private File outputDirectory = new File(".");
+	private Logger logger = Logger.getLogger(getClass());
+
+	/**
+	 * If set, the instrumented processes collect their markers in a variable
+	 * and send them in batches instead of one message per marked activity.
+	 */
+	public void setBufferMarkers(boolean bufferMarkers) {
+		this.bufferMarkers = bufferMarkers;
+	}
+
+	/**
+	 * Directory for the per-test-case coverage reports, and for the coverage
+	 * of the last run which they are compared against.
+	 */
+	public void setOutputDirectory(String directory) {
+		this.outputDirectory = new File(directory);
+	}
+
+	public CoverageMatrix getCoverageMatrix() {
+		return coverageMatrix;
+	}
+
+	RunningTestCaseTracker getTestCaseTracker() {
+		return testCaseTracker;
+	}
 
 	public void doLoad(IBPELUnitContext context) {
 		coverageInstrumenters.add(new ActivityCoverageInstrumenter());
@@ -39,19 +86,103 @@ public class CoverageLifeCycle implements ITestLifeCycleElement {
 	}
 	
 	public void doPrepareProcesses(IBPELUnitContext context) throws DeploymentException {
-		MarkerToActivityConverter markerConverter = new MarkerToActivityConverter();
+		for(AbstractInstrumenter i : coverageInstrumenters) {
+			for(String markerName : i.getMarkerNames()) {
+				coverageMatrix.addMarker(markerName);
+			}
+		}
+		markerService = new MarkerService(coverageInstrumenters, coverageMatrix, testCaseTracker);
+		
+		MarkerToActivityConverter markerConverter = new MarkerToActivityConverter(bufferMarkers, markerService);
 		markerConverter.convertMarkersToActivities(context);
 	}
 
 	public void doRegisterMocks(IBPELUnitContext context) {
-		markerService = new MarkerService(coverageInstrumenters);
+		if(markerService == null) {
+			markerService = new MarkerService(coverageInstrumenters, coverageMatrix, testCaseTracker);
+		}
 		context.addService(CoverageConstants.COVERAGE_SERVICE_BPELUNIT_NAME, markerService);
+		TestSuite suite = context.getTestSuite();
+		if(suite != null) {
+			// The marker service asks for the running test case while it runs,
+			// so the tracker must not wait for asynchronous dispatch
+			suite.addSynchronousResultListener(testCaseTracker);
+			if(suite.getConfiguration().getParallelTestCases() > 1) {
+				logger.warn("Test cases are run in parallel: process instances created while several test cases are running cannot be attributed to one of them in the coverage matrix");
+			}
+		}
 	}
 	
 	public void doReport(IBPELUnitContext context) {
 		/*for(AbstractCoverageOutputter o : coverageOutputters) {
 			o.exportCoverageInformation(doc);
 		}*/
+		
+		try {
+			if(markerService != null && !markerService.awaitPendingMarkers(MARKER_QUIET_PERIOD, MARKER_DRAIN_TIMEOUT)) {
+				logger.warn("Processes are still sending markers, the coverage reports may be incomplete");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		try {
+			writeTestCaseCoverage(getReportBaseName(context.getTestSuite()));
+		} catch (IOException e) {
+			logger.warn("Could not write the test case coverage reports: ", e);
+		}
+	}
+
+	private String getReportBaseName(TestSuite suite) {
+		return suite != null ? suite.getSafeName() : "coverage";
+	}
+
+	/**
+	 * Writes the coverage matrix, a small (though not necessarily minimal)
+	 * subset of the test cases with the same coverage, and the changes since the last run. The matrix is then
+	 * saved for comparing the next run against it.
+	 */
+	void writeTestCaseCoverage(String baseName) throws IOException {
+		Writer writer = new FileWriter(new File(outputDirectory, baseName + ".coverage-matrix.csv"));
+		try {
+			coverageMatrix.writeReport(writer, ",");
+		} finally {
+			IOUtils.closeQuietly(writer);
+		}
+		
+		writer = new FileWriter(new File(outputDirectory, baseName + ".coverage-subset.txt"));
+		try {
+			for(String testCase : coverageMatrix.computeCoveringTestSubset()) {
+				writer.write(testCase + "\n");
+			}
+		} finally {
+			IOUtils.closeQuietly(writer);
+		}
+		
+		File lastRun = new File(outputDirectory, baseName + ".coverage-lastrun.txt");
+		if(lastRun.exists()) {
+			FileReader reader = new FileReader(lastRun);
+			CoverageDelta delta;
+			try {
+				delta = coverageMatrix.computeDelta(CoverageMatrix.load(reader));
+			} finally {
+				IOUtils.closeQuietly(reader);
+			}
+			
+			writer = new FileWriter(new File(outputDirectory, baseName + ".coverage-delta.txt"));
+			try {
+				delta.writeReport(writer);
+			} finally {
+				IOUtils.closeQuietly(writer);
+			}
+		}
+		
+		writer = new FileWriter(lastRun);
+		try {
+			coverageMatrix.save(writer);
+		} finally {
+			IOUtils.closeQuietly(writer);
+		}
 	}
 
 }
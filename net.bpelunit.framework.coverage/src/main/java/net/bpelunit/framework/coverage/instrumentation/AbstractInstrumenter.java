@@ -1,5 +1,9 @@
 package net.bpelunit.framework.coverage.instrumentation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import javax.xml.namespace.QName;
 
 import net.bpelunit.framework.coverage.marker.Marker;
@@ -17,6 +21,7 @@ public abstract class AbstractInstrumenter implements IVisitor  {
 
 	static final QName QNAME_MARKER = new QName("http://www.bpelunit.net/instrumentation", "marker");
 	private MarkerFactory markerFactory;
+	private final List<String> markerNames = new ArrayList<String>();
 
 	public abstract String getMarkerPrefix();
 	
@@ -29,10 +34,18 @@ public abstract class AbstractInstrumenter implements IVisitor  {
 		Marker newMarker = markerFactory.createMarker();
 		
 		addCoverageMarker(a, newMarker);
+		markerNames.add(newMarker.getName());
 		
 		return newMarker;
 	}
 
+	/**
+	 * @return the names of all markers added by this instrumenter
+	 */
+	public List<String> getMarkerNames() {
+		return Collections.unmodifiableList(markerNames);
+	}
+
 	/**
 	 * Extracted so that MarkerToActivityConverterTest can easily add
 	 * markers to activities during test.
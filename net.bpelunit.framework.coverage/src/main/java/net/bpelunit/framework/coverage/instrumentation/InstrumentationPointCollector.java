@@ -0,0 +1,197 @@
+package net.bpelunit.framework.coverage.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bpelunit.model.bpel.IAssign;
+import net.bpelunit.model.bpel.ICatch;
+import net.bpelunit.model.bpel.ICatchAll;
+import net.bpelunit.model.bpel.ICompensate;
+import net.bpelunit.model.bpel.ICompensateScope;
+import net.bpelunit.model.bpel.ICompensationHandler;
+import net.bpelunit.model.bpel.ICopy;
+import net.bpelunit.model.bpel.IElse;
+import net.bpelunit.model.bpel.IElseIf;
+import net.bpelunit.model.bpel.IEmpty;
+import net.bpelunit.model.bpel.IExit;
+import net.bpelunit.model.bpel.IFlow;
+import net.bpelunit.model.bpel.IForEach;
+import net.bpelunit.model.bpel.IIf;
+import net.bpelunit.model.bpel.IImport;
+import net.bpelunit.model.bpel.IInvoke;
+import net.bpelunit.model.bpel.ILink;
+import net.bpelunit.model.bpel.IOnAlarm;
+import net.bpelunit.model.bpel.IOnAlarmEventHandler;
+import net.bpelunit.model.bpel.IOnMessage;
+import net.bpelunit.model.bpel.IOnMessageHandler;
+import net.bpelunit.model.bpel.IPartnerLink;
+import net.bpelunit.model.bpel.IPick;
+import net.bpelunit.model.bpel.IProcess;
+import net.bpelunit.model.bpel.IReceive;
+import net.bpelunit.model.bpel.IRepeatUntil;
+import net.bpelunit.model.bpel.IReply;
+import net.bpelunit.model.bpel.IRethrow;
+import net.bpelunit.model.bpel.IScope;
+import net.bpelunit.model.bpel.ISequence;
+import net.bpelunit.model.bpel.IThrow;
+import net.bpelunit.model.bpel.IValidate;
+import net.bpelunit.model.bpel.IVariable;
+import net.bpelunit.model.bpel.IVisitable;
+import net.bpelunit.model.bpel.IVisitor;
+import net.bpelunit.model.bpel.IWait;
+import net.bpelunit.model.bpel.IWhile;
+
+/**
+ * Collects the activities and handlers of a process in the order in which
+ * they are visited, so that the MarkerToActivityConverter can change the
+ * process after the visit is over. Variables, partner links, imports and
+ * copies are left out.
+ */
+class InstrumentationPointCollector implements IVisitor {
+
+	private final List<IVisitable> visited = new ArrayList<IVisitable>();
+
+	List<IVisitable> getVisited() {
+		return visited;
+	}
+
+	public void visit(IAssign a) {
+		visited.add(a);
+	}
+
+	public void visit(ICompensate a) {
+		visited.add(a);
+	}
+
+	public void visit(ICompensateScope a) {
+		visited.add(a);
+	}
+
+	public void visit(ICopy c) {
+		// uninteresting
+	}
+
+	public void visit(IEmpty a) {
+		visited.add(a);
+	}
+
+	public void visit(IExit a) {
+		visited.add(a);
+	}
+
+	public void visit(IFlow a) {
+		visited.add(a);
+	}
+
+	public void visit(IForEach a) {
+		visited.add(a);
+	}
+
+	public void visit(IIf a) {
+		visited.add(a);
+	}
+
+	public void visit(IImport i) {
+		// uninteresting
+	}
+
+	public void visit(IInvoke a) {
+		visited.add(a);
+	}
+
+	public void visit(IOnAlarm a) {
+		// not an activity
+	}
+
+	public void visit(IOnMessage a) {
+		// not an activity
+	}
+
+	public void visit(IPartnerLink pl) {
+		// uninteresting
+	}
+
+	public void visit(IPick a) {
+		visited.add(a);
+	}
+
+	public void visit(IProcess a) {
+		// handled separately
+	}
+
+	public void visit(IReceive a) {
+		visited.add(a);
+	}
+
+	public void visit(IRepeatUntil a) {
+		visited.add(a);
+	}
+
+	public void visit(IReply a) {
+		visited.add(a);
+	}
+
+	public void visit(IRethrow a) {
+		visited.add(a);
+	}
+
+	public void visit(IScope a) {
+		visited.add(a);
+	}
+
+	public void visit(ISequence a) {
+		visited.add(a);
+	}
+
+	public void visit(IThrow a) {
+		visited.add(a);
+	}
+
+	public void visit(IValidate a) {
+		visited.add(a);
+	}
+
+	public void visit(IVariable var) {
+		// uninteresting
+	}
+
+	public void visit(IWait a) {
+		visited.add(a);
+	}
+
+	public void visit(IWhile a) {
+		visited.add(a);
+	}
+
+	public void visit(ICompensationHandler compensationHandler) {
+		visited.add(compensationHandler);
+	}
+
+	public void visit(IOnMessageHandler onMessageHandler) {
+		// not an activity
+	}
+
+	public void visit(IElseIf elseIf) {
+		// not an activity
+	}
+
+	public void visit(IElse else1) {
+		// not an activity
+	}
+
+	public void visit(ILink link) {
+		// uninteresting
+	}
+
+	public void visit(ICatch ccatch) {
+		visited.add(ccatch);
+	}
+
+	public void visit(ICatchAll catchAll) {
+		visited.add(catchAll);
+	}
+
+	public void visit(IOnAlarmEventHandler onAlarmEventHandler) {
+		// not an activity
+	}
+}
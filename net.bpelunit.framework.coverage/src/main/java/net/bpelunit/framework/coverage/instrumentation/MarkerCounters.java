@@ -0,0 +1,85 @@
+package net.bpelunit.framework.coverage.instrumentation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Execution counters for the markers of an instrumenter. Each marker is
+ * given an index when it is added, and its executions are counted in an
+ * atomic array, so markers pushed concurrently by the MarkerService are
+ * neither lost nor blocked by each other, and counting does not allocate.
+ *
+ * Markers must be added while instrumenting the processes, before they are
+ * counted.
+ */
+public class MarkerCounters {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Map<String, Integer> indexes = new ConcurrentHashMap<String, Integer>();
+	private final List<String> markers = new ArrayList<String>();
+	private volatile AtomicLongArray counts = new AtomicLongArray(INITIAL_CAPACITY);
+
+	/**
+	 * Adds a marker with an execution count of 0.
+	 */
+	public synchronized void addMarker(String markerName) {
+		if (indexes.containsKey(markerName)) {
+			return;
+		}
+		markers.add(markerName);
+
+		if (markers.size() > counts.length()) {
+			// double the capacity, so adding n markers copies O(n) counts
+			AtomicLongArray newCounts = new AtomicLongArray(counts.length() * 2);
+			for (int i = 0; i < counts.length(); i++) {
+				newCounts.set(i, counts.get(i));
+			}
+			counts = newCounts;
+		}
+		indexes.put(markerName, markers.size() - 1);
+	}
+
+	/**
+	 * Counts an execution of the marker. Markers which have not been added
+	 * are ignored.
+	 */
+	public void increment(String markerName) {
+		Integer index = indexes.get(markerName);
+		if (index != null) {
+			counts.incrementAndGet(index);
+		}
+	}
+
+	public long getCount(String markerName) {
+		Integer index = indexes.get(markerName);
+		if (index == null) {
+			return 0;
+		}
+		return counts.get(index);
+	}
+
+	/**
+	 * @return the markers in the order in which they were added
+	 */
+	public synchronized List<String> getMarkers() {
+		return Collections.unmodifiableList(new ArrayList<String>(markers));
+	}
+
+	/**
+	 * @return the current count of each marker, in the order in which the
+	 *         markers were added
+	 */
+	public synchronized Map<String, Integer> toMap() {
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < markers.size(); i++) {
+			result.put(markers.get(i), (int) Math.min(counts.get(i), Integer.MAX_VALUE));
+		}
+		return result;
+	}
+}
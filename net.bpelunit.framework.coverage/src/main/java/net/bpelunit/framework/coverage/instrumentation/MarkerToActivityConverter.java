@@ -1,8 +1,12 @@
 package net.bpelunit.framework.coverage.instrumentation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
 import net.bpelunit.framework.control.deploy.IBPELProcess;
 import net.bpelunit.framework.coverage.CoverageConstants;
 import net.bpelunit.framework.coverage.service.MarkerService;
@@ -12,35 +16,136 @@ import net.bpelunit.framework.execution.ITestLifeCycleElement;
 import net.bpelunit.model.bpel.IActivity;
 import net.bpelunit.model.bpel.IActivityContainer;
 import net.bpelunit.model.bpel.IAssign;
+import net.bpelunit.model.bpel.ICatch;
+import net.bpelunit.model.bpel.ICatchAll;
+import net.bpelunit.model.bpel.ICompensationHandler;
 import net.bpelunit.model.bpel.ICopy;
 import net.bpelunit.model.bpel.ICreateInstance;
 import net.bpelunit.model.bpel.IDocumentation;
+import net.bpelunit.model.bpel.IExit;
 import net.bpelunit.model.bpel.IInvoke;
+import net.bpelunit.model.bpel.IMultiContainer;
+import net.bpelunit.model.bpel.IProcess;
+import net.bpelunit.model.bpel.IRethrow;
 import net.bpelunit.model.bpel.IScope;
 import net.bpelunit.model.bpel.ISequence;
+import net.bpelunit.model.bpel.ISingleContainer;
+import net.bpelunit.model.bpel.IThrow;
 import net.bpelunit.model.bpel.IVariable;
+import net.bpelunit.model.bpel.IVisitable;
 import net.bpelunit.util.XMLUtil;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+/**
+ * Replaces the coverage markers in the documentation of the activities by
+ * activities that report the markers to the MarkerService.
+ * 
+ * By default, every marked activity is wrapped in a scope that sends its
+ * markers in a message of its own. If markers are buffered, a marked activity
+ * only appends its markers to a process variable, and the buffer is sent as a
+ * single message (and emptied in the same assign) when a scope, a fault
+ * handler, a compensation handler or the process completes, and before
+ * throw, rethrow and exit activities. Markers buffered before a fault which
+ * is not handled in the process are lost.
+ * 
+ * A process cannot see which test case sent the message creating its
+ * instance, so the markers of the activities creating an instance are always
+ * sent right away, with the markStart operation: the MarkerService answers
+ * with the test case running at that time, which the process keeps in a
+ * variable and sends along with all of its later markers. Markers sent after
+ * the test case has ended, e.g. by a buffered flush at the end of the
+ * process, are thus still recorded for the right test case.
+ */
 public class MarkerToActivityConverter {
 
+	private static final QName XSD_STRING = new QName(
+			XMLConstants.W3C_XML_SCHEMA_NS_URI, "string");
+
+	private final boolean bufferMarkers;
+	private final MarkerService markerService;
+	private int flushCount = 0;
+
+	public MarkerToActivityConverter() {
+		this(false);
+	}
+
+	/**
+	 * @param bufferMarkers
+	 *            collect the markers in a process variable and send them in
+	 *            batches instead of sending one message per marked activity
+	 */
+	public MarkerToActivityConverter(boolean bufferMarkers) {
+		this(bufferMarkers, null);
+	}
+
+	/**
+	 * @param markerService
+	 *            the service receiving the markers, or <code>null</code> to
+	 *            create one for the instrumenters in the context
+	 */
+	public MarkerToActivityConverter(boolean bufferMarkers,
+			MarkerService markerService) {
+		this.bufferMarkers = bufferMarkers;
+		this.markerService = markerService;
+	}
+
 	public void convertMarkersToActivities(IBPELUnitContext context)
 			throws DeploymentException {
 
 		for (IBPELProcess process : context.getDeployment().getBPELProcesses()) {
 			addWsdlToProcess(process);
 			addPartnerlinkToProcess(process, context);
+			convertMarkers(process.getProcessModel());
+		}
+	}
+
+	void convertMarkers(IProcess p) {
+		InstrumentationPointCollector collector = new InstrumentationPointCollector();
+		p.visit(collector);
+
+		// Wrapping an activity copies it, so the activities inside it must
+		// have been changed before: go from the innermost ones outwards
+		List<IVisitable> visited = collector.getVisited();
+		Collections.reverse(visited);
+		for (IVisitable v : visited) {
+			if (v instanceof IActivity
+					&& getMarkerNames((IActivity) v).size() > 0) {
+				if (bufferMarkers && !createsInstance((IActivity) v)) {
+					createBufferedMarkers((IActivity) v);
+				} else {
+					createScopeForMarkers((IActivity) v);
+				}
+			}
 
+			if (bufferMarkers) {
+				if (v instanceof IThrow || v instanceof IRethrow
+						|| v instanceof IExit) {
+					addFlushBefore((IActivity) v);
+				} else if (v instanceof IScope || v instanceof ICatch
+						|| v instanceof ICatchAll
+						|| v instanceof ICompensationHandler) {
+					addFlushAtEnd((ISingleContainer) v);
+				}
+			}
+		}
+
+		addTestCaseVariable(p);
+		if (bufferMarkers) {
+			addMarkerBuffer(p);
+			addFlushAtEnd(p);
 		}
 	}
 
 	private void addPartnerlinkToProcess(IBPELProcess process,
 			IBPELUnitContext context) {
-		MarkerService markerService = new MarkerService(
-				filterInstrumenters(context.getElementsInPrepareProcesses()));
+		MarkerService service = markerService;
+		if (service == null) {
+			service = new MarkerService(
+					filterInstrumenters(context.getElementsInPrepareProcesses()));
+		}
 		process.addPartnerlink(
 				CoverageConstants.MARKER_SERVICE_PARTNERLINK,
 				CoverageConstants.COVERAGE_PARTNERLINK_TYPE,
@@ -51,7 +156,7 @@ public class MarkerToActivityConverter {
 				CoverageConstants.COVERAGE_SERVICE_PORT,
 				context.addService(
 						CoverageConstants.COVERAGE_SERVICE_BPELUNIT_NAME,
-						markerService).toExternalForm());
+						service).toExternalForm());
 	}
 
 	private List<? extends AbstractInstrumenter> filterInstrumenters(
@@ -75,8 +180,14 @@ public class MarkerToActivityConverter {
 						.getResourceAsStream("/" + CoverageConstants.XSD_NAME));
 	}
 
+	/**
+	 * Wraps the activity in a scope which sends its markers: before the
+	 * activity, or after it if it creates the process instance. In the latter
+	 * case, the test case named in the answer is kept for the later markers.
+	 */
 	IScope createScopeForMarkers(IActivity a) {
 		IActivityContainer parent = a.getParent();
+		boolean createsInstance = createsInstance(a);
 
 		IScope scope = parent.wrapActivityInNewScope(a);
 		scope.setName(CoverageConstants.INSTRUMENTATION_SCOPE_NAME_PREFIX
@@ -85,56 +196,236 @@ public class MarkerToActivityConverter {
 
 		IVariable v = scope.addVariable();
 		v.setName(CoverageConstants.VARIABLE_MARK_REQUEST);
-		v.setMessageType(CoverageConstants.MARKER_SERVICE_MARK_REQUEST_MESSAGE_TYPE);
+		v.setMessageType(createsInstance ? CoverageConstants.MARKER_SERVICE_MARK_START_REQUEST_MESSAGE_TYPE
+				: CoverageConstants.MARKER_SERVICE_MARK_REQUEST_MESSAGE_TYPE);
 
 		IAssign assign = sequence.addAssign();
 		assign.setName(a.getName() + "_Prepare_Mark_Request");
 		ICopy copy = assign.addCopy();
 		Element msgElement = copy.getFrom().setNewLiteral(
 				CoverageConstants.MARKER_SERVICE_NAMESPACE,
-				CoverageConstants.COVERAGE_MSG_ELEMENT);
+				createsInstance ? CoverageConstants.COVERAGE_MSG_START_ELEMENT
+						: CoverageConstants.COVERAGE_MSG_ELEMENT);
+		appendTestCaseElement(msgElement);
 		buildCoverageMarkerMessage(msgElement, a);
 		copy.getTo().setVariable(v);
 		copy.getTo()
 				.setPart(CoverageConstants.MARKER_SERVICE_MARK_REQUEST_PART);
 		copy.getTo().setExpression("/");
+		addTestCaseCopy(assign, v);
 
 		IInvoke invoke = sequence.addInvoke();
 		invoke.setName(a.getName() + "_Invoke_Marker_Service");
 		invoke.setInputVariable(v);
-		invoke.setOperation(CoverageConstants.COVERAGE_SERVICE_MARK_OPERATION);
 		invoke.setPartnerLink(CoverageConstants.MARKER_SERVICE_PARTNERLINK);
 
-		if (startsInstance(a)) {
+		if (createsInstance) {
+			IVariable response = scope.addVariable();
+			response.setName(CoverageConstants.VARIABLE_MARK_RESPONSE);
+			response.setMessageType(CoverageConstants.MARKER_SERVICE_MARK_START_RESPONSE_MESSAGE_TYPE);
+			invoke.setOperation(CoverageConstants.COVERAGE_SERVICE_MARK_START_OPERATION);
+			invoke.setOutputVariable(response);
+
+			IAssign keepTestCase = sequence.addAssign();
+			keepTestCase.setName(a.getName() + "_Keep_Test_Case");
+			ICopy copyTestCase = keepTestCase.addCopy();
+			copyTestCase.getFrom().setExpression(
+					"string($" + CoverageConstants.VARIABLE_MARK_RESPONSE
+							+ "." + CoverageConstants.MARKER_SERVICE_MARK_REQUEST_PART
+							+ "/*[local-name()='"
+							+ CoverageConstants.COVERAGE_MSG_TEST_CASE_ELEMENT
+							+ "'])");
+			copyTestCase.getTo().setVariable(CoverageConstants.VARIABLE_TEST_CASE);
+		} else {
+			invoke.setOperation(CoverageConstants.COVERAGE_SERVICE_MARK_OPERATION);
 			sequence.moveBefore(assign, a);
 			sequence.moveBefore(invoke, a);
 		}
 		return scope;
 	}
 
-	private boolean startsInstance(IActivity a) {
-		return !(a instanceof ICreateInstance)
-				|| !((ICreateInstance) a).isCreateInstance();
+	void addTestCaseVariable(IProcess p) {
+		IVariable testCase = p.addVariable();
+		testCase.setName(CoverageConstants.VARIABLE_TEST_CASE);
+		testCase.setType(XSD_STRING);
+		testCase.setNewFrom().setExpression("''");
+	}
+
+	private void appendTestCaseElement(Element msgElement) {
+		msgElement.appendChild(msgElement.getOwnerDocument().createElementNS(
+				CoverageConstants.MARKER_SERVICE_NAMESPACE,
+				CoverageConstants.COVERAGE_MSG_TEST_CASE_ELEMENT));
+	}
+
+	/**
+	 * Copies the test case which created the process instance, if it is known
+	 * yet, into the request.
+	 */
+	private void addTestCaseCopy(IAssign assign, IVariable request) {
+		ICopy copy = assign.addCopy();
+		copy.getFrom().setVariable(CoverageConstants.VARIABLE_TEST_CASE);
+		copy.getTo().setVariable(request);
+		copy.getTo().setPart(
+				CoverageConstants.MARKER_SERVICE_MARK_REQUEST_PART);
+		copy.getTo().setExpression(
+				"*[local-name()='"
+						+ CoverageConstants.COVERAGE_MSG_TEST_CASE_ELEMENT + "']");
+	}
+
+	void addMarkerBuffer(IProcess p) {
+		IVariable buffer = p.addVariable();
+		buffer.setName(CoverageConstants.VARIABLE_MARKER_BUFFER);
+		buffer.setType(XSD_STRING);
+		buffer.setNewFrom().setExpression("''");
+	}
+
+	/**
+	 * Appends the markers of the activity to the marker buffer: before the
+	 * activity, or after it if it creates the process instance.
+	 */
+	IAssign createBufferedMarkers(IActivity a) {
+		IMultiContainer container = getSequenceAround(a);
+
+		IAssign assign = container.addAssign();
+		assign.setName(a.getName() + "_Buffer_Markers");
+		ICopy copy = assign.addCopy();
+		StringBuilder markers = new StringBuilder();
+		for (String markerName : getMarkerNames(a)) {
+			markers.append(' ').append(markerName);
+		}
+		copy.getFrom().setExpression(
+				"concat($" + CoverageConstants.VARIABLE_MARKER_BUFFER + ", '"
+						+ markers + "')");
+		copy.getTo().setVariable(CoverageConstants.VARIABLE_MARKER_BUFFER);
+
+		if (!createsInstance(a)) {
+			container.moveBefore(assign, a);
+		} else {
+			container.moveBefore(assign, getActivityAfter(container, a));
+		}
+		return assign;
+	}
+
+	void addFlushBefore(IActivity a) {
+		IMultiContainer container = getSequenceAround(a);
+		IScope flush = createFlushScope(container);
+		container.moveBefore(flush, a);
+	}
+
+	void addFlushAtEnd(ISingleContainer c) {
+		IActivity mainActivity = c.getMainActivity();
+		if (mainActivity == null) {
+			return;
+		}
+		ISequence sequence;
+		if (mainActivity instanceof ISequence) {
+			sequence = (ISequence) mainActivity;
+		} else {
+			sequence = c.wrapActivityInNewSequence(mainActivity);
+		}
+		createFlushScope(sequence);
+	}
+
+	/**
+	 * Adds a scope at the end of the container which sends the buffered
+	 * markers to the MarkerService. The buffer is copied into the request and
+	 * emptied by the same assign, so markers appended concurrently in a flow
+	 * are never lost.
+	 */
+	IScope createFlushScope(IMultiContainer container) {
+		flushCount++;
+		IScope scope = container.addScope();
+		scope.setName(CoverageConstants.INSTRUMENTATION_FLUSH_SCOPE_NAME_PREFIX
+				+ flushCount);
+
+		IVariable v = scope.addVariable();
+		v.setName(CoverageConstants.VARIABLE_MARK_REQUEST);
+		v.setMessageType(CoverageConstants.MARKER_SERVICE_MARK_REQUEST_MESSAGE_TYPE);
+
+		ISequence sequence = scope.setNewSequence();
+		IAssign assign = sequence.addAssign();
+		assign.setName("Flush_Markers_" + flushCount);
+
+		ICopy initRequest = assign.addCopy();
+		Element msgElement = initRequest.getFrom().setNewLiteral(
+				CoverageConstants.MARKER_SERVICE_NAMESPACE,
+				CoverageConstants.COVERAGE_MSG_ELEMENT);
+		appendTestCaseElement(msgElement);
+		msgElement.appendChild(msgElement.getOwnerDocument().createElementNS(
+				CoverageConstants.MARKER_SERVICE_NAMESPACE,
+				CoverageConstants.COVERAGE_MSG_MARKER_ELEMENT));
+		initRequest.getTo().setVariable(v);
+		initRequest.getTo().setPart(
+				CoverageConstants.MARKER_SERVICE_MARK_REQUEST_PART);
+		addTestCaseCopy(assign, v);
+
+		ICopy copyBuffer = assign.addCopy();
+		copyBuffer.getFrom().setVariable(
+				CoverageConstants.VARIABLE_MARKER_BUFFER);
+		copyBuffer.getTo().setVariable(v);
+		copyBuffer.getTo().setPart(
+				CoverageConstants.MARKER_SERVICE_MARK_REQUEST_PART);
+		copyBuffer.getTo().setExpression(
+				"*[local-name()='"
+						+ CoverageConstants.COVERAGE_MSG_MARKER_ELEMENT + "']");
+
+		ICopy emptyBuffer = assign.addCopy();
+		emptyBuffer.getFrom().setExpression("''");
+		emptyBuffer.getTo().setVariable(
+				CoverageConstants.VARIABLE_MARKER_BUFFER);
+
+		IInvoke invoke = sequence.addInvoke();
+		invoke.setName("Flush_Invoke_Marker_Service_" + flushCount);
+		invoke.setInputVariable(v);
+		invoke.setOperation(CoverageConstants.COVERAGE_SERVICE_MARK_OPERATION);
+		invoke.setPartnerLink(CoverageConstants.MARKER_SERVICE_PARTNERLINK);
+
+		return scope;
+	}
+
+	private IMultiContainer getSequenceAround(IActivity a) {
+		if (a.getParent() instanceof ISequence) {
+			return (ISequence) a.getParent();
+		}
+		return a.getParent().wrapActivityInNewSequence(a);
+	}
+
+	private IActivity getActivityAfter(IMultiContainer container, IActivity a) {
+		List<? extends IActivity> activities = container.getActivities();
+		return activities.get(activities.indexOf(a) + 1);
+	}
+
+	private boolean createsInstance(IActivity a) {
+		return a instanceof ICreateInstance
+				&& ((ICreateInstance) a).isCreateInstance();
 	}
 
 	Element buildCoverageMarkerMessage(Element msgElement, IActivity a) {
 		Document msgDoc = msgElement.getOwnerDocument();
+
+		for (String markerName : getMarkerNames(a)) {
+			Element markerElement = msgDoc.createElementNS(
+					CoverageConstants.MARKER_SERVICE_NAMESPACE,
+					CoverageConstants.COVERAGE_MSG_MARKER_ELEMENT);
+			XMLUtil.appendTextNode(markerElement, markerName);
+			msgElement.appendChild(markerElement);
+		}
+		return msgElement;
+	}
+
+	List<String> getMarkerNames(IActivity a) {
+		List<String> markerNames = new ArrayList<String>();
 		List<? extends IDocumentation> documentation = a.getDocumentation();
 
 		if (documentation != null && documentation.size() > 0) {
 			IDocumentation firstDoc = documentation.get(0);
 			for (Node n : firstDoc.getDocumentationElements()) {
 				if (isMarkerElement(n)) {
-					Element markerElement = msgDoc.createElementNS(
-							CoverageConstants.MARKER_SERVICE_NAMESPACE,
-							CoverageConstants.COVERAGE_MSG_MARKER_ELEMENT);
-					XMLUtil.appendTextNode(markerElement,
-							XMLUtil.getTextContent(n));
-					msgElement.appendChild(markerElement);
+					markerNames.add(XMLUtil.getTextContent(n));
 				}
 			}
 		}
-		return msgElement;
+		return markerNames;
 	}
 
 	private boolean isMarkerElement(Node n) {
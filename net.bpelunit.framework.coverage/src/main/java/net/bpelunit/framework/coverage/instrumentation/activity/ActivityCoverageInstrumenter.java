@@ -1,11 +1,10 @@
 package net.bpelunit.framework.coverage.instrumentation.activity;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import net.bpelunit.framework.coverage.instrumentation.AbstractInstrumenter;
+import net.bpelunit.framework.coverage.instrumentation.MarkerCounters;
 import net.bpelunit.framework.coverage.marker.Marker;
 import net.bpelunit.framework.coverage.result.IMetricCoverage;
 import net.bpelunit.model.bpel.IActivity;
@@ -48,8 +47,7 @@ import net.bpelunit.model.bpel.IWhile;
 public class ActivityCoverageInstrumenter extends AbstractInstrumenter {
 
 	private Map<String, IActivity> markerMapping = new HashMap<String, IActivity>();
-	private Map<String, Integer> markerCounter = new HashMap<String, Integer>();
-	private List<String> markers = new ArrayList<String>();
+	private MarkerCounters markerCounter = new MarkerCounters();
 	
 	@Override
 	public String getMarkerPrefix()	{
@@ -58,24 +56,19 @@ public class ActivityCoverageInstrumenter extends AbstractInstrumenter {
 	
 	@Override
 	public void pushMarker(String markerName) {
-		Integer markerCount = markerCounter.get(markerName);
-		if(markerCount != null) {
-			markerCount++;
-			markerCounter.put(markerName, markerCount);
-		}
+		markerCounter.increment(markerName);
 	}
 
 	@Override
 	public IMetricCoverage getCoverageResult() {
-		return new ActivityMetricCoverage(markers, markerMapping, markerCounter);
+		return new ActivityMetricCoverage(markerCounter.getMarkers(), markerMapping, markerCounter.toMap());
 	}
 	
 	private void instrumentActivity(IActivity a) {
 		Marker newMarker = addCoverageMarker(a);
 		
 		markerMapping.put(newMarker.getName(), a);
-		markerCounter.put(newMarker.getName(), 0);
-		markers.add(newMarker.getName());
+		markerCounter.addMarker(newMarker.getName());
 	}
 	
 	/*---- Visitor Functions ----*/
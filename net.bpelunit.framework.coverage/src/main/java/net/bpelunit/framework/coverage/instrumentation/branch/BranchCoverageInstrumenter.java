@@ -1,11 +1,10 @@
 package net.bpelunit.framework.coverage.instrumentation.branch;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import net.bpelunit.framework.coverage.instrumentation.AbstractInstrumenter;
+import net.bpelunit.framework.coverage.instrumentation.MarkerCounters;
 import net.bpelunit.framework.coverage.marker.Marker;
 import net.bpelunit.framework.coverage.result.IMetricCoverage;
 import net.bpelunit.model.bpel.IActivity;
@@ -49,8 +48,7 @@ public class BranchCoverageInstrumenter extends AbstractInstrumenter {
 
 	
 	private Map<String, String> markerMapping = new HashMap<String, String>();
-	private Map<String, Integer> markerCounter = new HashMap<String, Integer>();
-	private List<String> markers = new ArrayList<String>();
+	private MarkerCounters markerCounter = new MarkerCounters();
 	
 	@Override
 	public String getMarkerPrefix()	{
@@ -59,24 +57,19 @@ public class BranchCoverageInstrumenter extends AbstractInstrumenter {
 	
 	@Override
 	public void pushMarker(String markerName) {
-		Integer markerCount = markerCounter.get(markerName);
-		if(markerCount != null) {
-			markerCount++;
-			markerCounter.put(markerName, markerCount);
-		}
+		markerCounter.increment(markerName);
 	}
 
 	@Override
 	public IMetricCoverage getCoverageResult() {
-		return new BranchMetricCoverage(markers, markerMapping, markerCounter);
+		return new BranchMetricCoverage(markerCounter.getMarkers(), markerMapping, markerCounter.toMap());
 	}
 	
 	private void instrumentActivity(IActivity a, String xpathToBranch) {
 		Marker newMarker = addCoverageMarker(a);
 		
 		markerMapping.put(newMarker.getName(), xpathToBranch);
-		markerCounter.put(newMarker.getName(), 0);
-		markers.add(newMarker.getName());
+		markerCounter.addMarker(newMarker.getName());
 	}
 	
 	/*---- Visitor Functions ----*/
@@ -1,11 +1,10 @@
 package net.bpelunit.framework.coverage.instrumentation.handler;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import net.bpelunit.framework.coverage.instrumentation.AbstractInstrumenter;
+import net.bpelunit.framework.coverage.instrumentation.MarkerCounters;
 import net.bpelunit.framework.coverage.marker.Marker;
 import net.bpelunit.framework.coverage.result.IMetricCoverage;
 import net.bpelunit.model.bpel.IActivity;
@@ -48,8 +47,7 @@ import net.bpelunit.model.bpel.IWhile;
 public class HandlerCoverageInstrumenter extends AbstractInstrumenter {
 
 	private Map<String, IActivity> markerMapping = new HashMap<String, IActivity>();
-	private Map<String, Integer> markerCounter = new HashMap<String, Integer>();
-	private List<String> markers = new ArrayList<String>();
+	private MarkerCounters markerCounter = new MarkerCounters();
 	
 	public void visit(IAssign a) {
 	}
@@ -165,11 +163,7 @@ public class HandlerCoverageInstrumenter extends AbstractInstrumenter {
 
 	@Override
 	public void pushMarker(String markerName) {
-		Integer markerCount = markerCounter.get(markerName);
-		if(markerCount != null) {
-			markerCount++;
-			markerCounter.put(markerName, markerCount);
-		}
+		markerCounter.increment(markerName);
 	}
 
 	@Override
@@ -182,8 +176,7 @@ public class HandlerCoverageInstrumenter extends AbstractInstrumenter {
 		Marker newMarker = addCoverageMarker(activityToInstrument);
 		
 		markerMapping.put(newMarker.getName(), activityToMeasure);
-		markerCounter.put(newMarker.getName(), 0);
-		markers.add(newMarker.getName());
+		markerCounter.addMarker(newMarker.getName());
 	}
 
 }
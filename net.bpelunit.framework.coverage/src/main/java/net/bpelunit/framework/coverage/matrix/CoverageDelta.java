@@ -0,0 +1,70 @@
+package net.bpelunit.framework.coverage.matrix;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Differences in coverage between two runs of a test suite.
+ */
+public class CoverageDelta {
+
+	private List<String> newlyCoveredMarkers = new ArrayList<String>();
+	private List<String> noLongerCoveredMarkers = new ArrayList<String>();
+	private List<String> changedTestCases = new ArrayList<String>();
+
+	/**
+	 * @return the markers executed in this run, but not in the previous one
+	 */
+	public List<String> getNewlyCoveredMarkers() {
+		return Collections.unmodifiableList(newlyCoveredMarkers);
+	}
+
+	void setNewlyCoveredMarkers(List<String> markers) {
+		newlyCoveredMarkers = markers;
+	}
+
+	/**
+	 * @return the markers executed in the previous run, but not in this one
+	 */
+	public List<String> getNoLongerCoveredMarkers() {
+		return Collections.unmodifiableList(noLongerCoveredMarkers);
+	}
+
+	void setNoLongerCoveredMarkers(List<String> markers) {
+		noLongerCoveredMarkers = markers;
+	}
+
+	/**
+	 * @return the test cases which executed other markers than in the
+	 *         previous run, or which were only run in one of the runs
+	 */
+	public List<String> getChangedTestCases() {
+		return Collections.unmodifiableList(changedTestCases);
+	}
+
+	void addChangedTestCase(String testCase) {
+		changedTestCases.add(testCase);
+	}
+
+	public boolean isEmpty() {
+		return newlyCoveredMarkers.isEmpty() && noLongerCoveredMarkers.isEmpty()
+				&& changedTestCases.isEmpty();
+	}
+
+	public void writeReport(Writer writer) throws IOException {
+		writeSection(writer, "Newly covered markers", newlyCoveredMarkers);
+		writeSection(writer, "Markers no longer covered", noLongerCoveredMarkers);
+		writeSection(writer, "Test cases with changed coverage", changedTestCases);
+	}
+
+	private void writeSection(Writer writer, String title, List<String> entries)
+			throws IOException {
+		writer.write(title + " (" + entries.size() + "):\n");
+		for (String entry : entries) {
+			writer.write("  " + entry + "\n");
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package net.bpelunit.framework.coverage.matrix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records which markers have been executed by which test case. Each test
+ * case is a row holding a bit set over the markers, so the reports built
+ * from the matrix take time linear in its size, even for thousands of test
+ * cases.
+ *
+ * Markers must be added before they are recorded, while the processes are
+ * instrumented. Test cases are added the first time they record a marker.
+ */
+public class CoverageMatrix {
+
+	private static final String FIELD_SEPARATOR = "\t";
+	private static final String MARKER_SEPARATOR = " ";
+
+	private final Map<String, Integer> markerIndexes = new ConcurrentHashMap<String, Integer>();
+	private final List<String> markers = new ArrayList<String>();
+
+	private final Map<String, BitSet> rowsByTestCase = new ConcurrentHashMap<String, BitSet>();
+	private final List<String> testCases = new ArrayList<String>();
+
+	public synchronized void addMarker(String markerName) {
+		if (!markerIndexes.containsKey(markerName)) {
+			markers.add(markerName);
+			markerIndexes.put(markerName, markers.size() - 1);
+		}
+	}
+
+	public synchronized List<String> getMarkers() {
+		return Collections.unmodifiableList(new ArrayList<String>(markers));
+	}
+
+	public synchronized List<String> getTestCases() {
+		return Collections.unmodifiableList(new ArrayList<String>(testCases));
+	}
+
+	/**
+	 * Records that the test case executed the marker. Markers which have not
+	 * been added are ignored.
+	 */
+	public void record(String testCase, String markerName) {
+		Integer index = markerIndexes.get(markerName);
+		if (index == null) {
+			return;
+		}
+		BitSet row = getRow(testCase);
+		synchronized (row) {
+			row.set(index);
+		}
+	}
+
+	private BitSet getRow(String testCase) {
+		BitSet row = rowsByTestCase.get(testCase);
+		if (row == null) {
+			synchronized (this) {
+				row = rowsByTestCase.get(testCase);
+				if (row == null) {
+					row = new BitSet();
+					testCases.add(testCase);
+					rowsByTestCase.put(testCase, row);
+				}
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * @return the indexes (as in {@link #getMarkers()}) of the markers
+	 *         executed by the test case
+	 */
+	public BitSet getCoveredMarkers(String testCase) {
+		BitSet row = rowsByTestCase.get(testCase);
+		if (row == null) {
+			return new BitSet();
+		}
+		synchronized (row) {
+			return (BitSet) row.clone();
+		}
+	}
+
+	public List<String> getCoveredMarkerNames(String testCase) {
+		return toMarkerNames(getCoveredMarkers(testCase));
+	}
+
+	/**
+	 * @return the indexes of the markers executed by any test case
+	 */
+	public BitSet getCoveredMarkers() {
+		BitSet covered = new BitSet();
+		for (String testCase : getTestCases()) {
+			covered.or(getCoveredMarkers(testCase));
+		}
+		return covered;
+	}
+
+	List<String> toMarkerNames(BitSet markerIndexes) {
+		List<String> allMarkers = getMarkers();
+		List<String> names = new ArrayList<String>(markerIndexes.cardinality());
+		for (int i = markerIndexes.nextSetBit(0); i >= 0; i = markerIndexes
+				.nextSetBit(i + 1)) {
+			names.add(allMarkers.get(i));
+		}
+		return names;
+	}
+
+	/**
+	 * Selects test cases which together execute every marker executed by the
+	 * whole suite. Finding the smallest such subset is the set cover problem,
+	 * which is NP-hard, so this is the greedy approximation: the test case
+	 * covering the most markers not covered yet is picked each time. The
+	 * subset is at most about ln(number of markers) times as large as the
+	 * smallest one, and is usually close to it, but is not guaranteed to be
+	 * minimal.
+	 */
+	public List<String> computeCoveringTestSubset() {
+		List<String> allTestCases = getTestCases();
+		List<BitSet> rows = new ArrayList<BitSet>(allTestCases.size());
+		for (String testCase : allTestCases) {
+			rows.add(getCoveredMarkers(testCase));
+		}
+
+		BitSet uncovered = new BitSet();
+		for (BitSet row : rows) {
+			uncovered.or(row);
+		}
+
+		List<String> subset = new ArrayList<String>();
+		BitSet gain = new BitSet();
+		while (!uncovered.isEmpty()) {
+			int best = -1;
+			int bestGain = 0;
+			for (int i = 0; i < rows.size(); i++) {
+				gain.clear();
+				gain.or(rows.get(i));
+				gain.and(uncovered);
+				int g = gain.cardinality();
+				if (g > bestGain) {
+					best = i;
+					bestGain = g;
+				}
+			}
+			subset.add(allTestCases.get(best));
+			uncovered.andNot(rows.get(best));
+		}
+		return subset;
+	}
+
+	/**
+	 * Compares this matrix against the matrix of a previous run. Markers are
+	 * compared by name, so the previous run may have had other markers.
+	 */
+	public CoverageDelta computeDelta(CoverageMatrix previous) {
+		CoverageDelta delta = new CoverageDelta();
+
+		List<String> newlyCovered = new ArrayList<String>(toMarkerNames(getCoveredMarkers()));
+		List<String> previouslyCovered = previous.toMarkerNames(previous.getCoveredMarkers());
+		List<String> noLongerCovered = new ArrayList<String>(previouslyCovered);
+		noLongerCovered.removeAll(new HashSet<String>(newlyCovered));
+		newlyCovered.removeAll(new HashSet<String>(previouslyCovered));
+		delta.setNewlyCoveredMarkers(newlyCovered);
+		delta.setNoLongerCoveredMarkers(noLongerCovered);
+
+		for (String testCase : getTestCases()) {
+			if (!new HashSet<String>(getCoveredMarkerNames(testCase))
+					.equals(new HashSet<String>(previous
+							.getCoveredMarkerNames(testCase)))) {
+				delta.addChangedTestCase(testCase);
+			}
+		}
+		for (String testCase : previous.getTestCases()) {
+			if (!rowsByTestCase.containsKey(testCase)) {
+				delta.addChangedTestCase(testCase);
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * Writes the matrix as CSV: one row per test case, one column per
+	 * marker, 1 for the markers executed by the test case. Names containing
+	 * the separator, quotes or line breaks are quoted as in RFC 4180.
+	 */
+	public void writeReport(Writer writer, String separator) throws IOException {
+		List<String> allMarkers = getMarkers();
+		writer.write("Test Case");
+		for (String marker : allMarkers) {
+			writer.write(separator);
+			writer.write(toCsvField(marker, separator));
+		}
+		writer.write("\n");
+
+		for (String testCase : getTestCases()) {
+			BitSet row = getCoveredMarkers(testCase);
+			writer.write(toCsvField(testCase, separator));
+			for (int i = 0; i < allMarkers.size(); i++) {
+				writer.write(separator);
+				writer.write(row.get(i) ? "1" : "0");
+			}
+			writer.write("\n");
+		}
+	}
+
+	static String toCsvField(String value, String separator) {
+		if (!value.contains(separator) && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * Saves the matrix so that it can be compared against the next run: one
+	 * line per test case, with the name of the test case and the names of
+	 * its markers.
+	 */
+	public void save(Writer writer) throws IOException {
+		for (String testCase : getTestCases()) {
+			writer.write(testCase);
+			writer.write(FIELD_SEPARATOR);
+			boolean first = true;
+			for (String marker : getCoveredMarkerNames(testCase)) {
+				if (!first) {
+					writer.write(MARKER_SEPARATOR);
+				}
+				writer.write(marker);
+				first = false;
+			}
+			writer.write("\n");
+		}
+	}
+
+	/**
+	 * Reads a matrix written by {@link #save(Writer)}.
+	 */
+	public static CoverageMatrix load(Reader reader) throws IOException {
+		CoverageMatrix matrix = new CoverageMatrix();
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		while ((line = lines.readLine()) != null) {
+			int separator = line.lastIndexOf(FIELD_SEPARATOR);
+			if (separator < 0) {
+				continue;
+			}
+			String testCase = line.substring(0, separator);
+			matrix.getRow(testCase);
+			String markerNames = line.substring(separator + 1).trim();
+			if (markerNames.length() == 0) {
+				continue;
+			}
+			for (String marker : markerNames.split(MARKER_SEPARATOR)) {
+				matrix.addMarker(marker);
+				matrix.record(testCase, marker);
+			}
+		}
+		return matrix;
+	}
+}
@@ -3,31 +3,67 @@ package net.bpelunit.framework.coverage.service;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
 
+import net.bpelunit.framework.control.util.BPELUnitUtil;
 import net.bpelunit.framework.coverage.CoverageConstants;
 import net.bpelunit.framework.coverage.instrumentation.AbstractInstrumenter;
+import net.bpelunit.framework.coverage.matrix.CoverageMatrix;
 import net.bpelunit.util.XMLUtil;
 
 import org.apache.log4j.Logger;
-import org.apache.xmlbeans.impl.soap.MessageFactory;
-import org.apache.xmlbeans.impl.soap.SOAPMessage;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.w3c.dom.Element;
 
+/**
+ * Receives the markers executed by the instrumented processes and passes them
+ * on to the instrumenters. A message may contain any number of Marker
+ * elements, and each of them may contain several marker names separated by
+ * whitespace, as sent by processes which buffer their markers.
+ * 
+ * If a coverage matrix is given, the markers are also recorded for the test
+ * case they were executed by. The test case is taken from the TestCase
+ * element of the message, which the instrumented processes fill with the
+ * answer to the markStart message sent when their instance was created. If
+ * the message does not name a test case, e.g. for the markStart message
+ * itself, the test case running at the time is taken. Markers which cannot be
+ * attributed to a single test case are only counted.
+ */
 public class MarkerService extends AbstractHandler {
 
+	private static final long POLL_INTERVAL = 20;
+
 	private List<AbstractInstrumenter> instrumenters = new ArrayList<AbstractInstrumenter>();
 
+	private final CoverageMatrix coverageMatrix;
+
+	private final RunningTestCaseTracker testCaseTracker;
+
+	private final AtomicInteger pendingMessages = new AtomicInteger();
+
+	private volatile long lastMessageTime = System.currentTimeMillis();
+
 	private Logger logger = Logger.getLogger(getClass());
 
 	public MarkerService(
 			List<? extends AbstractInstrumenter> coverageInstrumenters) {
+		this(coverageInstrumenters, null, null);
+	}
+
+	public MarkerService(
+			List<? extends AbstractInstrumenter> coverageInstrumenters,
+			CoverageMatrix coverageMatrix,
+			RunningTestCaseTracker testCaseTracker) {
 		instrumenters.addAll(coverageInstrumenters);
+		this.coverageMatrix = coverageMatrix;
+		this.testCaseTracker = testCaseTracker;
 	}
 
 	public void handle(String pathInContext, Request pathParams,
@@ -36,27 +72,120 @@ public class MarkerService extends AbstractHandler {
 		if (pathInContext
 				.endsWith(CoverageConstants.COVERAGE_SERVICE_BPELUNIT_NAME)
 				&& request.getMethod().equals("POST")) {
+			pendingMessages.incrementAndGet();
 			try {
-				MessageFactory factory = MessageFactory.newInstance();
 				// TODO FIX CHARSET
-				SOAPMessage message = factory.createMessage(null,
+				SOAPMessage message = BPELUnitUtil.getMessageFactory().createMessage(null,
 						request.getInputStream());
-				Element msgElement = XMLUtil.getChildElementsByName(
-						message.getSOAPBody(),
-						CoverageConstants.COVERAGE_MSG_ELEMENT).get(0);
+				Element msgElement = getMessageElement(message);
+				String testCase = getTestCase(msgElement);
 				for (Element markerElement : XMLUtil.getChildElementsByName(
 						msgElement,
 						CoverageConstants.COVERAGE_MSG_MARKER_ELEMENT)) {
-					for (AbstractInstrumenter ai : instrumenters) {
-						ai.pushMarker(XMLUtil
-								.getContentsOfTextOnlyNode(markerElement));
-					}
+					pushMarkers(XMLUtil.getContentsOfTextOnlyNode(markerElement),
+							testCase);
+				}
+				if (CoverageConstants.COVERAGE_MSG_START_ELEMENT
+						.equals(msgElement.getLocalName())) {
+					sendTestCase(response, testCase);
+				} else {
+					response.setStatus(202);
+					response.setContentLength(0);
 				}
-				response.setStatus(202);
-				response.setContentLength(0);
 			} catch (Exception e) {
 				logger.warn("Exception while processing marker message: ", e);
+			} finally {
+				lastMessageTime = System.currentTimeMillis();
+				pendingMessages.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Waits until no marker message has been received or processed for the
+	 * quiet period, so that the markers which processes sent at their end
+	 * have arrived before the coverage is reported.
+	 * 
+	 * @param quietPeriod
+	 *            time in milliseconds without marker messages after which no
+	 *            more are expected
+	 * @param timeout
+	 *            maximum time in milliseconds to wait
+	 * @return <code>true</code> if the markers have been drained,
+	 *         <code>false</code> if the timeout has been reached first
+	 */
+	public boolean awaitPendingMarkers(long quietPeriod, long timeout)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			long now = System.currentTimeMillis();
+			if (pendingMessages.get() == 0
+					&& now - lastMessageTime >= quietPeriod) {
+				return true;
+			}
+			if (now >= deadline) {
+				return false;
+			}
+			Thread.sleep(Math.min(POLL_INTERVAL, deadline - now));
+		}
+	}
+
+	private Element getMessageElement(SOAPMessage message) throws SOAPException {
+		List<Element> elements = XMLUtil.getChildElementsByName(
+				message.getSOAPBody(), CoverageConstants.COVERAGE_MSG_ELEMENT);
+		if (elements.isEmpty()) {
+			elements = XMLUtil.getChildElementsByName(message.getSOAPBody(),
+					CoverageConstants.COVERAGE_MSG_START_ELEMENT);
+		}
+		return elements.get(0);
+	}
+
+	private void sendTestCase(HttpServletResponse response, String testCase)
+			throws SOAPException, IOException {
+		SOAPMessage answer = BPELUnitUtil.getMessageFactory().createMessage();
+		answer.getSOAPBody()
+				.addChildElement(
+						CoverageConstants.COVERAGE_MSG_START_RESPONSE_ELEMENT,
+						"m", CoverageConstants.MARKER_SERVICE_NAMESPACE)
+				.addChildElement(
+						CoverageConstants.COVERAGE_MSG_TEST_CASE_ELEMENT, "m",
+						CoverageConstants.MARKER_SERVICE_NAMESPACE)
+				.addTextNode(testCase != null ? testCase : "");
+		answer.saveChanges();
+		response.setStatus(200);
+		response.setContentType("text/xml; charset=UTF-8");
+		answer.writeTo(response.getOutputStream());
+	}
+
+	private void pushMarkers(String markerNames, String testCase) {
+		if (markerNames == null) {
+			return;
+		}
+		for (String markerName : markerNames.trim().split("\\s+")) {
+			if (markerName.length() > 0) {
+				for (AbstractInstrumenter ai : instrumenters) {
+					ai.pushMarker(markerName);
+				}
+				if (coverageMatrix != null && testCase != null) {
+					coverageMatrix.record(testCase, markerName);
+				}
+			}
+		}
+	}
+
+	private String getTestCase(Element msgElement) {
+		List<Element> testCaseElements = XMLUtil.getChildElementsByName(
+				msgElement, CoverageConstants.COVERAGE_MSG_TEST_CASE_ELEMENT);
+		if (!testCaseElements.isEmpty()) {
+			String testCase = XMLUtil.getContentsOfTextOnlyNode(testCaseElements.get(0));
+			if (testCase != null && testCase.trim().length() > 0) {
+				return testCase.trim();
 			}
 		}
+
+		if (testCaseTracker != null) {
+			return testCaseTracker.getRunningTestCase();
+		}
+		return null;
 	}
 }
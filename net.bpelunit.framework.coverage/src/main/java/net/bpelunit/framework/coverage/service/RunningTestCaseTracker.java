@@ -0,0 +1,47 @@
+package net.bpelunit.framework.coverage.service;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import net.bpelunit.framework.model.test.ITestResultListener;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+/**
+ * Keeps track of the test cases being run, so that the MarkerService can tell
+ * a newly created process instance which test case it belongs to, and can
+ * attribute markers which do not name their test case. A process cannot see
+ * which test case sent the message creating it, so this is only possible
+ * while test cases are run one at a time.
+ * 
+ * The tracker must be registered with
+ * {@link net.bpelunit.framework.model.test.TestSuite#addSynchronousResultListener(ITestResultListener)},
+ * so it knows about a test case before the test case sends its first message.
+ */
+public class RunningTestCaseTracker implements ITestResultListener {
+
+	private final Set<String> runningTestCases = new LinkedHashSet<String>();
+
+	public synchronized void testCaseStarted(TestCase testCase) {
+		runningTestCases.add(testCase.getName());
+	}
+
+	public synchronized void testCaseEnded(TestCase testCase) {
+		runningTestCases.remove(testCase.getName());
+	}
+
+	public void progress(ITestArtefact testArtefact) {
+		// not needed
+	}
+
+	/**
+	 * @return the name of the running test case, or <code>null</code> if no
+	 *         test case or several test cases are running
+	 */
+	public synchronized String getRunningTestCase() {
+		if (runningTestCases.size() != 1) {
+			return null;
+		}
+		return runningTestCases.iterator().next();
+	}
+}
@@ -0,0 +1,194 @@
+package net.bpelunit.framework.coverage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.RunnerConfiguration;
+import net.bpelunit.framework.control.deploy.IDeployment;
+import net.bpelunit.framework.control.deploy.simple.TestModeDeployer;
+import net.bpelunit.framework.execution.IBPELUnitContext;
+import net.bpelunit.framework.execution.ITestLifeCycleElement;
+import net.bpelunit.framework.model.AbstractPartner;
+import net.bpelunit.framework.model.ProcessUnderTest;
+import net.bpelunit.framework.model.test.ITestResultListener;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.TestSuite;
+import net.bpelunit.framework.model.test.activity.Activity;
+import net.bpelunit.framework.model.test.activity.ActivityContext;
+import net.bpelunit.framework.model.test.report.ArtefactStatus;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+
+public class CoverageLifeCycleTest {
+
+	private static final String BASE_URL = "http://localhost:7792/ws";
+
+	/**
+	 * Context which only provides the test suite.
+	 */
+	private static class SuiteContext implements IBPELUnitContext {
+		private final TestSuite suite;
+
+		public SuiteContext(TestSuite suite) {
+			this.suite = suite;
+		}
+
+		public TestSuite getTestSuite() {
+			return suite;
+		}
+
+		public IDeployment getDeployment() {
+			return null;
+		}
+
+		public URL addService(String name, AbstractHandler handler) {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInLoad() {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInPrepareProcesses() {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInStartMocks() {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInDeploy() {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInRunTests() {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInStopMocks() {
+			return null;
+		}
+
+		public List<? extends ITestLifeCycleElement> getElementsInReport() {
+			return null;
+		}
+	}
+
+	/**
+	 * Listener which holds up the asynchronous delivery of the result events
+	 * until it is released.
+	 */
+	private static class BlockingListener implements ITestResultListener {
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		public void testCaseStarted(TestCase testCase) {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void testCaseEnded(TestCase testCase) {
+		}
+
+		public void progress(ITestArtefact testArtefact) {
+		}
+	}
+
+	/**
+	 * Activity which records the test case the coverage tracker sees as
+	 * running, like the marker service does when a process sends a marker.
+	 */
+	private static class RecordingActivity extends Activity {
+		private final CoverageLifeCycle lifeCycle;
+		private final BlockingListener blockingListener;
+		private final List<String> seen;
+
+		public RecordingActivity(PartnerTrack track, CoverageLifeCycle lifeCycle,
+				BlockingListener blockingListener, List<String> seen) {
+			super(track);
+			this.lifeCycle = lifeCycle;
+			this.blockingListener = blockingListener;
+			this.seen = seen;
+		}
+
+		@Override
+		public void runInternal(ActivityContext context) {
+			seen.add(lifeCycle.getTestCaseTracker().getRunningTestCase());
+			blockingListener.released.countDown();
+			setStatus(ArtefactStatus.createPassedStatus());
+		}
+
+		@Override
+		public String getActivityCode() {
+			return "Record";
+		}
+
+		@Override
+		public int getActivityCount() {
+			return 1;
+		}
+
+		@Override
+		public String getName() {
+			return "Record";
+		}
+
+		@Override
+		public ITestArtefact getParent() {
+			return getPartnerTrack();
+		}
+
+		@Override
+		public List<ITestArtefact> getChildren() {
+			return new ArrayList<ITestArtefact>();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testTrackerKnowsRunningTestCaseWithAsyncDispatch() throws Exception {
+		ProcessUnderTest put = new ProcessUnderTest("put", ".", null, null, BASE_URL);
+		put.setDeployer(new TestModeDeployer());
+		TestSuite suite = new TestSuite("suite", new URL(BASE_URL), put);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(BPELUnitRunner.RESULT_LISTENER_DISPATCH,
+				BPELUnitRunner.RESULT_LISTENER_DISPATCH_ASYNC);
+		suite.setConfiguration(new RunnerConfiguration(options));
+
+		BlockingListener blockingListener = new BlockingListener();
+		suite.addResultListener(blockingListener);
+		CoverageLifeCycle lifeCycle = new CoverageLifeCycle();
+		lifeCycle.doRegisterMocks(new SuiteContext(suite));
+
+		List<String> seen = new ArrayList<String>();
+		TestCase testCase = new TestCase(suite, "tc");
+		PartnerTrack track = new PartnerTrack(testCase, new AbstractPartner("client", BASE_URL));
+		track.addActivity(new RecordingActivity(track, lifeCycle, blockingListener, seen));
+		testCase.addPartnerTrack(track);
+		suite.addTestCase(testCase);
+
+		try {
+			suite.run();
+		} finally {
+			suite.shutDown();
+		}
+
+		assertTrue(suite.getStatus().isPassed());
+		assertEquals(1, seen.size());
+		assertEquals(testCase.getName(), seen.get(0));
+		assertNull(lifeCycle.getTestCaseTracker().getRunningTestCase());
+	}
+}
@@ -0,0 +1,75 @@
+package net.bpelunit.framework.coverage.instrumentation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MarkerCountersTest {
+
+	private MarkerCounters counters;
+
+	@Before
+	public void setUp() {
+		counters = new MarkerCounters();
+		counters.addMarker("M1");
+		counters.addMarker("M2");
+	}
+
+	@Test
+	public void testCountsAndOrder() throws Exception {
+		counters.increment("M2");
+		counters.increment("M2");
+		counters.increment("unknown");
+		counters.addMarker("M3");
+
+		assertEquals(Arrays.asList("M1", "M2", "M3"), counters.getMarkers());
+		Map<String, Integer> counts = counters.toMap();
+		assertEquals(Integer.valueOf(0), counts.get("M1"));
+		assertEquals(Integer.valueOf(2), counts.get("M2"));
+		assertEquals(Integer.valueOf(0), counts.get("M3"));
+		assertEquals(0, counters.getCount("unknown"));
+	}
+
+	@Test
+	public void testCountsSurviveGrowth() throws Exception {
+		counters.increment("M1");
+		for (int i = 3; i <= 1000; i++) {
+			counters.addMarker("M" + i);
+		}
+		counters.increment("M1000");
+
+		assertEquals(1000, counters.getMarkers().size());
+		assertEquals(1, counters.getCount("M1"));
+		assertEquals(1, counters.getCount("M1000"));
+		assertEquals(0, counters.getCount("M500"));
+	}
+
+	@Test(timeout = 10000)
+	public void testConcurrentIncrements() throws Exception {
+		final int threads = 8;
+		final int increments = 10000;
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < increments; i++) {
+						counters.increment("M1");
+						counters.increment("M2");
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertEquals(threads * increments, counters.getCount("M1"));
+		assertEquals(threads * increments, counters.getCount("M2"));
+	}
+}
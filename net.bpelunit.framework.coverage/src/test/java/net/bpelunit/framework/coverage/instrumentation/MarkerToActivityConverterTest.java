@@ -1,8 +1,13 @@
 package net.bpelunit.framework.coverage.instrumentation;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.bpelunit.framework.coverage.CoverageConstants;
 import net.bpelunit.framework.coverage.marker.Marker;
 import net.bpelunit.framework.coverage.marker.MarkerFactory;
 import net.bpelunit.model.bpel.BpelFactory;
@@ -10,8 +15,11 @@ import net.bpelunit.model.bpel.IActivity;
 import net.bpelunit.model.bpel.IAssign;
 import net.bpelunit.model.bpel.IInvoke;
 import net.bpelunit.model.bpel.IProcess;
+import net.bpelunit.model.bpel.IReceive;
 import net.bpelunit.model.bpel.IScope;
 import net.bpelunit.model.bpel.ISequence;
+import net.bpelunit.model.bpel.IThrow;
+import net.bpelunit.model.bpel.IVariable;
 import net.bpelunit.util.XMLUtil;
 
 import org.junit.Before;
@@ -92,4 +100,76 @@ public class MarkerToActivityConverterTest {
 //		p.save(actualXMLAsStream);
 //		System.out.println(new String(actualXMLAsStream.toByteArray()));
 	}
+	
+	@Test
+	public void testCreateScopeForMarkersCreatingInstance() throws Exception {
+		p = BpelFactory.createProcess();
+		IReceive receive = p.setNewReceive();
+		receive.setName("Start");
+		receive.setCreateInstance(true);
+		activity = receive;
+		addThreeMarkersToActivity();
+		
+		markerToActivityConverter.createScopeForMarkers(receive);
+		
+		IScope scope = (IScope)p.getMainActivity();
+		assertEquals(CoverageConstants.VARIABLE_MARK_RESPONSE, scope.getVariables().get(1).getName());
+		
+		ISequence seq = (ISequence)scope.getMainActivity();
+		assertSame(receive, seq.getActivities().get(0));
+		assertTrue(seq.getActivities().get(1) instanceof IAssign);
+		IInvoke invoke = (IInvoke)seq.getActivities().get(2);
+		assertEquals(CoverageConstants.COVERAGE_SERVICE_MARK_START_OPERATION, invoke.getOperation());
+		assertEquals(CoverageConstants.VARIABLE_MARK_RESPONSE, invoke.getOutputVariable());
+		IAssign keepTestCase = (IAssign)seq.getActivities().get(3);
+		assertEquals(CoverageConstants.VARIABLE_TEST_CASE, keepTestCase.getCopies().get(0).getTo().getVariable());
+	}
+	
+	@Test
+	public void testConvertMarkersBuffered() throws Exception {
+		p = BpelFactory.createProcess();
+		ISequence mainSequence = p.setNewSequence();
+		activity = mainSequence.addEmpty();
+		activity.setName("ActivityToInstrument");
+		IThrow throwActivity = mainSequence.addThrow();
+		throwActivity.setName("Throw");
+		addThreeMarkersToActivity();
+		
+		new MarkerToActivityConverter(true).convertMarkers(p);
+		
+		IVariable buffer = p.getVariables().get(p.getVariables().size() - 1);
+		assertEquals(CoverageConstants.VARIABLE_MARKER_BUFFER, buffer.getName());
+		assertNotNull(buffer.getFrom());
+		
+		List<? extends IActivity> activities = ((ISequence)p.getMainActivity()).getActivities();
+		assertEquals(5, activities.size());
+		assertTrue(activities.get(0) instanceof IAssign);
+		assertSame(activity, activities.get(1));
+		assertFlushScope(activities.get(2));
+		assertSame(throwActivity, activities.get(3));
+		assertFlushScope(activities.get(4));
+	}
+
+	@Test
+	public void testConvertMarkersUnbuffered() throws Exception {
+		addThreeMarkersToActivity();
+		
+		markerToActivityConverter.convertMarkers(p);
+		
+		IScope scope = (IScope)p.getMainActivity();
+		assertEquals(CoverageConstants.INSTRUMENTATION_SCOPE_NAME_PREFIX + "ActivityToInstrument", scope.getName());
+		assertEquals(1, p.getVariables().size());
+		assertEquals(CoverageConstants.VARIABLE_TEST_CASE, p.getVariables().get(0).getName());
+	}
+
+	private void assertFlushScope(IActivity a) {
+		assertTrue(a instanceof IScope);
+		IScope scope = (IScope)a;
+		assertTrue(scope.getName().startsWith(CoverageConstants.INSTRUMENTATION_FLUSH_SCOPE_NAME_PREFIX));
+		assertEquals(CoverageConstants.VARIABLE_MARK_REQUEST, scope.getVariables().get(0).getName());
+		
+		ISequence seq = (ISequence)scope.getMainActivity();
+		assertEquals(4, ((IAssign)seq.getActivities().get(0)).getCopies().size());
+		assertTrue(seq.getActivities().get(1) instanceof IInvoke);
+	}
 }
@@ -0,0 +1,100 @@
+package net.bpelunit.framework.coverage.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoverageMatrixTest {
+
+	private CoverageMatrix matrix;
+
+	@Before
+	public void setUp() {
+		matrix = new CoverageMatrix();
+		for (String marker : new String[] { "M1", "M2", "M3", "M4" }) {
+			matrix.addMarker(marker);
+		}
+	}
+
+	@Test
+	public void testRecord() throws Exception {
+		matrix.record("TC1", "M1");
+		matrix.record("TC1", "M3");
+		matrix.record("TC1", "M3");
+		matrix.record("TC2", "unknown");
+
+		assertEquals(Arrays.asList("TC1", "TC2"), matrix.getTestCases());
+		assertEquals(Arrays.asList("M1", "M3"), matrix.getCoveredMarkerNames("TC1"));
+		assertEquals(Collections.emptyList(), matrix.getCoveredMarkerNames("TC2"));
+		assertEquals(Collections.emptyList(), matrix.getCoveredMarkerNames("TC3"));
+	}
+
+	@Test
+	public void testCoveringTestSubset() throws Exception {
+		matrix.record("TC1", "M1");
+		matrix.record("TC2", "M1");
+		matrix.record("TC2", "M2");
+		matrix.record("TC3", "M3");
+		matrix.record("TC3", "M2");
+		matrix.record("TC4", "M3");
+
+		assertEquals(Arrays.asList("TC2", "TC3"), matrix.computeCoveringTestSubset());
+	}
+
+	@Test
+	public void testWriteReport() throws Exception {
+		matrix.record("TC1", "M2");
+		StringWriter writer = new StringWriter();
+
+		matrix.writeReport(writer, ";");
+
+		assertEquals("Test Case;M1;M2;M3;M4\nTC1;0;1;0;0\n", writer.toString());
+	}
+
+	@Test
+	public void testWriteReportQuotesNames() throws Exception {
+		matrix.addMarker("M;5");
+		matrix.record("TC \"quoted\"", "M2");
+		matrix.record("TC;1", "M1");
+		StringWriter writer = new StringWriter();
+
+		matrix.writeReport(writer, ";");
+
+		assertEquals("Test Case;M1;M2;M3;M4;\"M;5\"\n"
+				+ "\"TC \"\"quoted\"\"\";0;1;0;0;0\n"
+				+ "\"TC;1\";1;0;0;0;0\n", writer.toString());
+	}
+
+	@Test
+	public void testSaveLoadAndDelta() throws Exception {
+		matrix.record("TC (Row 1)", "M1");
+		matrix.record("TC (Row 1)", "M2");
+		matrix.record("TC (Row 2)", "M3");
+		StringWriter writer = new StringWriter();
+		matrix.save(writer);
+
+		CoverageMatrix previous = CoverageMatrix.load(new StringReader(writer.toString()));
+		assertEquals(Arrays.asList("M1", "M2"), previous.getCoveredMarkerNames("TC (Row 1)"));
+		assertTrue(matrix.computeDelta(previous).isEmpty());
+
+		CoverageMatrix current = new CoverageMatrix();
+		current.addMarker("M2");
+		current.addMarker("M1");
+		current.addMarker("M4");
+		current.record("TC (Row 1)", "M2");
+		current.record("TC (Row 1)", "M1");
+		current.record("TC (Row 3)", "M4");
+
+		CoverageDelta delta = current.computeDelta(previous);
+		assertEquals(Arrays.asList("M4"), delta.getNewlyCoveredMarkers());
+		assertEquals(Arrays.asList("M3"), delta.getNoLongerCoveredMarkers());
+		assertEquals(Arrays.asList("TC (Row 3)", "TC (Row 2)"), delta.getChangedTestCases());
+	}
+}
@@ -0,0 +1,169 @@
+package net.bpelunit.framework.coverage.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.bpelunit.framework.coverage.CoverageConstants;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Benchmark for the overhead of coverage measurement on a test run, as seen
+ * by BPELUnit: each run calls the process under test once, and the process
+ * reports its markers to the {@link MarkerService}. The process is replaced
+ * by an echo service, as no BPEL engine is available to the unit tests.
+ *
+ * Compares an uninstrumented run (no marker messages), the default
+ * instrumentation (one message per marked activity) and buffered markers
+ * (one message per flush, with the markers of several activities). Run with
+ * <code>java net.bpelunit.framework.coverage.service.MarkerServiceBenchmark [runs] [markedActivities] [markersPerFlush]</code>.
+ */
+public class MarkerServiceBenchmark {
+
+	private static final int PORT = 9998;
+	private static final String PROCESS_PATH = "/ws/process";
+	private static final String MARKER_PATH = "/ws/"
+			+ CoverageConstants.COVERAGE_SERVICE_BPELUNIT_NAME;
+
+	private static final String REQUEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<soap:Body><tns:doSomething xmlns:tns=\"http://www.example.org/process\">"
+			+ "<tns:in>value</tns:in></tns:doSomething></soap:Body></soap:Envelope>";
+
+	private static class CountingInstrumenter extends MarkerServiceTest.DummyInstrumenter {
+		volatile int count;
+
+		@Override
+		public void pushMarker(String markerName) {
+			count++;
+		}
+	}
+
+	/**
+	 * Stands in for the process under test and the marker service.
+	 */
+	private static class BenchmarkHandler extends AbstractHandler {
+		private final MarkerService markerService;
+
+		BenchmarkHandler(MarkerService markerService) {
+			this.markerService = markerService;
+		}
+
+		public void handle(String target, Request baseRequest,
+				HttpServletRequest request, HttpServletResponse response)
+				throws IOException, ServletException {
+			if (target.equals(PROCESS_PATH)) {
+				byte[] buffer = new byte[4096];
+				while (request.getInputStream().read(buffer) >= 0) {
+					// consume the request
+				}
+				response.setStatus(200);
+				response.setContentType("text/xml");
+				response.getWriter().write(REQUEST);
+			} else {
+				markerService.handle(target, baseRequest, request, response);
+			}
+			baseRequest.setHandled(true);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		final int markedActivities = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+		final int markersPerFlush = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		CountingInstrumenter instrumenter = new CountingInstrumenter();
+		Server server = new Server(PORT);
+		server.setHandler(new BenchmarkHandler(new MarkerService(Arrays.asList(instrumenter))));
+		server.start();
+
+		try {
+			HttpClient client = new HttpClient(new MultiThreadedHttpConnectionManager());
+			List<String> perActivity = createMarkerMessages(markedActivities, 1);
+			List<String> buffered = createMarkerMessages(markedActivities, markersPerFlush);
+
+			// Warm up
+			measure(client, runs, new ArrayList<String>());
+			measure(client, runs, perActivity);
+			measure(client, runs, buffered);
+
+			final double uninstrumented = measure(client, runs, new ArrayList<String>());
+			final double unbuffered = measure(client, runs, perActivity);
+			instrumenter.count = 0;
+			final double batched = measure(client, runs, buffered);
+			if (instrumenter.count != runs * markedActivities) {
+				throw new IllegalStateException("Expected " + runs * markedActivities
+						+ " markers, but received " + instrumenter.count);
+			}
+
+			System.out.println(String.format("%d runs, %d marked activities per run, %d markers per flush",
+					runs, markedActivities, markersPerFlush));
+			System.out.println(String.format("Uninstrumented:        %.3f ms per run", uninstrumented));
+			System.out.println(String.format("One message per marker: %.3f ms per run (+%.0f%%)",
+					unbuffered, 100 * (unbuffered - uninstrumented) / uninstrumented));
+			System.out.println(String.format("Buffered markers:      %.3f ms per run (+%.0f%%)",
+					batched, 100 * (batched - uninstrumented) / uninstrumented));
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Builds the marker messages of a single run: the markers are numbered
+	 * like those of the instrumenters, and a buffered flush sends them as a
+	 * whitespace-separated list in a single Marker element.
+	 */
+	private static List<String> createMarkerMessages(int markedActivities, int markersPerMessage) {
+		List<String> messages = new ArrayList<String>();
+		for (int first = 1; first <= markedActivities; first += markersPerMessage) {
+			StringBuilder markers = new StringBuilder();
+			for (int i = first; i < first + markersPerMessage && i <= markedActivities; i++) {
+				markers.append(" ACTIVITY_MARKER_Process_").append(i);
+			}
+			messages.add("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+					+ "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+					+ "<soap:Body><tns:mark xmlns:tns=\"" + CoverageConstants.MARKER_SERVICE_NAMESPACE + "\">"
+					+ "<tns:Marker>" + markers + "</tns:Marker>"
+					+ "</tns:mark></soap:Body></soap:Envelope>");
+		}
+		return messages;
+	}
+
+	/**
+	 * Calls the process and sends the marker messages for the given number of
+	 * runs, and returns the average time of a run in milliseconds.
+	 */
+	private static double measure(HttpClient client, int runs, List<String> markerMessages) throws Exception {
+		final long start = System.nanoTime();
+		for (int run = 0; run < runs; run++) {
+			post(client, PROCESS_PATH, REQUEST);
+			for (String message : markerMessages) {
+				post(client, MARKER_PATH, message);
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / runs;
+	}
+
+	private static void post(HttpClient client, String path, String body) throws Exception {
+		PostMethod post = new PostMethod("http://localhost:" + PORT + path);
+		try {
+			post.setRequestEntity(new StringRequestEntity(body, "text/xml", "UTF-8"));
+			client.executeMethod(post);
+			post.getResponseBody();
+		} finally {
+			post.releaseConnection();
+		}
+	}
+}
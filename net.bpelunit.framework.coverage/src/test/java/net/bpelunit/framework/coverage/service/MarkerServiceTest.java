@@ -2,6 +2,7 @@ package net.bpelunit.framework.coverage.service;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -10,7 +11,9 @@ import java.util.List;
 
 import net.bpelunit.framework.coverage.CoverageConstants;
 import net.bpelunit.framework.coverage.instrumentation.AbstractInstrumenter;
+import net.bpelunit.framework.coverage.matrix.CoverageMatrix;
 import net.bpelunit.framework.coverage.result.IMetricCoverage;
+import net.bpelunit.framework.model.test.TestCase;
 import net.bpelunit.model.bpel.IAssign;
 import net.bpelunit.model.bpel.ICatch;
 import net.bpelunit.model.bpel.ICatchAll;
@@ -191,12 +194,19 @@ public class MarkerServiceTest {
 
 	private static Server httpServer;
 	private static DummyInstrumenter dummyInstrumenter = new DummyInstrumenter();
+	private static CoverageMatrix coverageMatrix;
+	private static RunningTestCaseTracker testCaseTracker;
 
 	@BeforeClass
 	public static void setUpClass() throws Exception {
 		
+		coverageMatrix = new CoverageMatrix();
+		for (String marker : new String[] { "M1", "M2", "M3", "M4" }) {
+			coverageMatrix.addMarker(marker);
+		}
+		testCaseTracker = new RunningTestCaseTracker();
 		httpServer = new Server(TEST_PORT);
-		httpServer.setHandler(new MarkerService(Arrays.asList(dummyInstrumenter)));
+		httpServer.setHandler(new MarkerService(Arrays.asList(dummyInstrumenter), coverageMatrix, testCaseTracker));
 		httpServer.start();
 	}
 	
@@ -212,19 +222,57 @@ public class MarkerServiceTest {
 	
 	@Test
 	public void testHandleWithCorrectConfiguration() throws Exception {
+		postMarkerMessage("mark.soap.xml");
+		
+		assertEquals(3, dummyInstrumenter.markers.size());
+		assertEquals("M1", dummyInstrumenter.markers.get(0));
+		assertEquals("M2", dummyInstrumenter.markers.get(1));
+		assertEquals("M3", dummyInstrumenter.markers.get(2));
+	}
+	
+	@Test
+	public void testHandleBufferedMarkers() throws Exception {
+		postMarkerMessage("mark-buffered.soap.xml");
+		
+		assertEquals(Arrays.asList("M1", "M2", "M3", "M4"), dummyInstrumenter.markers);
+	}
+
+	@Test
+	public void testMarkStartAnswersRunningTestCase() throws Exception {
+		TestCase testCase = new TestCase(null, "TC1");
+		testCaseTracker.testCaseStarted(testCase);
+		PostMethod post;
+		try {
+			post = postMarkerMessage("mark-start.soap.xml");
+		} finally {
+			testCaseTracker.testCaseEnded(testCase);
+		}
+		
+		assertEquals(200, post.getStatusCode());
+		assertTrue(post.getResponseBodyAsString().contains(">Test Case TC1</"));
+		assertEquals(Arrays.asList("M1"), coverageMatrix.getCoveredMarkerNames("Test Case TC1"));
+	}
+	
+	@Test
+	public void testMarkersAreRecordedForTheirTestCase() throws Exception {
+		// No test case is running any more, as for markers flushed at the end
+		// of a process
+		PostMethod post = postMarkerMessage("mark-testcase.soap.xml");
+		
+		assertEquals(202, post.getStatusCode());
+		assertTrue(coverageMatrix.getCoveredMarkerNames("Test Case TC1").containsAll(Arrays.asList("M2", "M3")));
+	}
+
+	private PostMethod postMarkerMessage(String resourceName) throws Exception {
 		HttpClient client = new HttpClient();
 		PostMethod post = new PostMethod();
 		post.setURI(new URI("http://localhost:" + TEST_PORT + "/" + CONTEXT + "/" + CoverageConstants.COVERAGE_SERVICE_BPELUNIT_NAME, false));
 		post.setRequestHeader("Content-Type", "text/xml");
-		InputStream soapMsgStream = getClass().getResourceAsStream("mark.soap.xml");
-		assertNotNull("mark.soap.xml exists in test resources", soapMsgStream);
+		InputStream soapMsgStream = getClass().getResourceAsStream(resourceName);
+		assertNotNull(resourceName + " exists in test resources", soapMsgStream);
 		post.setRequestEntity(new InputStreamRequestEntity(soapMsgStream));
 		client.executeMethod(post);
-		
-		assertEquals(3, dummyInstrumenter.markers.size());
-		assertEquals("M1", dummyInstrumenter.markers.get(0));
-		assertEquals("M2", dummyInstrumenter.markers.get(1));
-		assertEquals("M3", dummyInstrumenter.markers.get(2));
+		return post;
 	}
 	
 }
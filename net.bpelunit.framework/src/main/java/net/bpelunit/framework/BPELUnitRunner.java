@@ -15,7 +15,6 @@ import net.bpelunit.framework.control.ext.ExtensionRegistry;
 import net.bpelunit.framework.control.ext.IDataSource;
 import net.bpelunit.framework.control.ext.IHeaderProcessor;
 import net.bpelunit.framework.control.ext.ISOAPEncoder;
-import net.bpelunit.framework.control.util.BPELUnitConstants;
 import net.bpelunit.framework.control.util.BPELUnitUtil;
 import net.bpelunit.framework.exception.ConfigurationException;
 import net.bpelunit.framework.exception.SpecificationException;
@@ -55,6 +54,82 @@ import net.bpelunit.framework.model.test.TestSuite;
  * <td>If set to "true", this option causes BPELUnit to stop after the first
  * test case failure. The default is false. Can also be set by using setHaltOnFailure.</td>
  * </tr>
+ * <tr>
+ * <td>PARALLEL_TEST_CASES</td>
+ * <td>The number of test cases which may run at the same time within a test
+ * suite. Each concurrently running test case gets its own URL namespace on the
+ * local HTTP server, so callbacks addressed to it are routed to the right test
+ * case. Test cases which wait for requests to the same partner are not run at
+ * the same time, as the process under test calls that partner at a single
+ * address. The default is 1 (test cases are run one after another).</td>
+ * </tr>
+ * <tr>
+ * <td>PARTNER_TRACK_EXECUTOR</td>
+ * <td>How the partner tracks are run. If set to "pooled" (default), they run on
+ * a pool of threads which are reused across test cases. If set to "virtual",
+ * each partner track runs on its own virtual thread, if the JDK supports them
+ * (BPELUnit falls back to "pooled" otherwise).</td>
+ * </tr>
+ * <tr>
+ * <td>MAX_CONNECTIONS_PER_HOST</td>
+ * <td>The maximum number of HTTP connections to the same host which are kept
+ * open by a test suite for sending messages. The default is 10.</td>
+ * </tr>
+ * <tr>
+ * <td>IDLE_CONNECTION_TIMEOUT</td>
+ * <td>The time in milliseconds (ms) after which an unused HTTP connection is
+ * closed. The default is 30000 (30 seconds).</td>
+ * </tr>
+ * <tr>
+ * <td>HTTP_TRANSPORT</td>
+ * <td>How messages are sent to the process under test. If set to "commons"
+ * (default), they are sent through Commons HttpClient, blocking the sending
+ * thread. If set to "jetty", they are sent through the non-blocking Jetty HTTP
+ * client, and threads only wait for the answers.</td>
+ * </tr>
+ * <tr>
+ * <td>LAZY_TEST_CASES</td>
+ * <td>If set to "true", the test cases of a test case template are only
+ * created right before they are run, and dropped afterwards, instead of
+ * creating all of them when loading the test suite. Data sources which
+ * support it are read one row at a time. This saves memory with large data
+ * sources, but these test cases are only reported through the result
+ * listeners. The default is false.</td>
+ * </tr>
+ * <tr>
+ * <td>PAYLOAD_RETENTION</td>
+ * <td>What is kept of the messages sent and received by a test case once the
+ * result listeners have been notified of its end. If set to "all" (default),
+ * the DOM trees and SOAP messages are kept. If set to "failures", they are
+ * replaced by their serialized form for test cases with problems, and dropped
+ * for passed test cases. If set to "summaries", they are dropped for all test
+ * cases, and only their states are kept. Reports produced after the test
+ * suite has been run show "(no data)" for dropped messages, so listeners
+ * which report test cases as they end should be used with the last two
+ * values.</td>
+ * </tr>
+ * <tr>
+ * <td>RESULT_LISTENER_DISPATCH</td>
+ * <td>How the result listeners are notified. If set to "sync" (default), they
+ * are called right away by the threads running the test cases. If set to
+ * "async", the events are put on a queue and delivered by a single thread, so
+ * slow listeners do not hold up the test cases. Repeated progress events for
+ * the same artefact are merged while they wait in the queue. Listeners which
+ * need to know which test case is running at the time of the call, such as
+ * the coverage measurement, require "sync".</td>
+ * </tr>
+ * <tr>
+ * <td>RESULT_LISTENER_QUEUE_SIZE</td>
+ * <td>The maximum number of events waiting for the result listeners with the
+ * "async" dispatch. The default is 1000.</td>
+ * </tr>
+ * <tr>
+ * <td>RESULT_LISTENER_BACKPRESSURE</td>
+ * <td>What happens when the queue of the "async" dispatch is full. If set to
+ * "block" (default), the test case waits until there is room. If set to
+ * "drop", progress events are dropped instead, while the start and end of
+ * the test cases still wait.</td>
+ * </tr>
  * </table>
  * </p>
  * 
@@ -79,18 +154,52 @@ public abstract class BPELUnitRunner {
 
 	public static final String CHANGE_ENDPOINTS = "CHANGE_ENDPOINTS";
 
-	/*
-	 * Default values of options:
-	 */
-	private static boolean fSkipUnknownExtensions = false;
+	public static final String PARALLEL_TEST_CASES = "PARALLEL_TEST_CASES";
+
+	public static final String PARTNER_TRACK_EXECUTOR = "PARTNER_TRACK_EXECUTOR";
+
+	public static final String MAX_CONNECTIONS_PER_HOST = "MAX_CONNECTIONS_PER_HOST";
+
+	public static final String IDLE_CONNECTION_TIMEOUT = "IDLE_CONNECTION_TIMEOUT";
+
+	public static final String HTTP_TRANSPORT = "HTTP_TRANSPORT";
+
+	public static final String LAZY_TEST_CASES = "LAZY_TEST_CASES";
 
-	private static int fGlobalTimeout = BPELUnitConstants.TIMEOUT;
+	public static final String PAYLOAD_RETENTION = "PAYLOAD_RETENTION";
 
-	private static boolean fHaltOnError = false;
+	public static final String RESULT_LISTENER_DISPATCH = "RESULT_LISTENER_DISPATCH";
 
-	private static boolean fHaltOnFailure = false;
+	public static final String RESULT_LISTENER_QUEUE_SIZE = "RESULT_LISTENER_QUEUE_SIZE";
 
-	private static boolean fChangeEndpoints = false;
+	public static final String RESULT_LISTENER_BACKPRESSURE = "RESULT_LISTENER_BACKPRESSURE";
+
+	public static final String HTTP_TRANSPORT_COMMONS = "commons";
+
+	public static final String HTTP_TRANSPORT_JETTY = "jetty";
+
+	public static final String PARTNER_TRACK_EXECUTOR_POOLED = "pooled";
+
+	public static final String PARTNER_TRACK_EXECUTOR_VIRTUAL = "virtual";
+
+	public static final String PAYLOAD_RETENTION_ALL = "all";
+
+	public static final String PAYLOAD_RETENTION_FAILURES = "failures";
+
+	public static final String PAYLOAD_RETENTION_SUMMARIES = "summaries";
+
+	public static final String RESULT_LISTENER_DISPATCH_SYNC = "sync";
+
+	public static final String RESULT_LISTENER_DISPATCH_ASYNC = "async";
+
+	public static final String RESULT_LISTENER_BACKPRESSURE_BLOCK = "block";
+
+	public static final String RESULT_LISTENER_BACKPRESSURE_DROP = "drop";
+
+	/**
+	 * Options of this runner, shared by the test suites it loads
+	 */
+	private RunnerConfiguration fConfiguration = new RunnerConfiguration();
 
 	/**
 	 * Indicates whether the runner has been properly initialized
@@ -118,47 +227,8 @@ public abstract class BPELUnitRunner {
 		// Revert state
 		fInitialized = false;
 
-		fSkipUnknownExtensions = false;
-		String skipUnknown = options.get(SKIP_UNKNOWN_EXTENSIONS);
-		if ((skipUnknown != null) && (skipUnknown.equalsIgnoreCase("true"))) {
-			fSkipUnknownExtensions = true;
-		}
-
-		fHaltOnError = false;
-		String haltOnErr = options.get(HALT_ON_ERROR);
-		if ((haltOnErr != null) && (haltOnErr.equalsIgnoreCase("true"))) {
-			setHaltOnError(true);
-		} else {
-			// is default but when resetting this is needed
-			setHaltOnError(false);
-		}
+		fConfiguration = new RunnerConfiguration(options);
 
-		fHaltOnFailure = false;
-		String haltOnFail = options.get(HALT_ON_FAILURE);
-		if ((haltOnFail != null) && (haltOnFail.equalsIgnoreCase("true"))) {
-			setHaltOnFailure(true);
-		} else {
-			setHaltOnFailure(false);
-		}
-
-		String changeEndpoints = options.get(CHANGE_ENDPOINTS);
-		if ((changeEndpoints != null)
-				&& (changeEndpoints.equalsIgnoreCase("true"))) {
-			fChangeEndpoints = true;
-		}
-
-		fGlobalTimeout = BPELUnitConstants.TIMEOUT;
-		String timeout = options.get(GLOBAL_TIMEOUT);
-		if (timeout != null) {
-			try {
-				fGlobalTimeout = Integer.parseInt(timeout);
-			} catch (NumberFormatException e) {
-				throw new ConfigurationException(
-						"Global timeout value in options is not an integer: "
-								+ timeout, e);
-			}
-		}
-		
 		configureInit();
 
 		configureLogging();
@@ -172,11 +242,40 @@ public abstract class BPELUnitRunner {
 	}
 
 	public void setHaltOnFailure(boolean b) {
-		fHaltOnFailure = b;
+		fConfiguration.setHaltOnFailure(b);
 	}
 
 	public void setHaltOnError(boolean b) {
-		fHaltOnError = b;
+		fConfiguration.setHaltOnError(b);
+	}
+
+	/**
+	 * Sets what is kept of the messages of a test case once it has been
+	 * reported (see the PAYLOAD_RETENTION option).
+	 * 
+	 * @throws ConfigurationException
+	 *             unknown retention policy
+	 */
+	public void setPayloadRetention(String payloadRetention)
+			throws ConfigurationException {
+		fConfiguration.setPayloadRetention(payloadRetention);
+	}
+
+	/**
+	 * Returns the options of this runner. The test suites loaded by this
+	 * runner share them, so changes made before running a suite apply to it.
+	 */
+	public RunnerConfiguration getConfiguration() {
+		return fConfiguration;
+	}
+
+	/**
+	 * Returns whether unknown extensions should be skipped
+	 * 
+	 * @return true if skip
+	 */
+	public boolean isSkipUnknownExtensions() {
+		return fConfiguration.isSkipUnknownExtensions();
 	}
 
 	/**
@@ -223,6 +322,26 @@ public abstract class BPELUnitRunner {
 	 */
 	public TestSuite loadTestSuite(File suiteFile)
 			throws SpecificationException {
+		return loadTestSuite(suiteFile, -1);
+	}
+
+	/**
+	 * Loads a test suite as above, but lets its simulated partners listen on
+	 * the given port instead of the port of the base URL in the .bpts file.
+	 * This allows several suites to be run at the same time.
+	 * 
+	 * @param suiteFile
+	 *            path to the .bpts file.
+	 * @param basePort
+	 *            port for the local HTTP server of the suite, or -1 to use the
+	 *            one from the base URL.
+	 * @return the test suite
+	 * 
+	 * @throws SpecificationException
+	 *             A problem with the test suite file or xml
+	 */
+	public TestSuite loadTestSuite(File suiteFile, int basePort)
+			throws SpecificationException {
 
 		// Check setup
 		if (!fInitialized) {
@@ -230,7 +349,7 @@ public abstract class BPELUnitRunner {
 					"BPELUnitCore was not properly initialized. Please call initialize() first.");
 		}
 
-		return new SpecificationLoader(this).loadTestSuite(suiteFile);
+		return new SpecificationLoader(this, basePort).loadTestSuite(suiteFile);
 	}
 
 	/**
@@ -288,46 +407,6 @@ public abstract class BPELUnitRunner {
 		return ExtensionRegistry.getGlobalConfigurationForDeployer(deployer);
 	}
 
-	/**
-	 * Returns the configured timeout
-	 * 
-	 * @return timeout in milliseconds
-	 */
-	public static int getTimeout() {
-		return fGlobalTimeout;
-	}
-
-	/**
-	 * Returns whether unknown extensions should be skipped
-	 * 
-	 * @return true if skip
-	 */
-	public static boolean isSkipUnknownExtensions() {
-		return fSkipUnknownExtensions;
-	}
-
-	/**
-	 * Returns whether BPELUnit halts on error
-	 * 
-	 * @return
-	 */
-	public static boolean isHaltOnError() {
-		return fHaltOnError;
-	}
-
-	/**
-	 * Returns whether BPELUnit halts on failure
-	 * 
-	 * @return
-	 */
-	public static boolean isHaltOnFailure() {
-		return fHaltOnFailure;
-	}
-
-	public static boolean changeEndpoints() {
-		return fChangeEndpoints;
-	}
-
 	// ******************** internals ******************
 
 	private void initializeXMLParser() throws ConfigurationException {
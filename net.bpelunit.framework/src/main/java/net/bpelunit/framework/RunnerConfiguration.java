@@ -0,0 +1,370 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plug-in set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework;
+
+import java.util.List;
+import java.util.Map;
+
+import net.bpelunit.framework.control.run.AsynchronousTestResultDispatcher;
+import net.bpelunit.framework.control.run.IPartnerTrackExecutor;
+import net.bpelunit.framework.control.run.ITestResultDispatcher;
+import net.bpelunit.framework.control.run.PooledPartnerTrackExecutor;
+import net.bpelunit.framework.control.run.SynchronousTestResultDispatcher;
+import net.bpelunit.framework.control.run.VirtualThreadPartnerTrackExecutor;
+import net.bpelunit.framework.control.util.BPELUnitConstants;
+import net.bpelunit.framework.control.ws.CommonsHttpMessageTransport;
+import net.bpelunit.framework.control.ws.IMessageTransport;
+import net.bpelunit.framework.control.ws.JettyMessageTransport;
+import net.bpelunit.framework.exception.ConfigurationException;
+import net.bpelunit.framework.model.test.ITestResultListener;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.log4j.Logger;
+
+/**
+ * The options of a runner (see {@link BPELUnitRunner} for the list). Each
+ * runner has its own configuration, which is handed to the test suites it
+ * loads and from there to their test cases, so several runners with
+ * different options can load and run test suites at the same time in one
+ * JVM.
+ *
+ * The halting options and the payload retention may still be changed after
+ * the test suites have been loaded.
+ */
+public class RunnerConfiguration {
+
+	private boolean fSkipUnknownExtensions = false;
+
+	private int fGlobalTimeout = BPELUnitConstants.TIMEOUT;
+
+	private volatile boolean fHaltOnError = false;
+
+	private volatile boolean fHaltOnFailure = false;
+
+	private boolean fChangeEndpoints = false;
+
+	private int fParallelTestCases = 1;
+
+	private String fPartnerTrackExecutor = BPELUnitRunner.PARTNER_TRACK_EXECUTOR_POOLED;
+
+	private int fMaxConnectionsPerHost = BPELUnitConstants.MAX_CONNECTIONS_PER_HOST;
+
+	private int fIdleConnectionTimeout = BPELUnitConstants.IDLE_CONNECTION_TIMEOUT;
+
+	private String fHttpTransport = BPELUnitRunner.HTTP_TRANSPORT_COMMONS;
+
+	private boolean fLazyTestCases = false;
+
+	private volatile String fPayloadRetention = BPELUnitRunner.PAYLOAD_RETENTION_ALL;
+
+	private boolean fAsyncResultListeners = false;
+
+	private int fResultListenerQueueSize = BPELUnitConstants.RESULT_LISTENER_QUEUE_SIZE;
+
+	private boolean fDropProgressWhenFull = false;
+
+	/**
+	 * Creates a configuration with the default values of all options.
+	 */
+	public RunnerConfiguration() {
+	}
+
+	/**
+	 * Creates a configuration from the given options, using the default values
+	 * for those which are not set.
+	 * 
+	 * @throws ConfigurationException
+	 *             an option has an invalid value
+	 */
+	public RunnerConfiguration(Map<String, String> options)
+			throws ConfigurationException {
+		fSkipUnknownExtensions = isTrue(options,
+				BPELUnitRunner.SKIP_UNKNOWN_EXTENSIONS);
+		fHaltOnError = isTrue(options, BPELUnitRunner.HALT_ON_ERROR);
+		fHaltOnFailure = isTrue(options, BPELUnitRunner.HALT_ON_FAILURE);
+		fChangeEndpoints = isTrue(options, BPELUnitRunner.CHANGE_ENDPOINTS);
+		fLazyTestCases = isTrue(options, BPELUnitRunner.LAZY_TEST_CASES);
+
+		String timeout = options.get(BPELUnitRunner.GLOBAL_TIMEOUT);
+		if (timeout != null) {
+			try {
+				fGlobalTimeout = Integer.parseInt(timeout);
+			} catch (NumberFormatException e) {
+				throw new ConfigurationException(
+						"Global timeout value in options is not an integer: "
+								+ timeout, e);
+			}
+		}
+
+		fParallelTestCases = parsePositiveIntOption(options,
+				BPELUnitRunner.PARALLEL_TEST_CASES, 1,
+				"Number of parallel test cases");
+		fMaxConnectionsPerHost = parsePositiveIntOption(options,
+				BPELUnitRunner.MAX_CONNECTIONS_PER_HOST,
+				BPELUnitConstants.MAX_CONNECTIONS_PER_HOST,
+				"Maximum number of connections per host");
+		fIdleConnectionTimeout = parsePositiveIntOption(options,
+				BPELUnitRunner.IDLE_CONNECTION_TIMEOUT,
+				BPELUnitConstants.IDLE_CONNECTION_TIMEOUT,
+				"Idle connection timeout");
+		fResultListenerQueueSize = parsePositiveIntOption(options,
+				BPELUnitRunner.RESULT_LISTENER_QUEUE_SIZE,
+				BPELUnitConstants.RESULT_LISTENER_QUEUE_SIZE,
+				"Result listener queue size");
+
+		String partnerTrackExecutor = options.get(BPELUnitRunner.PARTNER_TRACK_EXECUTOR);
+		if (partnerTrackExecutor != null) {
+			if (partnerTrackExecutor.equalsIgnoreCase(BPELUnitRunner.PARTNER_TRACK_EXECUTOR_VIRTUAL)) {
+				fPartnerTrackExecutor = BPELUnitRunner.PARTNER_TRACK_EXECUTOR_VIRTUAL;
+			} else if (!partnerTrackExecutor.equalsIgnoreCase(BPELUnitRunner.PARTNER_TRACK_EXECUTOR_POOLED)) {
+				throw new ConfigurationException(
+						"Unknown partner track executor in options: "
+								+ partnerTrackExecutor);
+			}
+		}
+
+		String httpTransport = options.get(BPELUnitRunner.HTTP_TRANSPORT);
+		if (httpTransport != null) {
+			if (httpTransport.equalsIgnoreCase(BPELUnitRunner.HTTP_TRANSPORT_JETTY)) {
+				fHttpTransport = BPELUnitRunner.HTTP_TRANSPORT_JETTY;
+			} else if (!httpTransport.equalsIgnoreCase(BPELUnitRunner.HTTP_TRANSPORT_COMMONS)) {
+				throw new ConfigurationException(
+						"Unknown HTTP transport in options: " + httpTransport);
+			}
+		}
+
+		String payloadRetention = options.get(BPELUnitRunner.PAYLOAD_RETENTION);
+		if (payloadRetention != null) {
+			setPayloadRetention(payloadRetention);
+		}
+
+		String resultListenerDispatch = options.get(BPELUnitRunner.RESULT_LISTENER_DISPATCH);
+		if (resultListenerDispatch != null) {
+			if (resultListenerDispatch.equalsIgnoreCase(BPELUnitRunner.RESULT_LISTENER_DISPATCH_ASYNC)) {
+				fAsyncResultListeners = true;
+			} else if (!resultListenerDispatch.equalsIgnoreCase(BPELUnitRunner.RESULT_LISTENER_DISPATCH_SYNC)) {
+				throw new ConfigurationException(
+						"Unknown result listener dispatch in options: "
+								+ resultListenerDispatch);
+			}
+		}
+
+		String backpressure = options.get(BPELUnitRunner.RESULT_LISTENER_BACKPRESSURE);
+		if (backpressure != null) {
+			if (backpressure.equalsIgnoreCase(BPELUnitRunner.RESULT_LISTENER_BACKPRESSURE_DROP)) {
+				fDropProgressWhenFull = true;
+			} else if (!backpressure.equalsIgnoreCase(BPELUnitRunner.RESULT_LISTENER_BACKPRESSURE_BLOCK)) {
+				throw new ConfigurationException(
+						"Unknown result listener backpressure in options: "
+								+ backpressure);
+			}
+		}
+	}
+
+	// ******************** Halting and retention ******************
+
+	public void setHaltOnError(boolean haltOnError) {
+		fHaltOnError = haltOnError;
+	}
+
+	public void setHaltOnFailure(boolean haltOnFailure) {
+		fHaltOnFailure = haltOnFailure;
+	}
+
+	/**
+	 * Sets what is kept of the messages of a test case once it has been
+	 * reported (see the PAYLOAD_RETENTION option).
+	 * 
+	 * @throws ConfigurationException
+	 *             unknown retention policy
+	 */
+	public void setPayloadRetention(String payloadRetention)
+			throws ConfigurationException {
+		if (payloadRetention.equalsIgnoreCase(BPELUnitRunner.PAYLOAD_RETENTION_ALL)) {
+			fPayloadRetention = BPELUnitRunner.PAYLOAD_RETENTION_ALL;
+		} else if (payloadRetention.equalsIgnoreCase(BPELUnitRunner.PAYLOAD_RETENTION_FAILURES)) {
+			fPayloadRetention = BPELUnitRunner.PAYLOAD_RETENTION_FAILURES;
+		} else if (payloadRetention.equalsIgnoreCase(BPELUnitRunner.PAYLOAD_RETENTION_SUMMARIES)) {
+			fPayloadRetention = BPELUnitRunner.PAYLOAD_RETENTION_SUMMARIES;
+		} else {
+			throw new ConfigurationException(
+					"Unknown payload retention policy in options: "
+							+ payloadRetention);
+		}
+	}
+
+	// ******************** Getters ******************
+
+	/**
+	 * Returns the configured timeout
+	 * 
+	 * @return timeout in milliseconds
+	 */
+	public int getTimeout() {
+		return fGlobalTimeout;
+	}
+
+	/**
+	 * Returns whether unknown extensions should be skipped
+	 * 
+	 * @return true if skip
+	 */
+	public boolean isSkipUnknownExtensions() {
+		return fSkipUnknownExtensions;
+	}
+
+	/**
+	 * Returns whether BPELUnit halts on error
+	 */
+	public boolean isHaltOnError() {
+		return fHaltOnError;
+	}
+
+	/**
+	 * Returns whether BPELUnit halts on failure
+	 */
+	public boolean isHaltOnFailure() {
+		return fHaltOnFailure;
+	}
+
+	public boolean isChangeEndpoints() {
+		return fChangeEndpoints;
+	}
+
+	/**
+	 * Returns how many test cases of a suite may be run at the same time
+	 * 
+	 * @return number of concurrently running test cases (1 = sequential)
+	 */
+	public int getParallelTestCases() {
+		return fParallelTestCases;
+	}
+
+	/**
+	 * Returns the maximum number of HTTP connections per host kept by a suite
+	 * 
+	 * @return maximum number of connections per host
+	 */
+	public int getMaxConnectionsPerHost() {
+		return fMaxConnectionsPerHost;
+	}
+
+	/**
+	 * Returns the time after which idle HTTP connections are closed
+	 * 
+	 * @return idle connection timeout in milliseconds
+	 */
+	public int getIdleConnectionTimeout() {
+		return fIdleConnectionTimeout;
+	}
+
+	/**
+	 * Returns whether test cases are created right before they are run
+	 * 
+	 * @return true if test cases are created lazily
+	 */
+	public boolean isLazyTestCases() {
+		return fLazyTestCases;
+	}
+
+	/**
+	 * Returns what is kept of the messages of a test case once it has been
+	 * reported
+	 * 
+	 * @return one of the PAYLOAD_RETENTION_* values
+	 */
+	public String getPayloadRetention() {
+		return fPayloadRetention;
+	}
+
+	// ******************** Factories ******************
+
+	/**
+	 * Creates a new dispatcher for the events of a test suite, as selected by
+	 * the RESULT_LISTENER_* options.
+	 * 
+	 * @param listeners
+	 *            result listeners of the test suite, which may be iterated by
+	 *            another thread
+	 * @return the dispatcher, which should be shut down once the test suite
+	 *         has been run
+	 */
+	public ITestResultDispatcher createResultDispatcher(
+			List<ITestResultListener> listeners) {
+		if (fAsyncResultListeners) {
+			return new AsynchronousTestResultDispatcher(listeners,
+					fResultListenerQueueSize, fDropProgressWhenFull);
+		}
+		return new SynchronousTestResultDispatcher(listeners);
+	}
+
+	/**
+	 * Creates a new executor for the partner tracks of a test suite, as
+	 * selected by the PARTNER_TRACK_EXECUTOR option.
+	 * 
+	 * @return the executor, which should be shut down once the test suite has
+	 *         been run
+	 */
+	public IPartnerTrackExecutor createPartnerTrackExecutor() {
+		if (BPELUnitRunner.PARTNER_TRACK_EXECUTOR_VIRTUAL.equals(fPartnerTrackExecutor)) {
+			final IPartnerTrackExecutor executor = VirtualThreadPartnerTrackExecutor.create();
+			if (executor != null) {
+				return executor;
+			}
+			Logger.getLogger(getClass()).warn(
+					"Virtual threads are not supported by this JDK: using a thread pool for the partner tracks");
+		}
+		return new PooledPartnerTrackExecutor();
+	}
+
+	/**
+	 * Creates a new transport for the messages sent by a test suite, as
+	 * selected by the HTTP_TRANSPORT option. The transport still has to be
+	 * started.
+	 * 
+	 * @param client
+	 *            HTTP client of the test suite, used by the default transport
+	 * @return the transport, which should be stopped once the test suite has
+	 *         been shut down
+	 */
+	public IMessageTransport createMessageTransport(HttpClient client) {
+		if (BPELUnitRunner.HTTP_TRANSPORT_JETTY.equals(fHttpTransport)) {
+			return new JettyMessageTransport(fMaxConnectionsPerHost,
+					fIdleConnectionTimeout, fGlobalTimeout);
+		}
+		return new CommonsHttpMessageTransport(client, fGlobalTimeout);
+	}
+
+	// ******************** internals ******************
+
+	private static boolean isTrue(Map<String, String> options, String option) {
+		String value = options.get(option);
+		return value != null && value.equalsIgnoreCase("true");
+	}
+
+	private static int parsePositiveIntOption(Map<String, String> options,
+			String option, int defaultValue, String description)
+			throws ConfigurationException {
+		String value = options.get(option);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		int parsed;
+		try {
+			parsed = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException(description
+					+ " in options is not an integer: " + value, e);
+		}
+		if (parsed < 1) {
+			throw new ConfigurationException(description
+					+ " must be at least 1, but was " + parsed);
+		}
+		return parsed;
+	}
+
+}
@@ -13,11 +13,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.wsdl.Definition;
 import javax.wsdl.WSDLException;
-import javax.wsdl.factory.WSDLFactory;
-import javax.wsdl.xml.WSDLReader;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
@@ -30,16 +30,20 @@ import net.bpelunit.framework.control.deploy.IBPELDeployer;
 import net.bpelunit.framework.control.ext.IDataSource;
 import net.bpelunit.framework.control.ext.IHeaderProcessor;
 import net.bpelunit.framework.control.ext.ISOAPEncoder;
+import net.bpelunit.framework.control.ext.IStreamingDataSource;
 import net.bpelunit.framework.control.soap.NamespaceContextImpl;
 import net.bpelunit.framework.control.util.ActivityUtil;
 import net.bpelunit.framework.control.util.ActivityUtil.ActivityConstant;
 import net.bpelunit.framework.control.util.BPELUnitConstants;
 import net.bpelunit.framework.control.util.BPELUnitUtil;
+import net.bpelunit.framework.control.util.VelocityTemplate;
+import net.bpelunit.framework.control.util.WSDLDefinitionCache;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.exception.SpecificationException;
 import net.bpelunit.framework.model.HumanPartner;
 import net.bpelunit.framework.model.Partner;
 import net.bpelunit.framework.model.ProcessUnderTest;
+import net.bpelunit.framework.model.test.ITestCaseFactory;
 import net.bpelunit.framework.model.test.PartnerTrack;
 import net.bpelunit.framework.model.test.TestCase;
 import net.bpelunit.framework.model.test.TestSuite;
@@ -62,6 +66,7 @@ import net.bpelunit.framework.model.test.data.SOAPOperationCallIdentifier;
 import net.bpelunit.framework.model.test.data.SOAPOperationDirectionIdentifier;
 import net.bpelunit.framework.model.test.data.SendDataSpecification;
 import net.bpelunit.framework.model.test.data.extraction.DataExtraction;
+import net.bpelunit.framework.verify.ActivityDependenciesValidator;
 import net.bpelunit.framework.verify.ConditionGroupsExistInTestSuiteValidator;
 import net.bpelunit.framework.verify.ITestSuiteValidator;
 import net.bpelunit.framework.verify.NoCyclesInConditionGroupInheritanceValidator;
@@ -112,8 +117,6 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import com.ibm.wsdl.Constants;
-
 /**
  * The specificaton loader reads test suite documents and creates the in-memory
  * test run data structure, which is made ready for test execution.
@@ -127,10 +130,20 @@ public class SpecificationLoader {
 	private Logger fLogger;
 	private BPELUnitRunner fRunner;
 
+	/**
+	 * Port which replaces the one of the base URL of the suite (-1 = keep it)
+	 */
+	private int fBasePort;
+
 	private Map<String, XMLConditionGroup> conditionGroups = new HashMap<String, XMLConditionGroup>();
 
 	public SpecificationLoader(BPELUnitRunner runner) {
+		this(runner, -1);
+	}
+
+	public SpecificationLoader(BPELUnitRunner runner, int basePort) {
 		fRunner = runner;
+		fBasePort = basePort;
 		fLogger = Logger.getLogger(getClass());
 	}
 
@@ -145,10 +158,20 @@ public class SpecificationLoader {
 					.parse(suite);
 			validateTestSuite(doc);
 			extractConditionGroups(doc);
+
+			WSDLDefinitionCache wsdlCache = WSDLDefinitionCache.getInstance();
+			long wsdlCacheHits = wsdlCache.getHits();
+			long wsdlCacheMisses = wsdlCache.getMisses();
+			long wsdlLoadTimeSaved = wsdlCache.getSavedLoadTimeMillis();
 			TestSuite testSuite = parseSuite(path, doc);
 
 			fLogger.info("Loaded test suite with name \"" + testSuite.getName()
 					+ "\" and " + testSuite.getTestCaseCount() + " test cases.");
+			fLogger.info(String.format(
+					"WSDL cache: %d definitions reused, %d read, about %d ms of loading saved",
+					wsdlCache.getHits() - wsdlCacheHits,
+					wsdlCache.getMisses() - wsdlCacheMisses,
+					wsdlCache.getSavedLoadTimeMillis() - wsdlLoadTimeSaved));
 
 			return testSuite;
 
@@ -249,6 +272,7 @@ public class SpecificationLoader {
 		// Create the suite.
 		TestSuite suite = new TestSuite(xmlSuiteName, suiteBaseURL,
 				processUnderTest);
+		suite.setConfiguration(fRunner.getConfiguration());
 
 		// Process the contents of the setUp block, if any
 		try {
@@ -317,8 +341,19 @@ public class SpecificationLoader {
 		int rounds = computeNumberOfRounds(xmlTestSuiteDocument, isVary);
 		fLogger.info("Varying: " + isVary + " (Rounds: " + rounds + ")");
 
+		if (fRunner.getConfiguration().isLazyTestCases()) {
+			if (!xmlTestCase.getAbstract()) {
+				suite.addTestCaseFactory(new RowCursorTestCaseFactory(
+						testDirectory, xmlTestSuite, suitePartners,
+						suiteHumanPartners, suiteClient, suite, xmlTestCase,
+						xmlTestCaseName, rounds, getNumberOfRounds(isVary,
+								rounds)));
+			}
+			return;
+		}
+
 		IDataSource dataSource = readDataSource(testDirectory, xmlTestSuite,
-				xmlTestCase);
+				xmlTestCase, false);
 
 		final int nRows = getNumberOfRows(dataSource);
 		final int nRounds = getNumberOfRounds(isVary, rounds);
@@ -331,6 +366,10 @@ public class SpecificationLoader {
 							suiteHumanPartners, suiteClient, suite,
 							xmlTestCase, currentTestCaseName, iRound,
 							testDirectory);
+					if (iRow == 0 && iRound == 0) {
+						// all rows and rounds share the same activities
+						new ActivityDependenciesValidator().validate(test);
+					}
 					test.setDataSource(dataSource);
 					test.setRowIndex(iRow);
 					suite.addTestCase(test);
@@ -370,12 +409,12 @@ public class SpecificationLoader {
 	}
 
 	private IDataSource readDataSource(String testDirectory,
-			XMLTestSuite xmlTestSuite, XMLTestCase xmlTestCase)
-			throws SpecificationException {
+			XMLTestSuite xmlTestSuite, XMLTestCase xmlTestCase,
+			boolean streaming) throws SpecificationException {
 		IDataSource dataSource;
 		try {
 			dataSource = DataSourceUtil.createDataSource(xmlTestSuite,
-					xmlTestCase, new File(testDirectory), fRunner);
+					xmlTestCase, new File(testDirectory), fRunner, streaming);
 		} catch (DataSourceException e) {
 			throw new SpecificationException("There was a problem while "
 					+ "initializing the specified data source.", e);
@@ -383,6 +422,206 @@ public class SpecificationLoader {
 		return dataSource;
 	}
 
+	/**
+	 * Creates the test cases of a test case template while the suite is run,
+	 * moving through the rows of its data source. Data sources which can be
+	 * streamed are read one row at a time, and the values of the current row
+	 * are copied into the test case. The data source is opened when loading
+	 * the suite, so problems are reported early, and opened again for each
+	 * later run.
+	 */
+	private final class RowCursorTestCaseFactory implements ITestCaseFactory {
+		private final String fTestDirectory;
+		private final XMLTestSuite fXmlTestSuite;
+		private final Map<String, Partner> fSuitePartners;
+		private final Map<String, HumanPartner> fSuiteHumanPartners;
+		private final Partner fSuiteClient;
+		private final TestSuite fSuite;
+		private final XMLTestCase fXmlTestCase;
+		private final String fXmlTestCaseName;
+		private final int fRounds;
+		private final int fRoundsPerRow;
+		private final boolean fHasDataSource;
+		private final Pattern fNamePattern;
+
+		/**
+		 * Number of rows of the data source, or -1 if it is not known
+		 */
+		private int fRowCount;
+
+		private IDataSource fDataSource;
+		private boolean fDataSourceUnread;
+		private Map<String, Object> fRowValues;
+		private int fRow;
+		private int fRound;
+		private String fTestCaseName;
+		private int fTestCasesSeen;
+
+		public RowCursorTestCaseFactory(String testDirectory,
+				XMLTestSuite xmlTestSuite, Map<String, Partner> suitePartners,
+				Map<String, HumanPartner> suiteHumanPartners,
+				Partner suiteClient, TestSuite suite, XMLTestCase xmlTestCase,
+				String xmlTestCaseName, int rounds, int roundsPerRow)
+				throws SpecificationException {
+			fTestDirectory = testDirectory;
+			fXmlTestSuite = xmlTestSuite;
+			fSuitePartners = suitePartners;
+			fSuiteHumanPartners = suiteHumanPartners;
+			fSuiteClient = suiteClient;
+			fSuite = suite;
+			fXmlTestCase = xmlTestCase;
+			fXmlTestCaseName = xmlTestCaseName;
+			fRounds = rounds;
+			fRoundsPerRow = roundsPerRow;
+
+			fDataSource = readDataSource(testDirectory, xmlTestSuite,
+					xmlTestCase, true);
+			fDataSourceUnread = true;
+			fHasDataSource = fDataSource != null;
+			fRowCount = fHasDataSource ? fDataSource.getNumberOfRows() : 1;
+
+			String namePattern = Pattern.quote(xmlTestCaseName);
+			if (fHasDataSource) {
+				namePattern += " \\(Row (\\d+)\\)";
+			}
+			if (rounds > 1) {
+				namePattern += " \\(Round (\\d+)\\)";
+			}
+			fNamePattern = Pattern.compile(namePattern, Pattern.CASE_INSENSITIVE);
+
+			// check the activities now, as the test cases are created later
+			new ActivityDependenciesValidator().validate(
+					SpecificationLoader.this.createTestCase(suitePartners,
+							suiteHumanPartners, suiteClient, suite,
+							xmlTestCase, xmlTestCaseName, 0, testDirectory));
+		}
+
+		public void open() throws SpecificationException {
+			if (!fDataSourceUnread) {
+				closeDataSource();
+				if (fHasDataSource) {
+					fDataSource = readDataSource(fTestDirectory, fXmlTestSuite,
+							fXmlTestCase, true);
+				}
+			}
+			fDataSourceUnread = false;
+			fRow = -1;
+			fRound = fRoundsPerRow - 1;
+			fRowValues = null;
+			fTestCaseName = null;
+		}
+
+		public String nextTestCaseName() throws SpecificationException {
+			if (fRound + 1 < fRoundsPerRow) {
+				fRound++;
+			} else if (nextRow()) {
+				fRound = 0;
+			} else {
+				fTestCaseName = null;
+				return null;
+			}
+
+			fTestCasesSeen = Math.max(fTestCasesSeen, fRow * fRoundsPerRow
+					+ fRound + 1);
+			fTestCaseName = getHumanReadableTestCaseName(fXmlTestCaseName,
+					fRounds, fHasDataSource ? fDataSource : null, fRow, fRound);
+			return fTestCaseName;
+		}
+
+		private boolean nextRow() throws SpecificationException {
+			if (!fHasDataSource) {
+				if (fRow >= 0) {
+					return false;
+				}
+				fRow = 0;
+				return true;
+			}
+			if (fDataSource == null) {
+				return false;
+			}
+
+			try {
+				if (fDataSource instanceof IStreamingDataSource) {
+					if (!((IStreamingDataSource) fDataSource).nextRow()) {
+						fRowCount = fRow + 1;
+						closeDataSource();
+						return false;
+					}
+				} else if (fRow + 1 < fDataSource.getNumberOfRows()) {
+					fDataSource.setRow(fRow + 1);
+				} else {
+					closeDataSource();
+					return false;
+				}
+			} catch (DataSourceException e) {
+				throw new SpecificationException("Could not read row "
+						+ (fRow + 2) + " of the data source for "
+						+ fXmlTestCaseName, e);
+			}
+
+			fRow++;
+			fRowValues = DataSourceUtil.getCurrentRow(fDataSource);
+			return true;
+		}
+
+		public TestCase createTestCase() throws SpecificationException {
+			if (fTestCaseName == null) {
+				throw new IllegalStateException(
+						"The cursor is not on a test case");
+			}
+			TestCase test = SpecificationLoader.this.createTestCase(
+					fSuitePartners, fSuiteHumanPartners, fSuiteClient, fSuite,
+					fXmlTestCase, fTestCaseName, fRound, fTestDirectory);
+			test.setRowIndex(fRow);
+			if (fRowValues != null) {
+				test.setRowValues(fRowValues);
+			}
+			return test;
+		}
+
+		public void close() {
+			closeDataSource();
+			fRowValues = null;
+			fTestCaseName = null;
+		}
+
+		private void closeDataSource() {
+			if (fDataSource != null) {
+				fDataSource.close();
+				fDataSource = null;
+			}
+		}
+
+		public boolean canCreate(String testCaseName) {
+			Matcher matcher = fNamePattern.matcher(testCaseName);
+			if (!matcher.matches()) {
+				return false;
+			}
+
+			int group = 1;
+			if (fHasDataSource) {
+				int row = Integer.parseInt(matcher.group(group++));
+				if (row < 1 || fRowCount >= 0 && row > fRowCount) {
+					return false;
+				}
+			}
+			if (fRounds > 1) {
+				int round = Integer.parseInt(matcher.group(group));
+				if (round < 1 || round > fRoundsPerRow) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public int getTestCaseCount() {
+			if (fRowCount >= 0) {
+				return fRowCount * fRoundsPerRow;
+			}
+			return fTestCasesSeen;
+		}
+	}
+
 	private void createPartners(String testDirectory, URL suiteBaseURL,
 			XMLDeploymentSection xmlDeployment,
 			Map<String, Partner> suitePartners) throws SpecificationException {
@@ -425,16 +664,18 @@ public class SpecificationLoader {
 							+ ": File \"" + wsdlFileName + "\" not found.");
 		}
 
-		// load WSDL
+		// load WSDL, or reuse it if it has not changed since it was last read
 		try {
-			WSDLFactory factory = WSDLFactory.newInstance();
-			WSDLReader reader = factory.newWSDLReader();
-			reader.setFeature(Constants.FEATURE_VERBOSE, false);
-			return reader.readWSDL(wsdlFileName);
+			return WSDLDefinitionCache.getInstance().getDefinition(
+					new File(wsdlFileName));
 		} catch (WSDLException e) {
 			throw new SpecificationException(
 					"Error while reading WSDL for partner " + partnerName
 							+ " from file \"" + wsdlFileName + "\".", e);
+		} catch (IOException e) {
+			throw new SpecificationException(
+					"Error while reading WSDL for partner " + partnerName
+							+ " from file \"" + wsdlFileName + "\".", e);
 		}
 	}
 
@@ -460,6 +701,8 @@ public class SpecificationLoader {
 		processUnderTest.setDeployer(suitePutDeployer);
 		processUnderTest.setGlobalConfiguration(fRunner
 				.getGlobalConfigurationForDeployer(suitePutDeployer));
+		processUnderTest.setChangeEndpoints(fRunner.getConfiguration()
+				.isChangeEndpoints());
 
 		// Add the put to the partners in case of running in test mode
 		suitePartners.put(processUnderTest.getName(), processUnderTest);
@@ -484,7 +727,7 @@ public class SpecificationLoader {
 			URL suiteBaseURL = new URL(xmlUrl);
 
 			// Normalize the URL: add port and trailing slash if missing
-			int port = suiteBaseURL.getPort();
+			int port = fBasePort != -1 ? fBasePort : suiteBaseURL.getPort();
 			if (port == -1) {
 				port = BPELUnitConstants.DEFAULT_BASE_PORT;
 			}
@@ -548,14 +791,15 @@ public class SpecificationLoader {
 	}
 
 	private void readTestSuiteSetUpBlock(TestSuite testSuite,
-			XMLTestSuite xmlTestSuite) {
+			XMLTestSuite xmlTestSuite) throws SpecificationException {
 		if (!xmlTestSuite.isSetSetUp()) {
 			return;
 		}
 
 		XMLSetUp xmlSetUp = xmlTestSuite.getSetUp();
 		if (xmlSetUp.isSetScript()) {
-			testSuite.setSetUpVelocityScript(xmlSetUp.getScript());
+			testSuite.setSetUpVelocityTemplate(VelocityTemplate.compile(
+					"setUpTestSuite", xmlSetUp.getScript()));
 		}
 	}
 
@@ -645,18 +889,18 @@ public class SpecificationLoader {
 							+ activity, ex);
 		}
 		final Element literalSendDataChild = rawDataRoot != null ? (Element)rawDataRoot.getFirstChild() : null;
+		final VelocityTemplate template = VelocityTemplate.compile(
+				"template in " + activity, templateText);
 		
 		CompleteHumanTaskSpecification spec = new CompleteHumanTaskSpecification(
-				activity, context, literalSendDataChild, templateText, pTrack);
+				activity, context, literalSendDataChild, template, pTrack);
 
 		// get conditions
 		List<XMLCondition> xmlConditionList = xmlActivity.getConditionList();
 		List<ReceiveCondition> cList = new ArrayList<ReceiveCondition>();
 		if (xmlConditionList != null) {
 			for (XMLCondition xmlCondition : xmlConditionList) {
-				cList.add(new ReceiveCondition(spec, xmlCondition
-						.getExpression(), xmlCondition.getTemplate(),
-						xmlCondition.getValue()));
+				cList.add(createReceiveCondition(spec, xmlCondition));
 			}
 		}
 		addConditionsFromConditionGroups(
@@ -721,14 +965,16 @@ public class SpecificationLoader {
 		}
 	}
 
-	private void readTestCaseSetUpBlock(TestCase test, XMLTestCase xmlTestCase) {
+	private void readTestCaseSetUpBlock(TestCase test, XMLTestCase xmlTestCase)
+			throws SpecificationException {
 		if (!xmlTestCase.isSetSetUp()) {
 			return;
 		}
 
 		XMLSetUp xmlSetUp = xmlTestCase.getSetUp();
 		if (xmlSetUp.isSetScript()) {
-			test.setSetUpVelocityScript(xmlSetUp.getScript());
+			test.setSetUpVelocityTemplate(VelocityTemplate.compile(
+					"setUpTestCase " + test.getRawName(), xmlSetUp.getScript()));
 		}
 	}
 
@@ -1126,6 +1372,9 @@ public class SpecificationLoader {
 							+ activity, ex);
 		}
 
+		final VelocityTemplate template = VelocityTemplate.compile(
+				"template in " + activity, templateText);
+
 		/*
 		 * Get round data
 		 */
@@ -1147,12 +1396,12 @@ public class SpecificationLoader {
 			// a response to a HTTP request inside the same channel
 			// It does not need targetURL and soapAction.
 			spec.initialize(operation, currentDelay, delayExpression, null,
-					null, encodingStyle, encoder, rawDataRoot, templateText,
+					null, encodingStyle, encoder, rawDataRoot, template,
 					faultCode, faultString);
 		} else {
 			spec.initialize(operation, currentDelay, delayExpression,
 					targetURL, soapAction, encodingStyle, encoder, rawDataRoot,
-					templateText, faultCode, faultString);
+					template, faultCode, faultString);
 		}
 
 		return spec;
@@ -1327,9 +1576,7 @@ public class SpecificationLoader {
 		List<ReceiveCondition> cList = new ArrayList<ReceiveCondition>();
 		if (xmlConditionList != null) {
 			for (XMLCondition xmlCondition : xmlConditionList) {
-				cList.add(new ReceiveCondition(spec, xmlCondition
-						.getExpression(), xmlCondition.getTemplate(),
-						xmlCondition.getValue()));
+				cList.add(createReceiveCondition(spec, xmlCondition));
 			}
 		}
 		addConditionsFromConditionGroups(xmlReceive.getConditionGroupList(), spec, cList);
@@ -1380,11 +1627,19 @@ public class SpecificationLoader {
 		List<XMLCondition> conditionList = resolveConditionsForGroup(cg);
 
 		for (XMLCondition xmlCondition : conditionList) {
-			cList.add(new ReceiveCondition(spec, xmlCondition.getExpression(),
-					xmlCondition.getTemplate(), xmlCondition.getValue()));
+			cList.add(createReceiveCondition(spec, xmlCondition));
 		}
 	}
 
+	private ReceiveCondition createReceiveCondition(DataSpecification spec,
+			XMLCondition xmlCondition) throws SpecificationException {
+		final VelocityTemplate template = VelocityTemplate.compile(
+				"condition template in " + spec.getParent(),
+				xmlCondition.getTemplate());
+		return new ReceiveCondition(spec, xmlCondition.getExpression(),
+				template, xmlCondition.getValue());
+	}
+
 	// *********** HELPERS *******************
 
 	private List<XMLCondition> resolveConditionsForGroup(XMLConditionGroup cg) {
@@ -0,0 +1,88 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ *
+ */
+package net.bpelunit.framework.base;
+
+import java.util.LinkedList;
+
+import net.bpelunit.framework.exception.ConfigurationException;
+
+/**
+ * Hands out the ports of a range to test suites which are run at the same
+ * time, so each of them has its own local HTTP server. A suite takes a port
+ * with {@link #acquire()} before it is loaded and gives it back with
+ * {@link #release(int)} once it has been shut down. When all ports are in use,
+ * the next suite waits for one to be released.
+ */
+public class SuitePortPool {
+
+	private final LinkedList<Integer> fFreePorts = new LinkedList<Integer>();
+
+	private final int fFirstPort;
+
+	private final int fLastPort;
+
+	public SuitePortPool(int firstPort, int lastPort) throws ConfigurationException {
+		if (firstPort < 1 || lastPort > 65535 || firstPort > lastPort) {
+			throw new ConfigurationException("Invalid port range for the test suites: "
+					+ firstPort + "-" + lastPort);
+		}
+		fFirstPort = firstPort;
+		fLastPort = lastPort;
+		for (int port = firstPort; port <= lastPort; port++) {
+			fFreePorts.add(port);
+		}
+	}
+
+	/**
+	 * Creates a pool from a range in the form <code>first-last</code>, or a
+	 * single port.
+	 *
+	 * @throws ConfigurationException
+	 *             the range cannot be parsed
+	 */
+	public static SuitePortPool parse(String range) throws ConfigurationException {
+		final String[] bounds = range.trim().split("\\s*-\\s*", -1);
+		try {
+			if (bounds.length == 1) {
+				final int port = Integer.parseInt(bounds[0]);
+				return new SuitePortPool(port, port);
+			} else if (bounds.length == 2) {
+				return new SuitePortPool(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+			}
+		} catch (NumberFormatException e) {
+			throw new ConfigurationException("Port range for the test suites is not of the form first-last: "
+					+ range, e);
+		}
+		throw new ConfigurationException("Port range for the test suites is not of the form first-last: "
+				+ range);
+	}
+
+	/**
+	 * Returns the number of ports in the range.
+	 */
+	public int size() {
+		return fLastPort - fFirstPort + 1;
+	}
+
+	/**
+	 * Takes a free port, waiting until one is released if necessary.
+	 */
+	public synchronized int acquire() throws InterruptedException {
+		while (fFreePorts.isEmpty()) {
+			wait();
+		}
+		return fFreePorts.removeFirst();
+	}
+
+	/**
+	 * Gives back a port taken by {@link #acquire()}.
+	 */
+	public synchronized void release(int port) {
+		fFreePorts.addLast(port);
+		notifyAll();
+	}
+
+}
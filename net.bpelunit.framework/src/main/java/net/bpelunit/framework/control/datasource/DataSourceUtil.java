@@ -11,6 +11,7 @@ import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -18,6 +19,7 @@ import java.util.Map.Entry;
 import net.bpelunit.framework.BPELUnitRunner;
 import net.bpelunit.framework.control.ext.IDataSource;
 import net.bpelunit.framework.control.ext.IDataSource.ConfigurationOption;
+import net.bpelunit.framework.control.ext.IStreamingDataSource;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.exception.SpecificationException;
 import net.bpelunit.framework.xml.suite.XMLDataSource;
@@ -65,6 +67,22 @@ public final class DataSourceUtil {
 	 */
 	public static IDataSource createDataSource(XMLTestSuite xmlTestSuite,
 			XMLTestCase xmlTestCase, File bptsDir, final BPELUnitRunner runner) throws DataSourceException {
+		return createDataSource(xmlTestSuite, xmlTestCase, bptsDir, runner, false);
+	}
+
+	/**
+	 * Creates the effective IDataSource for a test case inside a test suite,
+	 * optionally streaming its rows.
+	 * 
+	 * @param streaming
+	 *            If <code>true</code> and the data source implements
+	 *            {@link IStreamingDataSource}, it is opened for reading its
+	 *            rows one at a time, instead of loading all of them.
+	 * @see #createDataSource(XMLTestSuite, XMLTestCase, File, BPELUnitRunner)
+	 */
+	public static IDataSource createDataSource(XMLTestSuite xmlTestSuite,
+			XMLTestCase xmlTestCase, File bptsDir, final BPELUnitRunner runner,
+			boolean streaming) throws DataSourceException {
 		XMLDataSource xmlDataSource = null;
 		if (xmlTestCase.isSetSetUp()
 				&& xmlTestCase.getSetUp().isSetDataSource()) {
@@ -82,7 +100,7 @@ public final class DataSourceUtil {
 
 			try {
 				IDataSource dataSource = runner.createNewDataSource(type);
-				return initializeDataSource(dataSource, istream, properties);
+				return initializeDataSource(dataSource, istream, properties, streaming);
 			} catch (SpecificationException e) {
 				throw new DataSourceException(
 						"Could not create data source instance for type " + type, e);
@@ -114,6 +132,23 @@ public final class DataSourceUtil {
 			final InputStream istream,
 			Map<String, String> properties)
 			throws DataSourceException {
+		return initializeDataSource(dataSource, istream, properties, false);
+	}
+
+	/**
+	 * Creates and initializes an IDataSource instance, optionally streaming
+	 * its rows.
+	 * 
+	 * @param streaming
+	 *            If <code>true</code> and the data source implements
+	 *            {@link IStreamingDataSource}, it is opened for reading its
+	 *            rows one at a time with {@link IStreamingDataSource#nextRow()}.
+	 * @see #initializeDataSource(IDataSource, InputStream, Map)
+	 */
+	public static IDataSource initializeDataSource(final IDataSource dataSource,
+			final InputStream istream,
+			Map<String, String> properties, boolean streaming)
+			throws DataSourceException {
 
 		for (Entry<String, String> prop : properties.entrySet()) {
 			setProperty(dataSource, prop.getKey(), prop.getValue());
@@ -122,7 +157,11 @@ public final class DataSourceUtil {
 		// Contents should be loaded after setting the properties, as these might
 		// have information that is required to correctly interpret the input
 		// stream, such as text encoding, for instance.
-		dataSource.loadFromStream(istream);
+		if (streaming && dataSource instanceof IStreamingDataSource) {
+			((IStreamingDataSource) dataSource).openStream(istream);
+		} else {
+			dataSource.loadFromStream(istream);
+		}
 
 		return dataSource;
 	}
@@ -258,13 +297,41 @@ public final class DataSourceUtil {
 	 * context variables with the contents of the <code>rowIndex</code>-th row.
 	 */
 	public static void initializeContext(Context ctx, IDataSource ds, int rowIndex) throws DataSourceException {
-		ds.setRow(rowIndex);
-		String[] fieldNames = ds.getFieldNames();
+		// the data source is shared by the test cases created from its rows
+		synchronized (ds) {
+			ds.setRow(rowIndex);
+			initializeContext(ctx, getCurrentRow(ds));
+		}
+	}
 
-		for(String fieldName : fieldNames) {
-			LOGGER.debug("Put " + fieldName + " -> " + ds.getValueFor(fieldName));
-			ctx.put(fieldName, ds.getValueFor(fieldName));
+	/**
+	 * Initializes the variables in the context <code>ctx</code> with the
+	 * values of a row, as returned by {@link #getCurrentRow(IDataSource)}.
+	 *
+	 * @param ctx Velocity context to be initialized. The context might not
+	 * be empty: do not clear it.
+	 * @param row Values of the row, indexed by field name.
+	 */
+	public static void initializeContext(Context ctx, Map<String, Object> row) {
+		for (Entry<String, Object> field : row.entrySet()) {
+			LOGGER.debug("Put " + field.getKey() + " -> " + field.getValue());
+			ctx.put(field.getKey(), field.getValue());
+		}
+	}
+
+	/**
+	 * Copies the values of the current row of the data source, so they can
+	 * still be used after the data source has moved on to another row.
+	 *
+	 * @return Values of the current row, indexed by field name (in the order
+	 * of the fields).
+	 */
+	public static Map<String, Object> getCurrentRow(IDataSource ds) {
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		for (String fieldName : ds.getFieldNames()) {
+			row.put(fieldName, ds.getValueFor(fieldName));
 		}
+		return row;
 	}
 	
 	/************* PRIVATE METHODS ****************/
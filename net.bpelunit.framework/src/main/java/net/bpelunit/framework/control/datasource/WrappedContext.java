@@ -1,64 +1,155 @@
 package net.bpelunit.framework.control.datasource;
 
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.velocity.VelocityContext;
 import org.apache.velocity.context.Context;
 
+import com.rits.cloning.Cloner;
+
 /**
  * Wrapper around a regular Velocity {@link Context} that allows for
  * defining certain variables as read-only, preventing testers from
  * overriding them.
  *
+ * Contexts can be layered with {@link #newLayer()}: a layer only stores the
+ * variables set in it, and looks up the rest in its parent. Read-only
+ * variables of the parent stay read-only in the layer, and changes made in the
+ * layer are never visible from the parent. Collections, maps and arrays in
+ * read-write variables of the parent are copied into the layer the first time
+ * they are read from it, so changing their contents does not affect the parent
+ * either. Collections and maps in read-only variables of the parent are
+ * returned as unmodifiable views, and arrays as copies. Other values are
+ * shared between the layers.
+ *
  * @author Antonio García-Domínguez
  */
 public final class WrappedContext implements Context {
+	private static final Cloner CLONER = new Cloner();
+
 	private final Context ctx;
-	private final Set<String> readOnly = new HashSet<String>();
+	private final WrappedContext parent;
+	private final Set<String> readOnly = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Variables of the parent which have been removed from this layer.
+	 */
+	private final Set<String> removed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
 	public WrappedContext(Context ctx) {
+		this(ctx, null);
+	}
+
+	private WrappedContext(Context ctx, WrappedContext parent) {
 		this.ctx = ctx;
+		this.parent = parent;
+	}
+
+	/**
+	 * Creates a new, empty layer on top of this context.
+	 */
+	public WrappedContext newLayer() {
+		return new WrappedContext(new VelocityContext(), this);
 	}
 
 	/**
 	 * Sets the value of variable <code>key</code> to <code>value</code>
-	 * 
+	 *
 	 * @throws IllegalArgumentException
 	 *             The caller attempted to overwrite a read-only variable.
 	 */
 	@Override
 	public Object put(String key, Object value) {
-		if (readOnly.contains(key)) {
+		if (isReadOnly(key)) {
 			throw new IllegalArgumentException(String.format(
 				"Cannot overwrite %s: it is a read only variable", key));
 		}
-		return ctx.put(key, value);
+		removed.remove(key);
+		synchronized (ctx) {
+			return ctx.put(key, value);
+		}
 	}
 
 	@Override
 	public Object get(String key) {
-		return ctx.get(key);
+		synchronized (ctx) {
+			if (ctx.containsKey(key) || parent == null) {
+				return ctx.get(key);
+			}
+		}
+		if (removed.contains(key)) {
+			return null;
+		}
+
+		final Object value = parent.get(key);
+		if (value == null || !isMutable(value)) {
+			return value;
+		}
+		if (parent.isReadOnly(key)) {
+			return toReadOnly(value);
+		}
+
+		// copy on first read, so changes to the contents stay in this layer
+		final Object copy = CLONER.deepClone(value);
+		synchronized (ctx) {
+			ctx.put(key, copy);
+		}
+		return copy;
 	}
 
 	@Override
 	public boolean containsKey(Object key) {
-		return ctx.containsKey(key);
+		synchronized (ctx) {
+			if (ctx.containsKey(key)) {
+				return true;
+			}
+		}
+		return parent != null && !removed.contains(key) && parent.containsKey(key);
 	}
 
 	@Override
 	public Object[] getKeys() {
-		return ctx.getKeys();
+		final Set<Object> keys = new LinkedHashSet<Object>();
+		if (parent != null) {
+			for (Object key : parent.getKeys()) {
+				if (!removed.contains(key)) {
+					keys.add(key);
+				}
+			}
+		}
+		synchronized (ctx) {
+			for (Object key : ctx.getKeys()) {
+				keys.add(key);
+			}
+		}
+		return keys.toArray();
 	}
 
 	@Override
 	public Object remove(Object key) {
-		return ctx.remove(key);
+		Object old;
+		synchronized (ctx) {
+			old = ctx.remove(key);
+		}
+		if (parent != null && parent.containsKey(key)) {
+			if (old == null) {
+				old = parent.get(key.toString());
+			}
+			removed.add(key.toString());
+		}
+		return old;
 	}
 
 	/**
 	 * Sets the value of variable <code>key</code> to <code>value</code> and
 	 * marks it as read-only.
-	 * 
+	 *
 	 * @throws IllegalArgumentException
 	 *             The caller attempted to overwrite an existing variable.
 	 */
@@ -69,6 +160,35 @@ public final class WrappedContext implements Context {
 				"read-only variable", key));
 		}
 		readOnly.add(key);
-		ctx.put(key, value);
+		synchronized (ctx) {
+			ctx.put(key, value);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the variable is read-only in this context
+	 * or in any of its parents.
+	 */
+	public boolean isReadOnly(String key) {
+		return readOnly.contains(key) || parent != null && parent.isReadOnly(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object toReadOnly(Object value) {
+		if (value instanceof List) {
+			return Collections.unmodifiableList((List<Object>) value);
+		} else if (value instanceof Set) {
+			return Collections.unmodifiableSet((Set<Object>) value);
+		} else if (value instanceof Collection) {
+			return Collections.unmodifiableCollection((Collection<Object>) value);
+		} else if (value instanceof Map) {
+			return Collections.unmodifiableMap((Map<Object, Object>) value);
+		}
+		return CLONER.deepClone(value);
+	}
+
+	private static boolean isMutable(Object value) {
+		return value instanceof Collection || value instanceof Map
+				|| value.getClass().isArray();
 	}
-}
\ No newline at end of file
+}
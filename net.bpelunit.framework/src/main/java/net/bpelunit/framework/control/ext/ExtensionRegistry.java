@@ -48,17 +48,21 @@ public final class ExtensionRegistry {
 	private static Logger fsLogger = Logger
 			.getLogger("net.bpelunit.framework.ExtensionRegistry");
 
-	private static Map<String, Class<? extends IBPELDeployer>> fsDeployerRegistry;
+	/*
+	 * The registry is shared by all runners in the JVM. The maps are filled
+	 * completely before they are published and never changed afterwards, so
+	 * runners may read them while another runner is loading the registry.
+	 */
 
-	private static Map<String, Map<String, String>> fsDeployerOptions;
+	private static volatile Map<String, Class<? extends IBPELDeployer>> fsDeployerRegistry;
 
-	private static Map<String, Class<? extends ISOAPEncoder>> fsEncoderRegistry;
+	private static volatile Map<String, Map<String, String>> fsDeployerOptions;
 
-	private static Map<String, Class<? extends IHeaderProcessor>> fsHeaderRegistry;
+	private static volatile Map<String, Class<? extends ISOAPEncoder>> fsEncoderRegistry;
 
-	private static Map<String, Class<? extends IDataSource>> fsDataSourceRegistry;
+	private static volatile Map<String, Class<? extends IHeaderProcessor>> fsHeaderRegistry;
 
-	private static boolean fsIgnoreOnNotFound;
+	private static volatile Map<String, Class<? extends IDataSource>> fsDataSourceRegistry;
 
 	/**
 	 * Initializes the extension registry. Must be called before all other
@@ -72,16 +76,13 @@ public final class ExtensionRegistry {
 	 * @throws ConfigurationException
 	 *             error reading the configuration file
 	 */
-	public static void loadRegistry(URL configurationFileURL,
+	public static synchronized void loadRegistry(URL configurationFileURL,
 			boolean ignoreOnNotFound) throws ConfigurationException {
 
-		fsIgnoreOnNotFound = ignoreOnNotFound;
-
-		fsDeployerRegistry = new HashMap<String, Class<? extends IBPELDeployer>>();
-		fsEncoderRegistry = new HashMap<String, Class<? extends ISOAPEncoder>>();
-		fsHeaderRegistry = new HashMap<String, Class<? extends IHeaderProcessor>>();
-		fsDataSourceRegistry = new HashMap<String, Class<? extends IDataSource>>();
-		fsDeployerOptions = new HashMap<String, Map<String, String>>();
+		Map<String, Class<? extends IBPELDeployer>> deployerRegistry = new HashMap<String, Class<? extends IBPELDeployer>>();
+		Map<String, Class<? extends ISOAPEncoder>> encoderRegistry = new HashMap<String, Class<? extends ISOAPEncoder>>();
+		Map<String, Class<? extends IHeaderProcessor>> headerRegistry = new HashMap<String, Class<? extends IHeaderProcessor>>();
+		Map<String, Class<? extends IDataSource>> dataSourceRegistry = new HashMap<String, Class<? extends IDataSource>>();
 
 		XMLExtensionRegistryDocument document;
 
@@ -94,21 +95,22 @@ public final class ExtensionRegistry {
 
 			for (XMLExtension deployer : testExtensions.getDeployerList()) {
 				load(deployer, IBPELDeployer.class, "Deployer",
-						fsDeployerRegistry);
+						deployerRegistry, ignoreOnNotFound);
 			}
 
 			for (XMLExtension encoder : testExtensions.getEncoderList()) {
-				load(encoder, ISOAPEncoder.class, "Encoder", fsEncoderRegistry);
+				load(encoder, ISOAPEncoder.class, "Encoder", encoderRegistry,
+						ignoreOnNotFound);
 			}
 
 			for (XMLExtension hproc : testExtensions.getHeaderProcessorList()) {
 				load(hproc, IHeaderProcessor.class, "Header Processor",
-						fsHeaderRegistry);
+						headerRegistry, ignoreOnNotFound);
 			}
 
 			for (XMLExtension dataSource : testExtensions.getDataSourceList()) {
 				load(dataSource, IDataSource.class, "Data Source",
-						fsDataSourceRegistry);
+						dataSourceRegistry, ignoreOnNotFound);
 			}
 		} catch (XmlException e) {
 			throw new ConfigurationException(
@@ -119,6 +121,12 @@ public final class ExtensionRegistry {
 					"An I/O error occurred reading the deployment plug-ins from file "
 							+ configurationFileURL, e);
 		}
+
+		fsDeployerRegistry = deployerRegistry;
+		fsEncoderRegistry = encoderRegistry;
+		fsHeaderRegistry = headerRegistry;
+		fsDataSourceRegistry = dataSourceRegistry;
+		fsDeployerOptions = new HashMap<String, Map<String, String>>();
 	}
 
 	/**
@@ -216,7 +224,7 @@ public final class ExtensionRegistry {
 	@SuppressWarnings("unchecked")
 	private static <T> void load(XMLExtension extension,
 			Class<? extends T> requiredType, String readableName,
-			Map<String, Class<? extends T>> registry)
+			Map<String, Class<? extends T>> registry, boolean ignoreOnNotFound)
 			throws ConfigurationException {
 		try {
 			Class<?> theClazz = getClassFor(extension);
@@ -229,7 +237,7 @@ public final class ExtensionRegistry {
 
 			registry.put(extension.getType(), (Class<T>) theClazz);
 		} catch (ConfigurationException e) {
-			if (!fsIgnoreOnNotFound) {
+			if (!ignoreOnNotFound) {
 				throw new ConfigurationException(e.getMessage(), e);
 			} else {
 				fsLogger.debug("Configuration Error in extensions.xml; "
@@ -259,10 +267,16 @@ public final class ExtensionRegistry {
 		}
 	}
 
-	public static void loadDeploymentConfiguration(URL fileURL)
+	public static synchronized void loadDeploymentConfiguration(URL fileURL)
 			throws ConfigurationException {
 
 		XMLTestConfigurationDocument document;
+		Map<String, Map<String, String>> deployerOptions = new HashMap<String, Map<String, String>>();
+		for (Map.Entry<String, Map<String, String>> entry : fsDeployerOptions
+				.entrySet()) {
+			deployerOptions.put(entry.getKey(), new HashMap<String, String>(
+					entry.getValue()));
+		}
 
 		try {
 			document = XMLTestConfigurationDocument.Factory.parse(fileURL);
@@ -272,11 +286,11 @@ public final class ExtensionRegistry {
 					.getConfigurationList()) {
 				String deployer = configuration.getDeployer();
 				for (XMLProperty property : configuration.getPropertyList()) {
-					Map<String, String> options = fsDeployerOptions
+					Map<String, String> options = deployerOptions
 							.get(deployer);
 					if (options == null) {
 						options = new HashMap<String, String>();
-						fsDeployerOptions.put(deployer, options);
+						deployerOptions.put(deployer, options);
 					}
 					options.put(property.getName(), property.getStringValue());
 				}
@@ -291,6 +305,8 @@ public final class ExtensionRegistry {
 					"An I/O error occurred reading the deployment configuration from file "
 							+ fileURL, e);
 		}
+
+		fsDeployerOptions = deployerOptions;
 	}
 
 	public static void configure(String deployerID, IBPELDeployer deployer) {
@@ -312,9 +328,10 @@ public final class ExtensionRegistry {
 	}
 
 	private static String getIdForDeployer(IBPELDeployer deployer) {
+		final Map<String, Class<? extends IBPELDeployer>> deployerRegistry = fsDeployerRegistry;
 		String deployerId = null;
-		for (String key : fsDeployerRegistry.keySet()) {
-			if (deployer.getClass() == fsDeployerRegistry.get(key)) {
+		for (String key : deployerRegistry.keySet()) {
+			if (deployer.getClass() == deployerRegistry.get(key)) {
 				deployerId = key;
 				break;
 			}
@@ -0,0 +1,45 @@
+package net.bpelunit.framework.control.ext;
+
+import java.io.InputStream;
+
+import net.bpelunit.framework.exception.DataSourceException;
+
+/**
+ * Data source which can read its rows one at a time, instead of loading all
+ * of them into memory. BPELUnit uses this forward-only contract when test
+ * cases are created lazily (see the LAZY_TEST_CASES option of the
+ * {@link net.bpelunit.framework.BPELUnitRunner}), so only the current row is
+ * kept in memory.
+ *
+ * After {@link #openStream(InputStream)}, the data source is positioned
+ * before the first row. Each call to {@link #nextRow()} moves to the next row,
+ * whose values are then available through {@link #getValueFor(String)}.
+ * {@link #setRow(int)} may only be used with the index of the current row,
+ * and {@link #getNumberOfRows()} returns a negative number if the number of
+ * rows is not known in advance. The stream is released by {@link #close()},
+ * or once the last row has been read.
+ *
+ * @see IDataSource
+ */
+public interface IStreamingDataSource extends IDataSource {
+
+	/**
+	 * Prepares the data source to read its rows one at a time from the byte
+	 * sequence in <code>is</code>. Only the information needed before the
+	 * first row (such as the field names) should be read at this point.
+	 *
+	 * @param is Byte sequence whose contents should be streamed.
+	 * @throws DataSourceException There was a problem while interpreting the
+	 * start of the byte sequence in <code>is</code>.
+	 */
+	void openStream(InputStream is) throws DataSourceException;
+
+	/**
+	 * Moves to the next row of the data source.
+	 *
+	 * @return <code>true</code> if there was another row, <code>false</code>
+	 * if all rows have already been read.
+	 * @throws DataSourceException There was a problem while reading the row.
+	 */
+	boolean nextRow() throws DataSourceException;
+}
@@ -0,0 +1,488 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ *
+ */
+package net.bpelunit.framework.control.result;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import net.bpelunit.framework.model.test.ITestResultListener;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.TestSuite;
+import net.bpelunit.framework.model.test.activity.Activity;
+import net.bpelunit.framework.model.test.data.DataCopyOperation;
+import net.bpelunit.framework.model.test.data.DataSpecification;
+import net.bpelunit.framework.model.test.data.ReceiveCondition;
+import net.bpelunit.framework.model.test.data.XMLData;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+import net.bpelunit.framework.model.test.report.StateData;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes the same XML document as {@link XMLResultProducer}, but test case by
+ * test case while the suite is running, so that the memory needed does not
+ * grow with the size of the suite.
+ *
+ * The writer must be registered as a result listener on the suite. Each test
+ * case is appended to a temporary file when it ends. As the root element
+ * holds the status of the whole suite, the document itself is written by
+ * {@link #finish(TestSuite)} after the suite has been run. Test cases appear
+ * in the order in which they ended, followed by those which were started but
+ * have not ended, with their current status.
+ *
+ * Exceptions thrown by listeners are not passed on to the suite, so a
+ * problem writing the results of a test case is kept and thrown by
+ * {@link #finish(TestSuite)}.
+ *
+ * The results of several suites can be written to one stream by writing
+ * their testResult elements with {@link #finishElement(TestSuite, OutputStream)}
+ * between {@link #startResults(OutputStream)} and
+ * {@link #endResults(OutputStream)}.
+ *
+ * Message payloads are copied event by event with StAX instead of being
+ * parsed into XMLBeans objects. Payloads which are not well-formed XML result
+ * in empty xmlData elements, like in {@link XMLResultProducer}.
+ *
+ * @version $Id$
+ */
+public class StreamingXMLResultWriter implements ITestResultListener {
+
+	private static final String NAMESPACE = "http://www.bpelunit.org/schema/testResult";
+	private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+	private static final String ENCODING = "UTF-8";
+
+	private final File fOutputFile;
+
+	private File fTestCasesFile;
+
+	private Writer fTestCasesWriter;
+
+	private XMLStreamWriter fTestCasesXMLWriter;
+
+	private final XMLOutputFactory fOutputFactory = XMLOutputFactory.newInstance();
+
+	private final XMLInputFactory fInputFactory = XMLInputFactory.newInstance();
+
+	private final XMLEventFactory fEventFactory = XMLEventFactory.newInstance();
+
+	private final Set<TestCase> fRunningTestCases = new LinkedHashSet<TestCase>();
+
+	private IOException fWriteError;
+
+	/**
+	 * Creates a writer for a stream, which has to be passed to
+	 * {@link #finish(TestSuite, OutputStream)}.
+	 */
+	public StreamingXMLResultWriter() {
+		this(null);
+	}
+
+	public StreamingXMLResultWriter(File outputFile) {
+		fOutputFile = outputFile;
+	}
+
+	public synchronized void testCaseStarted(TestCase testCase) {
+		// written when the test case has ended
+		fRunningTestCases.add(testCase);
+	}
+
+	public synchronized void testCaseEnded(TestCase testCase) {
+		fRunningTestCases.remove(testCase);
+		appendTestCase(testCase);
+	}
+
+	/**
+	 * Appends the test case to the temporary file. After the first problem,
+	 * nothing more is written.
+	 */
+	private void appendTestCase(TestCase testCase) {
+		if (fWriteError != null) {
+			return;
+		}
+		try {
+			openTestCasesFile();
+			writeTestCase(testCase);
+			fTestCasesXMLWriter.flush();
+		} catch (Exception e) {
+			fWriteError = new IOException("Could not write the results of test case " + testCase.getName() + " to " + fTestCasesFile, e);
+		}
+	}
+
+	public void progress(ITestArtefact testArtefact) {
+		// only complete test cases are written
+	}
+
+	/**
+	 * Writes the result document with the status of the suite and all test
+	 * cases which have been started so far to the output file.
+	 *
+	 * @param suite suite which has been run
+	 * @throws IOException if the results cannot be written, or the results of
+	 *             a test case could not be written while the suite was running
+	 */
+	public synchronized void finish(TestSuite suite) throws IOException {
+		if (fOutputFile == null) {
+			throw new IllegalStateException("This writer has no output file");
+		}
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(fOutputFile));
+			finish(suite, out);
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Writes the result document with the status of the suite and all test
+	 * cases which have been started so far to a stream, which is flushed but
+	 * not closed.
+	 *
+	 * @param suite suite which has been run
+	 * @throws IOException if the results cannot be written, or the results of
+	 *             a test case could not be written while the suite was running
+	 */
+	public synchronized void finish(TestSuite suite, OutputStream out) throws IOException {
+		writeResult(suite, out, true);
+	}
+
+	/**
+	 * Writes the testResult element with the status of the suite and all test
+	 * cases which have been started so far to a stream, without an XML declaration,
+	 * so that the results of several suites can be written to one document.
+	 * The stream is flushed but not closed.
+	 *
+	 * @param suite suite which has been run
+	 * @throws IOException if the results cannot be written, or the results of
+	 *             a test case could not be written while the suite was running
+	 */
+	public synchronized void finishElement(TestSuite suite, OutputStream out) throws IOException {
+		writeResult(suite, out, false);
+	}
+
+	/**
+	 * Starts a testResults document holding the results of several suites.
+	 */
+	public static void startResults(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, ENCODING);
+		writer.write("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>\n<testResults xmlns=\"" + NAMESPACE + "\">\n");
+		writer.flush();
+	}
+
+	/**
+	 * Ends a document started by {@link #startResults(OutputStream)}.
+	 */
+	public static void endResults(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, ENCODING);
+		writer.write("</testResults>\n");
+		writer.flush();
+	}
+
+	private void writeResult(TestSuite suite, OutputStream out, boolean document) throws IOException {
+		try {
+			for (TestCase testCase : fRunningTestCases) {
+				appendTestCase(testCase);
+			}
+			fRunningTestCases.clear();
+			closeTestCasesFile();
+			if (fWriteError != null) {
+				throw fWriteError;
+			}
+
+			Writer writer = new OutputStreamWriter(out, ENCODING);
+			XMLStreamWriter xml = fOutputFactory.createXMLStreamWriter(writer);
+
+			if (document) {
+				xml.writeStartDocument(ENCODING, "1.0");
+				xml.writeCharacters("\n");
+			}
+			xml.setDefaultNamespace(NAMESPACE);
+			xml.writeStartElement(NAMESPACE, "testResult");
+			xml.writeDefaultNamespace(NAMESPACE);
+			writeState(xml, suite);
+			xml.writeCharacters("\n");
+			xml.flush();
+			writer.flush();
+
+			if (fTestCasesFile != null) {
+				InputStream in = new BufferedInputStream(new FileInputStream(fTestCasesFile));
+				try {
+					// The test cases have been written in the same encoding
+					IOUtils.copy(in, out);
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+
+			xml.writeEndElement();
+			if (document) {
+				xml.writeEndDocument();
+			} else {
+				xml.writeCharacters("\n");
+			}
+			xml.flush();
+			writer.flush();
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not write the results of " + suite.getName(), e);
+		} finally {
+			if (fTestCasesFile != null) {
+				fTestCasesFile.delete();
+				fTestCasesFile = null;
+			}
+			fWriteError = null;
+		}
+	}
+
+	private void openTestCasesFile() throws IOException, XMLStreamException {
+		if (fTestCasesXMLWriter == null) {
+			fTestCasesFile = File.createTempFile("bpelunit-results", ".xml");
+			fTestCasesFile.deleteOnExit();
+			fTestCasesWriter = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(fTestCasesFile)), ENCODING);
+			fTestCasesXMLWriter = fOutputFactory.createXMLStreamWriter(fTestCasesWriter);
+			fTestCasesXMLWriter.setDefaultNamespace(NAMESPACE);
+		}
+	}
+
+	private void closeTestCasesFile() throws IOException {
+		if (fTestCasesXMLWriter != null) {
+			try {
+				fTestCasesXMLWriter.close();
+			} catch (XMLStreamException e) {
+				throw new IOException("Could not write " + fTestCasesFile, e);
+			} finally {
+				IOUtils.closeQuietly(fTestCasesWriter);
+				fTestCasesXMLWriter = null;
+				fTestCasesWriter = null;
+			}
+		}
+	}
+
+	private void writeTestCase(TestCase testCase) throws XMLStreamException, IOException {
+		XMLStreamWriter xml = fTestCasesXMLWriter;
+		xml.writeStartElement(NAMESPACE, "testCase");
+		xml.writeDefaultNamespace(NAMESPACE);
+		writeState(xml, testCase);
+
+		for (PartnerTrack track : testCase.getPartnerTracks()) {
+			xml.writeStartElement(NAMESPACE, "partnerTrack");
+			writeState(xml, track);
+
+			// Track children may only be activities
+			for (ITestArtefact artefact : track.getChildren()) {
+				writeActivity(xml, (Activity) artefact);
+			}
+			xml.writeEndElement();
+		}
+
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	}
+
+	private void writeActivity(XMLStreamWriter xml, Activity activity) throws XMLStreamException, IOException {
+		xml.writeStartElement(NAMESPACE, "activity");
+		xml.writeAttribute("type", activity.getActivityCode());
+		writeState(xml, activity);
+
+		// The schema requires activities, data packages and copy operations in this order
+		List<ITestArtefact> children = activity.getChildren();
+		for (ITestArtefact child : children) {
+			if (child instanceof Activity) {
+				writeActivity(xml, (Activity) child);
+			}
+		}
+		for (ITestArtefact child : children) {
+			if (child instanceof DataSpecification) {
+				writeDataSpecification(xml, (DataSpecification) child);
+			}
+		}
+		for (ITestArtefact child : children) {
+			if (child instanceof DataCopyOperation) {
+				writeCopyOperation(xml, (DataCopyOperation) child);
+			}
+		}
+
+		xml.writeEndElement();
+	}
+
+	private void writeDataSpecification(XMLStreamWriter xml, DataSpecification dataSpec) throws XMLStreamException, IOException {
+		xml.writeStartElement(NAMESPACE, "dataPackage");
+		writeState(xml, dataSpec);
+
+		List<ITestArtefact> children = dataSpec.getChildren();
+		for (ITestArtefact child : children) {
+			if (child instanceof XMLData) {
+				writeXMLData(xml, (XMLData) child);
+			}
+		}
+		for (ITestArtefact child : children) {
+			if (child instanceof ReceiveCondition) {
+				writeReceiveCondition(xml, (ReceiveCondition) child);
+			}
+		}
+
+		xml.writeEndElement();
+	}
+
+	private void writeXMLData(XMLStreamWriter xml, XMLData data) throws XMLStreamException, IOException {
+		xml.writeStartElement(NAMESPACE, "xmlData");
+		xml.writeAttribute("name", data.getName());
+
+		String payload = copyPayload(data.getXmlData());
+		if (payload != null) {
+			// Close the start tag and append the payload as it is
+			xml.writeCharacters("");
+			xml.flush();
+			fTestCasesWriter.write(payload);
+		}
+
+		xml.writeEndElement();
+	}
+
+	/**
+	 * @return the payload without the XML declaration, or <code>null</code>
+	 *         if it is not well-formed XML
+	 */
+	private String copyPayload(String data) {
+		if (data == null || !data.trim().startsWith("<")) {
+			return null;
+		}
+
+		StringWriter payload = new StringWriter();
+		try {
+			XMLEventReader reader = fInputFactory.createXMLEventReader(new StringReader(data));
+			XMLEventWriter writer = fOutputFactory.createXMLEventWriter(payload);
+			boolean rootElement = true;
+			while (reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if (event.isStartElement() && rootElement) {
+					event = undeclareDefaultNamespace(event.asStartElement());
+					rootElement = false;
+				}
+				if (!event.isStartDocument() && !event.isEndDocument()) {
+					writer.add(event);
+				}
+			}
+			writer.flush();
+			reader.close();
+		} catch (XMLStreamException e) {
+			// Usually indicates namespace problems. Just create an empty data tag
+			return null;
+		}
+		return payload.toString();
+	}
+
+	/**
+	 * Elements of the payload without a namespace must not end up in the
+	 * default namespace of the result document.
+	 */
+	@SuppressWarnings("unchecked")
+	private StartElement undeclareDefaultNamespace(StartElement element) {
+		String namespace = element.getName().getNamespaceURI();
+		if (namespace != null && namespace.length() > 0) {
+			return element;
+		}
+
+		List<Namespace> namespaces = new ArrayList<Namespace>();
+		for (Iterator<Namespace> i = element.getNamespaces(); i.hasNext();) {
+			Namespace ns = i.next();
+			if (ns.isDefaultNamespaceDeclaration()) {
+				return element;
+			}
+			namespaces.add(ns);
+		}
+		namespaces.add(fEventFactory.createNamespace(""));
+		return fEventFactory.createStartElement(element.getName(), element.getAttributes(), namespaces.iterator());
+	}
+
+	private void writeReceiveCondition(XMLStreamWriter xml, ReceiveCondition condition) throws XMLStreamException {
+		xml.writeStartElement(NAMESPACE, "receiveCondition");
+		writeState(xml, condition);
+
+		xml.writeStartElement(NAMESPACE, "condition");
+		writeTextElement(xml, "expression", condition.getExpression());
+		writeTextElement(xml, "expectedValue", condition.getExpectedValue());
+		if (condition.getActualValue() != null) {
+			writeTextElement(xml, "actualValue", condition.getActualValue());
+		} else {
+			xml.writeEmptyElement(NAMESPACE, "actualValue");
+			xml.writeNamespace("xsi", XSI_NAMESPACE);
+			xml.writeAttribute("xsi", XSI_NAMESPACE, "nil", "true");
+		}
+		xml.writeEndElement();
+
+		xml.writeEndElement();
+	}
+
+	private void writeCopyOperation(XMLStreamWriter xml, DataCopyOperation copy) throws XMLStreamException {
+		xml.writeStartElement(NAMESPACE, "copyOperation");
+		writeState(xml, copy);
+		writeTextElement(xml, "from", copy.getFromXPath());
+		writeTextElement(xml, "to", copy.getToXPath());
+		writeTextElement(xml, "copyiedValue", copy.getCopiedValue());
+		xml.writeEndElement();
+	}
+
+	private void writeTextElement(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+		xml.writeStartElement(NAMESPACE, name);
+		if (value != null) {
+			xml.writeCharacters(value);
+		}
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Writes the attributes and state elements shared by all artefacts. Must
+	 * be called directly after the start element.
+	 */
+	private void writeState(XMLStreamWriter xml, ITestArtefact artefact) throws XMLStreamException {
+		writeAttribute(xml, "name", artefact.getName());
+		writeAttribute(xml, "result", artefact.getStatus().getCode().toString());
+		writeAttribute(xml, "message", artefact.getStatus().getMessage());
+		writeAttribute(xml, "exception", artefact.getStatus().getExceptionMessage());
+
+		for (StateData data : new ArrayList<StateData>(artefact.getStateData())) {
+			xml.writeStartElement(NAMESPACE, "state");
+			writeAttribute(xml, "name", data.getKey());
+			if (data.getValue() != null) {
+				xml.writeCharacters(data.getValue());
+			}
+			xml.writeEndElement();
+		}
+	}
+
+	private void writeAttribute(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+		if (value != null) {
+			xml.writeAttribute(name, value);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bpelunit.framework.model.test.PartnerTrack;
+
+/**
+ * Base class for partner track executors, which keeps track of the number of
+ * threads created and the number of partner tracks running at the same time.
+ */
+public abstract class AbstractPartnerTrackExecutor implements IPartnerTrackExecutor {
+
+	private final AtomicInteger fThreadsCreated = new AtomicInteger();
+
+	private final AtomicInteger fRunning = new AtomicInteger();
+
+	private final AtomicInteger fPeakConcurrency = new AtomicInteger();
+
+	public PartnerTrackExecution execute(PartnerTrack track) {
+		final PartnerTrackExecution execution = new PartnerTrackExecution(track);
+		executeTask(new Runnable() {
+			public void run() {
+				trackStarted();
+				try {
+					execution.run();
+				} finally {
+					fRunning.decrementAndGet();
+				}
+			}
+		});
+		return execution;
+	}
+
+	public int getThreadsCreated() {
+		return fThreadsCreated.get();
+	}
+
+	public int getPeakConcurrency() {
+		return fPeakConcurrency.get();
+	}
+
+	/**
+	 * Runs the task in the background. The task must not wait for any other
+	 * task to complete before starting.
+	 */
+	protected abstract void executeTask(Runnable task);
+
+	/**
+	 * Should be called by subclasses whenever they create a new thread.
+	 */
+	protected void threadCreated() {
+		fThreadsCreated.incrementAndGet();
+	}
+
+	/**
+	 * Returns a thread factory which creates daemon threads with the given
+	 * name prefix and counts them.
+	 */
+	protected ThreadFactory createCountingThreadFactory(final String namePrefix) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				threadCreated();
+				final Thread t = new Thread(r, namePrefix + getThreadsCreated());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	private void trackStarted() {
+		final int running = fRunning.incrementAndGet();
+		int peak = fPeakConcurrency.get();
+		while (running > peak && !fPeakConcurrency.compareAndSet(peak, running)) {
+			peak = fPeakConcurrency.get();
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ *
+ */
+package net.bpelunit.framework.control.run;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Keeps track of the activities of a test case which have completed, so that
+ * activities can wait for those they depend on. Each activity id has its own
+ * completion signal, which releases the waiting activities as soon as the
+ * activity completes. If the test case is aborted, all signals are released
+ * at once and the waiting activities are told so.
+ *
+ * The ids of all the activities of the test case are known in advance, and
+ * have been checked for cycles and unknown references when loading the test
+ * suite.
+ */
+public class ActivityCompletionRegistry {
+
+	private final Map<String, CountDownLatch> fCompletionSignals = new HashMap<String, CountDownLatch>();
+
+	private final Set<String> fCompleted = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+	private volatile boolean fAborted;
+
+	/**
+	 * @param activityIds
+	 *            ids of all the activities in the test case
+	 */
+	public ActivityCompletionRegistry(Collection<String> activityIds) {
+		for (String id : activityIds) {
+			fCompletionSignals.put(id, new CountDownLatch(1));
+		}
+	}
+
+	/**
+	 * Signals that the activity with this id has completed (or has been
+	 * skipped). Activities without an id are ignored.
+	 */
+	public void markCompleted(String activityId) {
+		if (activityId == null) {
+			return;
+		}
+		fCompleted.add(activityId);
+		final CountDownLatch signal = fCompletionSignals.get(activityId);
+		if (signal != null) {
+			signal.countDown();
+		}
+	}
+
+	/**
+	 * Blocks until all the activities with these ids have completed, or until
+	 * the test case is aborted.
+	 *
+	 * @return <code>true</code> if all the activities completed,
+	 *         <code>false</code> if the test case was aborted first.
+	 * @throws IllegalArgumentException
+	 *             one of the ids does not belong to an activity of the test case
+	 * @throws InterruptedException
+	 *             the thread was interrupted while waiting
+	 */
+	public boolean awaitCompletion(Collection<String> activityIds)
+			throws InterruptedException {
+		for (String id : activityIds) {
+			final CountDownLatch signal = fCompletionSignals.get(id);
+			if (signal == null) {
+				throw new IllegalArgumentException("Unknown activity id: " + id);
+			}
+			signal.await();
+			if (fAborted) {
+				return false;
+			}
+		}
+		return !fAborted;
+	}
+
+	/**
+	 * Releases all the activities which are waiting, telling them that the
+	 * test case has been aborted.
+	 */
+	public void abort() {
+		fAborted = true;
+		for (CountDownLatch signal : fCompletionSignals.values()) {
+			signal.countDown();
+		}
+	}
+
+	/**
+	 * Returns the ids of the activities which have completed so far, in the
+	 * order in which they completed.
+	 */
+	public List<String> getCompletedActivities() {
+		synchronized (fCompleted) {
+			return new ArrayList<String>(fCompleted);
+		}
+	}
+}
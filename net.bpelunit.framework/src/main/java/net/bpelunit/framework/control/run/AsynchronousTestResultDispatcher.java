@@ -0,0 +1,257 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import net.bpelunit.framework.model.test.ITestResultListener;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Puts the events on a bounded queue, from which a single thread delivers
+ * them to the result listeners, so slow listeners do not hold up the partner
+ * tracks.
+ *
+ * Listeners read the state of an artefact when they are notified of its
+ * progress, so a progress event for an artefact which is still waiting in the
+ * queue already covers any later progress of the same artefact: such events
+ * are merged into the waiting one.
+ *
+ * When the queue is full, progress events are dropped if
+ * <code>dropProgressWhenFull</code> is set. Otherwise, and always for the
+ * start and end of the test cases, the dispatching thread waits until there
+ * is room in the queue.
+ */
+public class AsynchronousTestResultDispatcher implements ITestResultDispatcher {
+
+	private enum EventType {
+		STARTED, ENDED, PROGRESS, TASK
+	}
+
+	private static final class Event {
+		private final EventType fType;
+		private final Object fSubject;
+
+		private Event(EventType type, Object subject) {
+			fType = type;
+			fSubject = subject;
+		}
+	}
+
+	private final List<ITestResultListener> fListeners;
+
+	private final int fCapacity;
+
+	private final boolean fDropProgressWhenFull;
+
+	private final LinkedList<Event> fQueue = new LinkedList<Event>();
+
+	/**
+	 * Artefacts with a progress event in the queue.
+	 */
+	private final Set<ITestArtefact> fQueuedProgress = Collections
+			.newSetFromMap(new IdentityHashMap<ITestArtefact, Boolean>());
+
+	private final Thread fDeliveryThread;
+
+	private final Logger fLogger = Logger.getLogger(getClass());
+
+	private boolean fDelivering;
+
+	private boolean fShutDown;
+
+	private long fMergedProgressEvents;
+
+	private long fDroppedProgressEvents;
+
+	public AsynchronousTestResultDispatcher(List<ITestResultListener> listeners,
+			int capacity, boolean dropProgressWhenFull) {
+		fListeners = listeners;
+		fCapacity = capacity;
+		fDropProgressWhenFull = dropProgressWhenFull;
+
+		fDeliveryThread = new Thread(new Runnable() {
+			public void run() {
+				deliverEvents();
+			}
+		}, "BPELUnit result listeners");
+		fDeliveryThread.setDaemon(true);
+		fDeliveryThread.start();
+	}
+
+	public void testCaseStarted(TestCase testCase) {
+		dispatch(new Event(EventType.STARTED, testCase));
+	}
+
+	public void testCaseEnded(TestCase testCase) {
+		dispatch(new Event(EventType.ENDED, testCase));
+	}
+
+	public void progress(ITestArtefact testArtefact) {
+		dispatch(new Event(EventType.PROGRESS, testArtefact));
+	}
+
+	public void execute(Runnable task) {
+		dispatch(new Event(EventType.TASK, task));
+	}
+
+	public void shutdown() {
+		synchronized (fQueue) {
+			fShutDown = true;
+			fQueue.notifyAll();
+		}
+		if (Thread.currentThread() != fDeliveryThread) {
+			try {
+				fDeliveryThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fLogger.warn("Interrupted while waiting for the result listeners");
+			}
+		}
+		fLogger.info(String.format(
+				"Result listeners: %d progress events merged, %d dropped",
+				getMergedProgressEvents(), getDroppedProgressEvents()));
+	}
+
+	/**
+	 * Waits until all the events dispatched so far have been delivered.
+	 */
+	public void waitUntilDelivered() throws InterruptedException {
+		synchronized (fQueue) {
+			while (!fQueue.isEmpty() || fDelivering) {
+				fQueue.wait();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of progress events which have been merged into a
+	 * progress event for the same artefact waiting in the queue.
+	 */
+	public long getMergedProgressEvents() {
+		synchronized (fQueue) {
+			return fMergedProgressEvents;
+		}
+	}
+
+	/**
+	 * Returns the number of progress events which have been dropped because
+	 * the queue was full.
+	 */
+	public long getDroppedProgressEvents() {
+		synchronized (fQueue) {
+			return fDroppedProgressEvents;
+		}
+	}
+
+	private void dispatch(Event event) {
+		if (Thread.currentThread() == fDeliveryThread) {
+			// A listener may report progress itself: waiting for the queue
+			// would block the only thread which empties it
+			deliver(event);
+			return;
+		}
+
+		synchronized (fQueue) {
+			final boolean isProgress = event.fType == EventType.PROGRESS;
+			if (isProgress && fQueuedProgress.contains(event.fSubject)) {
+				fMergedProgressEvents++;
+				return;
+			}
+
+			while (!fShutDown && fQueue.size() >= fCapacity) {
+				if (isProgress && fDropProgressWhenFull) {
+					fDroppedProgressEvents++;
+					return;
+				}
+				try {
+					fQueue.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			if (!fShutDown) {
+				if (isProgress) {
+					fQueuedProgress.add((ITestArtefact) event.fSubject);
+				}
+				fQueue.add(event);
+				fQueue.notifyAll();
+				return;
+			}
+		}
+
+		// Events dispatched after the shutdown are delivered right away
+		deliver(event);
+	}
+
+	private void deliverEvents() {
+		while (true) {
+			Event event;
+			synchronized (fQueue) {
+				while (fQueue.isEmpty() && !fShutDown) {
+					try {
+						fQueue.wait();
+					} catch (InterruptedException e) {
+						// keep going until shut down
+					}
+				}
+				if (fQueue.isEmpty()) {
+					return;
+				}
+				event = fQueue.removeFirst();
+				if (event.fType == EventType.PROGRESS) {
+					fQueuedProgress.remove(event.fSubject);
+				}
+				fDelivering = true;
+				fQueue.notifyAll();
+			}
+
+			try {
+				deliver(event);
+			} catch (RuntimeException e) {
+				fLogger.error("Result listener failed: " + e.getMessage(), e);
+			} finally {
+				synchronized (fQueue) {
+					fDelivering = false;
+					fQueue.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void deliver(Event event) {
+		switch (event.fType) {
+		case STARTED:
+			for (ITestResultListener listener : fListeners) {
+				listener.testCaseStarted((TestCase) event.fSubject);
+			}
+			break;
+		case ENDED:
+			for (ITestResultListener listener : fListeners) {
+				listener.testCaseEnded((TestCase) event.fSubject);
+			}
+			break;
+		case PROGRESS:
+			for (ITestResultListener listener : fListeners) {
+				listener.progress((ITestArtefact) event.fSubject);
+			}
+			break;
+		case TASK:
+			((Runnable) event.fSubject).run();
+			break;
+		}
+	}
+
+}
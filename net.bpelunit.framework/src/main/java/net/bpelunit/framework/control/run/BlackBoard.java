@@ -1,63 +1,126 @@
 /**
  * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
  * license file for more information.
- * 
+ *
  */
 package net.bpelunit.framework.control.run;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-
-import net.bpelunit.framework.BPELUnitRunner;
-import net.bpelunit.framework.control.util.BPELUnitConstants;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class used for thread communication in the test runner.
- * 
+ *
+ * Every key has its own rendezvous slot, which can hold at most one object.
+ * Threads waiting on a slot are woken up as soon as an object is put into it
+ * or taken from it, so there is no global lock and no polling. Threads waiting
+ * for an object give up when the deadline derived from the timeout is reached,
+ * or when the key reports it cannot provide the value anymore after a call to
+ * {@link #wakeUpWaiters()}.
+ *
  * @version $Id$
  * @author Philip Mayer
- * 
+ *
  * @param <KEY>
  * @param <OBJECT>
  */
 public class BlackBoard<KEY extends BlackBoardKey, OBJECT> {
 
-	private Map<KEY, OBJECT> map;
+	/**
+	 * Rendezvous point for a single key.
+	 */
+	private static final class Slot<OBJECT> {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition filled = lock.newCondition();
+		private final Condition emptied = lock.newCondition();
+		private OBJECT object;
+		private boolean full;
+	}
+
+	private final ConcurrentMap<KEY, Slot<OBJECT>> slots = new ConcurrentHashMap<KEY, Slot<OBJECT>>();
 
-	public BlackBoard() {
-		map= new HashMap<KEY, OBJECT>();
+	private final long fTimeoutMillis;
+
+	/**
+	 * Creates a blackboard whose {@link #getObject(BlackBoardKey)} calls time
+	 * out after the specified number of milliseconds.
+	 */
+	public BlackBoard(long timeoutMillis) {
+		fTimeoutMillis = timeoutMillis;
 	}
 
-	public synchronized void putObject(KEY key, OBJECT object) throws InterruptedException {
-		// XXX Synchronization is not right
-		while (map.containsKey(key)) {
-			wait(BPELUnitConstants.TIMEOUT_SLEEP_TIME);
+	public void putObject(KEY key, OBJECT object) throws InterruptedException {
+		final Slot<OBJECT> slot = getSlot(key);
+		slot.lock.lockInterruptibly();
+		try {
+			while (slot.full) {
+				slot.emptied.await();
+			}
+			slot.object = object;
+			slot.full = true;
+			slot.filled.signalAll();
+		} finally {
+			slot.lock.unlock();
 		}
-		map.put(key, object);
-		notifyAll();
 	}
 
-	public synchronized OBJECT getObject(KEY key) throws TimeoutException, InterruptedException {
-		// XXX Synchronization is not right
-		int timeout = 0;
+	public OBJECT getObject(KEY key) throws TimeoutException, InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fTimeoutMillis);
+		final Slot<OBJECT> slot = getSlot(key);
 
-		while (!map.containsKey(key) && timeout < BPELUnitRunner.getTimeout() && key.canStillProvideValue(this)) {
-			timeout+= BPELUnitConstants.TIMEOUT_SLEEP_TIME;
-			wait(BPELUnitConstants.TIMEOUT_SLEEP_TIME);
-		}
+		slot.lock.lockInterruptibly();
+		try {
+			while (!slot.full) {
+				if (!key.canStillProvideValue(this)) {
+					throw new TimeoutException("Key " + key + " cannot provide the requested value anymore");
+				}
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new TimeoutException("Waiting for object for key " + key + " took too long.");
+				}
+				slot.filled.awaitNanos(remaining);
+			}
 
-		if (map.containsKey(key)) {
-			OBJECT object= map.get(key);
-			map.remove(key);
+			final OBJECT object = slot.object;
+			slot.object = null;
+			slot.full = false;
+			slot.emptied.signalAll();
 			return object;
+		} finally {
+			slot.lock.unlock();
 		}
-		else if (timeout >= BPELUnitRunner.getTimeout()) {
-			throw new TimeoutException("Waiting for object for key " + key + " took too long.");
+	}
+
+	/**
+	 * Wakes up all threads waiting for an object, so they check again whether
+	 * their keys can still provide a value. Should be called whenever that
+	 * might have changed (e.g. a partner track has finished).
+	 */
+	public void wakeUpWaiters() {
+		for (Slot<OBJECT> slot : slots.values()) {
+			slot.lock.lock();
+			try {
+				slot.filled.signalAll();
+			} finally {
+				slot.lock.unlock();
+			}
 		}
-		else {
-			throw new TimeoutException("Key " + key + " cannot provide the requested value anymore");
+	}
+
+	private Slot<OBJECT> getSlot(KEY key) {
+		Slot<OBJECT> slot = slots.get(key);
+		if (slot == null) {
+			final Slot<OBJECT> newSlot = new Slot<OBJECT>();
+			slot = slots.putIfAbsent(key, newSlot);
+			if (slot == null) {
+				slot = newSlot;
+			}
 		}
+		return slot;
 	}
 
 }
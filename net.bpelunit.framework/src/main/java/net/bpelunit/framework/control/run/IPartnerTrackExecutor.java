@@ -0,0 +1,41 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import net.bpelunit.framework.model.test.PartnerTrack;
+
+/**
+ * Runs the partner tracks of the test cases in a test suite. All partner
+ * tracks of a test case must be able to run at the same time, so
+ * implementations may never queue a partner track behind another one.
+ */
+public interface IPartnerTrackExecutor {
+
+	/**
+	 * Starts running the partner track in the background.
+	 * 
+	 * @return handle which can be used to interrupt the partner track
+	 */
+	PartnerTrackExecution execute(PartnerTrack track);
+
+	/**
+	 * Returns the number of threads created by this executor so far.
+	 */
+	int getThreadsCreated();
+
+	/**
+	 * Returns the highest number of partner tracks which have been running at
+	 * the same time in this executor.
+	 */
+	int getPeakConcurrency();
+
+	/**
+	 * Releases the threads of this executor. No partner tracks may be
+	 * executed afterwards.
+	 */
+	void shutdown();
+
+}
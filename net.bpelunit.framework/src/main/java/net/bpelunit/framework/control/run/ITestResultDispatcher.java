@@ -0,0 +1,36 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+/**
+ * Delivers the events of a running test suite to its result listeners.
+ * Events are delivered in the order in which they were dispatched, although
+ * implementations may merge repeated progress events for the same artefact.
+ */
+public interface ITestResultDispatcher {
+
+	void testCaseStarted(TestCase testCase);
+
+	void testCaseEnded(TestCase testCase);
+
+	void progress(ITestArtefact testArtefact);
+
+	/**
+	 * Runs the task once all the events dispatched before have been delivered.
+	 */
+	void execute(Runnable task);
+
+	/**
+	 * Waits until all dispatched events have been delivered, and releases the
+	 * threads of this dispatcher. Events dispatched afterwards are delivered
+	 * right away.
+	 */
+	void shutdown();
+
+}
@@ -0,0 +1,77 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import net.bpelunit.framework.model.test.PartnerTrack;
+
+/**
+ * A partner track which has been handed to an {@link IPartnerTrackExecutor}.
+ * 
+ * Cancelling an execution interrupts the thread running the partner track. If
+ * the partner track has not been picked up by a thread yet, it will be
+ * interrupted as soon as it starts, so it always gets the chance to report its
+ * status back to the {@link TestCaseRunner}.
+ */
+public class PartnerTrackExecution implements Runnable {
+
+	private final PartnerTrack fTrack;
+
+	private Thread fThread;
+
+	private boolean fCancelled;
+
+	private boolean fFinished;
+
+	public PartnerTrackExecution(PartnerTrack track) {
+		fTrack = track;
+	}
+
+	public PartnerTrack getPartnerTrack() {
+		return fTrack;
+	}
+
+	public void run() {
+		final Thread thread = Thread.currentThread();
+		final String oldName = thread.getName();
+		synchronized (this) {
+			fThread = thread;
+			if (fCancelled) {
+				thread.interrupt();
+			}
+		}
+
+		thread.setName(fTrack.getPartnerName());
+		try {
+			fTrack.run();
+		} finally {
+			synchronized (this) {
+				fThread = null;
+				fFinished = true;
+			}
+			// Do not leak the interrupted flag to the next task of a pooled thread
+			Thread.interrupted();
+			thread.setName(oldName);
+		}
+	}
+
+	/**
+	 * Interrupts the partner track, unless it has already finished.
+	 */
+	public synchronized void cancel() {
+		if (fFinished) {
+			return;
+		}
+		fCancelled = true;
+		if (fThread != null) {
+			fThread.interrupt();
+		}
+	}
+
+	public synchronized boolean isFinished() {
+		return fFinished;
+	}
+
+}
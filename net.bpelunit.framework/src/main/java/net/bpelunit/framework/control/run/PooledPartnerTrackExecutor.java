@@ -0,0 +1,40 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs partner tracks on a pool of platform threads, which are reused across
+ * test cases. The pool grows as needed, as partner tracks of the same test case
+ * must never wait for each other to start, and idle threads are released after
+ * a while.
+ */
+public class PooledPartnerTrackExecutor extends AbstractPartnerTrackExecutor {
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private final ThreadPoolExecutor fPool;
+
+	public PooledPartnerTrackExecutor() {
+		fPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+				KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				createCountingThreadFactory("BPELUnit partner track "));
+	}
+
+	@Override
+	protected void executeTask(Runnable task) {
+		fPool.execute(task);
+	}
+
+	public void shutdown() {
+		fPool.shutdown();
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import java.util.List;
+
+import net.bpelunit.framework.model.test.ITestResultListener;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+/**
+ * Calls the result listeners right away, on the thread which dispatches the
+ * event. Only one event is delivered at a time.
+ */
+public class SynchronousTestResultDispatcher implements ITestResultDispatcher {
+
+	private final List<ITestResultListener> fListeners;
+
+	public SynchronousTestResultDispatcher(List<ITestResultListener> listeners) {
+		fListeners = listeners;
+	}
+
+	public synchronized void testCaseStarted(TestCase testCase) {
+		for (ITestResultListener listener : fListeners) {
+			listener.testCaseStarted(testCase);
+		}
+	}
+
+	public synchronized void testCaseEnded(TestCase testCase) {
+		for (ITestResultListener listener : fListeners) {
+			listener.testCaseEnded(testCase);
+		}
+	}
+
+	public synchronized void progress(ITestArtefact testArtefact) {
+		for (ITestResultListener listener : fListeners) {
+			listener.progress(testArtefact);
+		}
+	}
+
+	public void execute(Runnable task) {
+		task.run();
+	}
+
+	public void shutdown() {
+		// nothing to release
+	}
+
+}
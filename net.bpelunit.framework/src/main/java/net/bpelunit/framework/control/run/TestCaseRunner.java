@@ -5,35 +5,32 @@
  */
 package net.bpelunit.framework.control.run;
 
-import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.RunnerConfiguration;
 import net.bpelunit.framework.control.datasource.WrappedContext;
-import net.bpelunit.framework.control.util.BPELUnitConstants;
+import net.bpelunit.framework.control.ws.IMessageTransport;
 import net.bpelunit.framework.control.ws.LocalHTTPServer;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.exception.PartnerNotFoundException;
 import net.bpelunit.framework.exception.SynchronousSendException;
 import net.bpelunit.framework.model.test.PartnerTrack;
 import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.activity.Activity;
 import net.bpelunit.framework.model.test.activity.VelocityContextProvider;
 import net.bpelunit.framework.model.test.report.ITestArtefact;
 import net.bpelunit.framework.model.test.wire.IncomingMessage;
 import net.bpelunit.framework.model.test.wire.OutgoingMessage;
 
-import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
-import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.methods.RequestEntity;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
-import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.log4j.Logger;
 
 /**
@@ -56,9 +53,27 @@ public class TestCaseRunner implements VelocityContextProvider {
 
 	private Map<PartnerTrack, PartnerTrackResult> fPartnerTracks;
 
-	private List<String> executedActivities;
-	
-	private boolean fProblemOccurred;
+	private ActivityCompletionRegistry fActivityCompletions;
+
+	private volatile boolean fProblemOccurred;
+
+	// Track lifecycle
+	/**
+	 * Released once all partner track threads have been started, so they all
+	 * begin their activities at the same time.
+	 */
+	private final CountDownLatch fStartSignal = new CountDownLatch(1);
+
+	/**
+	 * Counted down once by each partner track when it is done.
+	 */
+	private CountDownLatch fRunningTracks;
+
+	/**
+	 * Released exactly once: when all partner tracks are done, when the first
+	 * one fails, or when the user aborts the test.
+	 */
+	private final CountDownLatch fCompletionOrProblem = new CountDownLatch(1);
 
 	// Thread communication
 	private BlackBoard<PartnerTrack, IncomingMessage> fIncomingBlackboard;
@@ -73,25 +88,59 @@ public class TestCaseRunner implements VelocityContextProvider {
 	// Other stuff
 	private Logger fLogger;
 
-	private boolean fAbortedByUser;
+	private volatile boolean fAbortedByUser;
+
+	private IMessageTransport fTransport;
+
+	/**
+	 * Time to wait for messages, in milliseconds
+	 */
+	private final int fTimeout;
 
-	private HttpClient fClient;
+	/**
+	 * URL namespace of this runner in the local HTTP server (may be null)
+	 */
+	private String fNamespace;
 
 	public TestCaseRunner(LocalHTTPServer localServer, TestCase caseToRun) {
+		this(localServer, caseToRun, null);
+	}
+
+	/**
+	 * Creates a runner whose partner tracks simulate their partners under
+	 * <code>baseURL/namespace/partnerName</code>, so incoming requests can be
+	 * told apart from those of other test cases running at the same time.
+	 * 
+	 * @param namespace
+	 *            URL segment for this runner, or <code>null</code> to use the
+	 *            plain simulated URLs of the partners.
+	 */
+	public TestCaseRunner(LocalHTTPServer localServer, TestCase caseToRun, String namespace) {
+		this(localServer, caseToRun, namespace, new RunnerConfiguration());
+	}
+
+	/**
+	 * Creates a runner as above, which waits for messages as long as set in
+	 * the given configuration.
+	 */
+	public TestCaseRunner(LocalHTTPServer localServer, TestCase caseToRun,
+			String namespace, RunnerConfiguration configuration) {
 		fTestCase = caseToRun;
 		fServer = localServer;
+		fNamespace = namespace;
+		fTimeout = configuration.getTimeout();
 
 		fProblemOccurred = false;
 		fAbortedByUser = false;
 
 		initializePartnerTracks(caseToRun);
 
-		fIncomingBlackboard = new BlackBoard<PartnerTrack, IncomingMessage>();
-		fOutgoingBlackboard = new BlackBoard<PartnerTrack, OutgoingMessage>();
-		fSentBlackBoard = new BlackBoard<OutgoingMessage, Boolean>();
+		fIncomingBlackboard = new BlackBoard<PartnerTrack, IncomingMessage>(fTimeout);
+		fOutgoingBlackboard = new BlackBoard<PartnerTrack, OutgoingMessage>(fTimeout);
+		fSentBlackBoard = new BlackBoard<OutgoingMessage, Boolean>(fTimeout);
+
+		fActivityCompletions = new ActivityCompletionRegistry(getActivityIds(caseToRun));
 
-		executedActivities = new ArrayList<String>();
-		
 		fLogger = Logger.getLogger(getClass());
 	}
 
@@ -104,50 +153,57 @@ public class TestCaseRunner implements VelocityContextProvider {
 		for (PartnerTrack head : partnerTracks) {
 			fPartnerTracks.put(head, PartnerTrackResult.RUNNING);
 		}
+		fRunningTracks = new CountDownLatch(fPartnerTracks.size());
+		if (fPartnerTracks.isEmpty()) {
+			fCompletionOrProblem.countDown();
+		}
 	}
 
-	public void run() {
-		// Pool connections to avoid socket leaks
-		MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
-		// Increase maximum per host, as most will use the same host (localhost)
-		connectionManager.getParams().setDefaultMaxConnectionsPerHost(10);
-
-		fClient = new HttpClient(connectionManager);
-
-		try {
-			fLogger.info("Initiating testCase " + fTestCase.getName());
-			fServer.startTest(this);
-
-			final List<Thread> threads = new ArrayList<Thread>();
-			startPartnerTracks(threads);
-			waitForPartnerTracksOrError();
-
-			if (fProblemOccurred || fAbortedByUser) {
-				checkPartnerTracksForProblems();
-				interruptAllThreads(threads);
-				waitForPartnerTracks();
-			} else {
-				fLogger.info("Test case passed.");
+	private static List<String> getActivityIds(TestCase testCase) {
+		final List<String> ids = new ArrayList<String>();
+		for (PartnerTrack partnerTrack : testCase.getPartnerTracks()) {
+			for (Activity activity : partnerTrack.getActivities()) {
+				if (activity.getId() != null) {
+					ids.add(activity.getId());
+				}
 			}
-			fLogger.debug("All threads returned.");
-
-			fLogger.info("Stopping testCase " + fTestCase.getName());
-			fServer.stopTest(this);
 		}
-		finally {
-			connectionManager.shutdown();
+		return ids;
+	}
+
+	public void run() {
+		// Connections are pooled by the suite, so they can be kept alive
+		// between test cases
+		fTransport = fTestCase.getSuite().getMessageTransport();
+
+		fLogger.info("Initiating testCase " + fTestCase.getName());
+		fServer.startTest(this);
+
+		final List<PartnerTrackExecution> executions = new ArrayList<PartnerTrackExecution>();
+		startPartnerTracks(executions);
+		waitForPartnerTracksOrError();
+
+		if (fProblemOccurred || fAbortedByUser) {
+			checkPartnerTracksForProblems();
+			interruptAllThreads(executions);
+			waitForPartnerTracks();
+		} else {
+			fLogger.info("Test case passed.");
 		}
+		fLogger.debug("All threads returned.");
+
+		fLogger.info("Stopping testCase " + fTestCase.getName());
+		fServer.stopTest(this);
 	}
 
-	private void startPartnerTracks(final List<Thread> threads) {
+	private void startPartnerTracks(final List<PartnerTrackExecution> executions) {
+		final IPartnerTrackExecutor executor = fTestCase.getSuite().getPartnerTrackExecutor();
 		for (PartnerTrack partnerTrack : fPartnerTracks.keySet()) {
-			Thread trackThread = new Thread(partnerTrack,
-					partnerTrack.getPartnerName());
 			fLogger.debug("Now starting thread for partner "
 					+ partnerTrack.getPartnerName());
-			trackThread.start();
-			threads.add(trackThread);
+			executions.add(executor.execute(partnerTrack));
 		}
+		fStartSignal.countDown();
 		fLogger.info("TestCase was started.");
 	}
 
@@ -163,16 +219,46 @@ public class TestCaseRunner implements VelocityContextProvider {
 		}
 	}
 
-	private void interruptAllThreads(final List<Thread> threads) {
+	private void interruptAllThreads(final List<PartnerTrackExecution> executions) {
 		fLogger.debug("Trying to interrupt all threads...");
-		for (Thread t : threads) {
-			if (t.isAlive()) {
-				t.interrupt();
-			}
+		for (PartnerTrackExecution execution : executions) {
+			execution.cancel();
 		}
 		fLogger.debug("All threads interrupted. Waiting for threads...");
 	}
 
+	/**
+	 * Returns the URL namespace of this runner in the local HTTP server, or
+	 * <code>null</code> if it does not use one.
+	 */
+	public String getNamespace() {
+		return fNamespace;
+	}
+
+	/**
+	 * Returns the URL simulated by the partner track within this runner. This
+	 * includes the namespace of the runner, if there is one.
+	 */
+	public String getPartnerURL(PartnerTrack track) {
+		final String simulatedURL = track.getPartner().getSimulatedURL();
+		if (fNamespace == null) {
+			return simulatedURL;
+		}
+		final int iLastSlash = simulatedURL.lastIndexOf('/');
+		return simulatedURL.substring(0, iLastSlash + 1) + fNamespace
+				+ simulatedURL.substring(iLastSlash);
+	}
+
+	/**
+	 * Blocks the calling partner track until the threads of all partner tracks
+	 * in this test case have been started.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void waitForStart() throws InterruptedException {
+		fStartSignal.await();
+	}
+
 	public synchronized PartnerTrack findPartnerTrackForName(String name)
 			throws PartnerNotFoundException {
 		for (PartnerTrack partnerTrack : fPartnerTracks.keySet()) {
@@ -241,6 +327,11 @@ public class TestCaseRunner implements VelocityContextProvider {
 	 * result. This method blocks until either a result has been retrieved, a
 	 * send error has occurred, or the thread was interrupted.
 	 * 
+	 * Each partner track runs its activities one after the other on its own
+	 * thread, so the thread of the calling track waits here. The transport
+	 * itself does not use a thread per message; callers which do not want to
+	 * wait can use {@link #sendMessageAsynchronous(OutgoingMessage)}.
+	 * 
 	 * @param message
 	 *            the message to be sent
 	 * @return the resulting incoming message
@@ -249,58 +340,45 @@ public class TestCaseRunner implements VelocityContextProvider {
 	 */
 	public IncomingMessage sendMessageSynchronous(OutgoingMessage message)
 			throws SynchronousSendException, InterruptedException {
-		PostMethod method = new PostMethod(message.getTargetURL());
-
-		// Set parameters:
-		// -> Do not retry
-		// -> Socket timeout to default timeout value.
-		method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
-				new DefaultHttpMethodRetryHandler(1, false));
-		method.getParams().setParameter(HttpMethodParams.SO_TIMEOUT,
-				Integer.valueOf(BPELUnitRunner.getTimeout()));
-
-		method.addRequestHeader("SOAPAction", "\""
-				+ message.getSOAPHTTPAction() + "\"");
-		RequestEntity entity;
+		final Future<IncomingMessage> answer = sendMessageAsynchronous(message);
 		try {
-			entity = new StringRequestEntity(message.getMessageAsString(),
-					BPELUnitConstants.TEXT_XML_CONTENT_TYPE,
-					BPELUnitConstants.DEFAULT_HTTP_CHARSET);
-		} catch (UnsupportedEncodingException e) {
-			// cannot happen since we use the default HTTP Encoding.
-			throw new SynchronousSendException(
-					"Unsupported encoding when trying to post message to web service.",
-					e);
-		}
-		
-		for(String option : message.getProtocolOptionNames()) {
-			method.addRequestHeader(option, message.getProtocolOption(option));
+			return answer.get(fTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			answer.cancel(true);
+			throw e;
+		} catch (TimeoutException e) {
+			answer.cancel(true);
+			throw new SynchronousSendException("No answer received in time", e);
+		} catch (ExecutionException e) {
+			if (isAborting()) {
+				throw new InterruptedException();
+			}
+			final Throwable cause = e.getCause();
+			throw new SynchronousSendException(cause instanceof Exception ? (Exception) cause : e);
 		}
-		method.setRequestEntity(entity);
+	}
 
+	/**
+	 * Sends a message through the transport of the test suite, and returns
+	 * the future answer without waiting for it.
+	 * 
+	 * @param message
+	 *            the message to be sent
+	 * @return the future answer
+	 * @throws SynchronousSendException
+	 *             the message could not be sent
+	 * @throws InterruptedException
+	 */
+	public Future<IncomingMessage> sendMessageAsynchronous(OutgoingMessage message)
+			throws SynchronousSendException, InterruptedException {
 		try {
-			// Execute the method.
-
-			int statusCode = fClient.executeMethod(method);
-			InputStream in = method.getResponseBodyAsStream();
-
-			IncomingMessage returnMsg = new IncomingMessage();
-			returnMsg.setStatusCode(statusCode);
-			returnMsg.setMessage(in);
-
-			return returnMsg;
-
-		} catch (Exception e) {
+			return fTransport.send(message);
+		} catch (SynchronousSendException e) {
 			if (isAborting()) {
 				throw new InterruptedException();
-			} else {
-				throw new SynchronousSendException(e);
 			}
-		} finally {
-			// Release the connection.
-			method.releaseConnection();
+			throw e;
 		}
-
 	}
 
 	// ************* Accessor functions for partner tracks
@@ -313,8 +391,8 @@ public class TestCaseRunner implements VelocityContextProvider {
 	 * @param track
 	 */
 	public synchronized void done(PartnerTrack track) {
-		fPartnerTracks.put(track, PartnerTrackResult.COMPLETED);
-		notifyAll();
+		markCompleted(track);
+		wakeUpBlackBoardWaiters();
 	}
 
 	/**
@@ -326,8 +404,29 @@ public class TestCaseRunner implements VelocityContextProvider {
 	 */
 	public synchronized void doneWithFault(PartnerTrack track) {
 		fProblemOccurred = true;
-		fPartnerTracks.put(track, PartnerTrackResult.COMPLETED);
-		notifyAll();
+		fCompletionOrProblem.countDown();
+		fActivityCompletions.abort();
+		markCompleted(track);
+		wakeUpBlackBoardWaiters();
+	}
+
+	private void markCompleted(PartnerTrack track) {
+		if (fPartnerTracks.put(track, PartnerTrackResult.COMPLETED) == PartnerTrackResult.RUNNING) {
+			fRunningTracks.countDown();
+			if (fRunningTracks.getCount() == 0) {
+				fCompletionOrProblem.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Lets the threads waiting on the blackboards notice right away that a
+	 * partner track cannot provide any more values.
+	 */
+	private void wakeUpBlackBoardWaiters() {
+		fIncomingBlackboard.wakeUpWaiters();
+		fOutgoingBlackboard.wakeUpWaiters();
+		fSentBlackBoard.wakeUpWaiters();
 	}
 
 	// ********** Accessor functions for the web service handler *************
@@ -349,33 +448,33 @@ public class TestCaseRunner implements VelocityContextProvider {
 
 	// ********************* Waiting *******************************
 
-	private synchronized void waitForPartnerTracksOrError() {
-		while (!allPartnerTracksCompleted() && (!fProblemOccurred)
-				&& (!fAbortedByUser)) {
-			try {
-				wait(BPELUnitConstants.TIMEOUT_SLEEP_TIME);
-			} catch (InterruptedException e) {
-			}
-		}
+	private void waitForPartnerTracksOrError() {
+		awaitUninterruptibly(fCompletionOrProblem);
 	}
 
-	private synchronized void waitForPartnerTracks() {
-		while (!allPartnerTracksCompleted()) {
-			try {
-				wait(BPELUnitConstants.TIMEOUT_SLEEP_TIME);
-			} catch (InterruptedException e) {
-			}
-		}
+	private void waitForPartnerTracks() {
+		awaitUninterruptibly(fRunningTracks);
 	}
 
-	private synchronized boolean allPartnerTracksCompleted() {
-		for (PartnerTrack head : fPartnerTracks.keySet()) {
-			if (fPartnerTracks.get(head).equals(PartnerTrackResult.RUNNING)) {
-				return false;
+	/**
+	 * Waits for the latch even if the thread is interrupted, and interrupts
+	 * the thread again afterwards, so the interruption is not lost.
+	 */
+	private void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		try {
+			while (latch.getCount() > 0) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
-		
-		return true;
 	}
 
 	private boolean isAborting() {
@@ -388,18 +487,30 @@ public class TestCaseRunner implements VelocityContextProvider {
 		 * thread.
 		 */
 		fAbortedByUser = true;
+		fCompletionOrProblem.countDown();
+		fActivityCompletions.abort();
 	}
 
 	public void markActivityAsExecuted(String activityId) {
-		if(activityId != null) {
-			executedActivities.add(activityId);
-		}
+		fActivityCompletions.markCompleted(activityId);
 	}
-	
+
 	public List<String> getExecutedActivities() {
-		return new ArrayList<String>(this.executedActivities);
+		return fActivityCompletions.getCompletedActivities();
 	}
-	
+
+	/**
+	 * Blocks until the activities with these ids have been executed.
+	 * 
+	 * @return <code>true</code> if they have been executed,
+	 *         <code>false</code> if the test case was aborted before.
+	 * @throws InterruptedException
+	 */
+	public boolean waitForActivities(Collection<String> activityIds)
+			throws InterruptedException {
+		return fActivityCompletions.awaitCompletion(activityIds);
+	}
+
 	// ********************* Velocity contexts *********************
 
 	public WrappedContext createVelocityContext(ITestArtefact artefact) throws DataSourceException  {
@@ -0,0 +1,60 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.run;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every partner track on its own virtual thread. Virtual threads are only
+ * available from Java 21 onwards: as BPELUnit still has to run on older JDKs,
+ * the executor is obtained by calling
+ * <code>Executors.newVirtualThreadPerTaskExecutor()</code> through reflection.
+ * Use {@link #create()} to get an instance, if the running JDK supports them.
+ */
+public class VirtualThreadPartnerTrackExecutor extends AbstractPartnerTrackExecutor {
+
+	private static final String FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+	private final ExecutorService fExecutor;
+
+	private VirtualThreadPartnerTrackExecutor(ExecutorService executor) {
+		fExecutor = executor;
+	}
+
+	/**
+	 * Creates an executor running each partner track on a new virtual thread.
+	 * 
+	 * @return the executor, or <code>null</code> if the running JDK does not
+	 *         support virtual threads
+	 */
+	public static VirtualThreadPartnerTrackExecutor create() {
+		try {
+			final Method factory = Executors.class.getMethod(FACTORY_METHOD);
+			return new VirtualThreadPartnerTrackExecutor((ExecutorService) factory.invoke(null));
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			return null;
+		}
+	}
+
+	@Override
+	protected void executeTask(Runnable task) {
+		// Each task gets a new virtual thread
+		threadCreated();
+		fExecutor.execute(task);
+	}
+
+	public void shutdown() {
+		fExecutor.shutdown();
+	}
+
+}
@@ -7,8 +7,10 @@ package net.bpelunit.framework.control.soap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
@@ -29,18 +31,54 @@ public class NamespaceContextImpl implements NamespaceContext {
 	 */
 	private Map<String, Collection<String>> fNamespaceMap;
 
+	/**
+	 * Immutable copy of the namespace map, discarded whenever a namespace is
+	 * added.
+	 */
+	private Map<String, List<String>> fSnapshot;
+
 
 	public NamespaceContextImpl() {
 		fNamespaceMap= new HashMap<String, Collection<String>>();
 	}
 
-	public void setNamespace(String prefix, String namespaceURI) {
+	/**
+	 * Creates a context with the prefixes registered for each namespace URI
+	 * in the given map.
+	 */
+	public NamespaceContextImpl(Map<String, ? extends Collection<String>> namespaces) {
+		this();
+		for (Map.Entry<String, ? extends Collection<String>> entry : namespaces.entrySet()) {
+			for (String prefix : entry.getValue()) {
+				setNamespace(prefix, entry.getKey());
+			}
+		}
+	}
+
+	public synchronized void setNamespace(String prefix, String namespaceURI) {
 		Collection<String> prefixes= fNamespaceMap.get(namespaceURI);
 		if (prefixes == null) {
 			prefixes= new ArrayList<String>();
 			fNamespaceMap.put(namespaceURI, prefixes);
 		}
 		prefixes.add(prefix);
+		fSnapshot= null;
+	}
+
+	/**
+	 * Returns the prefixes registered for each namespace URI. The returned map
+	 * is immutable and is not affected by later calls to
+	 * {@link #setNamespace(String, String)}, so it can be used as a key.
+	 */
+	public synchronized Map<String, List<String>> getNamespaces() {
+		if (fSnapshot == null) {
+			Map<String, List<String>> snapshot= new HashMap<String, List<String>>();
+			for (Map.Entry<String, Collection<String>> entry : fNamespaceMap.entrySet()) {
+				snapshot.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+			}
+			fSnapshot= Collections.unmodifiableMap(snapshot);
+		}
+		return fSnapshot;
 	}
 
 
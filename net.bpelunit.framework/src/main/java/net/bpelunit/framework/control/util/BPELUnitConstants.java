@@ -60,6 +60,31 @@ public final class BPELUnitConstants {
 	 */
 	public static final int TIMEOUT_SLEEP_TIME= 150;
 
+	/**
+	 * Default maximum number of pooled HTTP connections to the same host.
+	 */
+	public static final int MAX_CONNECTIONS_PER_HOST= 10;
+
+	/**
+	 * Default time after which idle pooled HTTP connections are closed (30 seconds).
+	 */
+	public static final int IDLE_CONNECTION_TIMEOUT= 30000;
+
+	/**
+	 * Default maximum number of events waiting for the result listeners.
+	 */
+	public static final int RESULT_LISTENER_QUEUE_SIZE= 1000;
+
+	/**
+	 * Maximum number of compiled XPath expressions kept in memory.
+	 */
+	public static final int XPATH_CACHE_SIZE= 1024;
+
+	/**
+	 * Maximum number of parsed WSDL definitions kept in memory.
+	 */
+	public static final int WSDL_CACHE_SIZE= 64;
+
 	/**
 	 * Default charset for HTTP requests
 	 */
@@ -15,6 +15,7 @@ import javax.xml.soap.Detail;
 import javax.xml.soap.DetailEntry;
 import javax.xml.soap.MessageFactory;
 import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPFault;
 import javax.xml.soap.SOAPMessage;
 import javax.xml.transform.OutputKeys;
@@ -46,6 +47,8 @@ public final class BPELUnitUtil {
 	
 	public static final String DUMMY_ELEMENT_NAME = "literalData";
 
+	private static final ThreadLocal<MessageFactory> MESSAGE_FACTORIES = new ThreadLocal<MessageFactory>();
+
 	/**
 	 * The document builder to use.
 	 */
@@ -88,7 +91,7 @@ public final class BPELUnitUtil {
 	public static SOAPMessage generateGenericSOAPFault() {
 
 		try {
-			MessageFactory mFactory= MessageFactory.newInstance();
+			MessageFactory mFactory= getMessageFactory();
 			SOAPMessage message= mFactory.createMessage();
 			SOAPBody body= message.getSOAPBody();
 			SOAPFault fault= body.addFault(
@@ -106,6 +109,45 @@ public final class BPELUnitUtil {
 		}
 	}
 
+	/**
+	 * Returns the SAAJ message factory for the current thread. Looking up the
+	 * factory is expensive, and factories are not guaranteed to be thread-safe,
+	 * so each thread reuses its own.
+	 * 
+	 * @return
+	 * @throws SOAPException
+	 */
+	public static MessageFactory getMessageFactory() throws SOAPException {
+		MessageFactory factory= MESSAGE_FACTORIES.get();
+		if (factory == null) {
+			factory= MessageFactory.newInstance();
+			MESSAGE_FACTORIES.set(factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Returns the character encoding used to serialize a SOAP message (UTF-8
+	 * unless the message says otherwise).
+	 * 
+	 * @param message
+	 *            the message, or <code>null</code>
+	 * @return
+	 */
+	public static String getCharacterEncoding(SOAPMessage message) {
+		if (message != null) {
+			try {
+				Object encoding= message.getProperty(SOAPMessage.CHARACTER_SET_ENCODING);
+				if (encoding != null) {
+					return encoding.toString();
+				}
+			} catch (SOAPException e) {
+				// fall back to the default
+			}
+		}
+		return "UTF-8";
+	}
+
 	/**
 	 * Removes line breaks from a string
 	 * 
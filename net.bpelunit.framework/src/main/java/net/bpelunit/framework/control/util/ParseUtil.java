@@ -8,31 +8,27 @@ package net.bpelunit.framework.control.util;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.wsdl.Definition;
 import javax.wsdl.WSDLException;
-import javax.wsdl.factory.WSDLFactory;
-import javax.wsdl.xml.WSDLReader;
 
 import org.jdom.Document;
 import org.jdom.JDOMException;
 import org.jdom.input.SAXBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
-import org.xml.sax.InputSource;
 
 public final class ParseUtil {
 
 	private ParseUtil() {
 	}
 	
-	private static Map<String, Document> fParsedDocuments = new HashMap<String, Document>();
-	private static Map<String, Definition> fParsedDefinitions = new HashMap<String, Definition>();
+	private static Map<String, Document> fParsedDocuments = Collections.synchronizedMap(new HashMap<String, Document>());
 
 	/**
 	 * Gets a JDOM Document from the given XML file. The returned Document
@@ -105,7 +101,10 @@ public final class ParseUtil {
 	}
 
 	/**
-	 * Gets a WSDL Definition (WSDL4J API) from the given WSDL file.
+	 * Gets a WSDL Definition (WSDL4J API) from the given WSDL file. Definitions
+	 * are cached in the {@link WSDLDefinitionCache} shared by the framework,
+	 * and are only reused while the WSDL file and the files it imports are
+	 * unchanged. Cached definitions must not be modified.
 	 * 
 	 * @param filename
 	 *            Absolute path of the WSDL file.
@@ -123,31 +122,14 @@ public final class ParseUtil {
 			boolean searchCache, boolean toCache) throws IOException {
 		File wsdl = new File(filename);
 
-		Definition definition = fParsedDefinitions.get(filename);
-		if (searchCache
-				&& definition != null) {
-			return definition;
-		}
-
 		try {
-			WSDLReader reader = WSDLFactory.newInstance().newWSDLReader();
-
-			InputSource source = new InputSource(new FileInputStream(wsdl));
-			definition = reader.readWSDL(filename, source);
-
+			return WSDLDefinitionCache.getInstance().getDefinition(wsdl,
+					searchCache, toCache);
 		} catch (WSDLException e) {
 			throw new IOException(
 					"Error while reading definition from WSDL file \""
 							+ wsdl.getAbsolutePath() + "\".", e);
-		} catch (FileNotFoundException e) {
-			throw new IOException(e);
-		}
-
-		if (toCache) {
-			fParsedDefinitions.put(filename, definition);
 		}
-
-		return definition;
 	}
 
 	/**
@@ -164,25 +146,7 @@ public final class ParseUtil {
 	 */
 	public static Definition getWsdlDefinition(String filename)
 			throws IOException {
-
-		File wsdl = new File(filename);
-		Definition def;
-
-		try {
-			WSDLReader reader = WSDLFactory.newInstance().newWSDLReader();
-
-			InputSource source = new InputSource(new FileInputStream(wsdl));
-			def = reader.readWSDL(filename, source);
-
-		} catch (WSDLException e) {
-			throw new IOException(
-					"Error while reading definition from WSDL file \""
-							+ wsdl.getAbsolutePath() + "\".", e);
-		} catch (FileNotFoundException e) {
-			throw new IOException(e);
-		}
-
-		return def;
+		return getWsdlDefinition(filename, false, false);
 	}
 	
 	public static void writeDocument(Document doc, String filename) throws IOException{
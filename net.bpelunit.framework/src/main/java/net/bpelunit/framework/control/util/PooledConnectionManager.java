@@ -0,0 +1,80 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+/**
+ * Connection manager which keeps connections alive between requests, so they
+ * can be reused by all the test cases in a test suite. Connections which have
+ * been idle for too long are closed in the background. The manager counts how
+ * many connections were reused (pool hits) and how many had to be opened (pool
+ * misses).
+ */
+public class PooledConnectionManager extends MultiThreadedHttpConnectionManager {
+
+	private final AtomicLong fReusedConnections = new AtomicLong();
+
+	private final AtomicLong fOpenedConnections = new AtomicLong();
+
+	private final IdleConnectionTimeoutThread fIdleConnectionCloser;
+
+	/**
+	 * @param maxConnectionsPerHost
+	 *            maximum number of connections to the same host
+	 * @param idleTimeout
+	 *            time in milliseconds after which an idle connection is closed
+	 */
+	public PooledConnectionManager(int maxConnectionsPerHost, long idleTimeout) {
+		getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+		getParams().setMaxTotalConnections(
+				Math.max(maxConnectionsPerHost, getParams().getMaxTotalConnections()));
+
+		fIdleConnectionCloser = new IdleConnectionTimeoutThread();
+		fIdleConnectionCloser.setConnectionTimeout(idleTimeout);
+		fIdleConnectionCloser.setTimeoutInterval(Math.max(1, idleTimeout / 2));
+		fIdleConnectionCloser.addConnectionManager(this);
+		fIdleConnectionCloser.start();
+	}
+
+	@Override
+	public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+			throws ConnectionPoolTimeoutException {
+		final HttpConnection conn = super.getConnectionWithTimeout(hostConfiguration, timeout);
+		if (conn.isOpen()) {
+			fReusedConnections.incrementAndGet();
+		} else {
+			fOpenedConnections.incrementAndGet();
+		}
+		return conn;
+	}
+
+	@Override
+	public void shutdown() {
+		fIdleConnectionCloser.shutdown();
+		super.shutdown();
+	}
+
+	/**
+	 * Returns how many requests could reuse an open connection.
+	 */
+	public long getReusedConnections() {
+		return fReusedConnections.get();
+	}
+
+	/**
+	 * Returns how many requests had to open a new connection.
+	 */
+	public long getOpenedConnections() {
+		return fOpenedConnections.get();
+	}
+}
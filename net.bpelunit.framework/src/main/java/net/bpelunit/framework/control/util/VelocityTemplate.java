@@ -0,0 +1,133 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ *
+ */
+package net.bpelunit.framework.control.util;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import net.bpelunit.framework.exception.DataSourceException;
+import net.bpelunit.framework.exception.SpecificationException;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.app.Velocity;
+import org.apache.velocity.context.Context;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.RuntimeSingleton;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * Velocity template which has been parsed once, when the test suite was
+ * loaded, and can then be merged with a different context on every execution.
+ * Merging does not change the template, so it can be shared by test cases
+ * which run at the same time.
+ *
+ * @version $Id$
+ */
+public class VelocityTemplate {
+
+	private final String fName;
+
+	private final String fSource;
+
+	private final Template fTemplate;
+
+	private VelocityTemplate(String name, String source, Template template) {
+		fName = name;
+		fSource = source;
+		fTemplate = template;
+	}
+
+	/**
+	 * Parses a template.
+	 *
+	 * @param name
+	 *            name of the template, used in error messages
+	 * @param source
+	 *            text of the template
+	 * @return the parsed template, or <code>null</code> if there is no source
+	 * @throws SpecificationException
+	 *             the template cannot be parsed
+	 */
+	public static VelocityTemplate compile(String name, String source) throws SpecificationException {
+		if (source == null) {
+			return null;
+		}
+
+		try {
+			initVelocity();
+		} catch (Exception e) {
+			throw new SpecificationException("Error while initializing Velocity", e);
+		}
+
+		try {
+			final RuntimeServices services = RuntimeSingleton.getRuntimeServices();
+			final SimpleNode node = services.parse(new StringReader(source), name);
+			final Template template = new Template();
+			template.setName(name);
+			template.setRuntimeServices(services);
+			template.setData(node);
+			template.initDocument();
+			return new VelocityTemplate(name, source, template);
+		} catch (Exception e) {
+			throw new SpecificationException("Could not parse the Velocity template " + name
+					+ ": " + e.getLocalizedMessage(), e);
+		}
+	}
+
+	/**
+	 * Initializes Velocity if it has not been initialized yet.
+	 */
+	public static void initVelocity() throws Exception {
+		try {
+			Velocity.init();
+		} catch (Exception e) {
+			// XXX DL: This is stupid but it seems that the logger
+			// cannot be initialized on the first try when running
+			// under Eclipse and ATM I don't know a better solution
+			try {
+				Velocity.init();
+			} catch (Exception e1) {
+				throw e;
+			}
+		}
+	}
+
+	public String getName() {
+		return fName;
+	}
+
+	public String getSource() {
+		return fSource;
+	}
+
+	/**
+	 * Renders the template with the given context.
+	 *
+	 * @throws DataSourceException
+	 *             there was an error while rendering the template
+	 */
+	public void merge(Context context, Writer writer) throws DataSourceException {
+		try {
+			fTemplate.merge(context, writer);
+		} catch (Exception e) {
+			throw new DataSourceException(e);
+		}
+	}
+
+	/**
+	 * Renders the template with the given context into a string.
+	 *
+	 * @throws DataSourceException
+	 *             there was an error while rendering the template
+	 */
+	public String mergeToString(Context context) throws DataSourceException {
+		final StringWriter writer = new StringWriter();
+		merge(context, writer);
+		return writer.toString();
+	}
+
+}
@@ -0,0 +1,295 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ *
+ */
+package net.bpelunit.framework.control.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.wsdl.Definition;
+import javax.wsdl.Import;
+import javax.wsdl.Types;
+import javax.wsdl.WSDLException;
+import javax.wsdl.extensions.schema.Schema;
+import javax.wsdl.extensions.schema.SchemaReference;
+import javax.wsdl.factory.WSDLFactory;
+import javax.wsdl.xml.WSDLReader;
+
+import com.ibm.wsdl.Constants;
+
+/**
+ * Thread-safe cache of parsed WSDL definitions, shared by all the suites loaded
+ * in this process. Definitions are keyed by the canonical path of their file,
+ * and are only reused while that file and all the WSDL and XML Schema files it
+ * imports or includes keep their last modification time and size. The least
+ * recently used definitions are evicted once the cache is full.
+ *
+ * The cached definitions are shared, so they must only be read.
+ *
+ * @version $Id$
+ */
+public class WSDLDefinitionCache {
+
+	private static final WSDLDefinitionCache INSTANCE = new WSDLDefinitionCache(BPELUnitConstants.WSDL_CACHE_SIZE);
+
+	/**
+	 * State of a file when it was read.
+	 */
+	private static final class FileStamp {
+		private final File fFile;
+		private final long fLastModified;
+		private final long fLength;
+
+		FileStamp(File file) {
+			fFile = file;
+			fLastModified = file.lastModified();
+			fLength = file.length();
+		}
+
+		boolean isUnchanged() {
+			return fFile.lastModified() == fLastModified && fFile.length() == fLength;
+		}
+	}
+
+	private static final class Entry {
+		private final Definition fDefinition;
+		private final List<FileStamp> fFiles;
+		private final long fLoadTimeNanos;
+
+		Entry(Definition definition, List<FileStamp> files, long loadTimeNanos) {
+			fDefinition = definition;
+			fFiles = files;
+			fLoadTimeNanos = loadTimeNanos;
+		}
+
+		boolean isUnchanged() {
+			for (FileStamp stamp : fFiles) {
+				if (!stamp.isUnchanged()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final Map<File, Entry> fEntries;
+
+	private final AtomicLong fHits = new AtomicLong();
+
+	private final AtomicLong fMisses = new AtomicLong();
+
+	private final AtomicLong fSavedLoadTimeNanos = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            maximum number of definitions kept in the cache
+	 */
+	public WSDLDefinitionCache(final int capacity) {
+		fEntries = new LinkedHashMap<File, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<File, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache shared by the whole framework.
+	 */
+	public static WSDLDefinitionCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the definition in the WSDL file, reading it only if it is not in
+	 * the cache or one of its files has changed since it was read.
+	 *
+	 * @throws IOException
+	 *             the canonical path of the file cannot be found
+	 * @throws WSDLException
+	 *             the WSDL file cannot be read
+	 */
+	public Definition getDefinition(File wsdlFile) throws IOException, WSDLException {
+		return getDefinition(wsdlFile, true, true);
+	}
+
+	/**
+	 * Returns the definition in the WSDL file.
+	 *
+	 * @param searchCache
+	 *            if true, an unchanged definition from the cache is returned
+	 *            instead of reading the file
+	 * @param toCache
+	 *            if true, a definition which has been read is put into the
+	 *            cache
+	 * @throws IOException
+	 *             the canonical path of the file cannot be found
+	 * @throws WSDLException
+	 *             the WSDL file cannot be read
+	 */
+	public Definition getDefinition(File wsdlFile, boolean searchCache, boolean toCache)
+			throws IOException, WSDLException {
+		final File file = wsdlFile.getCanonicalFile();
+
+		if (searchCache) {
+			final Entry entry;
+			synchronized (fEntries) {
+				entry = fEntries.get(file);
+			}
+			if (entry != null && entry.isUnchanged()) {
+				fHits.incrementAndGet();
+				fSavedLoadTimeNanos.addAndGet(entry.fLoadTimeNanos);
+				return entry.fDefinition;
+			}
+		}
+		fMisses.incrementAndGet();
+
+		// Stamp the file before reading it, so changes made while it is read
+		// are detected on the next lookup
+		final FileStamp stamp = new FileStamp(file);
+		final long start = System.nanoTime();
+		final WSDLReader reader = WSDLFactory.newInstance().newWSDLReader();
+		reader.setFeature(Constants.FEATURE_VERBOSE, false);
+		final Definition definition = reader.readWSDL(file.getPath());
+		final long loadTime = System.nanoTime() - start;
+
+		if (toCache) {
+			final List<FileStamp> files = new ArrayList<FileStamp>();
+			files.add(stamp);
+			for (File imported : getImportedFiles(definition)) {
+				if (!imported.equals(file)) {
+					files.add(new FileStamp(imported));
+				}
+			}
+			synchronized (fEntries) {
+				fEntries.put(file, new Entry(definition, files, loadTime));
+			}
+		}
+		return definition;
+	}
+
+	/**
+	 * Returns how many definitions were taken from the cache.
+	 */
+	public long getHits() {
+		return fHits.get();
+	}
+
+	/**
+	 * Returns how many definitions had to be read.
+	 */
+	public long getMisses() {
+		return fMisses.get();
+	}
+
+	/**
+	 * Returns the time it took to read the definitions which were taken from
+	 * the cache instead.
+	 */
+	public long getSavedLoadTimeMillis() {
+		return fSavedLoadTimeNanos.get() / 1000000;
+	}
+
+	public void clear() {
+		synchronized (fEntries) {
+			fEntries.clear();
+		}
+	}
+
+	// ********************* Internals ********************
+
+	/**
+	 * Returns the local WSDL and XML Schema files imported or included by the
+	 * definition, directly or indirectly.
+	 */
+	private static Collection<File> getImportedFiles(Definition definition) {
+		final Map<String, File> files = new LinkedHashMap<String, File>();
+		addImportedFiles(definition, files);
+		return files.values();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addImportedFiles(Definition definition, Map<String, File> files) {
+		if (definition == null || !addFile(definition.getDocumentBaseURI(), files)) {
+			return;
+		}
+
+		for (List<Import> imports : (Collection<List<Import>>) definition.getImports().values()) {
+			for (Import imp : imports) {
+				addImportedFiles(imp.getDefinition(), files);
+			}
+		}
+
+		final Types types = definition.getTypes();
+		if (types != null) {
+			for (Object element : types.getExtensibilityElements()) {
+				if (element instanceof Schema) {
+					addImportedFiles((Schema) element, files);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addImportedFiles(Schema schema, Map<String, File> files) {
+		final List<SchemaReference> references = new ArrayList<SchemaReference>();
+		for (List<SchemaReference> imports : (Collection<List<SchemaReference>>) schema.getImports().values()) {
+			references.addAll(imports);
+		}
+		references.addAll(schema.getIncludes());
+		references.addAll(schema.getRedefines());
+
+		for (SchemaReference reference : references) {
+			final Schema referenced = reference.getReferencedSchema();
+			if (referenced != null && addFile(referenced.getDocumentBaseURI(), files)) {
+				addImportedFiles(referenced, files);
+			}
+		}
+	}
+
+	/**
+	 * Adds the file with the given URI, if it is a local file which has not
+	 * been added yet.
+	 *
+	 * @return true if the file has been added
+	 */
+	private static boolean addFile(String uri, Map<String, File> files) {
+		if (uri == null || files.containsKey(uri)) {
+			return false;
+		}
+
+		File file = null;
+		try {
+			final URI parsed = new URI(uri);
+			if ("file".equals(parsed.getScheme())) {
+				file = new File(parsed);
+			} else if (parsed.getScheme() == null || parsed.getScheme().length() == 1) {
+				// plain path, possibly with a drive letter
+				file = new File(uri);
+			}
+		} catch (URISyntaxException e) {
+			file = new File(uri);
+		} catch (IllegalArgumentException e) {
+			// not a hierarchical file URI
+		}
+		if (file == null) {
+			return false;
+		}
+
+		files.put(uri, file);
+		return true;
+	}
+
+}
@@ -0,0 +1,216 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathVariableResolver;
+
+import net.bpelunit.framework.control.soap.NamespaceContextImpl;
+
+/**
+ * Thread-safe cache of compiled XPath expressions, keyed by the expression and
+ * its namespace context. The least recently used expressions are evicted once
+ * the cache is full. Each test suite has its own cache, so the hits and misses
+ * of a cache are those of a single suite.
+ * 
+ * {@link NamespaceContextImpl} contexts are compared by the namespaces they
+ * had when the expression was evaluated, and the expression is compiled
+ * against a copy of them, so adding namespaces to a context later on cannot
+ * change the meaning of a cached expression. Other contexts are compared by
+ * identity.
+ * 
+ * Compiled expressions keep the variable resolver they were compiled with, so
+ * they are compiled against a resolver which forwards to the one passed to
+ * {@link #evaluate(String, NamespaceContext, XPathVariableResolver, Object, QName)}.
+ * JAXP does not require compiled expressions to be thread-safe, so each one is
+ * only evaluated by one thread at a time.
+ * 
+ * @version $Id$
+ */
+public class XPathExpressionCache {
+
+	private static final XPathExpressionCache INSTANCE = new XPathExpressionCache(BPELUnitConstants.XPATH_CACHE_SIZE);
+
+	/**
+	 * Variable resolver used during the current evaluation in this thread.
+	 */
+	private static final ThreadLocal<XPathVariableResolver> CURRENT_RESOLVER = new ThreadLocal<XPathVariableResolver>();
+
+	private static final XPathVariableResolver FORWARDING_RESOLVER = new XPathVariableResolver() {
+		public Object resolveVariable(QName variableName) {
+			final XPathVariableResolver resolver = CURRENT_RESOLVER.get();
+			return resolver != null ? resolver.resolveVariable(variableName) : null;
+		}
+	};
+
+	private static final class Key {
+		private final String fExpression;
+		private final NamespaceContext fContext;
+		private final Map<String, List<String>> fNamespaces;
+
+		Key(String expression, NamespaceContext context) {
+			fExpression = expression;
+			if (context instanceof NamespaceContextImpl) {
+				fContext = null;
+				fNamespaces = ((NamespaceContextImpl) context).getNamespaces();
+			} else {
+				fContext = context;
+				fNamespaces = null;
+			}
+		}
+
+		NamespaceContext getContext() {
+			return fNamespaces != null ? new NamespaceContextImpl(fNamespaces) : fContext;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = fExpression.hashCode();
+			hash = 31 * hash + (fContext == null ? 0 : System.identityHashCode(fContext));
+			hash = 31 * hash + (fNamespaces == null ? 0 : fNamespaces.hashCode());
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return fExpression.equals(other.fExpression)
+					&& fContext == other.fContext
+					&& (fNamespaces == null ? other.fNamespaces == null : fNamespaces.equals(other.fNamespaces));
+		}
+	}
+
+	private final Map<Key, XPathExpression> fExpressions;
+
+	private final AtomicLong fHits = new AtomicLong();
+
+	private final AtomicLong fMisses = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            maximum number of compiled expressions kept in the cache
+	 */
+	public XPathExpressionCache(final int capacity) {
+		fExpressions = new LinkedHashMap<Key, XPathExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, XPathExpression> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cache used by expressions which are evaluated outside of a
+	 * test suite.
+	 */
+	public static XPathExpressionCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Evaluates the expression on the item, reusing the compiled expression if
+	 * possible.
+	 * 
+	 * @param context
+	 *            namespace context for the expression, or <code>null</code>
+	 * @param resolver
+	 *            variable resolver for this evaluation, or <code>null</code>
+	 * @param returnType
+	 *            one of the {@link XPathConstants} types
+	 */
+	public Object evaluate(String expression, NamespaceContext context,
+			XPathVariableResolver resolver, Object item, QName returnType)
+			throws XPathExpressionException {
+		final XPathExpression compiled = getCompiledExpression(expression, context);
+		synchronized (compiled) {
+			// Evaluations may be nested, e.g. when resolving a variable runs
+			// another expression, so the outer resolver has to be restored
+			final XPathVariableResolver previous = CURRENT_RESOLVER.get();
+			CURRENT_RESOLVER.set(resolver);
+			try {
+				return compiled.evaluate(item, returnType);
+			} finally {
+				if (previous != null) {
+					CURRENT_RESOLVER.set(previous);
+				} else {
+					CURRENT_RESOLVER.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the expression on the item, returning its string value.
+	 */
+	public String evaluate(String expression, NamespaceContext context,
+			XPathVariableResolver resolver, Object item)
+			throws XPathExpressionException {
+		return (String) evaluate(expression, context, resolver, item, XPathConstants.STRING);
+	}
+
+	public long getHits() {
+		return fHits.get();
+	}
+
+	public long getMisses() {
+		return fMisses.get();
+	}
+
+	public synchronized int size() {
+		return fExpressions.size();
+	}
+
+	public synchronized void clear() {
+		fExpressions.clear();
+	}
+
+	private XPathExpression getCompiledExpression(String expression, NamespaceContext context)
+			throws XPathExpressionException {
+		final Key key = new Key(expression, context);
+		synchronized (this) {
+			final XPathExpression cached = fExpressions.get(key);
+			if (cached != null) {
+				fHits.incrementAndGet();
+				return cached;
+			}
+		}
+
+		fMisses.incrementAndGet();
+		final XPath xpath = XPathFactory.newInstance().newXPath();
+		final NamespaceContext compileContext = key.getContext();
+		if (compileContext != null) {
+			xpath.setNamespaceContext(compileContext);
+		}
+		xpath.setXPathVariableResolver(FORWARDING_RESOLVER);
+		final XPathExpression compiled = xpath.compile(expression);
+
+		synchronized (this) {
+			final XPathExpression raced = fExpressions.get(key);
+			if (raced != null) {
+				return raced;
+			}
+			fExpressions.put(key, compiled);
+		}
+		return compiled;
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.ws;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.bpelunit.framework.control.util.BPELUnitConstants;
+import net.bpelunit.framework.exception.SynchronousSendException;
+import net.bpelunit.framework.model.test.wire.IncomingMessage;
+import net.bpelunit.framework.model.test.wire.OutgoingMessage;
+
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+
+/**
+ * Blocking transport based on Commons HttpClient. Messages are sent in the
+ * calling thread, so the returned futures are always done.
+ */
+public class CommonsHttpMessageTransport implements IMessageTransport {
+
+	private final HttpClient fClient;
+
+	private final int fTimeout;
+
+	/**
+	 * @param client
+	 *            HTTP client of the test suite
+	 * @param timeout
+	 *            socket timeout in milliseconds
+	 */
+	public CommonsHttpMessageTransport(HttpClient client, int timeout) {
+		fClient = client;
+		fTimeout = timeout;
+	}
+
+	public void start() {
+		// the HTTP client is managed by the test suite
+	}
+
+	public Future<IncomingMessage> send(final OutgoingMessage message)
+			throws SynchronousSendException {
+		final PostMethod method = new PostMethod(message.getTargetURL());
+
+		// Set parameters:
+		// -> Do not retry
+		// -> Socket timeout to default timeout value.
+		method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
+				new DefaultHttpMethodRetryHandler(1, false));
+		method.getParams().setParameter(HttpMethodParams.SO_TIMEOUT,
+				Integer.valueOf(fTimeout));
+
+		method.addRequestHeader("SOAPAction", "\""
+				+ message.getSOAPHTTPAction() + "\"");
+		RequestEntity entity;
+		try {
+			entity = new StringRequestEntity(message.getMessageAsString(),
+					BPELUnitConstants.TEXT_XML_CONTENT_TYPE,
+					BPELUnitConstants.DEFAULT_HTTP_CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			// cannot happen since we use the default HTTP Encoding.
+			throw new SynchronousSendException(
+					"Unsupported encoding when trying to post message to web service.",
+					e);
+		}
+
+		for (String option : message.getProtocolOptionNames()) {
+			method.addRequestHeader(option, message.getProtocolOption(option));
+		}
+		method.setRequestEntity(entity);
+
+		final FutureTask<IncomingMessage> result = new FutureTask<IncomingMessage>(
+				new Callable<IncomingMessage>() {
+					public IncomingMessage call() throws Exception {
+						try {
+							int statusCode = fClient.executeMethod(method);
+							InputStream in = method.getResponseBodyAsStream();
+
+							IncomingMessage returnMsg = new IncomingMessage();
+							returnMsg.setStatusCode(statusCode);
+							returnMsg.setMessage(in);
+
+							return returnMsg;
+						} finally {
+							// Release the connection.
+							method.releaseConnection();
+						}
+					}
+				});
+		result.run();
+		return result;
+	}
+
+	public void stop() {
+		// the HTTP client is managed by the test suite
+	}
+
+}
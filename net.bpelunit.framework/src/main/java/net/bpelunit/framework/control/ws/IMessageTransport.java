@@ -0,0 +1,45 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.ws;
+
+import java.util.concurrent.Future;
+
+import net.bpelunit.framework.exception.SynchronousSendException;
+import net.bpelunit.framework.model.test.wire.IncomingMessage;
+import net.bpelunit.framework.model.test.wire.OutgoingMessage;
+
+/**
+ * Sends outgoing messages to the process under test over HTTP. A transport is
+ * shared by all the test cases of a test suite.
+ */
+public interface IMessageTransport {
+
+	/**
+	 * Prepares the transport for sending messages.
+	 * 
+	 * @throws Exception
+	 *             the transport could not be started
+	 */
+	void start() throws Exception;
+
+	/**
+	 * Sends the message to its target URL. Depending on the transport, the
+	 * message may still be in flight when this method returns.
+	 * 
+	 * @return future answer to the message. Any problem while sending the
+	 *         message or receiving its answer is reported through an
+	 *         ExecutionException.
+	 * @throws SynchronousSendException
+	 *             the message could not be sent
+	 */
+	Future<IncomingMessage> send(OutgoingMessage message) throws SynchronousSendException;
+
+	/**
+	 * Releases all resources used by the transport.
+	 */
+	void stop();
+
+}
@@ -0,0 +1,229 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ * 
+ */
+package net.bpelunit.framework.control.ws;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.soap.SOAPException;
+
+import net.bpelunit.framework.control.util.BPELUnitConstants;
+import net.bpelunit.framework.exception.SynchronousSendException;
+import net.bpelunit.framework.model.test.wire.IncomingMessage;
+import net.bpelunit.framework.model.test.wire.OutgoingMessage;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.client.ContentExchange;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+
+/**
+ * Non-blocking transport based on the NIO HTTP client of Jetty. Requests are
+ * written and answers are read by the selector threads of the client, so no
+ * thread is tied up while a message is in flight: the caller only has to wait
+ * on the returned future when it needs the answer.
+ * 
+ * The SOAP body is serialized straight from the SOAP message into the request
+ * buffer, in the character encoding of the message, without going through an
+ * intermediate string.
+ */
+public class JettyMessageTransport implements IMessageTransport {
+
+	private static final Logger LOGGER = Logger.getLogger(JettyMessageTransport.class);
+
+	private final HttpClient fClient;
+
+	private final int fTimeout;
+
+	/**
+	 * @param maxConnectionsPerHost
+	 *            maximum number of connections kept per host
+	 * @param idleTimeout
+	 *            time in milliseconds after which idle connections are closed
+	 * @param timeout
+	 *            time in milliseconds to wait for an answer
+	 */
+	public JettyMessageTransport(int maxConnectionsPerHost, int idleTimeout,
+			int timeout) {
+		fTimeout = timeout;
+		fClient = new HttpClient();
+		fClient.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+		fClient.setMaxConnectionsPerAddress(maxConnectionsPerHost);
+		fClient.setIdleTimeout(idleTimeout);
+		fClient.setTimeout(timeout);
+	}
+
+	public void start() throws Exception {
+		fClient.start();
+	}
+
+	public Future<IncomingMessage> send(OutgoingMessage message)
+			throws SynchronousSendException {
+		final MessageFuture result = new MessageFuture();
+		final ContentExchange exchange = new ContentExchange(false) {
+			@Override
+			protected void onResponseComplete() throws IOException {
+				super.onResponseComplete();
+				result.complete(getResponseStatus(), getResponseContentBytes());
+			}
+
+			@Override
+			protected void onConnectionFailed(Throwable x) {
+				super.onConnectionFailed(x);
+				result.fail(x);
+			}
+
+			@Override
+			protected void onException(Throwable x) {
+				super.onException(x);
+				result.fail(x);
+			}
+
+			@Override
+			protected void onExpire() {
+				super.onExpire();
+				result.fail(new TimeoutException("No answer from " + getAddress() + " in time"));
+			}
+		};
+		result.fExchange = exchange;
+
+		exchange.setMethod("POST");
+		exchange.setURL(message.getTargetURL());
+		exchange.setTimeout(fTimeout);
+		exchange.setRequestHeader("SOAPAction", "\"" + message.getSOAPHTTPAction() + "\"");
+		for (String option : message.getProtocolOptionNames()) {
+			exchange.setRequestHeader(option, message.getProtocolOption(option));
+		}
+		exchange.setRequestContentType(BPELUnitConstants.TEXT_XML_CONTENT_TYPE
+				+ "; charset=" + message.getCharacterEncoding());
+		try {
+			exchange.setRequestContent(new ByteArrayBuffer(message.getMessageAsBytes()));
+		} catch (SOAPException e) {
+			throw new SynchronousSendException("Could not serialize the message", e);
+		} catch (IOException e) {
+			throw new SynchronousSendException("Could not serialize the message", e);
+		}
+
+		try {
+			fClient.send(exchange);
+		} catch (IOException e) {
+			throw new SynchronousSendException(e);
+		}
+		return result;
+	}
+
+	public void stop() {
+		try {
+			fClient.stop();
+		} catch (Exception e) {
+			LOGGER.error("Could not stop the HTTP client", e);
+		}
+	}
+
+	/**
+	 * Answer to a message sent through Jetty. The answer is only parsed into a
+	 * SOAP message by the thread which asks for it, so the selector threads of
+	 * the client are never kept busy.
+	 * 
+	 * The future leaves the running state exactly once: completion, failure
+	 * and cancellation race for it with a compare-and-set, and only the
+	 * winner records its outcome.
+	 */
+	private static class MessageFuture implements Future<IncomingMessage> {
+
+		private static final int RUNNING = 0;
+
+		private static final int COMPLETED = 1;
+
+		private static final int FAILED = 2;
+
+		private static final int CANCELLED = 3;
+
+		private final AtomicInteger fState = new AtomicInteger(RUNNING);
+
+		private final CountDownLatch fDone = new CountDownLatch(1);
+
+		private ContentExchange fExchange;
+
+		// Written before fDone is counted down, and read after awaiting it
+		private int fStatusCode;
+
+		private byte[] fBody;
+
+		private Throwable fFailure;
+
+		private IncomingMessage fMessage;
+
+		void complete(int statusCode, byte[] body) {
+			if (fState.compareAndSet(RUNNING, COMPLETED)) {
+				fStatusCode = statusCode;
+				fBody = body != null ? body : new byte[0];
+				fDone.countDown();
+			}
+		}
+
+		void fail(Throwable failure) {
+			if (fState.compareAndSet(RUNNING, FAILED)) {
+				fFailure = failure;
+				fDone.countDown();
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (!fState.compareAndSet(RUNNING, CANCELLED)) {
+				return false;
+			}
+			fExchange.cancel();
+			fDone.countDown();
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return fState.get() == CANCELLED;
+		}
+
+		public boolean isDone() {
+			return fState.get() != RUNNING;
+		}
+
+		public IncomingMessage get() throws InterruptedException, ExecutionException {
+			fDone.await();
+			return getMessage();
+		}
+
+		public IncomingMessage get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException, TimeoutException {
+			if (!fDone.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return getMessage();
+		}
+
+		private synchronized IncomingMessage getMessage() throws ExecutionException {
+			final int state = fState.get();
+			if (state == CANCELLED) {
+				throw new CancellationException();
+			}
+			if (state == FAILED) {
+				throw new ExecutionException(fFailure);
+			}
+			if (fMessage == null) {
+				fMessage = new IncomingMessage();
+				fMessage.setStatusCode(fStatusCode);
+				fMessage.setMessage(fBody);
+				fBody = null;
+			}
+			return fMessage;
+		}
+	}
+
+}
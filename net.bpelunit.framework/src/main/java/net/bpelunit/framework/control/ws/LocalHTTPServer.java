@@ -78,8 +78,7 @@ public class LocalHTTPServer {
 	}
 
 	public void stopTest(TestCaseRunner runner) {
-		fHandler.deinitialize();
-
+		fHandler.deinitialize(runner);
 	}
 
 }
@@ -7,6 +7,11 @@ package net.bpelunit.framework.control.ws;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import javax.servlet.http.HttpServletRequest;
@@ -26,12 +31,20 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.http.HttpMethods;
 import org.eclipse.jetty.server.Request;
-import org.eclipse.jetty.util.ByteArrayISO8859Writer;
 
 /**
  * The handler for incoming HTTP connections. Each incoming request is related
  * to the target PartnerTrack and passed to the framework for analysis.
  * 
+ * Several test case runners may be registered at the same time when test
+ * cases are run in parallel. Each runner may own a URL namespace: requests to
+ * <code>.../namespace/partnerName</code> are routed to the runner owning that
+ * namespace. Requests without a known namespace (for instance, invocations of
+ * statically deployed partner endpoints) are routed to the only registered
+ * runner which still has an active partner track with that name. If several
+ * runners have one, the request cannot be told apart and is rejected with a
+ * SOAP fault.
+ * 
  * @version $Id$
  * @author Philip Mayer
  * 
@@ -43,28 +56,35 @@ public class WebServiceHandler extends org.eclipse.jetty.server.handler.Abstract
 	private Logger wsLogger = Logger.getLogger(this.getClass());
 
 	/**
-	 * The test runner handling the requests made to this web service handler
+	 * The test runners handling the requests made to this web service handler,
+	 * indexed by their URL namespace (in registration order).
 	 */
-	private TestCaseRunner fRunner;
+	private final Map<String, TestCaseRunner> fRunners = new LinkedHashMap<String, TestCaseRunner>();
 
 	/**
-	 * Initializes this handler. It will now receive requests and pass them on
-	 * to the runner
+	 * Initializes this handler for the runner. It will now receive requests
+	 * and pass them on to the runner, along with the other registered runners.
 	 * 
 	 * @param runner
 	 *            the runner to pass requests to.
 	 */
 	public void initialize(TestCaseRunner runner) {
-		fRunner = runner;
+		synchronized (fRunners) {
+			fRunners.put(getNamespaceKey(runner), runner);
+		}
 	}
 
 	/**
-	 * Deinitializes the handler. It will now reject requests and not pass them
-	 * on to the runner.
+	 * Deinitializes the handler for the runner. It will now stop passing
+	 * requests on to the runner.
 	 * 
+	 * @param runner
+	 *            the runner which should not receive requests anymore.
 	 */
-	public void deinitialize() {
-		fRunner = null;
+	public void deinitialize(TestCaseRunner runner) {
+		synchronized (fRunners) {
+			fRunners.remove(getNamespaceKey(runner));
+		}
 	}
 
 	/**
@@ -96,21 +116,31 @@ public class WebServiceHandler extends org.eclipse.jetty.server.handler.Abstract
 			return;
 		}
 
-		if (fRunner == null) {
-			wsLogger.error("Not initialized - rejecting message for URL "
-					+ pathInContext);
-			// let default 404 handler handle this situaton.
-			return;
-		}
 		// find target according to path in context
 
 		String partnerName = getPartnerName(pathInContext);
 		wsLogger
 				.debug("Supposed partner name for this request: " + partnerName);
 
+		final List<TestCaseRunner> runners = findRunners(getNamespace(pathInContext), partnerName);
+		if (runners.isEmpty()) {
+			wsLogger.error("Not initialized - rejecting message for URL "
+					+ pathInContext);
+			// let default 404 handler handle this situaton.
+			return;
+		}
+		if (runners.size() > 1) {
+			wsLogger.error(runners.size() + " running test cases wait for requests to "
+					+ partnerName + " - rejecting ambiguous message for URL "
+					+ pathInContext);
+			sendResponse(response, HTTP_INTERNAL_ERROR, BPELUnitUtil.generateGenericSOAPFault());
+			return;
+		}
+		final TestCaseRunner runner = runners.get(0);
+
 		PartnerTrack key;
 		try {
-			key = fRunner.findPartnerTrackForName(partnerName);
+			key = runner.findPartnerTrackForName(partnerName);
 			if (key.isDone()) {
 				wsLogger.info("Partner track " + partnerName + " has already finished its execution: replying with 404");
 				return;
@@ -131,24 +161,24 @@ public class WebServiceHandler extends org.eclipse.jetty.server.handler.Abstract
 
 		try {
 			wsLogger.debug("Posting incoming message to blackboard...");
-			fRunner.putWSIncomingMessage(key, iMessage);
+			runner.putWSIncomingMessage(key, iMessage);
 
 			wsLogger.debug("Waiting for framework to supply answer...");
-			final OutgoingMessage m2 = fRunner.getWSOutgoingMessage(key);
+			final OutgoingMessage m2 = runner.getWSOutgoingMessage(key);
 
 			wsLogger.debug("Got answer from framework, now sending...");
 
 			int code = m2.getCode();
-			String body = m2.getMessageAsString();
-
-			wsLogger.debug("Answer is:\n" + body);
+			if (wsLogger.isDebugEnabled()) {
+				wsLogger.debug("Answer is:\n" + m2.getMessageAsString());
+			}
 			for(String option : m2.getProtocolOptionNames()) {
 				response.addHeader(option, m2.getProtocolOption(option));
 			}
-			sendResponse(response, code, body);
+			sendResponse(response, code, m2.getMessage());
 
 			wsLogger.debug("Posting \"message sent\" to framework...");
-			fRunner.putWSOutgoingMessageSent(m2);
+			runner.putWSOutgoingMessageSent(m2);
 
 			wsLogger.info("Done handling request, result OK. " + code);
 
@@ -173,6 +203,62 @@ public class WebServiceHandler extends org.eclipse.jetty.server.handler.Abstract
 		}
 	}
 
+	/**
+	 * Finds the runners which could handle a request for the given partner
+	 * name. The runner owning the namespace is preferred. Otherwise, if there
+	 * is only one runner it is used, and if there are several, those with an
+	 * active partner track with that name which waits for requests are
+	 * returned.
+	 * 
+	 * @return the runners, which is an empty list if there is none and has
+	 *         more than one element if the request is ambiguous.
+	 */
+	private List<TestCaseRunner> findRunners(String namespace, String partnerName) {
+		final List<TestCaseRunner> candidates;
+		synchronized (fRunners) {
+			if (namespace != null && fRunners.containsKey(namespace)) {
+				return Collections.singletonList(fRunners.get(namespace));
+			}
+			candidates = new ArrayList<TestCaseRunner>(fRunners.values());
+		}
+
+		if (candidates.size() <= 1) {
+			return candidates;
+		}
+		final List<TestCaseRunner> active = new ArrayList<TestCaseRunner>();
+		for (TestCaseRunner candidate : candidates) {
+			try {
+				final PartnerTrack track = candidate.findPartnerTrackForName(partnerName);
+				if (!track.isDone() && track.isReceivingRequests()) {
+					active.add(candidate);
+				}
+			} catch (PartnerNotFoundException e) {
+				// try the next runner
+			}
+		}
+		return active;
+	}
+
+	private static String getNamespaceKey(TestCaseRunner runner) {
+		return runner.getNamespace() != null ? runner.getNamespace() : "";
+	}
+
+	/**
+	 * Find the URL namespace in the incoming request URI. Is supposed to be
+	 * the segment right before the partner name, if any.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	private static String getNamespace(String path) {
+		String stringToTest = StringUtils.removeEnd(path, "/");
+		stringToTest = StringUtils.substringBeforeLast(stringToTest, "/");
+		if (stringToTest.indexOf('/') == -1) {
+			return null;
+		}
+		return StringUtils.substringAfterLast(stringToTest, "/");
+	}
+
 	/**
 	 * Find the partner name in the incoming request URI. Is supposed to be the
 	 * last segment of the path URI.
@@ -191,39 +277,28 @@ public class WebServiceHandler extends org.eclipse.jetty.server.handler.Abstract
 		return stringToTest;
 	}
 	
+	/**
+	 * Writes the SOAP message as the body of the response. The message is
+	 * serialized only once, in its own character encoding: the buffer gives
+	 * the content length, and is then written straight to the response.
+	 */
 	private void sendResponse(HttpServletResponse response, int code, SOAPMessage body)
-	throws IOException {
-		// TODO Refactor all message serializations into an own utility method
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		
-		try {
-			body.writeTo(out);
-			sendResponse(response, code, out.toString());
-		} catch (SOAPException e) {
-			sendResponse(response, code, "");
-		}
-	}
-
-	private void sendResponse(HttpServletResponse response, int code, String body)
 			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+		if (body != null) {
+			try {
+				body.writeTo(out);
+			} catch (SOAPException e) {
+				wsLogger.error("Could not serialize the answer: " + e.getMessage(), e);
+				out.reset();
+			}
+		}
 
-		response.setContentType(BPELUnitConstants.TEXT_XML_CONTENT_TYPE);
+		response.setContentType(BPELUnitConstants.TEXT_XML_CONTENT_TYPE
+				+ "; charset=" + BPELUnitUtil.getCharacterEncoding(body));
 		response.setStatus(code);
-
-		if(body == null) {
-			body = "";
-		}
-		ByteArrayISO8859Writer writer = new ByteArrayISO8859Writer(2048);
-		try {
-		writer.write(body);
-		writer.flush();
-
-		response.setContentLength(writer.size());
-		writer.writeTo(response.getOutputStream()); 
-		} finally {
-			writer.close();
-			writer.destroy();
-		}
+		response.setContentLength(out.size());
+		out.writeTo(response.getOutputStream());
 	}
 
 }
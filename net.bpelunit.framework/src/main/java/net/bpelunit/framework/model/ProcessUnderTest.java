@@ -13,7 +13,6 @@ import java.util.Map;
 
 import javax.wsdl.Definition;
 
-import net.bpelunit.framework.BPELUnitRunner;
 import net.bpelunit.framework.control.deploy.IBPELDeployer;
 import net.bpelunit.framework.control.ext.DeploymentOption;
 import net.bpelunit.framework.control.ext.ExtensionRegistry;
@@ -60,6 +59,11 @@ public class ProcessUnderTest extends Partner {
 	 */
 	private boolean isDeployed;
 
+	/**
+	 * True if the endpoints of the PUT should be changed on deployment
+	 */
+	private boolean fChangeEndpoints;
+
 	/**
 	 * The global configuration options for the deployer that shall be
 	 * considered when doing the deployment. inv: fGlobalConfiguration != null
@@ -88,9 +92,13 @@ public class ProcessUnderTest extends Partner {
 		fDeployer = deployer;
 	}
 
+	public void setChangeEndpoints(boolean changeEndpoints) {
+		fChangeEndpoints = changeEndpoints;
+	}
+
 	public void deploy() throws DeploymentException {
 		// changing end point logic goes here.
-		if (BPELUnitRunner.changeEndpoints()) {
+		if (fChangeEndpoints) {
 			throw new DeploymentException("Temporarily removed until reimplemented");
 		}
 
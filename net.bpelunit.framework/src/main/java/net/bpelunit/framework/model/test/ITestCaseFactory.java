@@ -0,0 +1,70 @@
+/**
+ * This file belongs to the BPELUnit utility and Eclipse plugin set. See enclosed
+ * license file for more information.
+ *
+ */
+package net.bpelunit.framework.model.test;
+
+import net.bpelunit.framework.exception.SpecificationException;
+
+/**
+ * A test case factory creates the test cases of a test case template (one for
+ * each row of its data source and each round) while the test suite is run,
+ * instead of while it is loaded. The test suite asks for each test case just
+ * before running it, and drops it afterwards, so only the running test cases
+ * are kept in memory.
+ *
+ * A factory is a forward-only cursor over its test cases. Each run of the test
+ * suite calls {@link #open()}, then {@link #nextTestCaseName()} to move to the
+ * next test case, and {@link #createTestCase()} only for those test cases
+ * which should be run. Finally, {@link #close()} is called.
+ *
+ * @see TestSuite#addTestCaseFactory(ITestCaseFactory)
+ */
+public interface ITestCaseFactory {
+
+	/**
+	 * Moves the cursor before the first test case.
+	 *
+	 * @throws SpecificationException
+	 *             the rows of the data source could not be read
+	 */
+	void open() throws SpecificationException;
+
+	/**
+	 * Moves the cursor to the next test case.
+	 *
+	 * @return the name of the test case, or <code>null</code> if there are no
+	 *         more test cases
+	 * @throws SpecificationException
+	 *             the next row of the data source could not be read
+	 */
+	String nextTestCaseName() throws SpecificationException;
+
+	/**
+	 * Creates the test case under the cursor.
+	 *
+	 * @throws SpecificationException
+	 *             the test case could not be created from its template
+	 */
+	TestCase createTestCase() throws SpecificationException;
+
+	/**
+	 * Releases the rows of the data source which are still open.
+	 */
+	void close();
+
+	/**
+	 * Returns <code>true</code> if this factory may create a test case with
+	 * this name, ignoring case. If the number of rows of the data source is
+	 * not known in advance, any row number is accepted.
+	 */
+	boolean canCreate(String testCaseName);
+
+	/**
+	 * Returns the number of test cases created by this factory, or the number
+	 * of test cases it has moved through so far if the number of rows of its
+	 * data source is not known in advance.
+	 */
+	int getTestCaseCount();
+}
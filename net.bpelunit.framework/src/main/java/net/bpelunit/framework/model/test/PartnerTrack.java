@@ -14,14 +14,13 @@ import java.util.Map;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import net.bpelunit.framework.control.datasource.WrappedContext;
 import net.bpelunit.framework.control.run.BlackBoard;
 import net.bpelunit.framework.control.run.BlackBoardKey;
 import net.bpelunit.framework.control.run.TestCaseRunner;
+import net.bpelunit.framework.control.util.XPathExpressionCache;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.model.AbstractPartner;
 import net.bpelunit.framework.model.Partner;
@@ -40,8 +39,6 @@ import org.apache.log4j.Logger;
 import org.apache.velocity.context.Context;
 import org.w3c.dom.Document;
 
-import com.rits.cloning.Cloner;
-
 /**
  * A PartnerTrack represents the sequential list of activities which are
  * executed on behalf of the partner in a certain test case. The PartnerTrack
@@ -52,9 +49,6 @@ import com.rits.cloning.Cloner;
  */
 public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Runnable, VelocityContextProvider, BlackBoardKey {
 
-	private static final int DELAY_AT_START = 10;
-	private static final Cloner CLONER = new Cloner();
-
 	/**
 	 * The parent test case
 	 */
@@ -114,6 +108,10 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 		}
 	}
 
+	public List<Activity> getActivities() {
+		return fActivities;
+	}
+
 	public void addActivity(Activity a) {
 		if(fActivities == null) {
 			fActivities = new ArrayList<Activity>();
@@ -128,8 +126,7 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 			fActivityContext = new ActivityContext(fRunner, this);
 
 			// wait till all partners are active
-			// XXX make this better
-			Thread.sleep(DELAY_AT_START);
+			fRunner.waitForStart();
 
 			if (assumptionHolds(fAssumption)) {
 				for (Activity activity : fActivities) {
@@ -139,6 +136,8 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 						fLogger.info(getName() + " returned from activity " + activity);
 					} else {
 						fLogger.info(getName() + " skipped activity " + activity);
+						// activities depending on it should not wait for it
+						fActivityContext.markActivityAsExecuted(activity.getId());
 					}
 
 					reportProgress(activity);
@@ -149,6 +148,9 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 				}
 			} else {
 				fLogger.info(getName() + " was skipped.");
+				for (Activity activity : fActivities) {
+					fActivityContext.markActivityAsExecuted(activity.getId());
+				}
 			}
 
 			// Ensure set status before notification
@@ -177,6 +179,17 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 		return fStatus.hasProblems();
 	}
 
+	/**
+	 * Releases the messages sent and received by the activities of this
+	 * partner track. See {@link TestCase#releasePayloads(boolean)}.
+	 */
+	public void releasePayloads(boolean keepSerialized) {
+		fActivityContext = null;
+		for (Activity activity : fActivities) {
+			activity.releasePayloads(keepSerialized);
+		}
+	}
+
 	public String getPartnerName() {
 		return fPartner.getName();
 	}
@@ -193,6 +206,19 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 		return activityCount;
 	}
 
+	/**
+	 * Returns true if an activity of this track waits for requests from the
+	 * process under test.
+	 */
+	public boolean isReceivingRequests() {
+		for (Activity activity : fActivities) {
+			if (activity.isReceivingRequests()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return getName();
@@ -240,6 +266,14 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 		return fTestCase;
 	}
 
+	/**
+	 * Returns the cache of compiled XPath expressions of the suite of this
+	 * partner track.
+	 */
+	public XPathExpressionCache getXPathExpressionCache() {
+		return fTestCase != null ? fTestCase.getXPathExpressionCache() : XPathExpressionCache.getInstance();
+	}
+
 	public ArtefactStatus getStatus() {
 		return fStatus;
 	}
@@ -276,11 +310,11 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 		if (fTestCaseVelocityContext == null) {
 			fTestCaseVelocityContext = fRunner.createVelocityContext(artefact);
 		}
-		WrappedContext ctx = CLONER.deepClone(fTestCaseVelocityContext);
+		WrappedContext ctx = fTestCaseVelocityContext.newLayer();
 		ctx.putReadOnly("partnerTrackName", getRawName());
 
 		if(getPartner() instanceof Partner) {
-			ctx.putReadOnly("partnerTrackURL", ((Partner)getPartner()).getSimulatedURL());
+			ctx.putReadOnly("partnerTrackURL", fRunner.getPartnerURL(this));
 		}
 		if (fActivityContext != null) {
 			ctx.putReadOnly("request", fActivityContext.getLastRequest());
@@ -302,13 +336,10 @@ public class PartnerTrack implements ITestArtefact, IExtractedDataContainer, Run
 		try {
 			context = this.createVelocityContext(this);
 
-			XPath xpath = XPathFactory.newInstance().newXPath();
-			xpath.setNamespaceContext(fNamespaceContext);
-			xpath.setXPathVariableResolver(new ContextXPathVariableResolver(
-					context));
-
-			return (Boolean) xpath.evaluate(assumption, createEmptyDocument(),
-					XPathConstants.BOOLEAN);
+			return (Boolean) getXPathExpressionCache().evaluate(
+					assumption, fNamespaceContext,
+					new ContextXPathVariableResolver(context),
+					createEmptyDocument(), XPathConstants.BOOLEAN);
 		} catch (Exception e) {
 			fStatus = ArtefactStatus.createErrorStatus(
 					"Failed to evaluate the assumption " + fAssumption, e);
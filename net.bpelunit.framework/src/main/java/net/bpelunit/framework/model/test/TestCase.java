@@ -5,17 +5,20 @@
  */
 package net.bpelunit.framework.model.test;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import net.bpelunit.framework.control.datasource.DataSourceUtil;
 import net.bpelunit.framework.control.datasource.WrappedContext;
 import net.bpelunit.framework.control.ext.IDataSource;
 import net.bpelunit.framework.control.run.TestCaseRunner;
+import net.bpelunit.framework.control.util.VelocityTemplate;
+import net.bpelunit.framework.control.util.XPathExpressionCache;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.model.test.activity.VelocityContextProvider;
 import net.bpelunit.framework.model.test.data.extraction.ExtractedDataContainerUtil;
@@ -24,10 +27,6 @@ import net.bpelunit.framework.model.test.report.ArtefactStatus;
 import net.bpelunit.framework.model.test.report.ITestArtefact;
 import net.bpelunit.framework.model.test.report.StateData;
 
-import org.apache.velocity.app.Velocity;
-
-import com.rits.cloning.Cloner;
-
 /**
  * A BPELUnit Test Case is a description of an interaction with the BPEL PUT, consisting of a number
  * of PartnerTracks, which run in parallel and contain sequences of activities for interaction with
@@ -38,8 +37,6 @@ import com.rits.cloning.Cloner;
  */
 public class TestCase implements ITestArtefact, IExtractedDataContainer, VelocityContextProvider {
 
-	private static final Cloner CLONER = new Cloner();
-
 	/**
 	 * The test case name
 	 */
@@ -75,7 +72,7 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 	 */
 	private boolean fAbortedByUser;
 
-	private String fSetUpVelocityScript;
+	private VelocityTemplate fSetUpVelocityTemplate;
 
 	private WrappedContext fTestSuiteVelocityContext;
 
@@ -83,6 +80,12 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 
 	private int fRowIndex;
 
+	/**
+	 * Values of the data source row of this test case, if they were copied
+	 * out of a streamed data source
+	 */
+	private Map<String, Object> fRowValues;
+
 	private Map<String, Object> fExtractedData = new HashMap<String, Object>();
 
 	// ****************** Initialization ************************
@@ -108,10 +111,23 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 	// *********************** Running ***************************
 
 	public void run() {
+		run(null);
+	}
+
+	/**
+	 * Runs this test case, simulating its partners under the given URL
+	 * namespace of the local HTTP server.
+	 * 
+	 * @param namespace
+	 *            URL namespace to be used, or <code>null</code> to use the
+	 *            plain simulated URLs of the partners.
+	 */
+	public void run(String namespace) {
 
 		fSuite.startTestCase(this);
 
-		fRunner= new TestCaseRunner(fSuite.getLocalServer(), this);
+		fRunner= new TestCaseRunner(fSuite.getLocalServer(), this, namespace,
+				fSuite.getConfiguration());
 		fRunner.run();
 
 		for (PartnerTrack partnerTrack : fPartnerTracks) {
@@ -133,9 +149,36 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 		fSuite.endTestCase(this);
 	}
 
+	/**
+	 * Reports this test case to the result listeners as an error, without
+	 * running it. Used for test cases which could not be created.
+	 */
+	public void reportError(String message, Exception e) {
+		fSuite.startTestCase(this);
+		fStatus= ArtefactStatus.createErrorStatus(message, e);
+		fSuite.endTestCase(this);
+	}
+
+	/**
+	 * Releases the DOM trees and SOAP messages sent and received by this test
+	 * case, once it has been reported.
+	 * 
+	 * @param keepSerialized
+	 *            if <code>true</code>, the messages are kept in serialized
+	 *            form, so they can still be reported. Otherwise, they are
+	 *            dropped.
+	 */
+	public void releasePayloads(boolean keepSerialized) {
+		for (PartnerTrack partnerTrack : fPartnerTracks) {
+			partnerTrack.releasePayloads(keepSerialized);
+		}
+	}
+
 	public void abortTest() {
 		fAbortedByUser= true;
-		fRunner.abortTest();
+		if (fRunner != null) {
+			fRunner.abortTest();
+		}
 	}
 
 	// ************* ITestArtefact **********
@@ -208,6 +251,14 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 		return fSuite;
 	}
 
+	/**
+	 * Returns the cache of compiled XPath expressions of the suite of this
+	 * test case.
+	 */
+	public XPathExpressionCache getXPathExpressionCache() {
+		return fSuite != null ? fSuite.getXPathExpressionCache() : XPathExpressionCache.getInstance();
+	}
+
 	public String getProperty(String property) {
 		return fMetaDataMap.get(property);
 	}
@@ -224,6 +275,20 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 		return no;
 	}
 
+	/**
+	 * Returns the names (in lower case) of the partners whose tracks in this
+	 * test case wait for requests from the process under test.
+	 */
+	public Set<String> getReceivingPartnerNames() {
+		final Set<String> names = new HashSet<String>();
+		for (PartnerTrack partnerTrack : fPartnerTracks) {
+			if (partnerTrack.isReceivingRequests()) {
+				names.add(partnerTrack.getPartnerName().toLowerCase());
+			}
+		}
+		return names;
+	}
+
 	@Override
 	public String toString() {
 		return getName();
@@ -252,18 +317,15 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 			fTestSuiteVelocityContext = getSuite().createVelocityContext(artefact);
 		}
 
-		final WrappedContext ctx = CLONER.deepClone(fTestSuiteVelocityContext);
+		final WrappedContext ctx = fTestSuiteVelocityContext.newLayer();
 		ctx.putReadOnly("testCaseName", getRawName());
-		if (fDataSource != null) {
+		if (fRowValues != null) {
+			DataSourceUtil.initializeContext(ctx, fRowValues);
+		} else if (fDataSource != null) {
 			DataSourceUtil.initializeContext(ctx, fDataSource, fRowIndex);
 		}
-		if (fSetUpVelocityScript != null) {
-			StringWriter sW = new StringWriter();
-			try {
-				Velocity.evaluate(ctx, sW, "setUpTestCase", fSetUpVelocityScript);
-			} catch (Exception e) {
-				throw new DataSourceException(e);
-			}
+		if (fSetUpVelocityTemplate != null) {
+			fSetUpVelocityTemplate.mergeToString(ctx);
 		}
 
 		ExtractedDataContainerUtil.addExtractedDataFromAncestors(ctx, artefact);
@@ -271,11 +333,11 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 	}
 
 	public String getSetUpVelocityScript() {
-		return fSetUpVelocityScript;
+		return fSetUpVelocityTemplate != null ? fSetUpVelocityTemplate.getSource() : null;
 	}
 
-	public void setSetUpVelocityScript(String script) {
-		fSetUpVelocityScript = script;
+	public void setSetUpVelocityTemplate(VelocityTemplate template) {
+		fSetUpVelocityTemplate = template;
 	}
 
 	public void setDataSource(IDataSource fDataSource) {
@@ -293,5 +355,19 @@ public class TestCase implements ITestArtefact, IExtractedDataContainer, Velocit
 	public int getRowIndex() {
 		return fRowIndex;
 	}
+
+	/**
+	 * Sets the values of the data source row of this test case. They are
+	 * used instead of the data source, which may have moved on to other rows.
+	 * 
+	 * @see DataSourceUtil#getCurrentRow(IDataSource)
+	 */
+	public void setRowValues(Map<String, Object> rowValues) {
+		this.fRowValues = rowValues;
+	}
+
+	public Map<String, Object> getRowValues() {
+		return fRowValues;
+	}
 }
 
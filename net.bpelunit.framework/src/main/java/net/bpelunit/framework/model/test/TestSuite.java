@@ -5,22 +5,41 @@
  */
 package net.bpelunit.framework.model.test;
 
-import java.io.StringWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.RunnerConfiguration;
 import net.bpelunit.framework.control.datasource.WrappedContext;
+import net.bpelunit.framework.control.run.IPartnerTrackExecutor;
+import net.bpelunit.framework.control.run.ITestResultDispatcher;
+import net.bpelunit.framework.control.run.SynchronousTestResultDispatcher;
+import net.bpelunit.framework.control.util.BPELUnitConstants;
+import net.bpelunit.framework.control.util.PooledConnectionManager;
+import net.bpelunit.framework.control.util.VelocityTemplate;
+import net.bpelunit.framework.control.util.XPathExpressionCache;
+import net.bpelunit.framework.control.ws.IMessageTransport;
 import net.bpelunit.framework.control.ws.LocalHTTPServer;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.exception.DeploymentException;
+import net.bpelunit.framework.exception.SpecificationException;
 import net.bpelunit.framework.exception.TestCaseNotFoundException;
 import net.bpelunit.framework.model.ProcessUnderTest;
 import net.bpelunit.framework.model.test.activity.VelocityContextProvider;
@@ -30,8 +49,8 @@ import net.bpelunit.framework.model.test.report.ArtefactStatus;
 import net.bpelunit.framework.model.test.report.ITestArtefact;
 import net.bpelunit.framework.model.test.report.StateData;
 
+import org.apache.commons.httpclient.HttpClient;
 import org.apache.log4j.Logger;
-import org.apache.velocity.app.Velocity;
 import org.apache.velocity.tools.ToolManager;
 
 /**
@@ -59,21 +78,71 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	 */
 	private Map<String, TestCase> fTestCaseMap;
 
+	/**
+	 * Factories for the test cases which are only created when the suite is
+	 * run. Their test cases are run after those in the test case map.
+	 */
+	private List<ITestCaseFactory> fTestCaseFactories;
+
+	/**
+	 * Options of the runner which loaded this suite
+	 */
+	private RunnerConfiguration fConfiguration = new RunnerConfiguration();
+
 	/**
 	 * The local HTTP server handling incoming requests
 	 */
 	private LocalHTTPServer fLocalServer;
 
+	/**
+	 * HTTP connections shared by all the test cases in this suite
+	 */
+	private PooledConnectionManager fConnectionManager;
+
+	private HttpClient fHttpClient;
+
+	/**
+	 * Sends the messages of all the test cases in this suite
+	 */
+	private IMessageTransport fMessageTransport;
+
+	/**
+	 * Runs the partner tracks of all the test cases in this suite
+	 */
+	private IPartnerTrackExecutor fPartnerTrackExecutor;
+
 	/**
 	 * Listeners for test results
 	 */
 	private List<ITestResultListener> fResultListeners;
 
+	/**
+	 * Delivers the events to the listeners for test results
+	 */
+	private volatile ITestResultDispatcher fResultDispatcher;
+
+	/**
+	 * Listeners which are told about test cases starting and ending right
+	 * away, whatever the RESULT_LISTENER_DISPATCH option says
+	 */
+	private List<ITestResultListener> fSynchronousResultListeners;
+
+	/**
+	 * Delivers the events to the synchronous listeners
+	 */
+	private ITestResultDispatcher fSynchronousResultDispatcher;
+
 	/**
 	 * If this list contains test cases, only those will be run
 	 */
 	private List<TestCase> fTestCaseFilter;
 
+	/**
+	 * If the suite has been filtered, the all-lowercase names of the test
+	 * cases from the factories which will be run
+	 */
+	private Set<String> fFactoryTestCaseFilter;
+
 	/**
 	 * true if a test run is currently in progress
 	 */
@@ -82,18 +151,51 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	/**
 	 * true if the test run has been aborted by theuser
 	 */
-	private boolean fAbortedByUser;
+	private volatile boolean fAbortedByUser;
 
 	/**
 	 * The test case which is currently run
 	 */
 	private TestCase fCurrentTestCase;
 
+	/**
+	 * The test cases which are currently run in parallel
+	 */
+	private final Set<TestCase> fRunningTestCases = Collections.synchronizedSet(new LinkedHashSet<TestCase>());
+
+	/**
+	 * Names (in lower case) of the partners which are waiting for requests in
+	 * the test cases running in parallel.
+	 */
+	private final Set<String> fReservedPartners = new HashSet<String>();
+
+	/**
+	 * true if a test case in the current run had an error
+	 */
+	private boolean fError;
+
+	/**
+	 * true if a test case in the current run had a failure
+	 */
+	private boolean fFailure;
+
 	/**
 	 * Status of this object
 	 */
 	private ArtefactStatus fStatus;
 
+	/**
+	 * Compiled XPath expressions used by the test cases of this suite
+	 */
+	private final XPathExpressionCache fXPathCache = new XPathExpressionCache(BPELUnitConstants.XPATH_CACHE_SIZE);
+
+	/**
+	 * XPath cache hits and misses while running this suite
+	 */
+	private long fXPathCacheHits;
+
+	private long fXPathCacheMisses;
+
 	/**
 	 * Base URL for the mockups. Used for initializing the local Jetty server for the mockups.
 	 */
@@ -104,11 +206,11 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	 */
 	private Logger fLogger;
 
-	private String fSetUpVelocityScript;
+	private VelocityTemplate fSetUpVelocityTemplate;
 
 	private final ToolManager toolManager = new ToolManager();
 
-	private final Map<String, Object> fExtractedData = new HashMap<String, Object>();
+	private final Map<String, Object> fExtractedData = Collections.synchronizedMap(new HashMap<String, Object>());
 
 	// ****************************** Initialization **************************
 
@@ -116,13 +218,17 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 			ProcessUnderTest suiteProcessUnderTest) {
 
 		fStatus = ArtefactStatus.createInitialStatus();
-		fResultListeners = new ArrayList<ITestResultListener>();
+		fResultListeners = new CopyOnWriteArrayList<ITestResultListener>();
+		fResultDispatcher = new SynchronousTestResultDispatcher(fResultListeners);
+		fSynchronousResultListeners = new CopyOnWriteArrayList<ITestResultListener>();
+		fSynchronousResultDispatcher = new SynchronousTestResultDispatcher(fSynchronousResultListeners);
 		fLogger = Logger.getLogger(getClass());
 
 		fName = suiteName;
 		fProcessUnderTest = suiteProcessUnderTest;
 		fCurrentlyRunning = false;
 		fTestCaseMap = new LinkedHashMap<String, TestCase>();
+		fTestCaseFactories = new ArrayList<ITestCaseFactory>();
 
 		setBaseURL(suiteBaseURL);
 	}
@@ -131,6 +237,16 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		fTestCaseMap.put(test.getRawName().toLowerCase(), test);
 	}
 
+	/**
+	 * Adds a factory for test cases which should only be created when they are
+	 * about to be run. They are dropped by the suite once they have been run,
+	 * so they are not listed in {@link #getChildren()}: clients should use
+	 * the result listeners to report on them.
+	 */
+	public void addTestCaseFactory(ITestCaseFactory factory) {
+		fTestCaseFactories.add(factory);
+	}
+
 	/**
 	 * Filters this test suite to only run the test case with the specified
 	 * name.
@@ -149,7 +265,9 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 
 	/**
 	 * Filters this test suite to only run the test cases with the names
-	 * specified in the list (in that order).
+	 * specified in the list (in that order). Test cases created by a
+	 * {@link ITestCaseFactory} are run after the others, in the order of the
+	 * factory.
 	 * 
 	 * @see #setFilter(String)
 	 * @param testCaseNames
@@ -159,17 +277,25 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	public void setFilter(List<String> testCaseNames)
 			throws TestCaseNotFoundException {
 		List<TestCase> filtered = new ArrayList<TestCase>();
+		Set<String> filteredFromFactories = new HashSet<String>();
 		for (String name : testCaseNames) {
-			addTestCaseToFilter(filtered, name);
+			addTestCaseToFilter(filtered, filteredFromFactories, name);
 		}
 
 		fTestCaseFilter = filtered;
+		fFactoryTestCaseFilter = filteredFromFactories;
 	}
 
 	// ************ Running *************
 
 	public void setUp() throws DeploymentException {
 
+		try {
+			getMessageTransport();
+		} catch (IllegalStateException e) {
+			throw new DeploymentException(e.getMessage(), e);
+		}
+
 		fLogger.info("Now starting local HTTP server...");
 		try {
 			getLocalServer().startServer();
@@ -194,6 +320,8 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		} catch (Exception e) {
 			fLogger.error("Exception while stopping fixture server", e);
 		}
+		stopMessageTransport();
+		closeHttpClient();
 
 		if (fProcessUnderTest.isDeployed()) {
 			fLogger.info("Now undeploying: " + fProcessUnderTest);
@@ -207,46 +335,46 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		fCurrentTestCase = null;
 		fCurrentlyRunning = true;
 
-		boolean error = false;
-		boolean failure = false;
+		fError = false;
+		fFailure = false;
+
+		fResultDispatcher = fConfiguration.createResultDispatcher(fResultListeners);
+
+		final long xpathCacheHits = fXPathCache.getHits();
+		final long xpathCacheMisses = fXPathCache.getMisses();
 
 		if (fTestCaseFilter == null) {
 			fTestCaseFilter = new ArrayList<TestCase>(fTestCaseMap.values());
 		}
 
-		for (TestCase testCase : fTestCaseFilter) {
-			fCurrentTestCase = testCase;
-			testCase.run();
-			try {
-			  fProcessUnderTest.cleanUpAfterTestCase();
-			} catch (Exception ex) {
-				fLogger.error(ex.getMessage(), ex);
-			    failure = true;
-			}
-			if (testCase.getStatus().isError()) {
-				error = true;
-				if (BPELUnitRunner.isHaltOnError()) {
-					break;
-				}
-			}
-			if (testCase.getStatus().isFailure()) {
-				failure = true;
-				if (BPELUnitRunner.isHaltOnFailure()) {
-					break;
+		final TestCaseCursor cursor = new TestCaseCursor();
+		try {
+			final int parallelTestCases = fConfiguration.getParallelTestCases();
+			if (parallelTestCases > 1) {
+				runTestCasesInParallel(parallelTestCases, cursor);
+			} else {
+				TestCase testCase;
+				while ((testCase = cursor.next()) != null) {
+					fCurrentTestCase = testCase;
+					if (!runTestCase(testCase, null)) {
+						break;
+					}
 				}
 			}
-
-			if (fAbortedByUser) {
-				break;
-			}
+		} finally {
+			cursor.close();
 		}
 
 		fCurrentTestCase = null;
+		fXPathCacheHits = fXPathCache.getHits() - xpathCacheHits;
+		fXPathCacheMisses = fXPathCache.getMisses() - xpathCacheMisses;
+		fLogger.info(String.format("XPath expression cache: %d hits, %d misses",
+				fXPathCacheHits, fXPathCacheMisses));
 
-		if (error) {
+		if (fError) {
 			fStatus = ArtefactStatus
 					.createErrorStatus("A test case had an error");
-		} else if (failure) {
+		} else if (fFailure) {
 			fStatus = ArtefactStatus
 					.createFailedStatus("A test case had a failure");
 		} else if (fAbortedByUser) {
@@ -255,10 +383,223 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 			fStatus = ArtefactStatus.createPassedStatus();
 		}
 
+		fResultDispatcher.shutdown();
+		fResultDispatcher = new SynchronousTestResultDispatcher(fResultListeners);
+
 		fCurrentlyRunning = false;
+		shutDownPartnerTrackExecutor();
 		fLogger.info("Now stopping test suite: " + this);
 	}
 
+	private synchronized void shutDownPartnerTrackExecutor() {
+		if (fPartnerTrackExecutor != null) {
+			fLogger.info(String.format(
+					"Partner tracks used %d threads, with up to %d running at the same time",
+					fPartnerTrackExecutor.getThreadsCreated(),
+					fPartnerTrackExecutor.getPeakConcurrency()));
+			fPartnerTrackExecutor.shutdown();
+			fPartnerTrackExecutor = null;
+		}
+	}
+
+	/**
+	 * Runs the test cases on a pool of threads, so up to
+	 * <code>parallelTestCases</code> of them are running at the same time. Each
+	 * thread takes the next test case from the cursor once its previous one
+	 * is done, so test cases from factories are only created when there is a
+	 * thread to run them. Each test case gets its own URL namespace in the
+	 * local HTTP server. Once a test case errors or fails and BPELUnit has to
+	 * halt on that, or the user aborts the run, no more test cases are started.
+	 * 
+	 * The process under test calls its partners at the addresses it was
+	 * deployed with, which do not include the namespace of a test case. A test
+	 * case is therefore only started once no other running test case waits for
+	 * requests to the same partners, so each such request can be routed to
+	 * exactly one test case.
+	 * 
+	 * Deployers may clean up the whole engine after a test case, e.g. by
+	 * terminating all process instances. The cleanup is therefore only done
+	 * once no other test case is running (see
+	 * {@link #cleanUpAfterTestCase(TestCase)}).
+	 */
+	private void runTestCasesInParallel(int parallelTestCases, final TestCaseCursor cursor) {
+		fLogger.info("Running up to " + parallelTestCases
+				+ " test cases in parallel");
+
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(parallelTestCases);
+		final AtomicBoolean halted = new AtomicBoolean(false);
+		final AtomicInteger lastNamespace = new AtomicInteger();
+		final List<Future<?>> results = new ArrayList<Future<?>>();
+		try {
+			for (int i = 0; i < parallelTestCases; i++) {
+				results.add(executor.submit(new Runnable() {
+					public void run() {
+						TestCase testCase;
+						while (!halted.get() && !fAbortedByUser
+								&& (testCase = cursor.next()) != null) {
+							final String namespace = "tc" + lastNamespace.incrementAndGet();
+							final Set<String> partners = testCase.getReceivingPartnerNames();
+							try {
+								if (!reservePartners(partners, halted)) {
+									// Halted or aborted while waiting
+									return;
+								}
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								return;
+							}
+							fRunningTestCases.add(testCase);
+							try {
+								if (!runTestCase(testCase, namespace)) {
+									halted.set(true);
+									wakeUpWaitingTestCases();
+								}
+							} finally {
+								fRunningTestCases.remove(testCase);
+								releasePartners(partners);
+							}
+						}
+					}
+				}));
+			}
+
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			fLogger.error("Interrupted while waiting for the test cases to finish", e);
+			abortTest();
+		} catch (ExecutionException e) {
+			fLogger.error(e.getCause().getMessage(), e.getCause());
+			synchronized (this) {
+				fError = true;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits until none of the partners is reserved by a running test case, and
+	 * reserves them all.
+	 * 
+	 * @return <code>false</code> if the partners have not been reserved,
+	 *         because the run has been halted or aborted by the user in the
+	 *         meantime.
+	 */
+	private boolean reservePartners(Set<String> partners, AtomicBoolean halted)
+			throws InterruptedException {
+		synchronized (fReservedPartners) {
+			while (!halted.get() && !fAbortedByUser
+					&& !Collections.disjoint(fReservedPartners, partners)) {
+				fReservedPartners.wait();
+			}
+			if (halted.get() || fAbortedByUser) {
+				return false;
+			}
+			fReservedPartners.addAll(partners);
+			return true;
+		}
+	}
+
+	private void releasePartners(Set<String> partners) {
+		synchronized (fReservedPartners) {
+			fReservedPartners.removeAll(partners);
+			fReservedPartners.notifyAll();
+		}
+	}
+
+	/**
+	 * Wakes up the test cases which wait for their partners, so they notice
+	 * that the run has been halted or aborted.
+	 */
+	private void wakeUpWaitingTestCases() {
+		synchronized (fReservedPartners) {
+			fReservedPartners.notifyAll();
+		}
+	}
+
+	/**
+	 * Runs a test case and records its outcome.
+	 * 
+	 * @param namespace
+	 *            URL namespace for the test case in the local HTTP server, or
+	 *            <code>null</code> if it should not use one.
+	 * @return <code>true</code> if the following test cases should be run,
+	 *         <code>false</code> if the test suite should stop.
+	 */
+	private boolean runTestCase(final TestCase testCase, String namespace) {
+		testCase.run(namespace);
+
+		boolean error = false;
+		boolean failure = !cleanUpAfterTestCase(testCase);
+		if (testCase.getStatus().isError()) {
+			error = true;
+		}
+		if (testCase.getStatus().isFailure()) {
+			failure = true;
+		}
+
+		synchronized (this) {
+			fError |= error;
+			fFailure |= failure;
+		}
+
+		// Only once the listeners have been told about the end of the test case
+		fResultDispatcher.execute(new Runnable() {
+			public void run() {
+				releasePayloads(testCase);
+			}
+		});
+
+		if (error && fConfiguration.isHaltOnError()) {
+			return false;
+		}
+		if (testCase.getStatus().isFailure() && fConfiguration.isHaltOnFailure()) {
+			return false;
+		}
+		return !fAbortedByUser;
+	}
+
+	/**
+	 * Lets the deployer clean up after a test case. Deployers may clean up
+	 * the whole engine, e.g. by terminating all process instances, so this is
+	 * skipped while other test cases are still running: the last one of them
+	 * to finish cleans up instead. No test case is started during the
+	 * cleanup.
+	 * 
+	 * @return <code>false</code> if the cleanup failed
+	 */
+	private boolean cleanUpAfterTestCase(TestCase testCase) {
+		synchronized (fRunningTestCases) {
+			fRunningTestCases.remove(testCase);
+			if (!fRunningTestCases.isEmpty()) {
+				return true;
+			}
+			try {
+				fProcessUnderTest.cleanUpAfterTestCase();
+				return true;
+			} catch (Exception ex) {
+				fLogger.error(ex.getMessage(), ex);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Releases the messages of a test case which has been reported to the
+	 * result listeners, as selected by the PAYLOAD_RETENTION option.
+	 */
+	private void releasePayloads(TestCase testCase) {
+		final String retention = fConfiguration.getPayloadRetention();
+		if (BPELUnitRunner.PAYLOAD_RETENTION_SUMMARIES.equals(retention)) {
+			testCase.releasePayloads(false);
+		} else if (BPELUnitRunner.PAYLOAD_RETENTION_FAILURES.equals(retention)) {
+			testCase.releasePayloads(testCase.hasProblems());
+		}
+	}
+
 	// ************* Result Listeners and reporting *************
 
 	public void addResultListener(ITestResultListener listener) {
@@ -269,26 +610,50 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		fResultListeners.remove(listener);
 	}
 
+	/**
+	 * Adds a listener which is told about test cases starting and ending right
+	 * away, on the thread running the test case, even if the other listeners
+	 * are called asynchronously (RESULT_LISTENER_DISPATCH). This is meant for
+	 * listeners which other parts of BPELUnit ask for the running test cases
+	 * while they run, not for reporting: progress events are not delivered to
+	 * them.
+	 */
+	public void addSynchronousResultListener(ITestResultListener listener) {
+		fSynchronousResultListeners.add(listener);
+	}
+
+	public void removeSynchronousResultListener(ITestResultListener listener) {
+		fSynchronousResultListeners.remove(listener);
+	}
+
 	public void startTestCase(TestCase case1) {
-		for (ITestResultListener listener : fResultListeners) {
-			listener.testCaseStarted(case1);
-		}
+		fSynchronousResultDispatcher.testCaseStarted(case1);
+		fResultDispatcher.testCaseStarted(case1);
 	}
 
 	public void endTestCase(TestCase case1) {
-		for (ITestResultListener listener : fResultListeners) {
-			listener.testCaseEnded(case1);
-		}
+		fSynchronousResultDispatcher.testCaseEnded(case1);
+		fResultDispatcher.testCaseEnded(case1);
 	}
 
 	// ******************* Getters ******************************
 
 	public boolean hasTestCase(String testCaseName) {
-		return fTestCaseMap.containsKey(testCaseName.toLowerCase());
+		return fTestCaseMap.containsKey(testCaseName.toLowerCase())
+				|| canCreateTestCase(testCaseName);
 	}
 
+	/**
+	 * Returns the number of test cases in this suite. Factories which do not
+	 * know the number of rows of their data sources in advance only count the
+	 * test cases they have moved through so far.
+	 */
 	public int getTestCaseCount() {
-		return fTestCaseMap.size();
+		int count = fTestCaseMap.size();
+		for (ITestCaseFactory factory : fTestCaseFactories) {
+			count += factory.getTestCaseCount();
+		}
+		return count;
 	}
 
 	public ProcessUnderTest getProcessUnderTest() {
@@ -301,6 +666,12 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 			if (fCurrentTestCase != null) {
 				fCurrentTestCase.abortTest();
 			}
+			synchronized (fRunningTestCases) {
+				for (TestCase testCase : fRunningTestCases) {
+					testCase.abortTest();
+				}
+			}
+			wakeUpWaitingTestCases();
 		}
 	}
 
@@ -308,6 +679,25 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		return fCurrentlyRunning;
 	}
 
+	public RunnerConfiguration getConfiguration() {
+		return fConfiguration;
+	}
+
+	/**
+	 * Sets the options this suite is run with. Suites which are not loaded by
+	 * a runner use the default options.
+	 */
+	public void setConfiguration(RunnerConfiguration configuration) {
+		fConfiguration = configuration;
+	}
+
+	/**
+	 * Returns the cache of compiled XPath expressions of this suite.
+	 */
+	public XPathExpressionCache getXPathExpressionCache() {
+		return fXPathCache;
+	}
+
 	public LocalHTTPServer getLocalServer() {
 		// We use lazy initialization so the user can change programmatically
 		// the base URL (and thus the port BPELUnit listens on) after creating
@@ -319,6 +709,72 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		return fLocalServer;
 	}
 
+	/**
+	 * Returns the HTTP client which should be used to send messages in this
+	 * suite. Its connections are pooled across all test cases, and closed when
+	 * the suite is shut down.
+	 */
+	public synchronized HttpClient getHttpClient() {
+		if (fHttpClient == null) {
+			fConnectionManager = new PooledConnectionManager(
+					fConfiguration.getMaxConnectionsPerHost(),
+					fConfiguration.getIdleConnectionTimeout());
+			fHttpClient = new HttpClient(fConnectionManager);
+		}
+		return fHttpClient;
+	}
+
+	/**
+	 * Returns the transport which should be used to send messages in this
+	 * suite. It is created on first use and stopped when the suite is shut
+	 * down.
+	 * 
+	 * @throws IllegalStateException
+	 *             the transport could not be started
+	 */
+	public synchronized IMessageTransport getMessageTransport() {
+		if (fMessageTransport == null) {
+			final IMessageTransport transport = fConfiguration.createMessageTransport(getHttpClient());
+			try {
+				transport.start();
+			} catch (Exception e) {
+				throw new IllegalStateException("Could not start the HTTP transport: " + e.getMessage(), e);
+			}
+			fMessageTransport = transport;
+		}
+		return fMessageTransport;
+	}
+
+	private synchronized void stopMessageTransport() {
+		if (fMessageTransport != null) {
+			fMessageTransport.stop();
+			fMessageTransport = null;
+		}
+	}
+
+	private synchronized void closeHttpClient() {
+		if (fConnectionManager != null) {
+			fLogger.info(String.format(
+					"HTTP connection pool: %d requests reused a connection, %d opened a new one",
+					fConnectionManager.getReusedConnections(),
+					fConnectionManager.getOpenedConnections()));
+			fConnectionManager.shutdown();
+			fConnectionManager = null;
+			fHttpClient = null;
+		}
+	}
+
+	/**
+	 * Returns the executor for the partner tracks of this suite. It is created
+	 * on first use and shut down when the suite finishes running.
+	 */
+	public synchronized IPartnerTrackExecutor getPartnerTrackExecutor() {
+		if (fPartnerTrackExecutor == null) {
+			fPartnerTrackExecutor = fConfiguration.createPartnerTrackExecutor();
+		}
+		return fPartnerTrackExecutor;
+	}
+
 	public URL getBaseURL() {
 		return fBaseURL;
 	}
@@ -342,21 +798,15 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	 * to the youngest one.
 	 *
 	 * NOTE: to keep test cases and activities isolated, this context should
-	 * not be wrapped, but rather be cloned and then extended.
+	 * not be changed directly. Callers should extend a new layer on top of it,
+	 * created with {@link WrappedContext#newLayer()}.
 	 * @throws DataSourceException 
 	 */
 	public WrappedContext createVelocityContext(ITestArtefact artefact) throws DataSourceException  {
 		try {
-			Velocity.init();
-		} catch(Exception e) {
-			// XXX DL: This is stupid but it seems that the logger
-			// cannot be initialized on the first try when running
-			// under Eclipse and ATM I don't know a better solution
-			try {
-				Velocity.init();
-			} catch (Exception e1) {
-				throw new DataSourceException(e);
-			}
+			VelocityTemplate.initVelocity();
+		} catch (Exception e) {
+			throw new DataSourceException(e);
 		}
 
 		final WrappedContext ctx = new WrappedContext(toolManager.createContext());
@@ -366,13 +816,8 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		ctx.putReadOnly("testSuiteName", this.getRawName());
 		ctx.putReadOnly("testCaseCount", this.getTestCaseCount());
 
-		if (fSetUpVelocityScript != null) {
-			StringWriter sW = new StringWriter();
-			try {
-				Velocity.evaluate(ctx, sW, "setUpTestSuite", fSetUpVelocityScript);
-			} catch (Exception e) {
-				throw new DataSourceException(e);
-			}
+		if (fSetUpVelocityTemplate != null) {
+			fSetUpVelocityTemplate.mergeToString(ctx);
 		}
 
 		ExtractedDataContainerUtil.addExtractedDataFromAncestors(ctx, artefact);
@@ -393,6 +838,14 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 		return fName.replaceAll("\\.|/|\\s|\\\\", "-");
 	}
 
+	/**
+	 * Returns the test cases kept by this suite. Test cases created by a
+	 * {@link ITestCaseFactory} are dropped once they have been run, so they
+	 * are not included: they are only reported to the result listeners, and
+	 * report writers should be registered as listeners (see
+	 * {@link net.bpelunit.framework.control.result.StreamingXMLResultWriter})
+	 * instead of walking this tree after the run.
+	 */
 	public List<ITestArtefact> getChildren() {
 		List<ITestArtefact> children = new ArrayList<ITestArtefact>();
 		for (TestCase testCase : fTestCaseMap.values()) {
@@ -411,13 +864,19 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	}
 
 	public List<StateData> getStateData() {
-		return fStatus.getAsStateData();
+		List<StateData> stateData = new ArrayList<StateData>(fStatus.getAsStateData());
+		final long xpathLookups = fXPathCacheHits + fXPathCacheMisses;
+		if (xpathLookups > 0) {
+			stateData.add(new StateData("XPath cache hits", Long.toString(fXPathCacheHits)));
+			stateData.add(new StateData("XPath cache misses", Long.toString(fXPathCacheMisses)));
+			stateData.add(new StateData("XPath cache hit rate",
+					String.format("%.1f%%", 100.0 * fXPathCacheHits / xpathLookups)));
+		}
+		return stateData;
 	}
 
-	public synchronized void reportProgress(ITestArtefact artefact) {
-		for (ITestResultListener listener : fResultListeners) {
-			listener.progress(artefact);
-		}
+	public void reportProgress(ITestArtefact artefact) {
+		fResultDispatcher.progress(artefact);
 	}
 
 	// *********** IExtractedDataContainer ************
@@ -439,17 +898,108 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	
 	// *********************** Other ******************************
 
-	private void addTestCaseToFilter(List<TestCase> filtered, String name)
+	private void addTestCaseToFilter(List<TestCase> filtered,
+			Set<String> filteredFromFactories, String name)
 			throws TestCaseNotFoundException {
 		TestCase testCase = fTestCaseMap.get(name.toLowerCase());
 		if (testCase != null) {
 			filtered.add(testCase);
+		} else if (canCreateTestCase(name)) {
+			filteredFromFactories.add(name.toLowerCase());
 		} else {
 			throw new TestCaseNotFoundException("Test Case with name \"" + name
 					+ "\" does not exist in this suite.");
 		}
 	}
 
+	private boolean canCreateTestCase(String name) {
+		for (ITestCaseFactory factory : fTestCaseFactories) {
+			if (factory.canCreate(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Hands out the test cases to be run, one at a time: first those in the
+	 * test case map, then those from the factories. Test cases from the
+	 * factories are created as they are handed out, and the suite does not
+	 * keep them afterwards.
+	 */
+	private final class TestCaseCursor {
+		private final Iterator<TestCase> fTestCases = new ArrayList<TestCase>(fTestCaseFilter).iterator();
+		private final Iterator<ITestCaseFactory> fFactories = new ArrayList<ITestCaseFactory>(fTestCaseFactories).iterator();
+		private ITestCaseFactory fFactory;
+
+		/**
+		 * Returns the next test case to be run, or <code>null</code> if there
+		 * are no more test cases to run.
+		 */
+		public synchronized TestCase next() {
+			if (fTestCases.hasNext()) {
+				return fTestCases.next();
+			}
+
+			while (fFactory != null || fFactories.hasNext()) {
+				try {
+					if (fFactory == null) {
+						fFactory = fFactories.next();
+						fFactory.open();
+					}
+					String name;
+					while ((name = fFactory.nextTestCaseName()) != null) {
+						if (fFactoryTestCaseFilter == null
+								|| fFactoryTestCaseFilter.contains(name.toLowerCase())) {
+							try {
+								return fFactory.createTestCase();
+							} catch (SpecificationException e) {
+								// only this row is broken: report it and go on
+								reportCreationError(name, e);
+								if (fConfiguration.isHaltOnError()) {
+									close();
+									return null;
+								}
+							}
+						}
+					}
+				} catch (SpecificationException e) {
+					// the rest of the data source cannot be read
+					fLogger.error("Could not read the next test case: " + e.getMessage(), e);
+					synchronized (TestSuite.this) {
+						fError = true;
+					}
+					if (fConfiguration.isHaltOnError()) {
+						close();
+						return null;
+					}
+				}
+				close();
+			}
+			return null;
+		}
+
+		/**
+		 * Reports a test case which could not be created as an error to the
+		 * result listeners.
+		 */
+		private void reportCreationError(String name, SpecificationException e) {
+			fLogger.error("Could not create the test case " + name + ": " + e.getMessage(), e);
+			synchronized (TestSuite.this) {
+				fError = true;
+			}
+			new TestCase(TestSuite.this, name).reportError(
+					"Could not create the test case: " + e.getMessage(), e);
+		}
+
+		public synchronized void close() {
+			if (fFactory != null) {
+				fFactory.close();
+				fFactory = null;
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "TestSuite \"" + getName() + "\" (" + getTestCaseCount()
@@ -469,11 +1019,11 @@ public class TestSuite implements ITestArtefact, IExtractedDataContainer, Veloci
 	// ********************** setUp/tearDown ***********************
 
 	public String getSetUpVelocityScript() {
-		return fSetUpVelocityScript;
+		return fSetUpVelocityTemplate != null ? fSetUpVelocityTemplate.getSource() : null;
 	}
 
-	public void setSetUpVelocityScript(String script) {
-		fSetUpVelocityScript = script;
+	public void setSetUpVelocityTemplate(VelocityTemplate template) {
+		fSetUpVelocityTemplate = template;
 	}
 
 	public Collection<TestCase> getTestCasesToExecute() {
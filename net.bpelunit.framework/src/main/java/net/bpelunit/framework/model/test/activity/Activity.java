@@ -7,6 +7,7 @@ package net.bpelunit.framework.model.test.activity;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -83,12 +84,17 @@ public abstract class Activity implements ITestArtefact, IExtractedDataContainer
 	public abstract void runInternal(ActivityContext context);
 
 	protected void preRun(ActivityContext context) {
-		while(!context.getExecutedActivities().containsAll(dependsOn)) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				setStatus(ArtefactStatus.createAbortedStatus("Thread was interrupted while waiting for all dependent activities to complete."));
+		if(dependsOn.isEmpty()) {
+			return;
+		}
+		try {
+			if(!context.waitForActivities(dependsOn)) {
+				setStatus(ArtefactStatus.createAbortedStatus("Test case was aborted while waiting for all dependent activities to complete."));
 			}
+		} catch (InterruptedException e) {
+			// Keep the interruption, so the partner track notices the abort
+			Thread.currentThread().interrupt();
+			setStatus(ArtefactStatus.createAbortedStatus("Thread was interrupted while waiting for all dependent activities to complete."));
 		}
 	}
 	
@@ -117,10 +123,31 @@ public abstract class Activity implements ITestArtefact, IExtractedDataContainer
 	 */
 	public abstract String getActivityCode();
 
+	/**
+	 * Returns true if this activity waits for requests sent by the process
+	 * under test to its partner. Such requests do not say which test case
+	 * they belong to, unless they are sent to a callback address.
+	 */
+	public boolean isReceivingRequests() {
+		return false;
+	}
+
 	public boolean hasProblems() {
 		return getStatus().hasProblems();
 	}
 
+	/**
+	 * Releases the messages sent and received by this activity, once its
+	 * test case has been reported. Activities without messages do nothing.
+	 * 
+	 * @param keepSerialized
+	 *            if <code>true</code>, the messages are kept in serialized
+	 *            form. Otherwise, they are dropped.
+	 */
+	public void releasePayloads(boolean keepSerialized) {
+		// no messages by default
+	}
+
 	public String getAssumption() {
 		return fAssumption;
 	}
@@ -187,10 +214,14 @@ public abstract class Activity implements ITestArtefact, IExtractedDataContainer
 		this.id = newId;
 	}
 
-	private String getId() {
+	public String getId() {
 		return this.id;
 	}
-	
+
+	public List<String> getDependsOn() {
+		return Collections.unmodifiableList(dependsOn);
+	}
+
 	public void setDependsOn(List<String> newDependsOn) {
 		if(newDependsOn != null) {
 			this.dependsOn = new ArrayList<String>(newDependsOn);
@@ -6,15 +6,18 @@
 package net.bpelunit.framework.model.test.activity;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 import net.bpelunit.framework.control.datasource.WrappedContext;
 import net.bpelunit.framework.control.ext.IHeaderProcessor;
 import net.bpelunit.framework.control.ext.SendPackage;
 import net.bpelunit.framework.control.run.TestCaseRunner;
+import net.bpelunit.framework.control.util.XPathExpressionCache;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.exception.HeaderProcessingException;
 import net.bpelunit.framework.exception.SynchronousSendException;
@@ -56,6 +59,17 @@ public class ActivityContext implements VelocityContextProvider {
 		return fRunner.getExecutedActivities();
 	}
 
+	/**
+	 * Blocks until the activities with these ids have been executed.
+	 * 
+	 * @return <code>true</code> if they have been executed,
+	 *         <code>false</code> if the test case was aborted before.
+	 * @throws InterruptedException
+	 */
+	public boolean waitForActivities(Collection<String> activityIds) throws InterruptedException {
+		return fRunner.waitForActivities(activityIds);
+	}
+
 	/**
 	 * Current partner track
 	 */
@@ -91,7 +105,7 @@ public class ActivityContext implements VelocityContextProvider {
 	public ActivityContext(TestCaseRunner runner, PartnerTrack track) {
 		fRunner= runner;
 		fTrack= track;
-		fSimulatedURL= fTrack.getPartner().getSimulatedURL();
+		fSimulatedURL= runner.getPartnerURL(track);
 	}
 
 	/**
@@ -118,6 +132,10 @@ public class ActivityContext implements VelocityContextProvider {
 		return fRunner.sendMessageSynchronous(msg);
 	}
 
+	public Future<IncomingMessage> sendMessageAsynchronous(OutgoingMessage msg) throws SynchronousSendException, InterruptedException {
+		return fRunner.sendMessageAsynchronous(msg);
+	}
+
 	// *********************** Header Processing *************************
 
 	public void setHeaderProcessor(IHeaderProcessor headerProcessor) {
@@ -169,6 +187,14 @@ public class ActivityContext implements VelocityContextProvider {
 		return fSimulatedURL;
 	}
 
+	/**
+	 * Returns the cache of compiled XPath expressions of the current test
+	 * suite.
+	 */
+	public XPathExpressionCache getXPathExpressionCache() {
+		return fTrack != null ? fTrack.getXPathExpressionCache() : XPathExpressionCache.getInstance();
+	}
+
 	/**
 	 * Sets a different simulated URL. Mainly for test purposes.
 	 * 
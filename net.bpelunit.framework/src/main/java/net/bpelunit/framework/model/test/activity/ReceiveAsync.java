@@ -132,11 +132,21 @@ public class ReceiveAsync extends Activity {
 		return "ReceiveAsync";
 	}
 
+	@Override
+	public boolean isReceivingRequests() {
+		return true;
+	}
+
 	@Override
 	public int getActivityCount() {
 		return 1;
 	}
 
+	@Override
+	public void releasePayloads(boolean keepSerialized) {
+		fReceiveSpec.releasePayloads(keepSerialized);
+	}
+
 	// ************************** ITestArtefact ************************
 
 	@Override
@@ -127,6 +127,11 @@ public class ReceiveSendSync extends TwoWaySyncActivity {
 		return "ReceiveSendSync";
 	}
 
+	@Override
+	public boolean isReceivingRequests() {
+		return true;
+	}
+
 
 	// ************************** ITestArtefact ************************
 
@@ -145,6 +145,11 @@ public class SendAsync extends Activity {
 		return 1;
 	}
 
+	@Override
+	public void releasePayloads(boolean keepSerialized) {
+		fSendSpec.releasePayloads(keepSerialized);
+	}
+
 	// ************************** ITestArtefact ************************
 
 	@Override
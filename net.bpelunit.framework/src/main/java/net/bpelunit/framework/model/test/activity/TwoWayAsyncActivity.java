@@ -81,6 +81,18 @@ public abstract class TwoWayAsyncActivity extends Activity {
 		return 3;
 	}
 
+	@Override
+	public boolean isReceivingRequests() {
+		// Both kinds include an asynchronous receive
+		return true;
+	}
+
+	@Override
+	public void releasePayloads(boolean keepSerialized) {
+		fSendAsync.releasePayloads(keepSerialized);
+		fReceiveAsync.releasePayloads(keepSerialized);
+	}
+
 	// ************************** ITestArtefact ************************
 
 	/**
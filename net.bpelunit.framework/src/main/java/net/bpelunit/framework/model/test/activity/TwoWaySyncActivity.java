@@ -91,6 +91,12 @@ public abstract class TwoWaySyncActivity extends Activity {
 		return getPartnerTrack();
 	}
 
+	@Override
+	public void releasePayloads(boolean keepSerialized) {
+		fSendSpec.releasePayloads(keepSerialized);
+		fReceiveSpec.releasePayloads(keepSerialized);
+	}
+
 	public SendDataSpecification getSendSpec() {
 		return fSendSpec;
 	}
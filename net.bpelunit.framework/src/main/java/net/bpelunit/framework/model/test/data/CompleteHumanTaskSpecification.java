@@ -6,6 +6,7 @@ import java.util.List;
 
 import javax.xml.namespace.NamespaceContext;
 
+import net.bpelunit.framework.control.util.VelocityTemplate;
 import net.bpelunit.framework.exception.SpecificationException;
 import net.bpelunit.framework.model.test.PartnerTrack;
 import net.bpelunit.framework.model.test.activity.Activity;
@@ -27,17 +28,17 @@ public class CompleteHumanTaskSpecification extends DataSpecification {
 	private List<ReceiveCondition> conditions;
 
 	private XmlObject inputXMLData;
-	private final String templateText;
+	private final VelocityTemplate template;
 	private XMLAnyElement outputXMLData;
 	private List<DataExtraction> dataExtractions = new ArrayList<DataExtraction>();
 
 	public CompleteHumanTaskSpecification(Activity parent,
 			NamespaceContext nsContext, Element xmlLiteralOutputData,
-			String templateText, PartnerTrack partnerTrack)
+			VelocityTemplate template, PartnerTrack partnerTrack)
 			throws SpecificationException {
 		super(parent, nsContext);
 		try {
-			this.templateText = templateText;
+			this.template = template;
 			this.outputXMLData = xmlLiteralOutputData != null ? XMLAnyElement.Factory.parse(xmlLiteralOutputData, null) : null;
 			this.partnerTrack = partnerTrack;
 		} catch (XmlException e) {
@@ -80,7 +81,7 @@ public class CompleteHumanTaskSpecification extends DataSpecification {
 	}
 
 	public String getTemplateText() {
-		return templateText;
+		return template != null ? template.getSource() : null;
 	}
 
 	public XMLAnyElement handle(ActivityContext context, XmlObject input) {
@@ -89,9 +90,9 @@ public class CompleteHumanTaskSpecification extends DataSpecification {
 		validateConditions();
 		extractData(context, dataExtractions, (Element)input.getDomNode());
 
-		if (templateText != null) {
+		if (template != null) {
 			try {
-				outputXMLData = XMLAnyElement.Factory.parse(generateLiteralDataFromTemplate(context, templateText));
+				outputXMLData = XMLAnyElement.Factory.parse(generateLiteralDataFromTemplate(context, template));
 			} catch (XmlException e) {
 				setStatus(ArtefactStatus.createFailedStatus(String.format(
 					"Could not generate the reply message from the template: %s",
@@ -124,7 +125,7 @@ public class CompleteHumanTaskSpecification extends DataSpecification {
 		ContextXPathVariableResolver variableResolver = new ContextXPathVariableResolver(conditionContext);
 
 		for (ReceiveCondition c : conditions) {
-			c.evaluate(partnerTrack, (Element)inputXMLData.getDomNode(), getNamespaceContext(), variableResolver);
+			c.evaluate(partnerTrack, (Element)inputXMLData.getDomNode(), getNamespaceContext(), variableResolver, partnerTrack.getXPathExpressionCache());
 
 			if (c.isFailure()) {
 				setStatus(ArtefactStatus.createFailedStatus(String.format(
@@ -9,11 +9,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import net.bpelunit.framework.control.util.BPELUnitUtil;
+import net.bpelunit.framework.control.util.XPathExpressionCache;
 import net.bpelunit.framework.model.test.report.ArtefactStatus;
 import net.bpelunit.framework.model.test.report.ITestArtefact;
 import net.bpelunit.framework.model.test.report.StateData;
@@ -79,13 +78,15 @@ public class DataCopyOperation implements ITestArtefact {
 	// ******************** Implementation ***************************
 
 	public void retrieveTextNodes(Element literalData, NamespaceContext namespaceContext) {
+		retrieveTextNodes(literalData, namespaceContext, XPathExpressionCache.getInstance());
+	}
 
-		XPath xpath= XPathFactory.newInstance().newXPath();
-		xpath.setNamespaceContext(namespaceContext);
+	public void retrieveTextNodes(Element literalData, NamespaceContext namespaceContext, XPathExpressionCache xpath) {
 
 		try {
 			Node inputNode;
-			inputNode= (Node) xpath.evaluate(getFromXPath(), literalData, XPathConstants.NODE);
+			inputNode= (Node) xpath.evaluate(
+					getFromXPath(), namespaceContext, null, literalData, XPathConstants.NODE);
 
 			if (inputNode != null) {
 				Node inputTextNode= null;
@@ -115,13 +116,15 @@ public class DataCopyOperation implements ITestArtefact {
 	}
 
 	public void setTextNodes(Element parent, NamespaceContext context) {
+		setTextNodes(parent, context, XPathExpressionCache.getInstance());
+	}
 
-		XPath xpath= XPathFactory.newInstance().newXPath();
-		xpath.setNamespaceContext(context);
+	public void setTextNodes(Element parent, NamespaceContext context, XPathExpressionCache xpath) {
 
 		try {
 
-			Node outputNode= (Node) xpath.evaluate(getToXPath(), parent, XPathConstants.NODE);
+			Node outputNode= (Node) xpath.evaluate(
+					getToXPath(), context, null, parent, XPathConstants.NODE);
 
 			if (outputNode != null) {
 
@@ -6,13 +6,13 @@
 package net.bpelunit.framework.model.test.data;
 
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.util.List;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import net.bpelunit.framework.control.datasource.WrappedContext;
+import net.bpelunit.framework.control.util.VelocityTemplate;
 import net.bpelunit.framework.control.util.XMLPrinterTool;
 import net.bpelunit.framework.control.util.XPathTool;
 import net.bpelunit.framework.exception.DataSourceException;
@@ -24,14 +24,11 @@ import net.bpelunit.framework.model.test.data.extraction.DataExtraction;
 import net.bpelunit.framework.model.test.report.ArtefactStatus;
 import net.bpelunit.framework.model.test.report.ITestArtefact;
 
-import org.apache.velocity.app.Velocity;
 import org.apache.velocity.context.Context;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
 
-import com.rits.cloning.Cloner;
-
 /**
  * Abstract superclass of the two data specification packages Send and Receive.
  * 
@@ -41,8 +38,6 @@ import com.rits.cloning.Cloner;
  */
 public abstract class DataSpecification implements ITestArtefact {
 
-	private static final Cloner CLONER = new Cloner();
-
 	/**
 	 * Next parent activity this data specification belongs to.
 	 */
@@ -96,22 +91,16 @@ public abstract class DataSpecification implements ITestArtefact {
 		this.fStatus = fStatus;
 	}
 
-	protected String expandTemplateToString(VelocityContextProvider context, String template) throws DataSourceException {
-		WrappedContext velocityCtx = CLONER.deepClone(context.createVelocityContext(this));
+	protected String expandTemplateToString(VelocityContextProvider context, VelocityTemplate template) throws DataSourceException {
+		WrappedContext velocityCtx = context.createVelocityContext(this).newLayer();
 		velocityCtx.putReadOnly("xpath", new XPathTool(getNamespaceContext()));
 		velocityCtx.putReadOnly("printer", new XMLPrinterTool());
 
 		// Expand the template as a regular string
-		StringWriter writer = new StringWriter();
-		try {
-			Velocity.evaluate(velocityCtx, writer, "expandTemplate", template);
-		} catch (Exception e) {
-			throw new DataSourceException(e);
-		}
-		return writer.toString();
+		return template.mergeToString(velocityCtx);
 	}
 
-	protected Element generateLiteralDataFromTemplate(ActivityContext context, String dataTemplate) {
+	protected Element generateLiteralDataFromTemplate(ActivityContext context, VelocityTemplate dataTemplate) {
 		try {
 			String expandedTemplate = expandTemplateToString(context, dataTemplate);
 	
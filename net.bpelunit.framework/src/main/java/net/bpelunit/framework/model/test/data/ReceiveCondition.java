@@ -9,12 +9,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPathVariableResolver;
 
 import net.bpelunit.framework.control.util.BPELUnitUtil;
+import net.bpelunit.framework.control.util.VelocityTemplate;
+import net.bpelunit.framework.control.util.XPathExpressionCache;
 import net.bpelunit.framework.exception.SpecificationException;
 import net.bpelunit.framework.model.test.activity.VelocityContextProvider;
 import net.bpelunit.framework.model.test.report.ArtefactStatus;
@@ -62,7 +62,13 @@ public class ReceiveCondition implements ITestArtefact {
 	/**
 	 * Velocity template to be used to build the receive condition.
 	 */
-	private String fTemplate;
+	private VelocityTemplate fTemplate;
+
+	/**
+	 * Expression comparing the actual value with the expected value, built
+	 * once from the expression and the expected value.
+	 */
+	private String fCompleteExpression;
 
 	// ******************** Initialization ************************
 
@@ -70,7 +76,7 @@ public class ReceiveCondition implements ITestArtefact {
 	 * Data Specification can reasonably only by a ReceiveDataCondition or a
 	 * CompleteHumanTaskSpecification
 	 */
-	public ReceiveCondition(DataSpecification rSpec, String condition, String template, String value) throws SpecificationException {
+	public ReceiveCondition(DataSpecification rSpec, String condition, VelocityTemplate template, String value) throws SpecificationException {
 		fExpression= condition;
 		fTemplate= template;
 		fExpectedValue= value;
@@ -87,22 +93,22 @@ public class ReceiveCondition implements ITestArtefact {
 	// ******************** Implementation ***************************
 
 	public void evaluate(VelocityContextProvider activityContext, Element literalData, NamespaceContext context, XPathVariableResolver variableResolver) {
+		evaluate(activityContext, literalData, context, variableResolver, XPathExpressionCache.getInstance());
+	}
 
-		XPath xpath= XPathFactory.newInstance().newXPath();
-		xpath.setNamespaceContext(context);
-		if (variableResolver != null) {
-			xpath.setXPathVariableResolver(variableResolver);
-		}
+	public void evaluate(VelocityContextProvider activityContext, Element literalData, NamespaceContext context, XPathVariableResolver variableResolver, XPathExpressionCache xpath) {
 
 		try {
 			if (fExpression == null) {
 				fExpression = fParent.expandTemplateToString(activityContext, fTemplate).trim();
 			}
-			String completeXPath= "(" + fExpression + ") =" + fExpectedValue;
-			if (!(Boolean) xpath.evaluate(completeXPath, literalData, XPathConstants.BOOLEAN)) {
+			if (fCompleteExpression == null) {
+				fCompleteExpression= "(" + fExpression + ") =" + fExpectedValue;
+			}
+			if (!(Boolean) xpath.evaluate(fCompleteExpression, context, variableResolver, literalData, XPathConstants.BOOLEAN)) {
 
 				// Get actual result
-				String smartGuess= xpath.evaluate(fExpression, literalData);
+				String smartGuess= xpath.evaluate(fExpression, context, variableResolver, literalData);
 				if (smartGuess != null) {
 					fActualValue= smartGuess;
 					if ("".equals(fActualValue)) {
@@ -111,7 +117,7 @@ public class ReceiveCondition implements ITestArtefact {
 				}
 
 				// Get expected value
-				String sExpectedValue = xpath.evaluate(fExpectedValue, literalData);
+				String sExpectedValue = xpath.evaluate(fExpectedValue, context, variableResolver, literalData);
 
 				fStatus= ArtefactStatus.createFailedStatus(String.format("Condition failed. Obtained value was '%s', expected '%s'", smartGuess, sExpectedValue));
 
@@ -22,7 +22,6 @@ import net.bpelunit.framework.exception.SOAPEncodingException;
 import net.bpelunit.framework.exception.SpecificationException;
 import net.bpelunit.framework.model.test.activity.Activity;
 import net.bpelunit.framework.model.test.activity.ActivityContext;
-import net.bpelunit.framework.model.test.activity.VelocityContextProvider;
 import net.bpelunit.framework.model.test.data.extraction.DataExtraction;
 import net.bpelunit.framework.model.test.report.ArtefactStatus;
 import net.bpelunit.framework.model.test.report.ITestArtefact;
@@ -78,6 +77,16 @@ public class ReceiveDataSpecification extends DataSpecification {
 	 */
 	private Element fLiteralData;
 
+	/**
+	 * The literal XML data in serialized form, once it has been released.
+	 */
+	private String fLiteralDataString;
+
+	/**
+	 * The SOAP-Encoded message in serialized form, once it has been released.
+	 */
+	private String fSOAPMessageString;
+
 	/**
 	 * A list of conditions which must be checked against the received data.
 	 */
@@ -195,7 +204,7 @@ public class ReceiveDataSpecification extends DataSpecification {
 		}
 	}
 
-	private void validateConditions(VelocityContextProvider templateContext) {
+	private void validateConditions(ActivityContext templateContext) {
 		// Check implicit fault assertions
 		SOAPBody body;
 		try {
@@ -248,7 +257,7 @@ public class ReceiveDataSpecification extends DataSpecification {
 		ContextXPathVariableResolver variableResolver = new ContextXPathVariableResolver(conditionContext);
 
 		for (ReceiveCondition c : fConditions) {
-			c.evaluate(templateContext, fLiteralData, getNamespaceContext(), variableResolver);
+			c.evaluate(templateContext, fLiteralData, getNamespaceContext(), variableResolver, templateContext.getXPathExpressionCache());
 
 			if (c.isFailure()) {
 				if(! getStatus().isError()) {
@@ -282,7 +291,7 @@ public class ReceiveDataSpecification extends DataSpecification {
 		List<DataCopyOperation> mapping= context.getMapping();
 		if (mapping != null) {
 			for (DataCopyOperation copy : mapping) {
-				copy.retrieveTextNodes(fLiteralData, getNamespaceContext());
+				copy.retrieveTextNodes(fLiteralData, getNamespaceContext(), context.getXPathExpressionCache());
 				if (copy.isError()) {
 					setStatus(ArtefactStatus.createErrorStatus("An error occurred while evaluating Copy-From-XPath expression."));
 					return;
@@ -302,6 +311,8 @@ public class ReceiveDataSpecification extends DataSpecification {
 	private String getLiteralDataAsString() {
 		if (fLiteralData != null) {
 			return BPELUnitUtil.toFormattedString(fLiteralData.getOwnerDocument());
+		} else if (fLiteralDataString != null) {
+			return fLiteralDataString;
 		}
 		return "(no data)";
 	}
@@ -309,10 +320,34 @@ public class ReceiveDataSpecification extends DataSpecification {
 	private String getSOAPMessageDataAsString() {
 		if (fSOAPMessage != null) {
 			return BPELUnitUtil.toFormattedString(fSOAPMessage.getSOAPPart());
+		} else if (fSOAPMessageString != null) {
+			return fSOAPMessageString;
 		}
 		return "(no message)";
 	}
 
+	/**
+	 * Releases the message received through this specification, once its
+	 * test case has been reported.
+	 * 
+	 * @param keepSerialized
+	 *            if <code>true</code>, the message is kept in serialized
+	 *            form, so {@link #getChildren()} reports the same data as
+	 *            before. Otherwise, it is dropped.
+	 */
+	public void releasePayloads(boolean keepSerialized) {
+		if (keepSerialized) {
+			fLiteralDataString= getLiteralDataAsString();
+			fSOAPMessageString= getSOAPMessageDataAsString();
+		} else {
+			fLiteralDataString= null;
+			fSOAPMessageString= null;
+			fPlainMessage= null;
+		}
+		fLiteralData= null;
+		fSOAPMessage= null;
+	}
+
 	// ************************** ITestArtefact ************************
 
 	public String getName() {
@@ -14,13 +14,12 @@ import java.util.Map;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.soap.SOAPMessage;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import net.bpelunit.framework.control.ext.ISOAPEncoder;
 import net.bpelunit.framework.control.util.BPELUnitUtil;
+import net.bpelunit.framework.control.util.VelocityTemplate;
 import net.bpelunit.framework.exception.DataSourceException;
 import net.bpelunit.framework.exception.HeaderProcessingException;
 import net.bpelunit.framework.exception.SOAPEncodingException;
@@ -85,6 +84,16 @@ public class SendDataSpecification extends DataSpecification {
 	 */
 	private Element fLiteralData;
 
+	/**
+	 * The literal XML data in serialized form, once it has been released.
+	 */
+	private String fLiteralDataString;
+
+	/**
+	 * The SOAP-Encoded message in serialized form, once it has been released.
+	 */
+	private String fSOAPMessageString;
+
 	/**
 	 * SOAP Action. Null in case of receive part of synchronous request/response.
 	 */
@@ -119,7 +128,7 @@ public class SendDataSpecification extends DataSpecification {
         /**
          * If no literal data is available, this Velocity template will be used to produce the data to be sent.
          */
-		private String fDataTemplate;
+		private VelocityTemplate fDataTemplate;
 
 		/**
 		 * Options to be set for the underlaying transport protocol (ATM HTTP only)
@@ -133,7 +142,7 @@ public class SendDataSpecification extends DataSpecification {
 	}
 
 	public void initialize(SOAPOperationCallIdentifier operation, double delay, String delayExpression, String targetURL, String soapAction, String encodingStyle,
-			ISOAPEncoder encoder, Element rawDataRoot, String dataTemplate, QName faultCode, String faultString) {
+			ISOAPEncoder encoder, Element rawDataRoot, VelocityTemplate dataTemplate, QName faultCode, String faultString) {
 		fOperation= operation;
 		fLiteralData= rawDataRoot;
 		fDataTemplate= dataTemplate;
@@ -240,12 +249,10 @@ public class SendDataSpecification extends DataSpecification {
 			final Context vtlContext = activityContext.createVelocityContext(this);
 			final ContextXPathVariableResolver xpathResolver = new ContextXPathVariableResolver(vtlContext);
 
-			final XPath xpath = XPathFactory.newInstance().newXPath();
-			xpath.setNamespaceContext(getNamespaceContext());
-			xpath.setXPathVariableResolver(xpathResolver);
-
 			// We should only evaluate these expressions once per row and round
-			fDelay = (Double)xpath.evaluate(getDelayExpression(), fLiteralData, XPathConstants.NUMBER);
+			fDelay = (Double) activityContext.getXPathExpressionCache().evaluate(
+					getDelayExpression(), getNamespaceContext(), xpathResolver,
+					fLiteralData, XPathConstants.NUMBER);
 			setDelayExpression(null);
 		}
 		return fDelay;
@@ -266,7 +273,7 @@ public class SendDataSpecification extends DataSpecification {
 		List<DataCopyOperation> mapping= context.getMapping();
 		if (mapping != null) {
 			for (DataCopyOperation copy : mapping) {
-				copy.setTextNodes(fLiteralData, getNamespaceContext());
+				copy.setTextNodes(fLiteralData, getNamespaceContext(), context.getXPathExpressionCache());
 				if (copy.isError()) {
 					setStatus(ArtefactStatus.createErrorStatus("An error occurred while evaluating Copy-To-XPath expression."));
 					return;
@@ -304,6 +311,8 @@ public class SendDataSpecification extends DataSpecification {
 	private String getLiteralDataAsString() {
 		if (fLiteralData != null) {
 			return BPELUnitUtil.toFormattedString(fLiteralData.getOwnerDocument());
+		} else if (fLiteralDataString != null) {
+			return fLiteralDataString;
 		}
 		return "(no data)";
 	}
@@ -311,10 +320,37 @@ public class SendDataSpecification extends DataSpecification {
 	private String getSOAPMessageDataAsString() {
 		if (fSOAPMessage != null) {
 			return BPELUnitUtil.toFormattedString(fSOAPMessage.getSOAPPart());
+		} else if (fSOAPMessageString != null) {
+			return fSOAPMessageString;
 		}
 		return "(no message)";
 	}
 
+	/**
+	 * Releases the message sent through this specification, once its test
+	 * case has been reported. Literal data given directly in the test suite
+	 * is part of the specification and is kept if it is not serialized.
+	 * 
+	 * @param keepSerialized
+	 *            if <code>true</code>, the message is kept in serialized
+	 *            form, so {@link #getChildren()} reports the same data as
+	 *            before. Otherwise, it is dropped.
+	 */
+	public void releasePayloads(boolean keepSerialized) {
+		if (keepSerialized) {
+			fLiteralDataString= getLiteralDataAsString();
+			fSOAPMessageString= getSOAPMessageDataAsString();
+		} else {
+			fLiteralDataString= null;
+			fSOAPMessageString= null;
+			fPlainMessage= null;
+		}
+		if (fDataTemplate != null) {
+			fLiteralData= null;
+		}
+		fSOAPMessage= null;
+	}
+
 
 	// ************************** ITestArtefact ************************
 
@@ -6,9 +6,7 @@ import java.util.List;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import net.bpelunit.framework.control.util.BPELUnitUtil;
 import net.bpelunit.framework.exception.SpecificationException;
@@ -148,15 +146,10 @@ public class DataExtraction implements ITestArtefact {
 	// ************************** Implementation *************************
 
 	public void evaluate(ActivityContext context, Element literalData,	NamespaceContext namespaceContext, ContextXPathVariableResolver variableResolver) {
-		final XPath xpath = XPathFactory.newInstance().newXPath();
-		xpath.setNamespaceContext(namespaceContext);
-		if (variableResolver != null) {
-			xpath.setXPathVariableResolver(variableResolver);
-		}
-	
 		try {
 			final QName returnType = getXPathReturnType();
-			fExtracted = xpath.evaluate(fExpression, literalData, returnType);
+			fExtracted = context.getXPathExpressionCache().evaluate(
+					fExpression, namespaceContext, variableResolver, literalData, returnType);
 			fStatus = ArtefactStatus.createPassedStatus();
 
 			final IExtractedDataContainer targetContainer = getTargetContainer();
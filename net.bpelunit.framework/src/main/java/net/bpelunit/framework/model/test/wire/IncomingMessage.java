@@ -10,10 +10,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import javax.xml.soap.MessageFactory;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 
+import net.bpelunit.framework.control.util.BPELUnitUtil;
+
 import org.apache.commons.io.IOUtils;
 
 /**
@@ -46,7 +47,7 @@ public class IncomingMessage {
 
 	public void setMessage(InputStream in) {
 		try {
-			message = MessageFactory.newInstance().createMessage(null, in);
+			message = BPELUnitUtil.getMessageFactory().createMessage(null, in);
 		} catch (IOException e) {
 			message = null;
 		} catch (SOAPException e) {
@@ -17,6 +17,7 @@ import org.apache.commons.io.IOUtils;
 
 import net.bpelunit.framework.control.run.BlackBoard;
 import net.bpelunit.framework.control.run.BlackBoardKey;
+import net.bpelunit.framework.control.util.BPELUnitUtil;
 
 /**
  * An OutgoingMessage object is a plain, on-the-wire representation of an
@@ -100,6 +101,30 @@ public class OutgoingMessage implements BlackBoardKey {
 		}
 	}
 	
+	/**
+	 * Returns the body of the message, serialized in the character encoding
+	 * reported by {@link #getCharacterEncoding()}.
+	 * 
+	 * @throws SOAPException
+	 *             the message could not be serialized
+	 * @throws IOException
+	 *             the message could not be serialized
+	 */
+	public byte[] getMessageAsBytes() throws SOAPException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (message != null) {
+			message.writeTo(out);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the character encoding used to serialize the body of the message.
+	 */
+	public String getCharacterEncoding() {
+		return BPELUnitUtil.getCharacterEncoding(message);
+	}
+
 	public int getCode() {
 		return code;
 	}
@@ -0,0 +1,104 @@
+package net.bpelunit.framework.verify;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.bpelunit.framework.exception.SpecificationException;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.activity.Activity;
+
+/**
+ * Checks the <code>dependsOn</code> references between the activities of a
+ * test case: activity ids must be unique, references must point to existing
+ * activities, and the dependencies must not contain cycles. An activity also
+ * depends implicitly on the activity before it in its partner track, so a
+ * dependency on a later activity of the same track is reported as a cycle too.
+ *
+ * Unlike the other validators, this one works on the loaded test case, so the
+ * activities inherited through <code>basedOn</code> are included.
+ */
+public class ActivityDependenciesValidator {
+
+	public void validate(TestCase testCase) throws SpecificationException {
+		Map<String, Activity> activitiesById = new HashMap<String, Activity>();
+		Map<Activity, List<Activity>> prerequisites = new IdentityHashMap<Activity, List<Activity>>();
+
+		for (PartnerTrack track : testCase.getPartnerTracks()) {
+			Activity previous = null;
+			for (Activity activity : track.getActivities()) {
+				List<Activity> activityPrerequisites = new ArrayList<Activity>();
+				if (previous != null) {
+					activityPrerequisites.add(previous);
+				}
+				prerequisites.put(activity, activityPrerequisites);
+				previous = activity;
+
+				String id = activity.getId();
+				if (id != null && activitiesById.put(id, activity) != null) {
+					throw new SpecificationException("Duplicate activity id "
+							+ id + " in test case " + testCase.getRawName());
+				}
+			}
+		}
+
+		for (Map.Entry<Activity, List<Activity>> entry : prerequisites.entrySet()) {
+			for (String dependency : entry.getKey().getDependsOn()) {
+				Activity prerequisite = activitiesById.get(dependency);
+				if (prerequisite == null) {
+					throw new SpecificationException("Activity "
+							+ describe(entry.getKey())
+							+ " depends on the unknown activity " + dependency
+							+ " in test case " + testCase.getRawName());
+				}
+				entry.getValue().add(prerequisite);
+			}
+		}
+
+		Map<Activity, Boolean> visited = new IdentityHashMap<Activity, Boolean>();
+		for (Activity activity : prerequisites.keySet()) {
+			findCycle(activity, prerequisites, visited, new ArrayList<Activity>(), testCase);
+		}
+	}
+
+	/**
+	 * Depth-first search through the prerequisites. Activities are marked
+	 * with <code>false</code> while their prerequisites are being visited, and
+	 * with <code>true</code> once they are known not to be part of a cycle.
+	 */
+	private void findCycle(Activity activity,
+			Map<Activity, List<Activity>> prerequisites,
+			Map<Activity, Boolean> visited, List<Activity> path,
+			TestCase testCase) throws SpecificationException {
+		Boolean state = visited.get(activity);
+		if (Boolean.TRUE.equals(state)) {
+			return;
+		}
+		if (Boolean.FALSE.equals(state)) {
+			StringBuilder cycle = new StringBuilder();
+			for (Activity a : path.subList(path.indexOf(activity), path.size())) {
+				cycle.append(describe(a)).append(" -> ");
+			}
+			cycle.append(describe(activity));
+			throw new SpecificationException(
+					"The activity dependencies of test case "
+							+ testCase.getRawName() + " contain a cycle: "
+							+ cycle);
+		}
+
+		visited.put(activity, Boolean.FALSE);
+		path.add(activity);
+		for (Activity prerequisite : prerequisites.get(activity)) {
+			findCycle(prerequisite, prerequisites, visited, path, testCase);
+		}
+		path.remove(path.size() - 1);
+		visited.put(activity, Boolean.TRUE);
+	}
+
+	private String describe(Activity activity) {
+		return activity.getId() != null ? activity.getId() : activity.getName();
+	}
+}
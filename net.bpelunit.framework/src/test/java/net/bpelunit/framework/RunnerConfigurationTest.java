@@ -0,0 +1,68 @@
+package net.bpelunit.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.bpelunit.framework.control.util.BPELUnitConstants;
+import net.bpelunit.framework.exception.ConfigurationException;
+
+import org.junit.Test;
+
+public class RunnerConfigurationTest {
+
+	@Test
+	public void testDefaults() {
+		RunnerConfiguration configuration = new RunnerConfiguration();
+		assertEquals(BPELUnitConstants.TIMEOUT, configuration.getTimeout());
+		assertEquals(1, configuration.getParallelTestCases());
+		assertFalse(configuration.isHaltOnError());
+		assertFalse(configuration.isLazyTestCases());
+		assertEquals(BPELUnitRunner.PAYLOAD_RETENTION_ALL, configuration.getPayloadRetention());
+	}
+
+	@Test
+	public void testParsesOptions() throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(BPELUnitRunner.GLOBAL_TIMEOUT, "1234");
+		options.put(BPELUnitRunner.HALT_ON_ERROR, "TRUE");
+		options.put(BPELUnitRunner.PARALLEL_TEST_CASES, "4");
+		options.put(BPELUnitRunner.PAYLOAD_RETENTION, "Failures");
+
+		RunnerConfiguration configuration = new RunnerConfiguration(options);
+		assertEquals(1234, configuration.getTimeout());
+		assertTrue(configuration.isHaltOnError());
+		assertFalse(configuration.isHaltOnFailure());
+		assertEquals(4, configuration.getParallelTestCases());
+		assertEquals(BPELUnitRunner.PAYLOAD_RETENTION_FAILURES, configuration.getPayloadRetention());
+	}
+
+	@Test
+	public void testRunnersHaveTheirOwnConfiguration() throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(BPELUnitRunner.GLOBAL_TIMEOUT, "1000");
+		RunnerConfiguration first = new RunnerConfiguration(options);
+		options.put(BPELUnitRunner.GLOBAL_TIMEOUT, "2000");
+		RunnerConfiguration second = new RunnerConfiguration(options);
+
+		first.setHaltOnFailure(true);
+		assertEquals(1000, first.getTimeout());
+		assertEquals(2000, second.getTimeout());
+		assertFalse(second.isHaltOnFailure());
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testRejectsInvalidParallelTestCases() throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(BPELUnitRunner.PARALLEL_TEST_CASES, "0");
+		new RunnerConfiguration(options);
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testRejectsUnknownPayloadRetention() throws Exception {
+		new RunnerConfiguration().setPayloadRetention("some");
+	}
+}
@@ -0,0 +1,58 @@
+package net.bpelunit.framework.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bpelunit.framework.exception.ConfigurationException;
+
+import org.junit.Test;
+
+public class SuitePortPoolTest {
+
+	@Test
+	public void testParsesRanges() throws Exception {
+		assertEquals(11, SuitePortPool.parse("7777-7787").size());
+		assertEquals(11, SuitePortPool.parse(" 7777 - 7787 ").size());
+		assertEquals(1, SuitePortPool.parse("7777").size());
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testRejectsReversedRange() throws Exception {
+		SuitePortPool.parse("7787-7777");
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testRejectsMalformedRange() throws Exception {
+		SuitePortPool.parse("7777-");
+	}
+
+	@Test(timeout = 5000)
+	public void testWaitsForReleasedPort() throws Exception {
+		final SuitePortPool pool = new SuitePortPool(7777, 7778);
+		assertEquals(7777, pool.acquire());
+		assertEquals(7778, pool.acquire());
+
+		final AtomicInteger acquired = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					acquired.set(pool.acquire());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			}
+		}.start();
+
+		assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+		pool.release(7777);
+		done.await();
+		assertEquals(7777, acquired.get());
+	}
+}
@@ -0,0 +1,86 @@
+package net.bpelunit.framework.control.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WrappedContextTest {
+
+	private WrappedContext parent;
+
+	@Before
+	public void setUp() {
+		parent = new WrappedContext(new VelocityContext());
+		parent.putReadOnly("constant", "parent");
+		parent.put("variable", "parent");
+	}
+
+	@Test
+	public void testLayerSeesParentVariables() {
+		WrappedContext layer = parent.newLayer();
+		assertEquals("parent", layer.get("constant"));
+		assertEquals("parent", layer.get("variable"));
+		assertTrue(layer.containsKey("variable"));
+		assertEquals(2, layer.getKeys().length);
+	}
+
+	@Test
+	public void testChangesInLayerDoNotReachParent() {
+		WrappedContext layer = parent.newLayer();
+		layer.put("variable", "layer");
+		layer.put("other", "layer");
+		assertEquals("layer", layer.get("variable"));
+		assertEquals("parent", parent.get("variable"));
+		assertFalse(parent.containsKey("other"));
+
+		layer.remove("variable");
+		assertNull(layer.get("variable"));
+		assertFalse(layer.containsKey("variable"));
+		assertEquals("parent", parent.get("variable"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParentReadOnlyVariablesStayReadOnly() {
+		parent.newLayer().put("constant", "layer");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCollectionsAreCopiedOnRead() {
+		List<String> list = new ArrayList<String>();
+		list.add("a");
+		parent.put("list", list);
+
+		WrappedContext layer = parent.newLayer();
+		((List<String>) layer.get("list")).add("b");
+		assertEquals(2, ((List<String>) layer.get("list")).size());
+		assertEquals(1, list.size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	@SuppressWarnings("unchecked")
+	public void testReadOnlyCollectionsCannotBeChangedFromLayer() {
+		List<String> list = new ArrayList<String>();
+		list.add("a");
+		parent.putReadOnly("readOnlyList", list);
+
+		((List<String>) parent.newLayer().get("readOnlyList")).add("b");
+	}
+
+	@Test
+	public void testReadOnlyArraysAreCopiedOnRead() {
+		String[] array = new String[] { "a" };
+		parent.putReadOnly("readOnlyArray", array);
+
+		((String[]) parent.newLayer().get("readOnlyArray"))[0] = "b";
+		assertEquals("a", array[0]);
+	}
+}
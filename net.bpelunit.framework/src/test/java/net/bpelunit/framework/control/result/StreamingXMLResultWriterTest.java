@@ -0,0 +1,185 @@
+package net.bpelunit.framework.control.result;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.TestSuite;
+import net.bpelunit.framework.model.test.report.ArtefactStatus;
+import net.bpelunit.framework.xml.result.XMLPartnerTrack;
+import net.bpelunit.framework.xml.result.XMLTestCase;
+import net.bpelunit.framework.xml.result.XMLTestResult;
+import net.bpelunit.framework.xml.result.XMLTestResultDocument;
+import net.bpelunit.framework.xml.result.XMLTestResultsDocument;
+import net.bpelunit.test.end2end.End2EndTester;
+import net.bpelunit.test.util.TestTestRunner;
+
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.xmlbeans.XmlOptions;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the streaming writer produces valid results with the same
+ * contents as the {@link XMLResultProducer}.
+ */
+public class StreamingXMLResultWriterTest {
+
+	private File outputFile;
+
+	@AfterClass
+	public static void shutdown() {
+		MultiThreadedHttpConnectionManager.shutdownAll();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		outputFile = File.createTempFile("bpelunit-streaming-results", ".xml");
+	}
+
+	@After
+	public void tearDown() {
+		outputFile.delete();
+	}
+
+	@Test
+	public void testSendOnlyReceiveOnlyResults() throws Exception {
+		assertSameAsResultProducer(End2EndTester.getSendOnlyReceiveOnlyRunner());
+	}
+
+	@Test
+	public void testSendReceiveSyncResults() throws Exception {
+		assertSameAsResultProducer(End2EndTester.getSendReceiveSyncRunner());
+	}
+
+	@Test
+	public void testInvalidAssumptionResults() throws Exception {
+		assertSameAsResultProducer(new TestTestRunner("src/test/resources/result/InvalidAssumption/",
+				"WastePaperBasketTestSuite.bpts"));
+	}
+
+	@Test
+	public void testSeveralSuitesInOneDocument() throws Exception {
+		TestTestRunner[] runners = { End2EndTester.getSendOnlyReceiveOnlyRunner(),
+				End2EndTester.getSendReceiveSyncRunner() };
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+		try {
+			StreamingXMLResultWriter.startResults(out);
+			for (TestTestRunner runner : runners) {
+				StreamingXMLResultWriter writer = new StreamingXMLResultWriter();
+				runner.getTestSuite().addResultListener(writer);
+				runner.testRun();
+				writer.finishElement(runner.getTestSuite(), out);
+			}
+			StreamingXMLResultWriter.endResults(out);
+		} finally {
+			out.close();
+		}
+
+		XMLTestResultsDocument results = XMLTestResultsDocument.Factory.parse(outputFile);
+		List<Object> errors = new ArrayList<Object>();
+		XmlOptions options = new XmlOptions();
+		options.setErrorListener(errors);
+		assertTrue("Results should pass XML Schema validation: " + errors + "\n" + results,
+				results.validate(options));
+		assertEquals(2, results.getTestResults().getTestResultList().size());
+		assertEquals(runners[1].getTestSuite().getName(),
+				results.getTestResults().getTestResultList().get(1).getName());
+	}
+
+	@Test
+	public void testRunningTestCasesAreWritten() throws Exception {
+		TestSuite suite = new TestSuite("suite", new URL("http://localhost:7777/ws"), null);
+		TestCase ended = new TestCase(suite, "ended");
+		TestCase running = new TestCase(suite, "running");
+		StreamingXMLResultWriter writer = new StreamingXMLResultWriter(outputFile);
+		writer.testCaseStarted(ended);
+		writer.testCaseStarted(running);
+		writer.testCaseEnded(ended);
+		writer.finish(suite);
+
+		XMLTestResult result = XMLTestResultDocument.Factory.parse(outputFile).getTestResult();
+		assertEquals(2, result.getTestCaseList().size());
+		assertEquals(ended.getName(), result.getTestCaseList().get(0).getName());
+		assertEquals(running.getName(), result.getTestCaseList().get(1).getName());
+		assertEquals(running.getStatus().getCode().toString(), result.getTestCaseList().get(1).getResult());
+	}
+
+	@Test
+	public void testWriteErrorIsThrownByFinish() throws Exception {
+		TestSuite suite = new TestSuite("suite", new URL("http://localhost:7777/ws"), null);
+		TestCase broken = new TestCase(suite, "broken") {
+			@Override
+			public ArtefactStatus getStatus() {
+				throw new IllegalStateException("broken status");
+			}
+		};
+		StreamingXMLResultWriter writer = new StreamingXMLResultWriter(outputFile);
+		writer.testCaseStarted(broken);
+		// Must not throw into the dispatcher of the suite
+		writer.testCaseEnded(broken);
+
+		try {
+			writer.finish(suite);
+			fail("The results of the test case could not be written");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	private void assertSameAsResultProducer(TestTestRunner runner) throws Exception {
+		StreamingXMLResultWriter writer = new StreamingXMLResultWriter(outputFile);
+		runner.getTestSuite().addResultListener(writer);
+		runner.testRun();
+		writer.finish(runner.getTestSuite());
+
+		XMLTestResultDocument streamed = XMLTestResultDocument.Factory.parse(outputFile);
+		List<Object> errors = new ArrayList<Object>();
+		XmlOptions options = new XmlOptions();
+		options.setErrorListener(errors);
+		assertTrue("Results should pass XML Schema validation: " + errors + "\n" + streamed,
+				streamed.validate(options));
+
+		XMLTestResult expected = XMLResultProducer.getXMLResults(runner.getTestSuite()).getTestResult();
+		XMLTestResult actual = streamed.getTestResult();
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getResult(), actual.getResult());
+		assertEquals(expected.getTestCaseList().size(), actual.getTestCaseList().size());
+
+		for (XMLTestCase expectedTestCase : expected.getTestCaseList()) {
+			XMLTestCase actualTestCase = getTestCase(actual, expectedTestCase.getName());
+			assertEquals(expectedTestCase.getResult(), actualTestCase.getResult());
+			assertEquals(expectedTestCase.getStateList().size(), actualTestCase.getStateList().size());
+
+			List<XMLPartnerTrack> expectedTracks = expectedTestCase.getPartnerTrackList();
+			List<XMLPartnerTrack> actualTracks = actualTestCase.getPartnerTrackList();
+			assertEquals(expectedTracks.size(), actualTracks.size());
+			for (int i = 0; i < expectedTracks.size(); i++) {
+				assertEquals(expectedTracks.get(i).getName(), actualTracks.get(i).getName());
+				assertEquals(expectedTracks.get(i).getResult(), actualTracks.get(i).getResult());
+				assertEquals(expectedTracks.get(i).getActivityList().size(), actualTracks.get(i).getActivityList().size());
+			}
+		}
+	}
+
+	private XMLTestCase getTestCase(XMLTestResult result, String name) {
+		for (XMLTestCase testCase : result.getTestCaseList()) {
+			if (testCase.getName().equals(name)) {
+				return testCase;
+			}
+		}
+		throw new AssertionError("No results for test case " + name);
+	}
+}
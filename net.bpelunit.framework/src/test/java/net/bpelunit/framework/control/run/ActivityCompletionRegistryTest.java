@@ -0,0 +1,56 @@
+package net.bpelunit.framework.control.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ActivityCompletionRegistryTest {
+
+	private final ActivityCompletionRegistry registry = new ActivityCompletionRegistry(Arrays.asList("a", "b"));
+
+	@Test(timeout = 5000)
+	public void testWaitsForAllActivities() throws Exception {
+		new Thread() {
+			@Override
+			public void run() {
+				registry.markCompleted("b");
+				registry.markCompleted("a");
+			}
+		}.start();
+
+		assertTrue(registry.awaitCompletion(Arrays.asList("a", "b")));
+		assertEquals(Arrays.asList("b", "a"), registry.getCompletedActivities());
+	}
+
+	@Test
+	public void testNoDependencies() throws Exception {
+		assertTrue(registry.awaitCompletion(Collections.<String>emptyList()));
+	}
+
+	@Test(timeout = 5000)
+	public void testAbortReleasesWaiters() throws Exception {
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// abort anyway
+				}
+				registry.abort();
+			}
+		}.start();
+
+		assertFalse(registry.awaitCompletion(Arrays.asList("a")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownActivity() throws Exception {
+		registry.awaitCompletion(Arrays.asList("c"));
+	}
+}
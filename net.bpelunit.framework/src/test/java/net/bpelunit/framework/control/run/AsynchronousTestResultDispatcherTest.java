@@ -0,0 +1,142 @@
+package net.bpelunit.framework.control.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import net.bpelunit.framework.model.test.ITestResultListener;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.data.XMLData;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsynchronousTestResultDispatcherTest {
+
+	/**
+	 * Records the events it receives. The first event is held back until
+	 * the listener is released, so events pile up in the queue.
+	 */
+	private static class RecordingListener implements ITestResultListener {
+		private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch firstEventReceived = new CountDownLatch(1);
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		public void testCaseStarted(TestCase testCase) {
+			record("started " + testCase.getRawName());
+		}
+
+		public void testCaseEnded(TestCase testCase) {
+			record("ended " + testCase.getRawName());
+		}
+
+		public void progress(ITestArtefact testArtefact) {
+			record("progress " + testArtefact.getName());
+		}
+
+		private void record(String event) {
+			events.add(event);
+			firstEventReceived.countDown();
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final RecordingListener listener = new RecordingListener();
+
+	private AsynchronousTestResultDispatcher dispatcher;
+
+	@After
+	public void tearDown() {
+		listener.released.countDown();
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testDeliversInOrderAndMergesProgress() throws Exception {
+		dispatcher = createDispatcher(10, false);
+		TestCase testCase = new TestCase(null, "TC1");
+		XMLData a = new XMLData(null, "a", "");
+		XMLData b = new XMLData(null, "b", "");
+
+		dispatcher.testCaseStarted(testCase);
+		assertTrue(listener.firstEventReceived.await(5, TimeUnit.SECONDS));
+		dispatcher.progress(a);
+		dispatcher.progress(b);
+		dispatcher.progress(a);
+		dispatcher.progress(a);
+		dispatcher.testCaseEnded(testCase);
+		listener.released.countDown();
+		dispatcher.waitUntilDelivered();
+
+		assertEquals(Arrays.asList("started TC1", "progress a", "progress b", "ended TC1"), listener.events);
+		assertEquals(2, dispatcher.getMergedProgressEvents());
+
+		dispatcher.progress(a);
+		dispatcher.waitUntilDelivered();
+		assertEquals("progress a", listener.events.get(4));
+	}
+
+	@Test(timeout = 5000)
+	public void testDropsProgressWhenFull() throws Exception {
+		dispatcher = createDispatcher(2, true);
+		TestCase testCase = new TestCase(null, "TC1");
+
+		dispatcher.testCaseStarted(testCase);
+		assertTrue(listener.firstEventReceived.await(5, TimeUnit.SECONDS));
+		dispatcher.progress(new XMLData(null, "a", ""));
+		dispatcher.progress(new XMLData(null, "b", ""));
+		dispatcher.progress(new XMLData(null, "c", ""));
+		assertEquals(1, dispatcher.getDroppedProgressEvents());
+
+		// The end of the test case waits for room in the queue
+		Thread ender = new Thread() {
+			@Override
+			public void run() {
+				dispatcher.testCaseEnded(new TestCase(null, "TC1"));
+			}
+		};
+		ender.start();
+		listener.released.countDown();
+		ender.join();
+		dispatcher.shutdown();
+
+		assertEquals(Arrays.asList("started TC1", "progress a", "progress b", "ended TC1"), listener.events);
+	}
+
+	@Test(timeout = 5000)
+	public void testTasksRunAfterPreviousEvents() throws Exception {
+		dispatcher = createDispatcher(10, false);
+		final List<String> seenByTask = new ArrayList<String>();
+		listener.released.countDown();
+
+		dispatcher.testCaseEnded(new TestCase(null, "TC1"));
+		dispatcher.execute(new Runnable() {
+			public void run() {
+				seenByTask.addAll(listener.events);
+			}
+		});
+		dispatcher.shutdown();
+
+		assertEquals(Arrays.asList("ended TC1"), seenByTask);
+	}
+
+	private AsynchronousTestResultDispatcher createDispatcher(int capacity, boolean dropProgressWhenFull) {
+		List<ITestResultListener> listeners = new CopyOnWriteArrayList<ITestResultListener>();
+		listeners.add(listener);
+		return new AsynchronousTestResultDispatcher(listeners, capacity, dropProgressWhenFull);
+	}
+}
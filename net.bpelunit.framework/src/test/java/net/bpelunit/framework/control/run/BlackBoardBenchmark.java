@@ -0,0 +1,142 @@
+package net.bpelunit.framework.control.run;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Micro-benchmark for the round trip of a synchronous receive/send activity
+ * through the blackboards of the {@link TestCaseRunner}: the web service
+ * handler posts the incoming message, the partner track picks it up and posts
+ * the answer, the handler picks up the answer and confirms it was sent.
+ *
+ * Compares the {@link BlackBoard} against the previous polling implementation,
+ * which waited on a single monitor in slices of 150 ms. Run with
+ * <code>java net.bpelunit.framework.control.run.BlackBoardBenchmark [roundTrips] [tracks]</code>.
+ */
+public class BlackBoardBenchmark {
+
+	private static final int TIMEOUT = 10000;
+	private static final int POLLING_SLEEP_TIME = 150;
+
+	private interface Board<K, V> {
+		void put(K key, V value) throws InterruptedException;
+		V get(K key) throws InterruptedException, TimeoutException;
+	}
+
+	private static class Key implements BlackBoardKey {
+		@Override
+		public boolean canStillProvideValue(BlackBoard<?, ?> blackboard) {
+			return true;
+		}
+	}
+
+	private static class SignallingBoard<K extends BlackBoardKey, V> implements Board<K, V> {
+		private final BlackBoard<K, V> board = new BlackBoard<K, V>(TIMEOUT);
+
+		public void put(K key, V value) throws InterruptedException {
+			board.putObject(key, value);
+		}
+
+		public V get(K key) throws InterruptedException, TimeoutException {
+			return board.getObject(key);
+		}
+	}
+
+	/**
+	 * Copy of the blackboard algorithm used before the signalling version.
+	 */
+	private static class PollingBoard<K, V> implements Board<K, V> {
+		private final Map<K, V> map = new HashMap<K, V>();
+
+		public synchronized void put(K key, V value) throws InterruptedException {
+			while (map.containsKey(key)) {
+				wait(POLLING_SLEEP_TIME);
+			}
+			map.put(key, value);
+			notifyAll();
+		}
+
+		public synchronized V get(K key) throws InterruptedException, TimeoutException {
+			int timeout = 0;
+			while (!map.containsKey(key) && timeout < TIMEOUT) {
+				timeout += POLLING_SLEEP_TIME;
+				wait(POLLING_SLEEP_TIME);
+			}
+			if (!map.containsKey(key)) {
+				throw new TimeoutException();
+			}
+			return map.remove(key);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int roundTrips = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int tracks = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+		// Warm up
+		measure(new SignallingBoard<Key, Object>(), new SignallingBoard<Key, Object>(), new SignallingBoard<Key, Object>(), tracks, roundTrips);
+		measure(new PollingBoard<Key, Object>(), new PollingBoard<Key, Object>(), new PollingBoard<Key, Object>(), tracks, roundTrips);
+
+		final double polling = measure(new PollingBoard<Key, Object>(), new PollingBoard<Key, Object>(), new PollingBoard<Key, Object>(), tracks, roundTrips);
+		final double signalling = measure(new SignallingBoard<Key, Object>(), new SignallingBoard<Key, Object>(), new SignallingBoard<Key, Object>(), tracks, roundTrips);
+
+		System.out.println(String.format("%d partner tracks, %d round trips each", tracks, roundTrips));
+		System.out.println(String.format("Polling blackboard:    %.3f ms per round trip", polling));
+		System.out.println(String.format("Signalling blackboard: %.3f ms per round trip", signalling));
+	}
+
+	/**
+	 * Runs the given number of partner tracks concurrently against the same
+	 * blackboards and returns the average round trip time in milliseconds.
+	 */
+	private static double measure(final Board<Key, Object> incoming, final Board<Key, Object> outgoing, final Board<Key, Object> sent, final int tracks, final int roundTrips) throws Exception {
+		final Thread[] threads = new Thread[2 * tracks];
+		for (int t = 0; t < tracks; t++) {
+			final Key track = new Key();
+			final Key[] answers = new Key[roundTrips];
+			for (int i = 0; i < roundTrips; i++) {
+				answers[i] = new Key();
+			}
+
+			threads[2 * t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < roundTrips; i++) {
+							incoming.get(track);
+							outgoing.put(track, answers[i]);
+							sent.get(answers[i]);
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			threads[2 * t + 1] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < roundTrips; i++) {
+							incoming.put(track, "request");
+							final Key answer = (Key) outgoing.get(track);
+							sent.put(answer, Boolean.TRUE);
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			};
+		}
+
+		final long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		return (System.nanoTime() - start) / 1e6 / roundTrips;
+	}
+}
@@ -0,0 +1,103 @@
+package net.bpelunit.framework.control.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class BlackBoardTest {
+
+	private static class Key implements BlackBoardKey {
+		private volatile boolean canProvide = true;
+
+		@Override
+		public boolean canStillProvideValue(BlackBoard<?, ?> blackboard) {
+			return canProvide;
+		}
+	}
+
+	@Test
+	public void testPutThenGet() throws Exception {
+		BlackBoard<Key, String> board = new BlackBoard<Key, String>(1000);
+		Key key = new Key();
+		board.putObject(key, "a");
+		assertEquals("a", board.getObject(key));
+	}
+
+	@Test(timeout = 5000)
+	public void testGetWaitsForPut() throws Exception {
+		final BlackBoard<Key, String> board = new BlackBoard<Key, String>(10000);
+		final Key key = new Key();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					board.putObject(key, "b");
+				} catch (InterruptedException e) {
+					// test will time out
+				}
+			}
+		}.start();
+		assertEquals("b", board.getObject(key));
+	}
+
+	@Test(timeout = 5000)
+	public void testPutWaitsForGet() throws Exception {
+		final BlackBoard<Key, String> board = new BlackBoard<Key, String>(10000);
+		final Key key = new Key();
+		board.putObject(key, "first");
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					board.putObject(key, "second");
+				} catch (InterruptedException e) {
+					// test will time out
+				}
+			}
+		}.start();
+		assertEquals("first", board.getObject(key));
+		assertEquals("second", board.getObject(key));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		BlackBoard<Key, String> board = new BlackBoard<Key, String>(100);
+		long start = System.currentTimeMillis();
+		try {
+			board.getObject(new Key());
+			fail("A TimeoutException was expected");
+		} catch (TimeoutException e) {
+			assertTrue(System.currentTimeMillis() - start >= 100);
+		}
+	}
+
+	@Test(timeout = 5000)
+	public void testKeyCannotProvideValueAnymore() throws Exception {
+		final BlackBoard<Key, String> board = new BlackBoard<Key, String>(60000);
+		final Key key = new Key();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// continue anyway
+				}
+				key.canProvide = false;
+				board.wakeUpWaiters();
+			}
+		}.start();
+
+		try {
+			board.getObject(key);
+			fail("A TimeoutException was expected");
+		} catch (TimeoutException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package net.bpelunit.framework.control.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.bpelunit.framework.model.AbstractPartner;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledPartnerTrackExecutorTest {
+
+	private static class BlockingTrack extends PartnerTrack {
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release;
+		private final CountDownLatch finished = new CountDownLatch(1);
+		private volatile boolean interrupted;
+
+		public BlockingTrack(CountDownLatch release) {
+			super(new TestCase(null, "tc"), new AbstractPartner("partner", "http://localhost:7777/ws/"));
+			this.release = release;
+		}
+
+		@Override
+		public void run() {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} finally {
+				finished.countDown();
+			}
+		}
+	}
+
+	private PooledPartnerTrackExecutor executor;
+
+	@Before
+	public void setUp() {
+		executor = new PooledPartnerTrackExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test(timeout = 5000)
+	public void testThreadsAreReused() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final BlockingTrack first = new BlockingTrack(release);
+		final BlockingTrack second = new BlockingTrack(release);
+		executor.execute(first);
+		executor.execute(second);
+		first.started.await();
+		second.started.await();
+		release.countDown();
+		first.finished.await();
+		second.finished.await();
+		assertEquals(2, executor.getPeakConcurrency());
+
+		// Wait until the threads are back in the pool
+		Thread.sleep(100);
+		final BlockingTrack third = new BlockingTrack(release);
+		executor.execute(third);
+		third.finished.await();
+		assertEquals(2, executor.getThreadsCreated());
+		assertEquals(2, executor.getPeakConcurrency());
+	}
+
+	@Test(timeout = 5000)
+	public void testCancelInterruptsTrack() throws Exception {
+		final BlockingTrack track = new BlockingTrack(new CountDownLatch(1));
+		final PartnerTrackExecution execution = executor.execute(track);
+		track.started.await();
+		execution.cancel();
+		assertTrue(track.finished.await(1, TimeUnit.SECONDS));
+		assertTrue(track.interrupted);
+	}
+}
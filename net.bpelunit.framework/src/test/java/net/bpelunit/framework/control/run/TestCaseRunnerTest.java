@@ -0,0 +1,37 @@
+package net.bpelunit.framework.control.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import net.bpelunit.framework.model.AbstractPartner;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+
+import org.junit.Test;
+
+public class TestCaseRunnerTest {
+
+	private static final String BASE_URL = "http://localhost:7777/ws/";
+
+	@Test
+	public void testPartnerURLWithoutNamespace() {
+		TestCase testCase = new TestCase(null, "tc");
+		PartnerTrack track = new PartnerTrack(testCase, new AbstractPartner("client", BASE_URL));
+		testCase.addPartnerTrack(track);
+
+		TestCaseRunner runner = new TestCaseRunner(null, testCase);
+		assertNull(runner.getNamespace());
+		assertEquals("http://localhost:7777/ws/client", runner.getPartnerURL(track));
+	}
+
+	@Test
+	public void testPartnerURLWithNamespace() {
+		TestCase testCase = new TestCase(null, "tc");
+		PartnerTrack track = new PartnerTrack(testCase, new AbstractPartner("client", BASE_URL));
+		testCase.addPartnerTrack(track);
+
+		TestCaseRunner runner = new TestCaseRunner(null, testCase, "tc3");
+		assertEquals("tc3", runner.getNamespace());
+		assertEquals("http://localhost:7777/ws/tc3/client", runner.getPartnerURL(track));
+	}
+}
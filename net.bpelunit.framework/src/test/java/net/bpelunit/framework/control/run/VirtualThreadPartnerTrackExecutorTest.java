@@ -0,0 +1,61 @@
+package net.bpelunit.framework.control.run;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.RunnerConfiguration;
+import net.bpelunit.framework.model.AbstractPartner;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+
+import org.junit.Test;
+
+public class VirtualThreadPartnerTrackExecutorTest {
+
+	@Test(timeout = 5000)
+	public void testRunsTracksIfSupported() throws Exception {
+		final VirtualThreadPartnerTrackExecutor executor = VirtualThreadPartnerTrackExecutor.create();
+		assumeNotNull(executor);
+
+		final CountDownLatch finished = new CountDownLatch(2);
+		try {
+			executor.execute(new CountingTrack(finished));
+			executor.execute(new CountingTrack(finished));
+			assertTrue(finished.await(1, TimeUnit.SECONDS));
+			assertEquals(2, executor.getThreadsCreated());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConfigurationAlwaysProvidesAnExecutor() throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(BPELUnitRunner.PARTNER_TRACK_EXECUTOR, BPELUnitRunner.PARTNER_TRACK_EXECUTOR_VIRTUAL);
+		IPartnerTrackExecutor executor = new RunnerConfiguration(options).createPartnerTrackExecutor();
+		assertNotNull(executor);
+		executor.shutdown();
+	}
+
+	private static class CountingTrack extends PartnerTrack {
+		private final CountDownLatch finished;
+
+		public CountingTrack(CountDownLatch finished) {
+			super(new TestCase(null, "tc"), new AbstractPartner("partner", "http://localhost:7777/ws/"));
+			this.finished = finished;
+		}
+
+		@Override
+		public void run() {
+			finished.countDown();
+		}
+	}
+}
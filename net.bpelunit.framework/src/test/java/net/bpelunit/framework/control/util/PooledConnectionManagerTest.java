@@ -0,0 +1,90 @@
+package net.bpelunit.framework.control.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledConnectionManagerTest {
+
+	private HttpServer server;
+
+	private PooledConnectionManager manager;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = "ok".getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		if (manager != null) {
+			manager.shutdown();
+		}
+		server.stop(0);
+	}
+
+	@Test(timeout = 10000)
+	public void testReusesConnections() throws Exception {
+		manager = new PooledConnectionManager(2, 60000);
+		final HttpClient client = new HttpClient(manager);
+		final String url = "http://localhost:" + server.getAddress().getPort() + "/";
+
+		for (int i = 0; i < 3; i++) {
+			final GetMethod get = new GetMethod(url);
+			try {
+				assertEquals(200, client.executeMethod(get));
+				get.getResponseBody();
+			} finally {
+				get.releaseConnection();
+			}
+		}
+
+		assertEquals(1, manager.getOpenedConnections());
+		assertEquals(2, manager.getReusedConnections());
+	}
+
+	@Test(timeout = 10000)
+	public void testLimitsConnectionsPerHost() throws Exception {
+		manager = new PooledConnectionManager(1, 60000);
+		final HostConfiguration host = new HostConfiguration();
+		host.setHost("localhost", server.getAddress().getPort());
+
+		final HttpConnection first = manager.getConnectionWithTimeout(host, 100);
+		try {
+			manager.getConnectionWithTimeout(host, 100);
+			fail("A second connection to the same host should not be handed out");
+		} catch (ConnectionPoolTimeoutException e) {
+			// expected
+		}
+
+		first.releaseConnection();
+		assertNotNull(manager.getConnectionWithTimeout(host, 100));
+	}
+}
@@ -0,0 +1,36 @@
+package net.bpelunit.framework.control.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import net.bpelunit.framework.exception.SpecificationException;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Test;
+
+public class VelocityTemplateTest {
+
+	@Test
+	public void testMergesWithEachContext() throws Exception {
+		VelocityTemplate template = VelocityTemplate.compile("test", "<a>$value</a>");
+
+		VelocityContext first = new VelocityContext();
+		first.put("value", "1");
+		VelocityContext second = new VelocityContext();
+		second.put("value", "2");
+
+		assertEquals("<a>1</a>", template.mergeToString(first));
+		assertEquals("<a>2</a>", template.mergeToString(second));
+		assertEquals("<a>$value</a>", template.getSource());
+	}
+
+	@Test
+	public void testNoSourceMeansNoTemplate() throws Exception {
+		assertNull(VelocityTemplate.compile("test", null));
+	}
+
+	@Test(expected = SpecificationException.class)
+	public void testRejectsMalformedTemplate() throws Exception {
+		VelocityTemplate.compile("test", "#if ($value) <a/>");
+	}
+}
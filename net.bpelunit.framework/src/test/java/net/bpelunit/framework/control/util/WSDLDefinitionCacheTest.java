@@ -0,0 +1,105 @@
+package net.bpelunit.framework.control.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import javax.wsdl.Definition;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WSDLDefinitionCacheTest {
+
+	private static final String SCHEMA = "<xsd:schema xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+			+ " targetNamespace=\"http://www.example.org/types/\">"
+			+ "<xsd:element name=\"value\" type=\"xsd:string\"/>"
+			+ "</xsd:schema>";
+
+	private File directory;
+
+	private WSDLDefinitionCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("bpelunit-wsdl-cache", "");
+		directory.delete();
+		directory.mkdirs();
+		cache = new WSDLDefinitionCache(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void testReusesUnchangedDefinition() throws Exception {
+		File wsdl = writeWSDL("A.wsdl", "types.xsd");
+		writeFile("types.xsd", SCHEMA);
+
+		Definition first = cache.getDefinition(wsdl);
+		Definition second = cache.getDefinition(new File(directory, "./A.wsdl"));
+
+		assertSame(first, second);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testRereadsDefinitionWhenImportedSchemaChanges() throws Exception {
+		File wsdl = writeWSDL("A.wsdl", "types.xsd");
+		writeFile("types.xsd", SCHEMA);
+
+		Definition first = cache.getDefinition(wsdl);
+		writeFile("types.xsd", SCHEMA + "\n<!-- changed -->");
+		Definition second = cache.getDefinition(wsdl);
+
+		assertNotSame(first, second);
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsedDefinition() throws Exception {
+		File a = writeWSDL("A.wsdl", "types.xsd");
+		File b = writeWSDL("B.wsdl", "types.xsd");
+		writeFile("types.xsd", SCHEMA);
+
+		cache.getDefinition(a);
+		cache.getDefinition(b);
+		cache.getDefinition(a);
+
+		assertEquals(0, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testBypassesCacheIfAsked() throws Exception {
+		File wsdl = writeWSDL("A.wsdl", "types.xsd");
+		writeFile("types.xsd", SCHEMA);
+
+		Definition first = cache.getDefinition(wsdl);
+		assertNotSame(first, cache.getDefinition(wsdl, false, false));
+		assertSame(first, cache.getDefinition(wsdl));
+	}
+
+	private File writeWSDL(String name, String schemaLocation) throws Exception {
+		return writeFile(name, "<wsdl:definitions xmlns:wsdl=\"http://schemas.xmlsoap.org/wsdl/\""
+				+ " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+				+ " targetNamespace=\"http://www.example.org/" + name + "/\">"
+				+ "<wsdl:types><xsd:schema targetNamespace=\"http://www.example.org/wrapper/\">"
+				+ "<xsd:import namespace=\"http://www.example.org/types/\" schemaLocation=\"" + schemaLocation + "\"/>"
+				+ "</xsd:schema></wsdl:types>"
+				+ "</wsdl:definitions>");
+	}
+
+	private File writeFile(String name, String contents) throws Exception {
+		File file = new File(directory, name);
+		FileUtils.writeStringToFile(file, contents, "UTF-8");
+		return file;
+	}
+}
@@ -0,0 +1,101 @@
+package net.bpelunit.framework.control.util;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathVariableResolver;
+
+import net.bpelunit.framework.control.soap.NamespaceContextImpl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class XPathExpressionCacheTest {
+
+	private Document document;
+
+	@Before
+	public void setUp() throws Exception {
+		document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+	}
+
+	@Test
+	public void testEqualContextsShareCompiledExpression() throws Exception {
+		XPathExpressionCache cache = new XPathExpressionCache(10);
+		cache.evaluate("1 + 1", createContext(), null, document);
+		cache.evaluate("1 + 1", createContext(), null, document);
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testVariablesAreResolvedPerEvaluation() throws Exception {
+		XPathExpressionCache cache = new XPathExpressionCache(10);
+		assertEquals(2.0, cache.evaluate("$x + 1", null, resolverFor(1), document, XPathConstants.NUMBER));
+		assertEquals(3.0, cache.evaluate("$x + 1", null, resolverFor(2), document, XPathConstants.NUMBER));
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testChangedContextIsNotShared() throws Exception {
+		XPathExpressionCache cache = new XPathExpressionCache(10);
+		NamespaceContextImpl context = createContext();
+		cache.evaluate("1 + 1", context, null, document);
+		context.setNamespace("other", "http://example.com/other");
+		cache.evaluate("1 + 1", context, null, document);
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testNestedEvaluationRestoresResolver() throws Exception {
+		final XPathExpressionCache cache = new XPathExpressionCache(10);
+		XPathVariableResolver outer = new XPathVariableResolver() {
+			public Object resolveVariable(QName variableName) {
+				if ("a".equals(variableName.getLocalPart())) {
+					try {
+						return cache.evaluate("$b * 10", null, resolverFor(5), document, XPathConstants.NUMBER);
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return 1;
+			}
+		};
+		assertEquals(51.0, cache.evaluate("$a + $b", null, outer, document, XPathConstants.NUMBER));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		XPathExpressionCache cache = new XPathExpressionCache(2);
+		cache.evaluate("1", null, null, document);
+		cache.evaluate("2", null, null, document);
+		cache.evaluate("1", null, null, document);
+		cache.evaluate("3", null, null, document);
+		assertEquals(2, cache.size());
+
+		// "2" was evicted, "1" was not
+		cache.evaluate("1", null, null, document);
+		assertEquals(2, cache.getHits());
+		cache.evaluate("2", null, null, document);
+		assertEquals(4, cache.getMisses());
+	}
+
+	private NamespaceContextImpl createContext() {
+		NamespaceContextImpl context = new NamespaceContextImpl();
+		context.setNamespace("tns", "http://example.com/tns");
+		return context;
+	}
+
+	private XPathVariableResolver resolverFor(final int value) {
+		return new XPathVariableResolver() {
+			public Object resolveVariable(QName variableName) {
+				return value;
+			}
+		};
+	}
+}
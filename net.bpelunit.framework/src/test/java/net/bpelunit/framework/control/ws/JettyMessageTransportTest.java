@@ -0,0 +1,160 @@
+package net.bpelunit.framework.control.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import net.bpelunit.framework.control.util.BPELUnitUtil;
+import net.bpelunit.framework.exception.SynchronousSendException;
+import net.bpelunit.framework.model.test.wire.IncomingMessage;
+import net.bpelunit.framework.model.test.wire.OutgoingMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class JettyMessageTransportTest {
+
+	private static final String ANSWER = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<soapenv:Body><t:value xmlns:t=\"http://www.example.org/test\">answer</t:value>"
+			+ "</soapenv:Body></soapenv:Envelope>";
+
+	private HttpServer server;
+
+	private CountDownLatch release;
+
+	private JettyMessageTransport transport;
+
+	@Before
+	public void setUp() throws Exception {
+		release = new CountDownLatch(0);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				final byte[] body = ANSWER.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+
+		transport = new JettyMessageTransport(2, 60000, 5000);
+		transport.start();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		transport.stop();
+		server.stop(0);
+	}
+
+	@Test(timeout = 10000)
+	public void testReturnsAnswer() throws Exception {
+		IncomingMessage answer = transport.send(createMessage(getURL())).get();
+
+		assertEquals(200, answer.getReturnCode());
+		assertTrue(answer.getMessageAsString().contains("answer"));
+	}
+
+	@Test(timeout = 10000)
+	public void testSerializationErrorsAreReported() throws Exception {
+		OutgoingMessage message = new OutgoingMessage() {
+			@Override
+			public byte[] getMessageAsBytes() throws SOAPException, IOException {
+				throw new IOException("broken");
+			}
+		};
+		message.setTargetURL(getURL());
+
+		try {
+			transport.send(message);
+			fail("The message cannot be serialized and should not be sent");
+		} catch (SynchronousSendException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelWhileWaiting() throws Exception {
+		release = new CountDownLatch(1);
+		Future<IncomingMessage> answer = transport.send(createMessage(getURL()));
+
+		assertTrue(answer.cancel(true));
+		assertTrue(answer.isCancelled());
+		assertTrue(answer.isDone());
+		assertFalse(answer.cancel(true));
+		try {
+			answer.get();
+			fail("A cancelled answer should not be returned");
+		} catch (CancellationException e) {
+			// expected
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testConnectionFailure() throws Exception {
+		Future<IncomingMessage> answer = transport.send(createMessage("http://localhost:" + getClosedPort() + "/"));
+
+		try {
+			answer.get();
+			fail("Nobody listens on the port, so there should be no answer");
+		} catch (ExecutionException e) {
+			// expected
+		}
+		assertFalse(answer.isCancelled());
+		assertFalse(answer.cancel(true));
+	}
+
+	private String getURL() {
+		return "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	private OutgoingMessage createMessage(String url) throws Exception {
+		SOAPMessage body = BPELUnitUtil.getMessageFactory().createMessage();
+		body.getSOAPBody().addChildElement("value", "t", "http://www.example.org/test")
+				.addTextNode("request");
+		body.saveChanges();
+
+		OutgoingMessage message = new OutgoingMessage();
+		message.setTargetURL(url);
+		message.setSOAPAction("");
+		message.setBody(body);
+		return message;
+	}
+
+	private static int getClosedPort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package net.bpelunit.framework.control.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.soap.SOAPMessage;
+
+import net.bpelunit.framework.control.run.TestCaseRunner;
+import net.bpelunit.framework.control.util.BPELUnitUtil;
+import net.bpelunit.framework.model.AbstractPartner;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.activity.ReceiveAsync;
+import net.bpelunit.framework.model.test.wire.IncomingMessage;
+import net.bpelunit.framework.model.test.wire.OutgoingMessage;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebServiceHandlerTest {
+
+	private static final int PORT = 7790;
+
+	private static final String BASE_URL = "http://localhost:" + PORT + "/ws/";
+
+	private LocalHTTPServer server;
+
+	private ExecutorService executor;
+
+	private PartnerTrack firstTrack;
+
+	private PartnerTrack secondTrack;
+
+	private TestCaseRunner firstRunner;
+
+	private TestCaseRunner secondRunner;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LocalHTTPServer(PORT, "/ws/");
+		server.startServer();
+		executor = Executors.newCachedThreadPool();
+
+		TestCase firstCase = createTestCase("first");
+		TestCase secondCase = createTestCase("second");
+		firstTrack = firstCase.getPartnerTracks().get(0);
+		secondTrack = secondCase.getPartnerTracks().get(0);
+		firstRunner = new TestCaseRunner(server, firstCase, "tc1");
+		secondRunner = new TestCaseRunner(server, secondCase, "tc2");
+		server.startTest(firstRunner);
+		server.startTest(secondRunner);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stopTest(firstRunner);
+		server.stopTest(secondRunner);
+		executor.shutdownNow();
+		server.stopServer();
+	}
+
+	@Test(timeout = 30000)
+	public void testRequestsReachTheirOwnTestCase() throws Exception {
+		Future<PostMethod> first = post("tc1/A", "first");
+		Future<PostMethod> second = post("tc2/A", "second");
+
+		// Answer the second test case first, so the order of the requests
+		// does not matter
+		answer(secondRunner, secondTrack, "second", "fromSecond");
+		answer(firstRunner, firstTrack, "first", "fromFirst");
+
+		assertEquals(200, first.get().getStatusCode());
+		assertTrue(first.get().getResponseBodyAsString().contains("fromFirst"));
+		assertEquals(200, second.get().getStatusCode());
+		assertTrue(second.get().getResponseBodyAsString().contains("fromSecond"));
+	}
+
+	@Test(timeout = 30000)
+	public void testAmbiguousRequestIsRejectedWithFault() throws Exception {
+		PostMethod response = post("A", "unknown").get();
+
+		assertEquals(500, response.getStatusCode());
+		assertTrue(response.getResponseBodyAsString().contains("Fault"));
+	}
+
+	private TestCase createTestCase(String name) {
+		TestCase testCase = new TestCase(null, name);
+		PartnerTrack track = new PartnerTrack(testCase, new AbstractPartner("A", BASE_URL));
+		track.addActivity(new ReceiveAsync(track));
+		testCase.addPartnerTrack(track);
+		return testCase;
+	}
+
+	private void answer(TestCaseRunner runner, PartnerTrack track, String expected, String reply)
+			throws Exception {
+		IncomingMessage request = runner.receiveMessage(track);
+		assertTrue(request.getMessageAsString().contains(expected));
+
+		OutgoingMessage answer = new OutgoingMessage();
+		answer.setCode(200);
+		answer.setBody(createMessage(reply));
+		runner.sendBackMessage(track, answer);
+	}
+
+	private SOAPMessage createMessage(String value) throws Exception {
+		SOAPMessage message = BPELUnitUtil.getMessageFactory().createMessage();
+		message.getSOAPBody().addChildElement("value", "t", "http://www.example.org/test")
+				.addTextNode(value);
+		message.saveChanges();
+		return message;
+	}
+
+	private Future<PostMethod> post(final String path, final String value) {
+		return executor.submit(new Callable<PostMethod>() {
+			public PostMethod call() throws Exception {
+				PostMethod method = new PostMethod(BASE_URL + path);
+				method.setRequestEntity(new StringRequestEntity(
+						"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+								+ "<soapenv:Body><t:value xmlns:t=\"http://www.example.org/test\">"
+								+ value + "</t:value></soapenv:Body></soapenv:Envelope>",
+						"text/xml", "UTF-8"));
+				new HttpClient().executeMethod(method);
+				// Read the body before the connection is released
+				method.getResponseBody();
+				return method;
+			}
+		});
+	}
+}
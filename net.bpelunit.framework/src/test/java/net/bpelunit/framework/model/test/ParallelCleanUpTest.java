@@ -0,0 +1,111 @@
+package net.bpelunit.framework.model.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.RunnerConfiguration;
+import net.bpelunit.framework.control.deploy.simple.TestModeDeployer;
+import net.bpelunit.framework.model.AbstractPartner;
+import net.bpelunit.framework.model.ProcessUnderTest;
+import net.bpelunit.framework.model.test.activity.Wait;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+import org.junit.Test;
+
+/**
+ * Tests that test cases which run in parallel are only cleaned up after once
+ * no other test case is running, as deployers may clean up the whole engine.
+ */
+public class ParallelCleanUpTest {
+
+	private static final String BASE_URL = "http://localhost:7791/ws";
+
+	/**
+	 * Counts the test cases which are running.
+	 */
+	private static class RunningCounter implements ITestResultListener {
+		private final AtomicInteger running = new AtomicInteger();
+
+		public void testCaseStarted(TestCase testCase) {
+			running.incrementAndGet();
+		}
+
+		public void testCaseEnded(TestCase testCase) {
+			running.decrementAndGet();
+		}
+
+		public void progress(ITestArtefact testArtefact) {
+		}
+	}
+
+	/**
+	 * Deployer whose cleanup would terminate all process instances, which
+	 * records how many test cases were running during each cleanup.
+	 */
+	private static class GlobalCleanUpDeployer extends TestModeDeployer {
+		private final RunningCounter counter;
+		private final List<Integer> runningDuringCleanUp = new ArrayList<Integer>();
+
+		public GlobalCleanUpDeployer(RunningCounter counter) {
+			this.counter = counter;
+		}
+
+		@Override
+		public synchronized void cleanUpAfterTestCase() {
+			runningDuringCleanUp.add(counter.running.get());
+		}
+
+		public synchronized List<Integer> getRunningDuringCleanUp() {
+			return new ArrayList<Integer>(runningDuringCleanUp);
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testGlobalCleanUpWaitsForRunningTestCases() throws Exception {
+		ProcessUnderTest put = new ProcessUnderTest("put", ".", null, null, BASE_URL);
+		TestSuite suite = new TestSuite("suite", new URL(BASE_URL), put);
+		RunningCounter counter = new RunningCounter();
+		GlobalCleanUpDeployer deployer = new GlobalCleanUpDeployer(counter);
+		put.setDeployer(deployer);
+
+		Map<String, String> options = new HashMap<String, String>();
+		options.put(BPELUnitRunner.PARALLEL_TEST_CASES, "3");
+		suite.setConfiguration(new RunnerConfiguration(options));
+		suite.addResultListener(counter);
+		for (int i = 0; i < 3; i++) {
+			suite.addTestCase(createWaitingTestCase(suite, "tc" + i, 500 + 200 * i));
+		}
+
+		try {
+			suite.run();
+		} finally {
+			suite.shutDown();
+		}
+
+		assertTrue(suite.getStatus().isPassed());
+		List<Integer> runningDuringCleanUp = deployer.getRunningDuringCleanUp();
+		assertFalse(runningDuringCleanUp.isEmpty());
+		for (Integer running : runningDuringCleanUp) {
+			assertEquals(0, running.intValue());
+		}
+	}
+
+	private TestCase createWaitingTestCase(TestSuite suite, String name, long duration) {
+		TestCase testCase = new TestCase(suite, name);
+		PartnerTrack track = new PartnerTrack(testCase, new AbstractPartner("client", BASE_URL));
+		Wait wait = new Wait(track);
+		wait.setWaitDuration(duration);
+		track.addActivity(wait);
+		testCase.addPartnerTrack(track);
+		return testCase;
+	}
+}
@@ -0,0 +1,138 @@
+package net.bpelunit.framework.model.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bpelunit.framework.BPELUnitRunner;
+import net.bpelunit.framework.exception.ConfigurationException;
+import net.bpelunit.framework.model.test.data.SendDataSpecification;
+import net.bpelunit.framework.model.test.data.XMLData;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+import net.bpelunit.test.end2end.End2EndTester;
+import net.bpelunit.test.util.TestTestRunner;
+
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Tests that the messages of the test cases are released once they have
+ * been reported, as selected by the PAYLOAD_RETENTION option.
+ */
+public class PayloadRetentionTest {
+
+	/**
+	 * Collects the XML data of the test cases as they are reported.
+	 */
+	private static class XMLDataRecorder implements ITestResultListener {
+		private final List<String> reported = new ArrayList<String>();
+
+		public void testCaseStarted(TestCase testCase) {
+		}
+
+		public void testCaseEnded(TestCase testCase) {
+			reported.addAll(getXMLData(testCase));
+		}
+
+		public void progress(ITestArtefact testArtefact) {
+		}
+	}
+
+	@AfterClass
+	public static void shutdown() {
+		MultiThreadedHttpConnectionManager.shutdownAll();
+	}
+
+	@Test
+	public void testKeepAll() throws Exception {
+		TestTestRunner runner = End2EndTester.getSendReceiveSyncRunner();
+		XMLDataRecorder recorder = run(runner);
+
+		assertEquals(recorder.reported, getXMLData(runner.getTestSuite()));
+		assertNoneReleased(recorder.reported);
+	}
+
+	@Test
+	public void testKeepFailuresDropsPassedTestCases() throws Exception {
+		TestTestRunner runner = End2EndTester.getSendReceiveSyncRunner();
+		runner.setPayloadRetention(BPELUnitRunner.PAYLOAD_RETENTION_FAILURES);
+		XMLDataRecorder recorder = run(runner);
+
+		assertEquals(0, runner.getProblems());
+		assertNoneReleased(recorder.reported);
+		assertAllDropped(getXMLData(runner.getTestSuite()));
+	}
+
+	@Test
+	public void testKeepSummaries() throws Exception {
+		TestTestRunner runner = End2EndTester.getSendReceiveSyncRunner();
+		runner.setPayloadRetention(BPELUnitRunner.PAYLOAD_RETENTION_SUMMARIES);
+		XMLDataRecorder recorder = run(runner);
+
+		assertNoneReleased(recorder.reported);
+		assertAllDropped(getXMLData(runner.getTestSuite()));
+	}
+
+	@Test
+	public void testSerializedPayloadsAreReportedAsBefore() throws Exception {
+		TestTestRunner runner = End2EndTester.getSendReceiveSyncRunner();
+		XMLDataRecorder recorder = run(runner);
+
+		for (ITestArtefact testCase : runner.getTestSuite().getChildren()) {
+			((TestCase) testCase).releasePayloads(true);
+		}
+		assertEquals(recorder.reported, getXMLData(runner.getTestSuite()));
+
+		for (ITestArtefact testCase : runner.getTestSuite().getChildren()) {
+			((TestCase) testCase).releasePayloads(false);
+		}
+		assertAllDropped(getXMLData(runner.getTestSuite()));
+	}
+
+	@Test(expected = ConfigurationException.class)
+	public void testUnknownPolicy() throws Exception {
+		End2EndTester.getSendReceiveSyncRunner().setPayloadRetention("some");
+	}
+
+	private XMLDataRecorder run(TestTestRunner runner) throws Exception {
+		XMLDataRecorder recorder = new XMLDataRecorder();
+		runner.getTestSuite().addResultListener(recorder);
+		runner.testRun();
+		assertFalse(recorder.reported.isEmpty());
+		return recorder;
+	}
+
+	/**
+	 * Returns the messages reported for an artefact and its children, except
+	 * for the literal data of the sends, which is given in the test suite.
+	 */
+	private static List<String> getXMLData(ITestArtefact artefact) {
+		List<String> data = new ArrayList<String>();
+		if (artefact instanceof XMLData
+				&& !(artefact.getParent() instanceof SendDataSpecification
+						&& artefact.getName().equals("Literal XML data"))) {
+			data.add(((XMLData) artefact).getXmlData());
+		}
+		for (ITestArtefact child : artefact.getChildren()) {
+			data.addAll(getXMLData(child));
+		}
+		return data;
+	}
+
+	private void assertNoneReleased(List<String> data) {
+		for (String xmlData : data) {
+			assertFalse(xmlData, xmlData.startsWith("(no "));
+		}
+	}
+
+	private void assertAllDropped(List<String> data) {
+		assertFalse(data.isEmpty());
+		for (String xmlData : data) {
+			assertTrue(xmlData, xmlData.startsWith("(no "));
+		}
+	}
+}
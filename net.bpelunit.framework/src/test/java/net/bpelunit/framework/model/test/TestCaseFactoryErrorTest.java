@@ -0,0 +1,89 @@
+package net.bpelunit.framework.model.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import net.bpelunit.framework.exception.SpecificationException;
+import net.bpelunit.framework.model.test.report.ITestArtefact;
+
+import org.junit.Test;
+
+/**
+ * Tests that a test case which cannot be created by its factory is reported
+ * as an error, and does not stop the test cases after it.
+ */
+public class TestCaseFactoryErrorTest {
+
+	/**
+	 * Factory whose test cases can never be created.
+	 */
+	private static class BrokenFactory implements ITestCaseFactory {
+		private final List<String> names;
+		private Iterator<String> cursor;
+
+		public BrokenFactory(String... names) {
+			this.names = Arrays.asList(names);
+		}
+
+		public void open() {
+			cursor = names.iterator();
+		}
+
+		public String nextTestCaseName() {
+			return cursor.hasNext() ? cursor.next() : null;
+		}
+
+		public TestCase createTestCase() throws SpecificationException {
+			throw new SpecificationException("broken row");
+		}
+
+		public void close() {
+			cursor = null;
+		}
+
+		public boolean canCreate(String testCaseName) {
+			return names.contains(testCaseName);
+		}
+
+		public int getTestCaseCount() {
+			return names.size();
+		}
+	}
+
+	private static class Recorder implements ITestResultListener {
+		private final List<TestCase> ended = new ArrayList<TestCase>();
+
+		public void testCaseStarted(TestCase testCase) {
+		}
+
+		public void testCaseEnded(TestCase testCase) {
+			ended.add(testCase);
+		}
+
+		public void progress(ITestArtefact testArtefact) {
+		}
+	}
+
+	@Test
+	public void testEveryBrokenRowIsReported() throws Exception {
+		TestSuite suite = new TestSuite("suite", new URL("http://localhost:7777/ws"), null);
+		suite.addTestCaseFactory(new BrokenFactory("row 1", "row 2", "row 3"));
+		Recorder recorder = new Recorder();
+		suite.addResultListener(recorder);
+
+		suite.run();
+
+		assertEquals(3, recorder.ended.size());
+		for (TestCase testCase : recorder.ended) {
+			assertTrue(testCase.getStatus().isError());
+		}
+		assertEquals("row 3", recorder.ended.get(2).getRawName());
+		assertTrue(suite.getStatus().isError());
+	}
+}
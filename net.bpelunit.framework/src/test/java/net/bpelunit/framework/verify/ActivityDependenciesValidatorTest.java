@@ -0,0 +1,102 @@
+package net.bpelunit.framework.verify;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import net.bpelunit.framework.exception.SpecificationException;
+import net.bpelunit.framework.model.test.PartnerTrack;
+import net.bpelunit.framework.model.test.TestCase;
+import net.bpelunit.framework.model.test.activity.Activity;
+import net.bpelunit.framework.model.test.activity.Wait;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActivityDependenciesValidatorTest {
+
+	private ActivityDependenciesValidator v = new ActivityDependenciesValidator();
+	private TestCase testCase;
+	private PartnerTrack track1;
+	private PartnerTrack track2;
+
+	@Before
+	public void setUp() {
+		testCase = new TestCase(null, "tc");
+		track1 = new PartnerTrack(testCase, null);
+		track2 = new PartnerTrack(testCase, null);
+		testCase.addPartnerTrack(track1);
+		testCase.addPartnerTrack(track2);
+	}
+
+	private Activity addActivity(PartnerTrack track, String id, String... dependsOn) {
+		Activity a = new Wait(track);
+		a.setId(id);
+		a.setDependsOn(Arrays.asList(dependsOn));
+		track.addActivity(a);
+		return a;
+	}
+
+	@Test
+	public void testDependenciesAcrossTracks() throws Exception {
+		addActivity(track1, "a1");
+		addActivity(track1, "a2", "b1");
+		addActivity(track2, "b1", "a1");
+		addActivity(track2, "b2", "a2");
+
+		v.validate(testCase);
+	}
+
+	@Test
+	public void testUnknownActivity() throws Exception {
+		addActivity(track1, "a1", "missing");
+
+		try {
+			v.validate(testCase);
+			fail("SpecificationException expected");
+		} catch (SpecificationException e) {
+			assertTrue(e.getMessage().contains("missing"));
+		}
+	}
+
+	@Test(expected = SpecificationException.class)
+	public void testDuplicateIds() throws Exception {
+		addActivity(track1, "a1");
+		addActivity(track2, "a1");
+
+		v.validate(testCase);
+	}
+
+	@Test
+	public void testCycleAcrossTracks() throws Exception {
+		addActivity(track1, "a1", "b1");
+		addActivity(track2, "b1", "a1");
+
+		try {
+			v.validate(testCase);
+			fail("SpecificationException expected");
+		} catch (SpecificationException e) {
+			assertTrue(e.getMessage().contains("cycle"));
+		}
+	}
+
+	@Test(expected = SpecificationException.class)
+	public void testCycleThroughTrackOrder() throws Exception {
+		// b1 waits for a2, which only runs after a1, which waits for b2
+		addActivity(track1, "a1", "b2");
+		addActivity(track1, "a2");
+		addActivity(track2, "b1", "a2");
+		addActivity(track2, "b2");
+
+		v.validate(testCase);
+	}
+
+	@Test(expected = SpecificationException.class)
+	public void testDependencyOnLaterActivityOfSameTrack() throws Exception {
+		addActivity(track1, "a1", "a2");
+		addActivity(track1, "a2");
+
+		v.validate(testCase);
+	}
+}
@@ -36,6 +36,11 @@ public interface IFrom extends IBpelObject {
 
 	IQuery setNewQuery();
 	IQuery getQuery();
+
+	/**
+	 * Makes this from-spec an expression, replacing any query or literal.
+	 */
+	void setExpression(String expression);
 	
 	Element setNewLiteral(String namespaceUri, String localName);
 	Element getLiteral();
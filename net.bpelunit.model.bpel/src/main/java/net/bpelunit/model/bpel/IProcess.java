@@ -2,7 +2,9 @@ package net.bpelunit.model.bpel;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface IProcess extends IBpelObject, ISingleContainer, IVisitable, IVariableContainer,IEventHandlerHolder {
 
@@ -33,6 +35,16 @@ public interface IProcess extends IBpelObject, ISingleContainer, IVisitable, IVa
 
 	List<IBpelObject> getElementsByXPath(String xpathToBpelElement);
 	
+	/**
+	 * Calculates the XPaths of the given elements of this process in one pass
+	 * over the document, instead of walking up the document for each element
+	 * as {@link IBpelObject#getXPathInDocument()} does.
+	 * 
+	 * @param elements
+	 * @return the XPaths of the elements, in the order of the elements
+	 */
+	Map<IBpelObject, String> getXPathsInDocument(Collection<? extends IBpelObject> elements);
+	
 	String getExpressionLanguage();
 	void setExpressionLanguage(String expressionLanguageUrn);
 
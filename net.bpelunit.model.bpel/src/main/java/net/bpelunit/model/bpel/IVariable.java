@@ -20,4 +20,18 @@ public interface IVariable extends IBpelObject {
 
 	void setElement(QName value);
 
+	/**
+	 * Replaces the inline initialization of this variable, which is evaluated
+	 * when the variable is created.
+	 * 
+	 * @return the from-spec initializing the variable
+	 */
+	IFrom setNewFrom();
+
+	/**
+	 * @return the from-spec initializing the variable, or <code>null</code>
+	 *         if it is not initialized inline
+	 */
+	IFrom getFrom();
+
 }
@@ -25,6 +25,7 @@ abstract class AbstractActivity<T extends TExtensibleElements> extends
 		super(a);
 		this.parent = parentContainer;
 		this.activity = a;
+		structureChanged();
 	}
 
 	@Override
@@ -32,6 +33,14 @@ abstract class AbstractActivity<T extends TExtensibleElements> extends
 		return parent;
 	}
 	
+	@Override
+	Process getProcess() {
+		if(parent instanceof AbstractBpelObject) {
+			return ((AbstractBpelObject) parent).getProcess();
+		}
+		return null;
+	}
+	
 	void reparent(IContainer newParent) {
 		if(parent != null) {
 			parent.unregister(this);
@@ -53,6 +62,7 @@ abstract class AbstractActivity<T extends TExtensibleElements> extends
 	}
 
 	public void setName(String value) {
+		structureChanged();
 			((TActivity) activity).setName(value);
 	}
 
@@ -1,9 +1,9 @@
 package net.bpelunit.model.bpel._2_0;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
 
@@ -16,9 +16,19 @@ import org.oasisOpen.docs.wsbpel.x20.process.executable.TExtensibleElements;
 
 abstract class AbstractBpelObject implements IBpelObject {
 
+	private static final NamespaceContext NAMESPACE_CONTEXT = BpelFactory.INSTANCE.createNamespaceContext();
+	
 	protected List<Documentation> documentations = new ArrayList<Documentation>();
 	private TExtensibleElements nativeElement;
 	
+	/**
+	 * Object this one belongs to, for objects which are not activities
+	 */
+	private AbstractBpelObject owner;
+	
+	private String xpathInDocument;
+	private int xpathInDocumentVersion;
+	
 	public AbstractBpelObject(TExtensibleElements t) {
 		this.nativeElement = t;
 
@@ -30,6 +40,7 @@ abstract class AbstractBpelObject implements IBpelObject {
 	}
 	
 	private final void setNativeObjectInternal(Object newNativeObject) {
+		structureChanged();
 		nativeElement = (TExtensibleElements) newNativeObject;
 		
 		documentations.clear();
@@ -43,6 +54,7 @@ abstract class AbstractBpelObject implements IBpelObject {
 	}
 
 	public Documentation addDocumentation() {
+		structureChanged();
 		TDocumentation bpelDoc = nativeElement.addNewDocumentation();
 		Documentation bpelDocumentation = new Documentation(bpelDoc);
 		this.documentations.add(bpelDocumentation);
@@ -50,9 +62,76 @@ abstract class AbstractBpelObject implements IBpelObject {
 		return bpelDocumentation;
 	}
 	
+	/**
+	 * The XPath is cached until the next change to the structure or the names
+	 * of the process made through this model. Changes made directly to the
+	 * native XML objects are not noticed. Objects which do not belong to a
+	 * process are not cached.
+	 */
 	public String getXPathInDocument() {
-		NamespaceContext ctx = BpelFactory.INSTANCE.createNamespaceContext();
-		return XMLUtil.getXPathForElement(nativeElement.getDomNode(), ctx);
+		Process process = getProcess();
+		if(process == null) {
+			return XMLUtil.getXPathForElement(nativeElement.getDomNode(), NAMESPACE_CONTEXT);
+		}
+		int version = process.getStructureVersion();
+		if(xpathInDocument == null || xpathInDocumentVersion != version) {
+			setXPathInDocument(XMLUtil.getXPathForElement(nativeElement.getDomNode(), NAMESPACE_CONTEXT), version);
+		}
+		return xpathInDocument;
+	}
+	
+	void setXPathInDocument(String xpath, int version) {
+		this.xpathInDocument = xpath;
+		this.xpathInDocumentVersion = version;
+	}
+	
+	/**
+	 * Must be called by all operations which add, remove, move or rename
+	 * elements, because these may change the XPaths of other elements of the
+	 * process, too.
+	 */
+	void structureChanged() {
+		Process process = getProcess();
+		if(process != null) {
+			process.incrementStructureVersion();
+		}
+	}
+	
+	/**
+	 * Sets the object this one belongs to. Activities find their process
+	 * through their parents, all other objects through their owner.
+	 */
+	void setOwner(AbstractBpelObject newOwner) {
+		this.owner = newOwner;
+		structureChanged();
+	}
+	
+	/**
+	 * @return the process this object belongs to, or <code>null</code> if it
+	 *         does not belong to one (yet)
+	 */
+	Process getProcess() {
+		return owner != null ? owner.getProcess() : null;
+	}
+	
+	static NamespaceContext getNamespaceContext() {
+		return NAMESPACE_CONTEXT;
+	}
+	
+	Object getNativeObject() {
+		return nativeElement;
+	}
+	
+	/**
+	 * Adds this object and all objects below it that
+	 * {@link #getObjectForNativeObject(Object)} would find to the index. If a
+	 * native object is already in the index, it is not replaced, so that the
+	 * first object found wins as in {@link #getObjectForNativeObject(Object)}.
+	 */
+	void indexNativeObjects(Map<Object, AbstractBpelObject> index) {
+		if(!index.containsKey(nativeElement)) {
+			index.put(nativeElement, this);
+		}
 	}
 	
 	IBpelObject getObjectForNativeObject(Object nativeObject) {
@@ -64,16 +143,16 @@ abstract class AbstractBpelObject implements IBpelObject {
 	}
 	
 	public void visit(IVisitor v) {
-		Class<? extends IVisitor> visitorClass = v.getClass();
-		for(Class<?> c : this.getClass().getInterfaces()) {
-			try {
-				Method m = visitorClass.getMethod("visit", c);
-				m.invoke(v, this);
-				return;
-			} catch (Exception e) {
-				// ignore
-			}
-		}
+		accept(v);
+	}
+
+	/**
+	 * Calls the visit method of the visitor for the type of this object. Each
+	 * concrete class overrides this with <code>v.visit(this)</code>, so the
+	 * method is chosen by the compiler instead of being looked up on every
+	 * visit.
+	 */
+	void accept(IVisitor v) {
 		throw new RuntimeException("Cannot call visit for " + this.getClass());
 	}
 }
@@ -4,6 +4,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import net.bpelunit.model.bpel.ActivityType;
 import net.bpelunit.model.bpel.IActivity;
@@ -100,6 +101,14 @@ abstract class AbstractMultiContainer<T extends TActivity> extends
 		return null;
 	}
 
+	@Override
+	void indexNativeObjects(Map<Object, AbstractBpelObject> index) {
+		super.indexNativeObjects(index);
+		for (AbstractActivity<?> child : wrappedActivities) {
+			child.indexNativeObjects(index);
+		}
+	}
+
 	AbstractActivity<?> addActivity(ActivityType a) {
 		Method method;
 		try {
@@ -395,6 +404,7 @@ abstract class AbstractMultiContainer<T extends TActivity> extends
 	
 	@Override
 	public void remove(IActivity a) {
+		structureChanged();
 		AbstractActivity<?> activityToDelete = (AbstractActivity<?>)a;
 		int index = wrappedActivities.indexOf(a);
 		
@@ -451,6 +461,7 @@ abstract class AbstractMultiContainer<T extends TActivity> extends
 	
 	@Override
 	public void unregister(AbstractActivity<?> a) {
+		structureChanged();
 		int index = wrappedActivities.indexOf(a);
 		
 		if(index >= 0) {
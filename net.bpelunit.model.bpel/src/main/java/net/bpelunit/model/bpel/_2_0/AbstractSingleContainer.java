@@ -187,6 +187,14 @@ abstract class AbstractSingleContainer<T extends TExtensibleElements> extends
 		}
 	}
 
+	@Override
+	void indexNativeObjects(Map<Object, AbstractBpelObject> index) {
+		super.indexNativeObjects(index);
+		if (getMainActivity() != null) {
+			getMainActivity().indexNativeObjects(index);
+		}
+	}
+
 	@Override
 	public Scope wrapActivityInNewScope(IActivity childActivity) {
 		AbstractActivity<?> a = (AbstractActivity<?>) childActivity;
@@ -234,6 +242,7 @@ abstract class AbstractSingleContainer<T extends TExtensibleElements> extends
 	
 	@Override
 	public void unregister(AbstractActivity<?> a) {
+		structureChanged();
 		if(a == mainActivity) {
 			XmlCursor c = activity.newCursor();
 			for(c.toFirstChild(); c.toNextSibling();) {
@@ -250,6 +259,7 @@ abstract class AbstractSingleContainer<T extends TExtensibleElements> extends
 	
 	@Override
 	public void removeMainActivity() {
+		structureChanged();
 		if(mainActivity != null) {
 			XmlCursor c = mainActivity.getNativeActivity().newCursor();
 			c.removeXml();
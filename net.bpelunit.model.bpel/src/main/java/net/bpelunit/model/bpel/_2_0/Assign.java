@@ -27,7 +27,9 @@ class Assign extends AbstractBasicActivity<TAssign> implements IAssign {
 		
 		copy.clear();
 		for(TCopy c : assign.getCopyArray()) {
-			copy.add(new Copy(c));
+			Copy wrappedCopy = new Copy(c);
+			wrappedCopy.setOwner(this);
+			copy.add(wrappedCopy);
 		}
 	}
 	
@@ -42,6 +44,7 @@ class Assign extends AbstractBasicActivity<TAssign> implements IAssign {
 	public Copy addCopy() {
 		TCopy nativeCopy = this.assign.addNewCopy();
 		Copy newCopy = new Copy(nativeCopy);
+		newCopy.setOwner(this);
 		
 		this.copy.add(newCopy);
 		
@@ -60,4 +63,9 @@ class Assign extends AbstractBasicActivity<TAssign> implements IAssign {
 			c.visit(v);
 		}
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,7 +1,9 @@
 package net.bpelunit.model.bpel._2_0;
 
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.NamespaceContext;
 
@@ -12,11 +14,152 @@ import net.bpelunit.util.SimpleNamespaceContext;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.ProcessDocument;
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TActivity;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TAssign;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TCompensate;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TCompensateScope;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TEmpty;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TExit;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TFlow;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TForEach;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TIf;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TInvoke;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TPick;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TReceive;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TRepeatUntil;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TReply;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TRethrow;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TScope;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TSequence;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TThrow;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TValidate;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TWait;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TWhile;
 
 public class BpelFactory implements IBpelFactory {
 
 	private static final String NAMESPACE_BPEL_2_0 = "http://docs.oasis-open.org/wsbpel/2.0/process/executable";
 	
+	/**
+	 * Creates the wrapper for one type of activity.
+	 */
+	interface WrapperFactory {
+		AbstractActivity<?> create(TActivity child, IContainer parent);
+	}
+
+	/**
+	 * Wrapper factories by the XMLBeans interface of the activity.
+	 */
+	private static final Map<Class<? extends TActivity>, WrapperFactory> WRAPPER_FACTORIES = new LinkedHashMap<Class<? extends TActivity>, WrapperFactory>();
+
+	static {
+		WRAPPER_FACTORIES.put(TAssign.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Assign((TAssign) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TCompensate.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Compensate((TCompensate) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TCompensateScope.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new CompensateScope((TCompensateScope) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TEmpty.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Empty((TEmpty) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TExit.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Exit((TExit) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TFlow.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Flow((TFlow) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TForEach.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new ForEach((TForEach) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TIf.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new If((TIf) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TInvoke.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Invoke((TInvoke) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TPick.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Pick((TPick) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TReceive.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Receive((TReceive) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TRepeatUntil.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new RepeatUntil((TRepeatUntil) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TReply.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Reply((TReply) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TRethrow.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Rethrow((TRethrow) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TScope.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Scope((TScope) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TSequence.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Sequence((TSequence) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TThrow.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Throw((TThrow) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TValidate.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Validate((TValidate) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TWait.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new Wait((TWait) child, parent);
+			}
+		});
+		WRAPPER_FACTORIES.put(TWhile.class, new WrapperFactory() {
+			public AbstractActivity<?> create(TActivity child, IContainer parent) {
+				return new While((TWhile) child, parent);
+			}
+		});
+	}
+
+	/**
+	 * Wrapper factories by the XMLBeans implementation class of the activity,
+	 * filled the first time an activity of that class is wrapped.
+	 */
+	private final Map<Class<?>, WrapperFactory> wrapperFactoriesByImplementation = new ConcurrentHashMap<Class<?>, WrapperFactory>();
+
 	public static final BpelFactory INSTANCE = new BpelFactory(); 
 	
 	public String getNamespace() {
@@ -35,24 +178,26 @@ public class BpelFactory implements IBpelFactory {
 			return null;
 		}
 		
-		String activityName = calculateBpelActivityName(child);
-		String wrapperClassName = getClass().getPackage().getName() + "." + activityName;
+		return getWrapperFactory(child).create(child, (IContainer) parent);
+	}
+
+	private WrapperFactory getWrapperFactory(TActivity child) {
+		Class<?> implementationClass = child.getClass();
+		WrapperFactory factory = wrapperFactoriesByImplementation.get(implementationClass);
+		if(factory != null) {
+			return factory;
+		}
 		
-		try {
-			Class<?> clazz = Class.forName(wrapperClassName);
-			Constructor<?> c = null;
-			for(Class<?> i : child.getClass().getInterfaces()) {
-				try {
-					c = clazz.getConstructor(i, IContainer.class);
-					break;
-				} catch (Exception e) {
-					// ignore
-				}
-			}
-			return (AbstractActivity<?>) c.newInstance(child, parent);
-		} catch (Exception e) {
-			throw new RuntimeException("Cannot find wrapper " + wrapperClassName + " for " + child.getClass().getCanonicalName(), e);
+		for(Class<?> i : implementationClass.getInterfaces()) {
+			factory = WRAPPER_FACTORIES.get(i);
+			if(factory != null) {
+				wrapperFactoriesByImplementation.put(implementationClass, factory);
+				return factory;
+			}
 		}
+		
+		String wrapperClassName = getClass().getPackage().getName() + "." + calculateBpelActivityName(child);
+		throw new RuntimeException("Cannot find wrapper " + wrapperClassName + " for " + implementationClass.getCanonicalName());
 	}
 
 	private String calculateBpelActivityName(TActivity child) {
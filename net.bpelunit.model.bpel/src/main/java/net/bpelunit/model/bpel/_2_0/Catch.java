@@ -2,6 +2,7 @@ package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.ICatch;
 import net.bpelunit.model.bpel.ISingleContainer;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TCatch;
 
@@ -15,4 +16,9 @@ public class Catch extends AbstractSingleContainer<TCatch> implements ICatch, IS
 	public String toString() {
 		return "Catch";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.ICatchAll;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TActivityContainer;
 
@@ -14,4 +15,9 @@ public class CatchAll extends AbstractSingleContainer<TActivityContainer> implem
 	public String toString() {
 		return "CatchAll";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.ICompensate;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TCompensate;
 
@@ -9,4 +10,9 @@ class Compensate extends AbstractBasicActivity<TCompensate> implements ICompensa
 	public Compensate(TCompensate wrappedCompensate, IContainer parent) {
 		super(wrappedCompensate, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -2,6 +2,7 @@ package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.ICompensateScope;
 import net.bpelunit.model.bpel.IScope;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TCompensateScope;
 
@@ -23,4 +24,9 @@ class CompensateScope extends AbstractBasicActivity<TCompensateScope> implements
 	public String getTarget() {
 		return getNativeActivity().getTarget();
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -2,6 +2,7 @@ package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.ICompensationHandler;
 import net.bpelunit.model.bpel.ISingleContainer;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TActivityContainer;
 
@@ -15,4 +16,9 @@ public class CompensationHandler extends AbstractSingleContainer<TActivityContai
 	public String toString() {
 		return "CompensationHandler";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
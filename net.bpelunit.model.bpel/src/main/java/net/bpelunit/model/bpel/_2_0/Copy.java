@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.ICopy;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TBoolean;
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TCopy;
@@ -55,5 +56,9 @@ public class Copy extends AbstractBpelObject implements ICopy {
 	public void setIgnoreMissingFromData(boolean value) {
 		copy.setIgnoreMissingFromData(TBooleanHelper.convert(value));
 	}
-	
-}
\ No newline at end of file
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
+}
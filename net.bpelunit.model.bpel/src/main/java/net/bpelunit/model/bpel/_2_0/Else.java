@@ -23,4 +23,9 @@ public class Else extends AbstractSingleContainer<TActivityContainer> implements
 	public String toString() {
 		return "Else";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
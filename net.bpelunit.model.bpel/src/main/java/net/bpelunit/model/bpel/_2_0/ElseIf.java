@@ -32,4 +32,9 @@ public class ElseIf extends AbstractSingleContainer<TElseif> implements IElseIf
 	public String toString() {
 		return "ElseIf";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IEmpty;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TEmpty;
 
@@ -10,4 +11,8 @@ public class Empty extends AbstractBasicActivity<TEmpty> implements IEmpty {
 		super(newEmpty, parent);
 	}
 
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
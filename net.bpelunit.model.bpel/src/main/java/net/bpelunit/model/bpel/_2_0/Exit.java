@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IExit;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TExit;
 
@@ -9,4 +10,9 @@ public class Exit extends AbstractBasicActivity<TExit> implements IExit {
 	public Exit(TExit wrappedExit, IContainer parent) {
 		super(wrappedExit, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -32,7 +32,9 @@ class Flow extends AbstractMultiContainer<TFlow> implements IFlow {
 
 		links.clear();
 		for (TLink l : this.flow.getLinks().getLinkArray()) {
-			links.add(new Link(l));
+			Link link = new Link(l);
+			link.setOwner(this);
+			links.add(link);
 		}
 	}
 
@@ -45,6 +47,7 @@ class Flow extends AbstractMultiContainer<TFlow> implements IFlow {
 		l.setName(name);
 
 		Link link = new Link(l);
+		link.setOwner(this);
 		links.add(link);
 
 		return link;
@@ -67,4 +70,9 @@ class Flow extends AbstractMultiContainer<TFlow> implements IFlow {
 			l.visit(v);
 		}
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
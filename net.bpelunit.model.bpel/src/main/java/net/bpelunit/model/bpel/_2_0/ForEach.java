@@ -1,5 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
+import java.util.Map;
+
 import net.bpelunit.model.bpel.IActivity;
 import net.bpelunit.model.bpel.IBpelObject;
 import net.bpelunit.model.bpel.IExpression;
@@ -72,6 +74,14 @@ public class ForEach extends AbstractActivity<TForEach> implements IContainer, I
 		}
 		return null;
 	}
+	
+	@Override
+	void indexNativeObjects(Map<Object, AbstractBpelObject> index) {
+		super.indexNativeObjects(index);
+		if(scope != null) {
+			scope.indexNativeObjects(index);
+		}
+	}
 
 	@Override
 	public String getCounterName() {
@@ -115,6 +125,7 @@ public class ForEach extends AbstractActivity<TForEach> implements IContainer, I
 		}
 		
 		completionCondition = new CompletionCondition(getNativeActivity().addNewCompletionCondition());
+		completionCondition.setOwner(this);
 		
 		return completionCondition;
 	}
@@ -133,4 +144,9 @@ public class ForEach extends AbstractActivity<TForEach> implements IContainer, I
 	public void unregister(AbstractActivity<?> a) {
 		throw new IllegalArgumentException("Cannot unregister a mandatory scope of a for-each activity");
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -107,6 +107,19 @@ public class From implements IFrom {
 		}
 	}
 
+	public void setExpression(String expression) {
+		unsetQueryAndLiteral();
+		Node fromNode = from.getDomNode();
+		NodeList children = fromNode.getChildNodes();
+		for (int i = children.getLength() - 1; i >= 0; i--) {
+			if (children.item(i).getNodeType() == Node.TEXT_NODE) {
+				fromNode.removeChild(children.item(i));
+			}
+		}
+		fromNode.appendChild(fromNode.getOwnerDocument().createTextNode(
+				expression));
+	}
+
 	public void setExpressionLanguage(String value) {
 		from.setExpressionLanguage(value);
 	}
@@ -97,4 +97,9 @@ public class If extends AbstractSingleContainer<TIf> implements IIf {
 			eelse.visit(v);
 		}
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IImport;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TImport;
 
@@ -41,4 +42,9 @@ public class Import extends AbstractBpelObject implements IImport {
 	public boolean isWsdlImport() {
 		return NAMESPACE_WSDL.equals(getImportType());
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
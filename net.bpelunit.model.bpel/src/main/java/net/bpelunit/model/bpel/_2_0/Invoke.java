@@ -160,4 +160,9 @@ public class Invoke extends AbstractBasicActivity<TInvoke> implements IInvoke, I
 		// TODO Auto-generated method stub
 		
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
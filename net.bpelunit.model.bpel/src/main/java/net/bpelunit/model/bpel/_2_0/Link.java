@@ -19,6 +19,7 @@ class Link extends AbstractBpelObject implements ILink {
 	}
 
 	public void setName(String value) {
+		structureChanged();
 		link.setName(value);
 	}
 	
@@ -31,4 +32,9 @@ class Link extends AbstractBpelObject implements ILink {
 	public String toString() {
 		return "Link";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
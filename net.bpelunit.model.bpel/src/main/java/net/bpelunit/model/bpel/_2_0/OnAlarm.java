@@ -23,4 +23,9 @@ public class OnAlarm extends AbstractSingleContainer<TOnAlarmPick> implements IO
 	public String toString() {
 		return "OnAlarm";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -30,4 +30,9 @@ public class OnAlarmEventHandler extends AbstractSingleContainer<TOnAlarmEvent>
 	public String toString() {
 		return "OnAlarmEvent";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -3,6 +3,7 @@ package net.bpelunit.model.bpel._2_0;
 import javax.xml.namespace.QName;
 
 import net.bpelunit.model.bpel.IOnMessage;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TOnMessage;
 
@@ -66,4 +67,9 @@ public class OnMessage extends AbstractSingleContainer<TOnMessage> implements IO
 	public String toString() {
 		return "OnMessage";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
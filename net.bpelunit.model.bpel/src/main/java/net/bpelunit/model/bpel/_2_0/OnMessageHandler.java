@@ -82,4 +82,9 @@ public class OnMessageHandler extends AbstractSingleContainer<TOnEvent> implemen
 	public String toString() {
 		return "OnMessage";
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
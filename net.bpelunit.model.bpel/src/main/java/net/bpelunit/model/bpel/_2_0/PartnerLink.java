@@ -3,6 +3,7 @@ package net.bpelunit.model.bpel._2_0;
 import javax.xml.namespace.QName;
 
 import net.bpelunit.model.bpel.IPartnerLink;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TPartnerLink;
 
@@ -24,6 +25,7 @@ public class PartnerLink extends AbstractBpelObject implements IPartnerLink {
 	}
 
 	public void setName(String newName) {
+		structureChanged();
 		partnerLink.setName(newName);
 	}
 
@@ -46,4 +48,9 @@ public class PartnerLink extends AbstractBpelObject implements IPartnerLink {
 	public void setPartnerRole(String newPartnerRole) {
 		partnerLink.setPartnerRole(newPartnerRole);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
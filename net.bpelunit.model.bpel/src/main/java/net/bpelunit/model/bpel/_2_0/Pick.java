@@ -3,6 +3,7 @@ package net.bpelunit.model.bpel._2_0;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import net.bpelunit.model.bpel.IActivity;
 import net.bpelunit.model.bpel.IBpelObject;
@@ -117,6 +118,17 @@ public class Pick extends AbstractActivity<TPick> implements IPick, IContainer {
 		return null;
 	}
 
+	@Override
+	void indexNativeObjects(Map<Object, AbstractBpelObject> index) {
+		super.indexNativeObjects(index);
+		for (OnMessage m : onMessages) {
+			m.indexNativeObjects(index);
+		}
+		for (OnAlarm a : onAlarms) {
+			a.indexNativeObjects(index);
+		}
+	}
+
 	@Override
 	public IScope wrapActivityInNewScope(IActivity childActivity) {
 		throw new IllegalArgumentException(
@@ -134,4 +146,9 @@ public class Pick extends AbstractActivity<TPick> implements IPick, IContainer {
 		throw new IllegalArgumentException(
 		"Cannot wrap any branches (onMessage, onAlarm) of a pick activity");
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -3,11 +3,15 @@ package net.bpelunit.model.bpel._2_0;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.bpelunit.model.bpel.IActivityContainer;
 import net.bpelunit.model.bpel.IBpelObject;
 import net.bpelunit.model.bpel.IImport;
 import net.bpelunit.model.bpel.IOnAlarmEventHandler;
@@ -15,6 +19,7 @@ import net.bpelunit.model.bpel.IPartnerLink;
 import net.bpelunit.model.bpel.IProcess;
 import net.bpelunit.model.bpel.IVariable;
 import net.bpelunit.model.bpel.IVisitor;
+import net.bpelunit.util.XMLUtil;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.xmlbeans.XmlObject;
@@ -28,6 +33,8 @@ import org.oasisOpen.docs.wsbpel.x20.process.executable.TOnEvent;
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TPartnerLink;
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TProcess;
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TVariable;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 
@@ -40,6 +47,22 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 	private List<OnMessageHandler> onMessages = new ArrayList<OnMessageHandler>();
 	private List<Documentation> documentations = new ArrayList<Documentation>();
 	
+	/**
+	 * Wrappers by their native objects, so that XPath results can be mapped
+	 * back without walking the whole process for each result. The model is
+	 * edited by copying native objects around, so the index is only a cache:
+	 * entries are checked before they are used and the index is rebuilt from
+	 * the wrappers when a result is not found in it.
+	 */
+	private Map<Object, AbstractBpelObject> wrappersByNativeObject = new IdentityHashMap<Object, AbstractBpelObject>();
+	
+	/**
+	 * Incremented whenever the structure or the names of this process change,
+	 * which invalidates all cached XPaths. Not initialized explicitly, because
+	 * the wrappers created by the super constructor already increment it.
+	 */
+	private int structureVersion;
+	
 	Process(ProcessDocument newProcess) {
 		super(newProcess.getProcess(), null);
 		
@@ -48,12 +71,16 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 		
 		if (process.getPartnerLinks() != null) {
 			for (TPartnerLink p : process.getPartnerLinks().getPartnerLinkArray()) {
-				partnerLinks.add(new PartnerLink(p));
+				PartnerLink partnerLink = new PartnerLink(p);
+				partnerLink.setOwner(this);
+				partnerLinks.add(partnerLink);
 			}
 		}
 
 		for (TImport i : process.getImportArray()) {
-			imports.add(new Import(i));
+			Import imp = new Import(i);
+			imp.setOwner(this);
+			imports.add(imp);
 		}
 
 		if(process.getVariables() == null) {
@@ -63,7 +90,9 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 			process.addNewVariables();
 		}
 		for (TVariable v : process.getVariables().getVariableArray()) {
-			variables.add(new Variable(v));
+			Variable variable = new Variable(v);
+			variable.setOwner(this);
+			variables.add(variable);
 		}
 		
 		if(process.getEventHandlers() != null) {
@@ -162,6 +191,7 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 		TVariable nativeVariable = process.getVariables().addNewVariable();
 		
 		Variable variable = new Variable(nativeVariable);
+		variable.setOwner(this);
 		this.variables.add(variable);
 		
 		return variable;
@@ -172,6 +202,7 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 		TPartnerLink nativePartnerLink = process.getPartnerLinks().addNewPartnerLink();
 		
 		PartnerLink partnerLink = new PartnerLink(nativePartnerLink);
+		partnerLink.setOwner(this);
 		this.partnerLinks.add(partnerLink);
 		
 		return partnerLink;
@@ -202,6 +233,7 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 		TImport nativeImport = process.addNewImport();;
 
 		Import imp = new Import(nativeImport);
+		imp.setOwner(this);
 		this.imports.add(imp);
 		
 		return imp;
@@ -212,8 +244,14 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 		XmlObject[] results = process.selectPath(xpathToBpelElement);
 		
 		List<IBpelObject> retval = new ArrayList<IBpelObject>();
+		boolean indexRebuilt = false;
 		for(XmlObject o : results){
-			IBpelObject bo = getObjectForNativeObject(o);
+			AbstractBpelObject bo = wrappersByNativeObject.get(o);
+			if(!isCurrentWrapper(bo, o) && !indexRebuilt) {
+				rebuildNativeObjectIndex();
+				indexRebuilt = true;
+				bo = wrappersByNativeObject.get(o);
+			}
 			if(bo != null) {
 				retval.add(bo);
 			} else {
@@ -224,6 +262,69 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 		return retval;
 	}
 
+	@Override
+	Process getProcess() {
+		return this;
+	}
+	
+	void incrementStructureVersion() {
+		structureVersion++;
+	}
+	
+	int getStructureVersion() {
+		return structureVersion;
+	}
+	
+	public Map<IBpelObject, String> getXPathsInDocument(Collection<? extends IBpelObject> elements) {
+		int version = getStructureVersion();
+		Map<Node, String> pathsByNode = XMLUtil.getXPathsForElements((Element) process.getDomNode(), getNamespaceContext());
+		
+		Map<IBpelObject, String> paths = new LinkedHashMap<IBpelObject, String>();
+		for(IBpelObject element : elements) {
+			String path = null;
+			if(element instanceof AbstractBpelObject) {
+				AbstractBpelObject o = (AbstractBpelObject) element;
+				path = pathsByNode.get(((XmlObject) o.getNativeObject()).getDomNode());
+				if(path != null) {
+					o.setXPathInDocument(path, version);
+				}
+			}
+			if(path == null) {
+				path = element.getXPathInDocument();
+			}
+			paths.put(element, path);
+		}
+		
+		return paths;
+	}
+
+	private void rebuildNativeObjectIndex() {
+		wrappersByNativeObject.clear();
+		if(getMainActivity() != null) {
+			getMainActivity().indexNativeObjects(wrappersByNativeObject);
+		}
+	}
+
+	/**
+	 * Checks that the wrapper still wraps the native object and is still part
+	 * of this process.
+	 */
+	private boolean isCurrentWrapper(AbstractBpelObject wrapper, Object nativeObject) {
+		if(wrapper == null || wrapper.getNativeObject() != nativeObject) {
+			return false;
+		}
+		
+		Object current = wrapper;
+		while(current instanceof AbstractActivity) {
+			IActivityContainer parent = ((AbstractActivity<?>) current).getParent();
+			if(parent == this) {
+				return true;
+			}
+			current = parent;
+		}
+		return false;
+	}
+
 	@Override
 	IBpelObject getObjectForNativeObject(Object nativeObject) {
 		if(getMainActivity() != null) {
@@ -280,5 +381,9 @@ class Process extends AbstractSingleContainer<TProcess> implements IProcess {
 	public void setExitOnStandardFault(boolean value) {
 		process.setExitOnStandardFault(TBooleanHelper.convert(value));
 	}
-}
 
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
+}
@@ -4,6 +4,7 @@ import javax.xml.namespace.QName;
 
 import net.bpelunit.model.bpel.IReceive;
 import net.bpelunit.model.bpel.IVariable;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TBoolean;
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TReceive;
@@ -61,4 +62,9 @@ public class Receive extends AbstractBasicActivity<TReceive> implements IReceive
 	public void setVariable(String value) {
 		getNativeActivity().setVariable(value);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IRepeatUntil;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TRepeatUntil;
 
@@ -10,4 +11,9 @@ public class RepeatUntil extends AbstractSingleContainer<TRepeatUntil>
 	public RepeatUntil(TRepeatUntil wrappedRepeatUntil, IContainer parent) {
 		super(wrappedRepeatUntil, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
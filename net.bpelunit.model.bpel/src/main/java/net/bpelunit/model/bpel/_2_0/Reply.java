@@ -4,6 +4,7 @@ import javax.xml.namespace.QName;
 
 import net.bpelunit.model.bpel.IReply;
 import net.bpelunit.model.bpel.IVariable;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TReply;
 
@@ -56,4 +57,9 @@ public class Reply extends AbstractBasicActivity<TReply> implements IReply {
 	public void setVariable(String value) {
 		getNativeActivity().setVariable(value);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IRethrow;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TRethrow;
 
@@ -9,4 +10,9 @@ public class Rethrow extends AbstractBasicActivity<TRethrow> implements IRethrow
 	public Rethrow(TRethrow wrappedRethrow, IContainer parent) {
 		super(wrappedRethrow, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -54,7 +54,9 @@ class Scope extends AbstractSingleContainer<TScope> implements IScope {
 		variables.clear();
 		if (wrappedScope.isSetVariables()) {
 			for (TVariable v : wrappedScope.getVariables().getVariableArray()) {
-				variables.add(new Variable(v));
+				Variable variable = new Variable(v);
+				variable.setOwner(this);
+				variables.add(variable);
 			}
 		}
 
@@ -127,6 +129,7 @@ class Scope extends AbstractSingleContainer<TScope> implements IScope {
 				.addNewVariable();
 
 		Variable variable = new Variable(nativeVariable);
+		variable.setOwner(this);
 		this.variables.add(variable);
 		return variable;
 	}
@@ -223,4 +226,8 @@ class Scope extends AbstractSingleContainer<TScope> implements IScope {
 		return catchAll;
 	}
 
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
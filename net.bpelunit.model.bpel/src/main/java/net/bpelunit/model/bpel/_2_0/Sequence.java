@@ -19,4 +19,9 @@ public class Sequence extends AbstractMultiContainer<TSequence> implements ISequ
 			a.visit(v);
 		}
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IThrow;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TThrow;
 
@@ -9,4 +10,9 @@ public class Throw extends AbstractBasicActivity<TThrow> implements IThrow {
 	public Throw(TThrow t, IContainer parent) {
 		super(t, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,6 +1,7 @@
 package net.bpelunit.model.bpel._2_0;
 
 import net.bpelunit.model.bpel.IValidate;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TValidate;
 
@@ -9,4 +10,9 @@ public class Validate extends AbstractBasicActivity<TValidate> implements IValid
 	public Validate(TValidate wrappedValidate, IContainer parent) {
 		super(wrappedValidate, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
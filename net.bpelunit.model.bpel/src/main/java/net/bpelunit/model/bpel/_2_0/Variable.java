@@ -2,17 +2,23 @@ package net.bpelunit.model.bpel._2_0;
 
 import javax.xml.namespace.QName;
 
+import net.bpelunit.model.bpel.IFrom;
 import net.bpelunit.model.bpel.IVariable;
+import net.bpelunit.model.bpel.IVisitor;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TVariable;
 
 public class Variable extends AbstractBpelObject implements IVariable {
 
 	private TVariable variable;
+	private From from;
 
 	public Variable(TVariable v) {
 		super(v);
 		this.variable = v;
+		if (v.getFrom() != null) {
+			this.from = new From(v.getFrom());
+		}
 	}
 
 	public QName getElement() {
@@ -56,6 +62,7 @@ public class Variable extends AbstractBpelObject implements IVariable {
 	}
 	
 	public void setName(String value) {
+		structureChanged();
 		variable.setName(value);
 	}
 
@@ -69,4 +76,23 @@ public class Variable extends AbstractBpelObject implements IVariable {
 			variable.unsetElement();
 		}
 	}
+
+	@Override
+	public IFrom setNewFrom() {
+		if (variable.getFrom() != null) {
+			variable.unsetFrom();
+		}
+		from = new From(variable.addNewFrom());
+		return from;
+	}
+
+	@Override
+	public IFrom getFrom() {
+		return from;
+	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,5 +1,6 @@
 package net.bpelunit.model.bpel._2_0;
 
+import net.bpelunit.model.bpel.IVisitor;
 import net.bpelunit.model.bpel.IWait;
 import net.bpelunit.util.XMLUtil;
 
@@ -63,4 +64,9 @@ public class Wait extends AbstractBasicActivity<TWait> implements IWait {
 			this.getNativeActivity().unsetFor();
 		}
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
@@ -1,5 +1,6 @@
 package net.bpelunit.model.bpel._2_0;
 
+import net.bpelunit.model.bpel.IVisitor;
 import net.bpelunit.model.bpel.IWhile;
 
 import org.oasisOpen.docs.wsbpel.x20.process.executable.TWhile;
@@ -9,4 +10,9 @@ public class While extends AbstractSingleContainer<TWhile> implements IWhile {
 	public While(TWhile wrappedWhile, IContainer parent) {
 		super(wrappedWhile, parent);
 	}
+
+	@Override
+	void accept(IVisitor v) {
+		v.visit(this);
+	}
 }
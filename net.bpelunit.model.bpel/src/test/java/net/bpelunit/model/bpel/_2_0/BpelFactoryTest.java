@@ -5,6 +5,10 @@ import static org.junit.Assert.*;
 import javax.xml.namespace.NamespaceContext;
 
 import org.junit.Test;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.SequenceDocument;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TEmpty;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TScope;
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TSequence;
 
 public class BpelFactoryTest {
 
@@ -18,4 +22,21 @@ public class BpelFactoryTest {
 		assertEquals("bpel", ctx.getPrefix(bpelNamespace));
 	}
 	
+	@Test
+	public void testCreateWrapper() throws Exception {
+		TSequence nativeSequence = SequenceDocument.Factory.newInstance().addNewSequence();
+		Sequence sequence = new Sequence(nativeSequence, null);
+		TEmpty nativeEmpty = nativeSequence.addNewEmpty();
+		TScope nativeScope = nativeSequence.addNewScope();
+		
+		AbstractActivity<?> empty = BpelFactory.INSTANCE.createWrapper(nativeEmpty, sequence);
+		assertTrue(empty instanceof Empty);
+		assertSame(nativeEmpty, empty.getNativeActivity());
+		
+		AbstractActivity<?> scope = BpelFactory.INSTANCE.createWrapper(nativeScope, sequence);
+		assertTrue(scope instanceof Scope);
+		assertSame(nativeScope, scope.getNativeActivity());
+		
+		assertNull(BpelFactory.INSTANCE.createWrapper(null, sequence));
+	}
 }
@@ -118,6 +118,19 @@ public class FromTest {
 		assertNull(from.getLiteral());
 	}
 	
+	@Test
+	public void testSetExpression() throws Exception {
+		from.setNewLiteral("a", "A");
+		
+		from.setExpression("concat($a, 'b')");
+		assertNull(from.getLiteral());
+		assertNull(from.getQuery());
+		assertEquals("concat($a, 'b')", ((From) from).getNativeFrom().getDomNode().getTextContent());
+		
+		from.setExpression("'c'");
+		assertEquals("'c'", ((From) from).getNativeFrom().getDomNode().getTextContent());
+	}
+	
 	@Test
 	public void testNamespacePrefixes() throws Exception {
 		from.setNewQuery();
@@ -10,11 +10,15 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import net.bpelunit.model.bpel.ActivityType;
 import net.bpelunit.model.bpel.BpelFactory;
 import net.bpelunit.model.bpel.IAssign;
+import net.bpelunit.model.bpel.IBpelObject;
 import net.bpelunit.model.bpel.ICompensate;
 import net.bpelunit.model.bpel.ICompensateScope;
 import net.bpelunit.model.bpel.IDocumentation;
@@ -76,6 +80,80 @@ public class ProcessTest {
 //		assertSame(w, waitToLeave.get(0));
 	}
 	
+	@Test
+	public void testGetElementsByXPathAfterEditing() throws Exception {
+		Process process = (Process) BpelFactory.createProcess();
+		Sequence sequence = process.setNewSequence();
+		Wait w1 = sequence.addWait();
+		w1.setName("W1");
+		Wait w2 = sequence.addWait();
+		w2.setName("W2");
+		
+		List<IBpelObject> waits = process.getElementsByXPath("//*[local-name()='wait']");
+		assertEquals(2, waits.size());
+		assertSame(w1, waits.get(0));
+		assertSame(w2, waits.get(1));
+		
+		sequence.wrapActivityInNewScope(w1);
+		Wait w3 = sequence.addWait();
+		sequence.remove(w2);
+		
+		waits = process.getElementsByXPath("//*[local-name()='wait']");
+		assertEquals(2, waits.size());
+		assertSame(w1, waits.get(0));
+		assertSame(w3, waits.get(1));
+		assertSame(w1, process.getElementsByXPath("//*[@name='W1']").get(0));
+	}
+	
+	@Test
+	public void testXPathInDocumentAfterEditing() throws Exception {
+		Process process = (Process) BpelFactory.createProcess();
+		Sequence sequence = process.setNewSequence();
+		sequence.setName("Main");
+		Empty e1 = sequence.addEmpty();
+		Empty e2 = sequence.addEmpty();
+		
+		assertEquals("/bpel:process/bpel:sequence[@name='Main']/bpel:empty[2]", e2.getXPathInDocument());
+		
+		e2.setName("E2");
+		assertEquals("/bpel:process/bpel:sequence[@name='Main']/bpel:empty[@name='E2']", e2.getXPathInDocument());
+		
+		e1.setName("E1");
+		assertEquals("/bpel:process/bpel:sequence[@name='Main']/bpel:empty[@name='E1']", e1.getXPathInDocument());
+		
+		sequence.wrapActivityInNewScope(e1);
+		assertEquals("/bpel:process/bpel:sequence[@name='Main']/bpel:scope[@name='ScopeOfE1']/bpel:empty[@name='E1']", e1.getXPathInDocument());
+		
+		Map<IBpelObject, String> paths = process.getXPathsInDocument(Arrays.asList(e2, sequence, e1));
+		assertEquals(Arrays.asList(e2, sequence, e1), new ArrayList<IBpelObject>(paths.keySet()));
+		assertEquals(e2.getXPathInDocument(), paths.get(e2));
+		assertEquals("/bpel:process/bpel:sequence[@name='Main']", paths.get(sequence));
+		assertEquals(e1.getXPathInDocument(), paths.get(e1));
+	}
+	
+	@Test
+	public void testStructureVersionIsKeptPerProcess() throws Exception {
+		Process process1 = (Process) BpelFactory.createProcess();
+		Process process2 = (Process) BpelFactory.createProcess();
+		Sequence sequence = process1.setNewSequence();
+		Empty empty = sequence.addEmpty();
+		Variable variable = (Variable) process1.addVariable();
+		variable.setName("V1");
+		
+		assertEquals("/bpel:process/bpel:sequence/bpel:empty", empty.getXPathInDocument());
+		assertEquals("/bpel:process/bpel:variables/bpel:variable[@name='V1']", variable.getXPathInDocument());
+		
+		int version = process1.getStructureVersion();
+		process2.setNewSequence().addEmpty().setName("E");
+		assertEquals(version, process1.getStructureVersion());
+		
+		variable.setName("V2");
+		assertEquals("/bpel:process/bpel:variables/bpel:variable[@name='V2']", variable.getXPathInDocument());
+		
+		empty.setName("E1");
+		assertEquals("/bpel:process/bpel:sequence/bpel:empty[@name='E1']", empty.getXPathInDocument());
+	}
+	
 	@Test
 	public void testAssignFromFile() throws Exception {
 		InputStream resourceStream = getClass().getResourceAsStream("/activities/_2_0/activity-assign.bpel");
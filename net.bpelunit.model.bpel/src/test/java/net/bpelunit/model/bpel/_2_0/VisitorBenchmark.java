@@ -0,0 +1,215 @@
+package net.bpelunit.model.bpel._2_0;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bpelunit.model.bpel.IAssign;
+import net.bpelunit.model.bpel.ICatch;
+import net.bpelunit.model.bpel.ICatchAll;
+import net.bpelunit.model.bpel.ICompensate;
+import net.bpelunit.model.bpel.ICompensateScope;
+import net.bpelunit.model.bpel.ICompensationHandler;
+import net.bpelunit.model.bpel.ICopy;
+import net.bpelunit.model.bpel.IElse;
+import net.bpelunit.model.bpel.IElseIf;
+import net.bpelunit.model.bpel.IEmpty;
+import net.bpelunit.model.bpel.IExit;
+import net.bpelunit.model.bpel.IFlow;
+import net.bpelunit.model.bpel.IForEach;
+import net.bpelunit.model.bpel.IIf;
+import net.bpelunit.model.bpel.IImport;
+import net.bpelunit.model.bpel.IInvoke;
+import net.bpelunit.model.bpel.ILink;
+import net.bpelunit.model.bpel.IOnAlarm;
+import net.bpelunit.model.bpel.IOnAlarmEventHandler;
+import net.bpelunit.model.bpel.IOnMessage;
+import net.bpelunit.model.bpel.IOnMessageHandler;
+import net.bpelunit.model.bpel.IPartnerLink;
+import net.bpelunit.model.bpel.IPick;
+import net.bpelunit.model.bpel.IProcess;
+import net.bpelunit.model.bpel.IReceive;
+import net.bpelunit.model.bpel.IRepeatUntil;
+import net.bpelunit.model.bpel.IReply;
+import net.bpelunit.model.bpel.IRethrow;
+import net.bpelunit.model.bpel.IScope;
+import net.bpelunit.model.bpel.ISequence;
+import net.bpelunit.model.bpel.IThrow;
+import net.bpelunit.model.bpel.IValidate;
+import net.bpelunit.model.bpel.IVariable;
+import net.bpelunit.model.bpel.IVisitor;
+import net.bpelunit.model.bpel.IWait;
+import net.bpelunit.model.bpel.IWhile;
+
+/**
+ * Micro-benchmark for the dispatch of {@link AbstractBpelObject#visit(IVisitor)}
+ * over a large synthetic process.
+ *
+ * Compares the <code>accept</code> methods of the model classes against the
+ * previous implementation, which looked up the visit method of the visitor by
+ * reflection for every node. Run with
+ * <code>java net.bpelunit.model.bpel._2_0.VisitorBenchmark [scopes] [rounds]</code>.
+ */
+public class VisitorBenchmark {
+
+	/**
+	 * Visitor which only counts the nodes it sees, so that the benchmark
+	 * measures the dispatch and not the work done by the visitor.
+	 */
+	public static class CountingVisitor implements IVisitor {
+		private long count;
+
+		public void visit(IAssign a) { count++; }
+		public void visit(ICompensate a) { count++; }
+		public void visit(ICompensateScope a) { count++; }
+		public void visit(ICopy c) { count++; }
+		public void visit(IEmpty a) { count++; }
+		public void visit(IExit a) { count++; }
+		public void visit(IFlow a) { count++; }
+		public void visit(IForEach a) { count++; }
+		public void visit(IIf a) { count++; }
+		public void visit(IImport i) { count++; }
+		public void visit(IInvoke a) { count++; }
+		public void visit(IOnAlarm a) { count++; }
+		public void visit(IOnMessage a) { count++; }
+		public void visit(IPartnerLink pl) { count++; }
+		public void visit(IPick a) { count++; }
+		public void visit(IProcess a) { count++; }
+		public void visit(IReceive a) { count++; }
+		public void visit(IRepeatUntil a) { count++; }
+		public void visit(IReply a) { count++; }
+		public void visit(IRethrow a) { count++; }
+		public void visit(IScope a) { count++; }
+		public void visit(ISequence a) { count++; }
+		public void visit(IThrow a) { count++; }
+		public void visit(IValidate a) { count++; }
+		public void visit(IVariable var) { count++; }
+		public void visit(IWait a) { count++; }
+		public void visit(IWhile a) { count++; }
+		public void visit(ICompensationHandler compensationHandler) { count++; }
+		public void visit(IOnMessageHandler onMessageHandler) { count++; }
+		public void visit(IElseIf elseIf) { count++; }
+		public void visit(IElse else1) { count++; }
+		public void visit(ILink link) { count++; }
+		public void visit(ICatch ccatch) { count++; }
+		public void visit(ICatchAll catchAll) { count++; }
+		public void visit(IOnAlarmEventHandler onAlarmEventHandler) { count++; }
+	}
+
+	/**
+	 * Visitor which collects every node of the process.
+	 */
+	private static class GatheringVisitor extends CountingVisitor {
+		private final List<AbstractBpelObject> nodes = new ArrayList<AbstractBpelObject>();
+
+		@Override public void visit(IAssign a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(ICopy c) { nodes.add((AbstractBpelObject) c); }
+		@Override public void visit(IEmpty a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IFlow a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IInvoke a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IProcess a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IReceive a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IScope a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(ISequence a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IVariable var) { nodes.add((AbstractBpelObject) var); }
+		@Override public void visit(IWait a) { nodes.add((AbstractBpelObject) a); }
+		@Override public void visit(IWhile a) { nodes.add((AbstractBpelObject) a); }
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int scopes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+		Process process = createProcess(scopes);
+		GatheringVisitor gatherer = new GatheringVisitor();
+		process.visit(gatherer);
+		List<AbstractBpelObject> nodes = gatherer.nodes;
+
+		// Warm up
+		measureReflective(nodes, rounds);
+		measureAccept(nodes, rounds);
+		measureTraversal(process, rounds);
+
+		final double reflective = measureReflective(nodes, rounds);
+		final double accept = measureAccept(nodes, rounds);
+		final double traversal = measureTraversal(process, rounds);
+
+		System.out.println(String.format("%d nodes, %d rounds", nodes.size(), rounds));
+		System.out.println(String.format("Reflective dispatch: %.0f nodes/ms", reflective));
+		System.out.println(String.format("Accept dispatch:     %.0f nodes/ms", accept));
+		System.out.println(String.format("Full traversal:      %.0f nodes/ms", traversal));
+	}
+
+	/**
+	 * Builds a process with a main sequence holding the given number of
+	 * scopes, each with a nested sequence of basic and structured activities.
+	 */
+	private static Process createProcess(int scopes) {
+		Process process = (Process) BpelFactory.INSTANCE.createProcess();
+		process.addVariable().setName("var");
+		Sequence main = process.setNewSequence();
+		for (int i = 0; i < scopes; i++) {
+			Sequence body = main.addScope().setNewSequence();
+			body.addReceive();
+			body.addAssign().addCopy();
+			body.addInvoke();
+			Flow flow = body.addFlow();
+			flow.addEmpty();
+			flow.addWait();
+			body.addWhile().setNewEmpty();
+		}
+		return process;
+	}
+
+	private static double measureReflective(List<AbstractBpelObject> nodes, int rounds) {
+		CountingVisitor visitor = new CountingVisitor();
+		final long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (AbstractBpelObject node : nodes) {
+				reflectiveVisit(node, visitor);
+			}
+		}
+		return throughput(visitor.count, start);
+	}
+
+	private static double measureAccept(List<AbstractBpelObject> nodes, int rounds) {
+		CountingVisitor visitor = new CountingVisitor();
+		final long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (AbstractBpelObject node : nodes) {
+				node.accept(visitor);
+			}
+		}
+		return throughput(visitor.count, start);
+	}
+
+	private static double measureTraversal(Process process, int rounds) {
+		CountingVisitor visitor = new CountingVisitor();
+		final long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			process.visit(visitor);
+		}
+		return throughput(visitor.count, start);
+	}
+
+	private static double throughput(long visitedNodes, long start) {
+		return visitedNodes / ((System.nanoTime() - start) / 1e6);
+	}
+
+	/**
+	 * Copy of the dispatch used before the accept methods.
+	 */
+	private static void reflectiveVisit(AbstractBpelObject node, IVisitor v) {
+		Class<? extends IVisitor> visitorClass = v.getClass();
+		for (Class<?> c : node.getClass().getInterfaces()) {
+			try {
+				Method m = visitorClass.getMethod("visit", c);
+				m.invoke(v, node);
+				return;
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+		throw new RuntimeException("Cannot call visit for " + node.getClass());
+	}
+}
@@ -0,0 +1,145 @@
+package net.bpelunit.model.bpel._2_0;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bpelunit.model.bpel.IAssign;
+import net.bpelunit.model.bpel.IEmpty;
+import net.bpelunit.model.bpel.IFlow;
+import net.bpelunit.model.bpel.IInvoke;
+import net.bpelunit.model.bpel.IReceive;
+import net.bpelunit.model.bpel.IScope;
+import net.bpelunit.model.bpel.ISequence;
+import net.bpelunit.model.bpel.IWait;
+import net.bpelunit.model.bpel.IWhile;
+
+import org.oasisOpen.docs.wsbpel.x20.process.executable.TActivity;
+
+/**
+ * Micro-benchmark for loading large processes, which creates a wrapper for
+ * every activity through {@link BpelFactory#createWrapper(TActivity, net.bpelunit.model.bpel.IActivityContainer)}.
+ *
+ * Compares the registry of wrapper factories against the previous
+ * implementation, which looked up the wrapper class and its constructor by
+ * reflection for every activity. Run with
+ * <code>java net.bpelunit.model.bpel._2_0.WrapperBenchmark [scopes] [rounds]</code>.
+ */
+public class WrapperBenchmark {
+
+	/**
+	 * Visitor which collects the XMLBeans objects of the activities.
+	 */
+	private static class ActivityGatherer extends VisitorBenchmark.CountingVisitor {
+		private final List<TActivity> activities = new ArrayList<TActivity>();
+
+		private void add(Object activity) {
+			activities.add((TActivity) ((AbstractActivity<?>) activity).getNativeActivity());
+		}
+
+		@Override public void visit(IAssign a) { add(a); }
+		@Override public void visit(IEmpty a) { add(a); }
+		@Override public void visit(IFlow a) { add(a); }
+		@Override public void visit(IInvoke a) { add(a); }
+		@Override public void visit(IReceive a) { add(a); }
+		@Override public void visit(IScope a) { add(a); }
+		@Override public void visit(ISequence a) { add(a); }
+		@Override public void visit(IWait a) { add(a); }
+		@Override public void visit(IWhile a) { add(a); }
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int scopes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		byte[] processBytes = createProcess(scopes);
+		ActivityGatherer gatherer = new ActivityGatherer();
+		BpelFactory.INSTANCE.loadProcess(new ByteArrayInputStream(processBytes)).visit(gatherer);
+		List<TActivity> activities = gatherer.activities;
+
+		// Warm up
+		measureReflective(activities, rounds);
+		measureRegistry(activities, rounds);
+		measureLoad(processBytes, rounds);
+
+		final double reflective = measureReflective(activities, rounds);
+		final double registry = measureRegistry(activities, rounds);
+		final double load = measureLoad(processBytes, rounds);
+
+		System.out.println(String.format("%d activities, %d rounds", activities.size(), rounds));
+		System.out.println(String.format("Reflective wrappers: %.3f ms per process", reflective));
+		System.out.println(String.format("Registry wrappers:   %.3f ms per process", registry));
+		System.out.println(String.format("Loading the process: %.3f ms per process", load));
+	}
+
+	/**
+	 * Builds and serializes a process with a main sequence holding the given
+	 * number of scopes, each with ten activities.
+	 */
+	private static byte[] createProcess(int scopes) throws Exception {
+		Process process = (Process) BpelFactory.INSTANCE.createProcess();
+		Sequence main = process.setNewSequence();
+		for (int i = 0; i < scopes; i++) {
+			Sequence body = main.addScope().setNewSequence();
+			body.addReceive();
+			body.addAssign();
+			body.addInvoke();
+			Flow flow = body.addFlow();
+			flow.addEmpty();
+			flow.addWait();
+			body.addWhile().setNewEmpty();
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		process.save(out);
+		return out.toByteArray();
+	}
+
+	private static double measureReflective(List<TActivity> activities, int rounds) throws Exception {
+		final long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (TActivity activity : activities) {
+				createWrapperReflectively(activity);
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / rounds;
+	}
+
+	private static double measureRegistry(List<TActivity> activities, int rounds) {
+		final long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			for (TActivity activity : activities) {
+				BpelFactory.INSTANCE.createWrapper(activity, null);
+			}
+		}
+		return (System.nanoTime() - start) / 1e6 / rounds;
+	}
+
+	private static double measureLoad(byte[] processBytes, int rounds) {
+		final long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			BpelFactory.INSTANCE.loadProcess(new ByteArrayInputStream(processBytes));
+		}
+		return (System.nanoTime() - start) / 1e6 / rounds;
+	}
+
+	/**
+	 * Copy of the wrapper lookup used before the registry.
+	 */
+	private static AbstractActivity<?> createWrapperReflectively(TActivity child) throws Exception {
+		String name = child.getClass().getSimpleName();
+		name = name.substring(1, name.length() - "Impl".length());
+		Class<?> clazz = Class.forName(BpelFactory.class.getPackage().getName() + "." + name);
+		Constructor<?> c = null;
+		for (Class<?> i : child.getClass().getInterfaces()) {
+			try {
+				c = clazz.getConstructor(i, IContainer.class);
+				break;
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+		return (AbstractActivity<?>) c.newInstance(child, null);
+	}
+}
@@ -11,7 +11,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
@@ -238,6 +241,63 @@ public final class XMLUtil {
 		return sb.toString();
 	}
 
+	/**
+	 * Calculates the XPaths of the element and all elements below it in one
+	 * pass over the document. The paths are the same as the ones returned by
+	 * {@link #getXPathForElement(Node, NamespaceContext)} for each element.
+	 * 
+	 * @param e
+	 * @param ctx
+	 * @return XPaths by element
+	 */
+	public static Map<Node, String> getXPathsForElements(Element e, NamespaceContext ctx) {
+		Map<Node, String> paths = new IdentityHashMap<Node, String>();
+		String path = getXPathForElement(e, ctx);
+		paths.put(e, path);
+		addXPathsForChildElements(e, path, ctx, paths);
+		
+		return paths;
+	}
+
+	private static void addXPathsForChildElements(Element parent,
+			String parentPath, NamespaceContext ctx, Map<Node, String> paths) {
+		List<Element> children = getChildElements(parent);
+		
+		Map<String, Integer> childrenCount = new HashMap<String, Integer>();
+		for (Element c : children) {
+			String key = getQualifiedName(c);
+			Integer count = childrenCount.get(key);
+			childrenCount.put(key, count == null ? 1 : count + 1);
+		}
+		
+		for (int i = 0; i < children.size(); i++) {
+			Element c = children.get(i);
+			StringBuffer sb = new StringBuffer(parentPath);
+			sb.append("/");
+			
+			String namespaceURI = c.getNamespaceURI();
+			if (namespaceURI != null && !namespaceURI.equals("")) {
+				sb.append(ctx.getPrefix(namespaceURI)).append(":");
+			}
+			sb.append(c.getLocalName());
+			
+			Node name = c.getAttributes().getNamedItem("name");
+			if (name != null) {
+				sb.append("[@name='").append(name.getNodeValue()).append("']");
+			} else if (childrenCount.get(getQualifiedName(c)) != 1) {
+				sb.append("[").append(i + 1).append("]");
+			}
+			
+			String path = sb.toString();
+			paths.put(c, path);
+			addXPathsForChildElements(c, path, ctx, paths);
+		}
+	}
+
+	private static String getQualifiedName(Element e) {
+		return "{" + e.getNamespaceURI() + "}" + e.getLocalName();
+	}
+
 	/**
 	 * Append XPath [expr] like /a/b[1] or /a/b[@name='x']
 	 * @param sb
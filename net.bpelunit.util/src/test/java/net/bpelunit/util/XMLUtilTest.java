@@ -12,6 +12,7 @@ import static org.junit.Assert.assertSame;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.QName;
 
@@ -235,6 +236,32 @@ public class XMLUtilTest {
 		assertEquals("/a:A/b:B/a:D", XMLUtil.getXPathForElement(d3, ctx));
 	}
 	
+	@Test
+	public void testGetXPathsForElements() throws Exception {
+		Document xml = XMLUtil.parseXML(getClass().getResourceAsStream("GetXPathForElement.xml"));
+		
+		SimpleNamespaceContext ctx = new SimpleNamespaceContext();
+		ctx.addNamespace("a", "a");
+		ctx.addNamespace("b", "b");
+		
+		Element a = xml.getDocumentElement();
+		Element b = (Element) XMLUtil.getChildElementsByName(a, "B").get(0);
+		Element c = (Element) XMLUtil.getChildElementsByName(b, "C").get(0);
+		Element d1 = (Element) XMLUtil.getChildElementsByName(c, "D").get(0);
+		Element d2 = (Element) XMLUtil.getChildElementsByName(c, "D").get(1);
+		Element d3 = (Element) XMLUtil.getChildElementsByName(b, "D").get(0);
+		
+		Map<Node, String> paths = XMLUtil.getXPathsForElements(a, ctx);
+		assertEquals(6, paths.size());
+		for (Element e : new Element[] { a, b, c, d1, d2, d3 }) {
+			assertEquals(XMLUtil.getXPathForElement(e, ctx), paths.get(e));
+		}
+		
+		paths = XMLUtil.getXPathsForElements(c, ctx);
+		assertEquals(3, paths.size());
+		assertEquals("/a:A/b:B/a:C/a:D[2]", paths.get(d2));
+	}
+	
 	@Test
 	public void testAddTextNode() {
 		Document xml = XMLUtil.createDocument();